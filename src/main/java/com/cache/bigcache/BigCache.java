@@ -1,52 +1,107 @@
 package com.cache.bigcache;
 
+import com.cache.bigcache.CacheConfig.EvictionPolicy;
+import com.cache.bigcache.CacheConfig.IndexMode;
+import com.cache.bigcache.CacheConfig.IndexSyncMode;
+import com.cache.bigcache.codec.DictionaryCodec;
+import com.cache.bigcache.codec.DictionaryTrainer;
+import com.cache.bigcache.codec.EntryChecksum;
+import com.cache.bigcache.codec.EntryCodec;
+import com.cache.bigcache.codec.ICodec;
+import com.cache.bigcache.index.HeapPointerIndex;
+import com.cache.bigcache.index.IPointerIndex;
+import com.cache.bigcache.index.OffHeapPointerIndex;
 import com.cache.bigcache.lock.StripedReadWriteLock;
+import com.cache.bigcache.sotrage.IStorageBlock;
+import com.cache.bigcache.sotrage.IndexRecord;
 import com.cache.bigcache.sotrage.Pointer;
 import com.cache.bigcache.sotrage.StorageBlock;
 import com.cache.bigcache.sotrage.StorageManager;
 import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.KeySerializer;
+import com.cache.bigcache.utils.StatsCounter;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 public class BigCache<K> implements ICache<K> {
-    /** the default purge interval which is 5 minutes */
-    public static final long DEFAULT_PURGE_INTERVAL = 5 * 60 * 1000;
+    /** the default tick of the expiry wheel which is 1 second */
+    public static final long DEFAULT_EXPIRY_WHEEL_RESOLUTION = 1000;
+
+    /** the default purge interval which is 0, the cleaner reads the expiry wheel at every tick */
+    public static final long DEFAULT_PURGE_INTERVAL = 0;
 
     /** the default merge interval which is 10 minutes. */
     public static final long DEFAULT_MERGE_INTERVAL = 10 * 60 * 1000;
 
+    /** the default interval between two trainings of the compression dictionary which is 10 minutes */
+    public static final long DEFAULT_DICTIONARY_RETRAIN_INTERVAL = 10 * 60 * 1000;
+
     /** the default threshold for dirty block recycling */
     public static final double DEFAULT_DIRTY_RATIO_THRESHOLD = 0.5;
 
+    /** the default dirty ratio of the whole storage which starts a compaction before the merge interval is up */
+    public static final double DEFAULT_COMPACTION_TRIGGER_RATIO = 0.25;
+
+    /** the compaction moves the values as fast as it can by default */
+    public static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 0;
+
+    /** the recoverable data is written through to the disk every second by default */
+    public static final long DEFAULT_INDEX_SYNC_INTERVAL = 1000;
+
+    /** the scrubber reads 16MB per second by default */
+    public static final long DEFAULT_SCRUB_BYTES_PER_SECOND = 16 * 1024 * 1024;
+
     /** the constant default concurrency level. The default is 2^8=256 concurrent level */
     public static final int DEFAULT_CONCURRENCY_LEVEL = 8;
 
+    /** the default number of threads which run the async operations */
+    public static final int DEFAULT_ASYNC_THREADS = 4;
+
+    /** the default bound of the pending async operations */
+    public static final int DEFAULT_MAX_ASYNC_IN_FLIGHT = 1024;
+
     /** the length of value can't be greater than 4m */
     public static final int MAX_VALUE_LENGTH = 4 * 1024 * 1024;
 
+    /** the order of the values in the storage */
+    private static final Comparator<Pointer> POINTER_ORDER = (Pointer a, Pointer b) -> {
+        int byBlock = Integer.compare(a.getStorageBlock().getIndex(), b.getStorageBlock().getIndex());
+        return byBlock != 0 ? byBlock : Integer.compare(a.getPosition(), b.getPosition());
+    };
+
     /** the hit counter */
-    protected AtomicLong hitCounter = new AtomicLong(0);
+    protected final StatsCounter hitCounter;
 
     /** The miss counter. */
-    protected AtomicLong missCounter = new AtomicLong();
+    protected final StatsCounter missCounter;
 
     /** The get counter. */
-    protected AtomicLong getCounter = new AtomicLong();
+    protected final StatsCounter getCounter;
 
     /** The put counter. */
-    protected AtomicLong putCounter = new AtomicLong();
+    protected final StatsCounter putCounter;
 
     /** The delete counter. */
-    protected AtomicLong deleteCounter = new AtomicLong();
+    protected final StatsCounter deleteCounter;
 
     /** The # of purges due to expiration. */
     protected AtomicLong purgeCounter = new AtomicLong();
@@ -54,11 +109,23 @@ public class BigCache<K> implements ICache<K> {
     /** The # of moves for dirty block recycle. */
     protected AtomicLong moveCounter = new AtomicLong();
 
+    /** the total time in milliseconds between the expiry and the purge of the purged entries */
+    protected AtomicLong purgeLatency = new AtomicLong();
+
+    /** The # of entries evicted to stay under the limits. */
+    protected AtomicLong evictCounter = new AtomicLong();
+
+    /** The # of entries found corrupted by a read or the scrubber. */
+    protected AtomicLong corruptCounter = new AtomicLong();
+
+    /** The # of entries checked by the scrubber. */
+    protected AtomicLong scrubCounter = new AtomicLong();
+
     /** The total storage size we have used, including the expired ones which are still in the pointermap */
     protected AtomicLong usedSize = new AtomicLong();
 
     // 核心
-    protected final ConcurrentHashMap<K, CacheValueWrapper> pointerMap = new ConcurrentHashMap<>();
+    protected final IPointerIndex<K> pointerMap;
 
     /** managing the storages */
     final StorageManager storageManager;
@@ -79,7 +146,104 @@ public class BigCache<K> implements ICache<K> {
     /** dirty ratio which control block recycle */
     private final double dirtyRatioThreshold;
 
+    /** the dirty ratio of the whole storage which starts a compaction right away */
+    private final double compactionTriggerRatio;
+
+    /** the max # of bytes moved per second by the compaction, 0 for no limit */
+    private final long compactionBytesPerSecond;
+
+    /** the keys stored in every block, the compaction evacuates a block without scanning the index */
+    final BlockKeyTracker<K> blockKeys;
+
+    /** compacts the dirty blocks, scheduled by the merge interval and started early by the cleaner */
+    private final CacheMerger<K> merger;
+
+    /** true while a compaction is running */
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    /** the expiry times of the keys with a time to idle, read by the cleaner */
+    private final ExpiryWheel<K> expiryWheel;
+
+    /** the largest gap between two values read together by a batch get */
+    private final int readCoalescingGap;
+
+    /** keep the data on disk and rebuild the keys from it on startup */
+    private final boolean recoveryEnabled;
+
+    /** read without the stripe lock and validate the stripe version afterwards */
+    private final boolean optimisticReadEnabled;
+
+    /** the max # of value bytes, 0 for no limit */
+    private final long maxStorageBytes;
+
+    /** the max # of entries, 0 for no limit */
+    private final long maxEntries;
+
+    /** picks the entries to evict, null if the cache is not bounded */
+    private final IEvictionPolicy<K> evictionPolicy;
+
+    /** the # of blocks of the storage ring, 0 if the storage is not a ring */
+    private final int ringBlocks;
+
+    /** copy the entries read lately out of a recycled block instead of dropping them */
+    private final boolean ringReinsertEnabled;
+
+    /** frames and compresses the stored values, null if they are stored as they are */
+    private final EntryCodec entryCodec;
+
+    /** compresses the values with a trained dictionary, null if there is no dictionary compression */
+    private final DictionaryCodec dictionaryCodec;
+
+    /** samples the values and trains the dictionaries, null if there is no dictionary compression */
+    private final DictionaryTrainer dictionaryTrainer;
+
+    /** trains the dictionaries, scheduled by the retrain interval and started early by the cleaner */
+    private DictionaryRetrainer<K> dictionaryRetrainer;
+
+    /** every entry has a header with its length and CRC32C, checked when it is read */
+    private final boolean checksumEnabled;
+
+    /** the max # of bytes checked per second by the scrubber, 0 for no limit */
+    private final long scrubBytesPerSecond;
+
+    /** one thread evicts at a time */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** the # of entries rebuilt from disk on startup */
+    private long recoveredEntries;
+
+    /** how long the warm start took in milliseconds */
+    private long recoveryTime;
+
+    /** runs the async operations, started by the first of them */
+    private volatile ExecutorService asyncExecutor;
+
+    /** set by close, no executor can be started afterwards */
+    private boolean asyncClosed;
+
+    private final int asyncThreads;
+
+    /** bounds the pending async operations, a caller waits for a permit when there is none left */
+    private final Semaphore asyncPermits;
+
+    private final int maxAsyncInFlight;
+
+    /** the async operations waiting for an I/O thread */
+    private final AtomicLong asyncQueueDepth = new AtomicLong();
+
+    /** the # of completed async operations */
+    private final AtomicLong asyncCompleted = new AtomicLong();
+
+    /** the total time in nanoseconds from submission to completion of the async operations */
+    private final AtomicLong asyncLatency = new AtomicLong();
+
     public BigCache(String dir, CacheConfig config) throws IOException{
+        int statsSampleRate = config.getStatsSampleRate();
+        this.hitCounter = new StatsCounter(statsSampleRate);
+        this.missCounter = new StatsCounter(statsSampleRate);
+        this.getCounter = new StatsCounter(statsSampleRate);
+        this.putCounter = new StatsCounter(statsSampleRate);
+        this.deleteCounter = new StatsCounter(statsSampleRate);
         this.cacheDir = dir;
         // 保证路径最后面有 '/'，因为后面创建文件时文件名是直接用 + 创建
         if(!this.cacheDir.endsWith(File.separator)){
@@ -88,18 +252,84 @@ public class BigCache<K> implements ICache<K> {
         if(!FileUtil.isFilenameValid(this.cacheDir)){
             throw new IllegalArgumentException("Invalid cache data directory : " + this.cacheDir);
         }
-        // 目录存在直接删除
-        FileUtil.deleteDirectory(new File(this.cacheDir));
+        this.recoveryEnabled = config.isRecoveryEnabled();
+        // 目录存在直接删除, 除非需要从中恢复数据
+        if(!recoveryEnabled){
+            FileUtil.deleteDirectory(new File(this.cacheDir));
+        }
 
-        this.storageManager = new StorageManager(this.cacheDir, config.getCapacityPerBlock(), config.getInitialNumberOfBlocks(), config.getStorageMode(), config.getMaxOffHeapMemorySize());
+        this.maxStorageBytes = config.getMaxStorageBytes();
+        this.maxEntries = config.getMaxEntries();
+        this.ringBlocks = config.getRingBlocks();
+        this.ringReinsertEnabled = config.isRingReinsertEnabled();
+        ICodec codec = config.getCodec();
+        if(config.getDictionarySize() > 0){
+            if(codec != null){
+                throw new IllegalArgumentException("a codec and a dictionary can't be both set!");
+            }
+            this.dictionaryCodec = new DictionaryCodec(this.cacheDir);
+            this.dictionaryTrainer = new DictionaryTrainer(dictionaryCodec, config.getDictionarySize());
+            codec = dictionaryCodec;
+        } else {
+            this.dictionaryCodec = null;
+            this.dictionaryTrainer = null;
+        }
+        this.entryCodec = codec == null ? null : new EntryCodec(codec, config.getCompressionThreshold());
+        this.checksumEnabled = config.isChecksumEnabled();
+        this.scrubBytesPerSecond = config.getScrubBytesPerSecond();
+        if(maxStorageBytes == 0 && maxEntries == 0){
+            this.evictionPolicy = null;
+        } else if(config.getEvictionPolicy() == EvictionPolicy.FifoBlock){
+            this.evictionPolicy = new FifoBlockEviction<>(this);
+        } else if(config.getEvictionPolicy() == EvictionPolicy.WTinyLfu){
+            this.evictionPolicy = new TinyLfuEviction<>(this, maxEntries);
+        } else {
+            this.evictionPolicy = new SampledLruEviction<>(this);
+        }
+        int initialNumberOfBlocks = ringBlocks > 0 ? Math.min(ringBlocks, config.getInitialNumberOfBlocks()) : config.getInitialNumberOfBlocks();
+        this.storageManager = new StorageManager(this.cacheDir, config.getCapacityPerBlock(), initialNumberOfBlocks, config.getStorageMode(), config.getMaxOffHeapMemorySize(), recoveryEnabled, config.isFreeListEnabled(), config.getIndexSyncMode());
         this.readWriteLock = new StripedReadWriteLock(config.getConcurrencyLevel());
+        if(config.getIndexMode() == IndexMode.OffHeap){
+            this.pointerMap = new OffHeapPointerIndex<>(storageManager, config.getConcurrencyLevel(), config.getExpiryWheelResolution());
+        } else {
+            this.pointerMap = new HeapPointerIndex<>();
+        }
+        this.blockKeys = new BlockKeyTracker<>(pointerMap);
+        this.expiryWheel = new ExpiryWheel<>(config.getExpiryWheelResolution(), System.currentTimeMillis(), pointerMap);
 
-        // 2 threads. one for purge and one for merge?
-        ses = new ScheduledThreadPoolExecutor(2);
-        ses.scheduleWithFixedDelay(new CacheCleaner(this), config.getPurgeInterval(), config.getPurgeInterval(), TimeUnit.MILLISECONDS);
-        ses.scheduleWithFixedDelay(new CacheMerger(this), config.getMergeInterval(), config.getMergeInterval(), TimeUnit.MILLISECONDS);
+        if(recoveryEnabled){
+            recover();
+        }
 
         dirtyRatioThreshold = config.getDirtyRatioThreshold();
+        compactionTriggerRatio = config.getCompactionTriggerRatio();
+        compactionBytesPerSecond = config.getCompactionBytesPerSecond();
+        readCoalescingGap = config.getReadCoalescingGap();
+        optimisticReadEnabled = config.isOptimisticReadEnabled();
+        asyncThreads = config.getAsyncThreads();
+        maxAsyncInFlight = config.getMaxAsyncInFlight();
+        asyncPermits = new Semaphore(maxAsyncInFlight);
+
+        boolean scrubbing = checksumEnabled && config.getScrubInterval() > 0;
+        boolean syncing = recoveryEnabled && config.getIndexSyncMode() == IndexSyncMode.Periodic;
+        // 2 threads. one for purge and one for merge? a throttled scrub would hold one of them for long, a sync must not wait for them
+        ses = new ScheduledThreadPoolExecutor(2 + (scrubbing ? 1 : 0) + (syncing ? 1 : 0));
+        ses.scheduleWithFixedDelay(new CacheCleaner(this), config.getPurgeInterval(), config.getPurgeInterval(), TimeUnit.MILLISECONDS);
+        merger = new CacheMerger<>(this);
+        // a ring reuses its blocks whole, nothing is ever compacted
+        if(ringBlocks == 0){
+            ses.scheduleWithFixedDelay(merger, config.getMergeInterval(), config.getMergeInterval(), TimeUnit.MILLISECONDS);
+        }
+        if(dictionaryTrainer != null){
+            dictionaryRetrainer = new DictionaryRetrainer<>(this);
+            ses.scheduleWithFixedDelay(dictionaryRetrainer, config.getDictionaryRetrainInterval(), config.getDictionaryRetrainInterval(), TimeUnit.MILLISECONDS);
+        }
+        if(scrubbing){
+            ses.scheduleWithFixedDelay(new CacheScrubber<>(this), config.getScrubInterval(), config.getScrubInterval(), TimeUnit.MILLISECONDS);
+        }
+        if(syncing){
+            ses.scheduleWithFixedDelay(new IndexSyncer<>(this), config.getIndexSyncInterval(), config.getIndexSyncInterval(), TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -109,81 +339,859 @@ public class BigCache<K> implements ICache<K> {
 
     @Override
     public void put(K key, byte[] value, long tti) throws IOException {
-        putCounter.incrementAndGet();
-        if(value == null || value.length > MAX_VALUE_LENGTH){
+        if(value == null){
+            throw new IllegalArgumentException("value is null or too large");
+        }
+        this.putValue(key, tti, -1, ByteBuffer.wrap(value));
+    }
+
+    @Override
+    public void put(K key, byte[] value, long tti, long ttl) throws IOException {
+        if(value == null){
             throw new IllegalArgumentException("value is null or too large");
         }
+        this.putValue(key, tti, ttl, ByteBuffer.wrap(value));
+    }
+
+    @Override
+    public void put(K key, ByteBuffer value) throws IOException {
+        this.putValue(key, -1, -1, value);
+    }
+
+    @Override
+    public void put(K key, ByteBuffer value, long tti) throws IOException {
+        this.putValue(key, tti, -1, value);
+    }
+
+    @Override
+    public void put(K key, ByteBuffer... values) throws IOException {
+        this.putValue(key, -1, -1, values);
+    }
+
+    /**
+     * stores the remaining bytes of the buffers as the value, the buffers are copied straight into the storage.
+     */
+    private void putValue(K key, long tti, long ttl, ByteBuffer... values) throws IOException {
+        putCounter.increment();
+        checkValue(values);
+        // compressing takes no lock
+        ByteBuffer[] entry = encode(values);
 
         writeLock(key);
         try{
-            CacheValueWrapper wrapper = pointerMap.get(key);
-            Pointer newPointer;
+            store(key, tti, ttl, entry);
+        } finally {
+            writeUnlock(key);
+        }
+        evictIfNeeded();
+    }
 
-            if(wrapper == null){
-                wrapper = new CacheValueWrapper();
-                newPointer = storageManager.store(value);
-            } else {
-                Pointer oldPointer = wrapper.getPointer();
-                newPointer = storageManager.update(oldPointer, value);
-                usedSize.addAndGet(oldPointer.getLength() * -1);
+    private static void checkValue(ByteBuffer... values){
+        long length = 0;
+        for(ByteBuffer value : values){
+            if(value == null){
+                throw new IllegalArgumentException("value is null or too large");
+            }
+            length += value.remaining();
+        }
+        if(length > MAX_VALUE_LENGTH){
+            throw new IllegalArgumentException("value is null or too large");
+        }
+    }
+
+    /**
+     * @return the buffers to store for the value
+     */
+    private ByteBuffer[] encode(ByteBuffer... values) throws IOException {
+        if(dictionaryTrainer != null){
+            dictionaryTrainer.sample(values);
+        }
+        ByteBuffer[] entry = entryCodec == null ? values : entryCodec.encode(values);
+        return checksumEnabled ? EntryChecksum.frame(entry) : entry;
+    }
+
+    /**
+     * @return the value of a stored entry, its checksum must have been verified
+     */
+    private byte[] decode(byte[] entry) throws IOException {
+        if(entry == null || (entryCodec == null && !checksumEnabled)){
+            return entry;
+        }
+        int offset = checksumEnabled ? EntryChecksum.HEADER_LENGTH : 0;
+        return entryCodec == null ? Arrays.copyOfRange(entry, offset, entry.length) : entryCodec.decode(entry, offset);
+    }
+
+    /**
+     * @return true if the value has to be decoded on the heap
+     */
+    private boolean isFramed(){
+        return entryCodec != null || checksumEnabled;
+    }
+
+    /**
+     * stores the value of the key, must be called under the write lock of the key.
+     */
+    private void store(K key, long tti, long ttl, ByteBuffer... values) throws IOException {
+        CacheValueWrapper wrapper = pointerMap.get(key);
+        Pointer newPointer;
+
+        Pointer oldPointer = null;
+        // an entry which could expire already has a timer, due at its old expiry time at the latest
+        long scheduledTime = wrapper == null ? Long.MAX_VALUE : wrapper.getExpiryTime();
+
+        if(wrapper == null){
+            wrapper = new CacheValueWrapper();
+            newPointer = storageManager.store(values);
+        } else {
+            oldPointer = wrapper.getPointer();
+            newPointer = storageManager.update(oldPointer, values);
+            usedSize.addAndGet(oldPointer.getLength() * -1);
+        }
+        wrapper.setPointer(newPointer);
+        wrapper.setTimeToIdle(tti);
+        long now = System.currentTimeMillis();
+        wrapper.setLastAccessTime(now);
+        wrapper.setTimeToLive(now, ttl);
+        usedSize.addAndGet(newPointer.getLength());
+        pointerMap.put(key, wrapper);
+        if(oldPointer == null || oldPointer.getStorageBlock() != newPointer.getStorageBlock()){
+            blockKeys.add(newPointer.getStorageBlock().getIndex(), key);
+        }
+        if(evictionPolicy != null){
+            evictionPolicy.recordPut(key, oldPointer == null);
+        }
+        long expiryTime = wrapper.getExpiryTime();
+        if(expiryTime < scheduledTime){
+            expiryWheel.schedule(key, expiryTime);
+        } else if(expiryTime == Long.MAX_VALUE && scheduledTime != Long.MAX_VALUE){
+            expiryWheel.cancel(key);
+        }
+
+        if(recoveryEnabled){
+            byte[] keyBytes = KeySerializer.serialize(key);
+            if(oldPointer != null && oldPointer.getStorageBlock() != newPointer.getStorageBlock()){
+                storageManager.logRemove(keyBytes, oldPointer);
+            }
+            storageManager.logPut(keyBytes, newPointer, tti, wrapper.getLastAccessTime(), wrapper.getExpireTime());
+        }
+    }
+
+    /**
+     * puts all the entries, every stripe lock is taken once for all its keys.
+     *
+     * @param entries the keys and their values
+     * @throws IOException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends K, byte[]> entries) throws IOException {
+        Object[] keys = new Object[entries.size()];
+        ByteBuffer[][] values = new ByteBuffer[keys.length][];
+        int n = 0;
+        for(Map.Entry<? extends K, byte[]> entry : entries.entrySet()){
+            if(entry.getValue() == null){
+                throw new IllegalArgumentException("value is null or too large");
+            }
+            keys[n] = entry.getKey();
+            ByteBuffer value = ByteBuffer.wrap(entry.getValue());
+            checkValue(value);
+            values[n] = encode(value);
+            n++;
+        }
+        putCounter.add(n);
+        int lockedStripe = -1;
+        try {
+            for(long entry : sortByStripe(keys)){
+                int stripe = (int) (entry >>> 32);
+                int i = (int) entry;
+                if(stripe != lockedStripe){
+                    if(lockedStripe >= 0){
+                        readWriteLock.writeUnlock(lockedStripe);
+                        lockedStripe = -1;
+                    }
+                    readWriteLock.writeLock(stripe);
+                    lockedStripe = stripe;
+                }
+                store((K) keys[i], -1, -1, values[i]);
             }
-            wrapper.setPointer(newPointer);
-            wrapper.setTimeToIdle(tti);
-            wrapper.setLastAccessTime(System.currentTimeMillis());
-            usedSize.addAndGet(newPointer.getLength());
-            pointerMap.put(key, wrapper);
         } finally {
-            writeUnlock(key);
+            if(lockedStripe >= 0){
+                readWriteLock.writeUnlock(lockedStripe);
+            }
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * gets the values of the keys. The keys are grouped by stripe and the pointers of every group are looked up
+     * under the read lock of its stripe, one stripe at a time. The values are then read with no lock held,
+     * sorted by their block and position, which makes the reads of a file backed block close to sequential,
+     * neighbouring ones are merged into a single read. The keys of a stripe which has been written meanwhile,
+     * as told by its version, are read again under its lock.
+     *
+     * @param keys the keys
+     * @return the values of the keys which are in the cache
+     * @throws IOException
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, byte[]> getAll(Collection<? extends K> keys) throws IOException {
+        Object[] batch = keys.toArray();
+        Pointer[] pointers = new Pointer[batch.length];
+        byte[][] values = new byte[batch.length][];
+        long[] order = sortByStripe(batch);
+        // where the keys of every stripe start in order, and the version of the stripe when they were looked up
+        int[] groupStarts = new int[batch.length + 1];
+        long[] stamps = new long[batch.length];
+        int groups = 0;
+        long now = System.currentTimeMillis();
+        for(int start = 0, end; start < order.length; start = end){
+            int stripe = (int) (order[start] >>> 32);
+            end = start;
+            readWriteLock.readLock(stripe);
+            try {
+                for(; end < order.length && (int) (order[end] >>> 32) == stripe; end++){
+                    CacheValueWrapper wrapper = lookup((K) batch[(int) order[end]], now);
+                    pointers[(int) order[end]] = wrapper == null ? null : wrapper.getPointer();
+                }
+                // a writer can't hold the stripe while we hold its read lock, the stamp is never 0
+                stamps[groups] = readWriteLock.tryOptimisticRead(stripe);
+            } finally {
+                readWriteLock.readUnlock(stripe);
+            }
+            groupStarts[groups++] = start;
+        }
+        groupStarts[groups] = order.length;
+
+        boolean readFailed = false;
+        try {
+            retrieveSorted(pointers, order, 0, order.length, values);
+        } catch (IOException | RuntimeException e){
+            // a value was moved while being read, the locked reads below tell a real failure
+            readFailed = true;
+        }
+        for(int g = 0; g < groups; g++){
+            int stripe = (int) (order[groupStarts[g]] >>> 32);
+            if(!readFailed && readWriteLock.validate(stripe, stamps[g])){
+                continue;
+            }
+            readWriteLock.readLock(stripe);
+            try {
+                for(int k = groupStarts[g]; k < groupStarts[g + 1]; k++){
+                    // the access has been recorded by the first look up already
+                    CacheValueWrapper wrapper = peek((K) batch[(int) order[k]]);
+                    pointers[(int) order[k]] = wrapper == null ? null : wrapper.getPointer();
+                    values[(int) order[k]] = null;
+                }
+                retrieveSorted(pointers, order, groupStarts[g], groupStarts[g + 1], values);
+            } finally {
+                readWriteLock.readUnlock(stripe);
+            }
+        }
+
+        Map<K, byte[]> result = new HashMap<>();
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != null){
+                result.put((K) batch[i], values[i]);
+            }
+        }
+        if(isFramed()){
+            Iterator<Map.Entry<K, byte[]>> entries = result.entrySet().iterator();
+            while(entries.hasNext()){
+                Map.Entry<K, byte[]> entry = entries.next();
+                if(checksumEnabled && !EntryChecksum.verify(entry.getValue())){
+                    dropCorrupted(entry.getKey());
+                    entries.remove();
+                    continue;
+                }
+                entry.setValue(decode(entry.getValue()));
+            }
+        }
+        // counted once the corrupted entries are dropped, a key asked for twice is a hit or a miss twice
+        int hits = 0;
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != null && result.containsKey(batch[i])){
+                hits++;
+            }
+        }
+        getCounter.add(batch.length);
+        hitCounter.add(hits);
+        missCounter.add(batch.length - hits);
+        return result;
+    }
+
+    /**
+     * reads the values of the keys order[from] to order[to - 1] which have a pointer, sorted by block and position.
+     */
+    private void retrieveSorted(Pointer[] pointers, long[] order, int from, int to, byte[][] values) throws IOException {
+        int hits = 0;
+        for(int k = from; k < to; k++){
+            if(pointers[(int) order[k]] != null){
+                hits++;
+            }
+        }
+        Integer[] reads = new Integer[hits];
+        for(int k = from, j = 0; k < to; k++){
+            if(pointers[(int) order[k]] != null){
+                reads[j++] = (int) order[k];
+            }
+        }
+        Arrays.sort(reads, (Integer a, Integer b) -> POINTER_ORDER.compare(pointers[a], pointers[b]));
+        Pointer[] sorted = new Pointer[hits];
+        for(int i = 0; i < hits; i++){
+            sorted[i] = pointers[reads[i]];
+        }
+        byte[][] read = storageManager.retrieve(sorted, readCoalescingGap);
+        for(int i = 0; i < hits; i++){
+            values[reads[i]] = read[i];
+        }
+    }
+
+    /**
+     * @return stripe index << 32 | key index for all the keys, in ascending stripe order
+     */
+    private long[] sortByStripe(Object[] keys){
+        long[] stripes = new long[keys.length];
+        for(int i = 0; i < keys.length; i++){
+            stripes[i] = ((long) readWriteLock.getStripeIndex(Math.abs(keys[i].hashCode())) << 32) | i;
         }
+        Arrays.sort(stripes);
+        return stripes;
     }
 
     @Override
     public byte[] get(K key) throws IOException {
-        getCounter.incrementAndGet();
-        readLock(key);
+        getCounter.increment();
+        byte[] entry = getEntry(key);
+        if(entry != null && checksumEnabled && !EntryChecksum.verify(entry)){
+            // read as a miss
+            dropCorrupted(key);
+            entry = null;
+        }
+        if(entry == null){
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return decode(entry);
+    }
+
+    /**
+     * removes the entry of the key if it is corrupted, the entry is checked again under the write lock as
+     * it may have been replaced since it was read.
+     */
+    private void dropCorrupted(K key) throws IOException {
+        writeLock(key);
         try {
             CacheValueWrapper wrapper = pointerMap.get(key);
             if(wrapper == null){
-                missCounter.incrementAndGet();
-                return null;
+                return;
             }
-            synchronized (wrapper){
-                if(!wrapper.isExpired()){
-                    hitCounter.incrementAndGet();
-                    wrapper.setLastAccessTime(System.currentTimeMillis());
-                    return storageManager.retrieve(wrapper.getPointer());
-                }else {
-                    missCounter.incrementAndGet();
-                    return null;
+            Pointer pointer = wrapper.getPointer();
+            if(EntryChecksum.verify(storageManager.retrieve(pointer))){
+                return;
+            }
+            corruptCounter.incrementAndGet();
+            pointerMap.remove(key);
+            expiryWheel.cancel(key);
+            storageManager.removeLight(pointer);
+            usedSize.addAndGet(-1 * pointer.getLength());
+            if(recoveryEnabled){
+                storageManager.logRemove(KeySerializer.serialize(key), pointer);
+            }
+        } finally {
+            writeUnlock(key);
+        }
+    }
+
+    /**
+     * reads the stored entry of the key, the caller counts the hit or the miss once the entry is checked.
+     *
+     * @return the stored entry of the key or null if there is no such key or it is expired
+     */
+    private byte[] getEntry(K key) throws IOException {
+        int id = Math.abs(key.hashCode());
+        long stamp = optimisticReadEnabled ? readWriteLock.tryOptimisticRead(id) : 0;
+        if(stamp != 0){
+            long now = System.currentTimeMillis();
+            CacheValueWrapper wrapper = null;
+            byte[] payload = null;
+            boolean valid = false;
+            try {
+                wrapper = peek(key);
+                payload = wrapper == null ? null : storageManager.retrieve(wrapper.getPointer());
+                valid = readWriteLock.validate(id, stamp);
+            } catch (IOException | RuntimeException e){
+                // the value was moved while being read, the locked read below tells a real failure
+            }
+            if(valid){
+                touch(key, wrapper, now);
+                return payload;
+            }
+        }
+        // only j.u.c locks are held across the storage I/O, a virtual thread blocked here unmounts instead of pinning its carrier
+        readLock(key);
+        try {
+            CacheValueWrapper wrapper = lookup(key, System.currentTimeMillis());
+            return wrapper == null ? null : storageManager.retrieve(wrapper.getPointer());
+        } finally {
+            readUnlock(key);
+        }
+    }
+
+    @Override
+    public int get(K key, ByteBuffer dest) throws IOException {
+        if(isFramed()){
+            // the entry has to be decoded on the heap anyway
+            byte[] value = get(key);
+            if(value == null){
+                return -1;
+            }
+            if(dest.remaining() < value.length){
+                throw new BufferOverflowException();
+            }
+            dest.put(value);
+            return value.length;
+        }
+        getCounter.increment();
+        int id = Math.abs(key.hashCode());
+        long stamp = optimisticReadEnabled ? readWriteLock.tryOptimisticRead(id) : 0;
+        if(stamp != 0){
+            int position = dest.position();
+            long now = System.currentTimeMillis();
+            CacheValueWrapper wrapper = null;
+            boolean valid = false;
+            try {
+                wrapper = peek(key);
+                if(wrapper == null){
+                    valid = readWriteLock.validate(id, stamp);
+                } else if(dest.remaining() >= wrapper.getPointer().getLength()){
+                    storageManager.retrieve(wrapper.getPointer(), dest);
+                    valid = readWriteLock.validate(id, stamp);
+                }
+            } catch (IOException | RuntimeException e){
+                // the value was moved while being read, the locked read below tells a real failure
+            }
+            if(valid){
+                touch(key, wrapper, now);
+                if(wrapper == null){
+                    missCounter.increment();
+                    return -1;
                 }
+                hitCounter.increment();
+                return wrapper.getPointer().getLength();
+            }
+            dest.position(position);
+        }
+        readLock(key);
+        try {
+            CacheValueWrapper wrapper = access(key);
+            if(wrapper == null){
+                return -1;
+            }
+            Pointer pointer = wrapper.getPointer();
+            if(dest.remaining() < pointer.getLength()){
+                throw new BufferOverflowException();
+            }
+            storageManager.retrieve(pointer, dest);
+            return pointer.getLength();
+        } finally {
+            readUnlock(key);
+        }
+    }
 
+    @Override
+    public <R> R get(K key, Function<ByteBuffer, R> reader) throws IOException {
+        if(isFramed()){
+            byte[] value = get(key);
+            return value == null ? null : reader.apply(ByteBuffer.wrap(value).asReadOnlyBuffer());
+        }
+        getCounter.increment();
+        readLock(key);
+        try {
+            CacheValueWrapper wrapper = access(key);
+            if(wrapper == null){
+                return null;
+            }
+            Pointer pointer = wrapper.getPointer();
+            ByteBuffer value = storageManager.slice(pointer);
+            if(value == null){
+                // the value is in a file, it has to be read anyway
+                value = ByteBuffer.allocate(pointer.getLength());
+                storageManager.retrieve(pointer, value);
+                value = value.flip().asReadOnlyBuffer();
             }
+            // the read lock keeps the value in place until the reader returns
+            return reader.apply(value);
         } finally {
             readUnlock(key);
         }
     }
 
+    /**
+     * looks the key up for a read and updates the hit/miss counters, must be called under the read lock.
+     *
+     * @return the wrapper or null if there is no such key or it is expired
+     */
+    private CacheValueWrapper access(K key) throws IOException {
+        CacheValueWrapper wrapper = lookup(key, System.currentTimeMillis());
+        if(wrapper == null){
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return wrapper;
+    }
+
+    /**
+     * looks the key up for a read and records the access, without touching the counters, must be called
+     * under the read lock.
+     *
+     * @return the wrapper or null if there is no such key or it is expired
+     */
+    private CacheValueWrapper lookup(K key, long now) throws IOException {
+        if(evictionPolicy != null){
+            evictionPolicy.recordAccess(key);
+        }
+        // an expired wrapper is not touched, so it stays expired
+        CacheValueWrapper wrapper = pointerMap.access(key, now);
+        return wrapper == null || wrapper.isExpired() ? null : wrapper;
+    }
+
+    /**
+     * looks the key up for an optimistic read, nothing is changed until the read stamp has been validated
+     * and the access is recorded by {@link #touch}, so a read which is retried under the lock counts once.
+     *
+     * @return the wrapper or null if there is no such key or it is expired
+     */
+    private CacheValueWrapper peek(K key) throws IOException {
+        CacheValueWrapper wrapper = pointerMap.get(key);
+        return wrapper == null || wrapper.isExpired() ? null : wrapper;
+    }
+
+    /**
+     * records the access of a validated optimistic read. A writer may have replaced the entry since, it gets
+     * the access then, which was a read of its key anyway.
+     *
+     * @param wrapper the wrapper which has been read, null for a miss
+     */
+    private void touch(K key, CacheValueWrapper wrapper, long now) throws IOException {
+        if(evictionPolicy != null){
+            evictionPolicy.recordAccess(key);
+        }
+        if(wrapper != null){
+            pointerMap.access(key, now);
+        }
+    }
+
     @Override
     public byte[] delete(K key) throws IOException {
-        deleteCounter.incrementAndGet();
+        deleteCounter.increment();
+        byte[] payload = null;
         writeLock(key);
         try {
-            CacheValueWrapper wrapper = pointerMap.get(key);
+            CacheValueWrapper wrapper = pointerMap.remove(key);
             if(wrapper != null){
-                byte[] payload = storageManager.remove(wrapper.getPointer());
-                pointerMap.remove(key);
+                expiryWheel.cancel(key);
+                payload = storageManager.remove(wrapper.getPointer());
                 usedSize.addAndGet(-1*payload.length);
-                return payload;
+                if(recoveryEnabled){
+                    storageManager.logRemove(KeySerializer.serialize(key), wrapper.getPointer());
+                }
             }
         }finally {
             writeUnlock(key);
         }
-        return null;
+        if(payload != null && checksumEnabled && !EntryChecksum.verify(payload)){
+            corruptCounter.incrementAndGet();
+            return null;
+        }
+        return decode(payload);
+    }
+
+    /**
+     * @return true if the cache holds more than its max storage bytes or its max entries
+     */
+    boolean isOverCapacity(){
+        return (maxStorageBytes > 0 && usedSize.get() > maxStorageBytes)
+                || (maxEntries > 0 && pointerMap.size() > maxEntries);
+    }
+
+    long getMaxEntries(){
+        return maxEntries;
+    }
+
+    /**
+     * recycles the oldest block of a full ring and lets the eviction policy drop entries until the cache is
+     * under its limits again, must be called without any stripe lock held.
+     */
+    private void evictIfNeeded() throws IOException {
+        if(ringBlocks > 0 && isRingFull()){
+            evictionLock.lock();
+            try {
+                recycleRing();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        if(evictionPolicy == null || !isOverCapacity()){
+            return;
+        }
+        evictionLock.lock();
+        try {
+            while(isOverCapacity()){
+                if(!evictionPolicy.evict()){
+                    break;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all the blocks of the ring are in use, so none is left for the next block switch
+     */
+    private boolean isRingFull(){
+        return storageManager.getUsedBlockCount() >= ringBlocks && storageManager.getFreeBlockCount() == 0;
+    }
+
+    /**
+     * recycles the oldest blocks until a block of the ring is free again.
+     */
+    private void recycleRing() throws IOException {
+        while(isRingFull()){
+            IStorageBlock block = storageManager.getOldestBlock();
+            if(block == null){
+                // the active block is the only one left
+                return;
+            }
+            long sealTime = storageManager.getBlock(block.getIndex()).getSealTime();
+            for(K key : blockKeys.drain(block.getIndex())){
+                recycle(key, block, sealTime);
+            }
+            cleanFreeBlocks();
+            if(storageManager.getOldestBlock() == block){
+                // still holds values, there is nothing more to do about it now
+                return;
+            }
+        }
+    }
+
+    /**
+     * moves the entry of the key out of the recycled block. It is copied into the active block if it has
+     * been read since the block was sealed and the active block has room for it, otherwise it is evicted.
+     */
+    private void recycle(K key, IStorageBlock block, long sealTime) throws IOException {
+        writeLock(key);
+        try {
+            CacheValueWrapper wrapper = pointerMap.get(key);
+            if(wrapper == null || wrapper.getPointer().getStorageBlock() != block){
+                return;
+            }
+            Pointer oldPointer = wrapper.getPointer();
+            Pointer newPointer = null;
+            if(ringReinsertEnabled && wrapper.getLastAccessTime() > sealTime){
+                newPointer = storageManager.storeIfRoom(storageManager.retrieve(oldPointer));
+            }
+            if(newPointer == null){
+                dropEvicted(key, oldPointer);
+                return;
+            }
+            storageManager.removeLight(oldPointer);
+            wrapper.setPointer(newPointer);
+            pointerMap.put(key, wrapper);
+            blockKeys.add(newPointer.getStorageBlock().getIndex(), key);
+            moveCounter.incrementAndGet();
+            if(recoveryEnabled){
+                byte[] keyBytes = KeySerializer.serialize(key);
+                storageManager.logRemove(keyBytes, oldPointer);
+                storageManager.logPut(keyBytes, newPointer, wrapper.getTimeToIdle(), wrapper.getLastAccessTime(), wrapper.getExpireTime());
+            }
+        } finally {
+            writeUnlock(key);
+        }
+    }
+
+    /**
+     * removes the entry of the key for the eviction policy.
+     *
+     * @param block if not null, the entry is only removed if its value is stored in this block
+     * @return true if the entry has been removed
+     */
+    boolean evict(K key, IStorageBlock block) throws IOException {
+        writeLock(key);
+        try {
+            CacheValueWrapper wrapper = pointerMap.get(key);
+            if(wrapper == null || (block != null && wrapper.getPointer().getStorageBlock() != block)){
+                return false;
+            }
+            dropEvicted(key, wrapper.getPointer());
+            return true;
+        } finally {
+            writeUnlock(key);
+        }
+    }
+
+    /**
+     * drops an evicted entry, must be called under the write lock of the key.
+     */
+    private void dropEvicted(K key, Pointer pointer) throws IOException {
+        pointerMap.remove(key);
+        expiryWheel.cancel(key);
+        storageManager.removeLight(pointer);
+        usedSize.addAndGet(-1 * pointer.getLength());
+        evictCounter.incrementAndGet();
+        if(recoveryEnabled){
+            storageManager.logRemove(KeySerializer.serialize(key), pointer);
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAsync(K key) {
+        return submitAsync(() -> get(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(K key, byte[] value) {
+        return putAsync(key, value, -1);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(K key, byte[] value, long tti) {
+        return submitAsync(() -> {
+            put(key, value, tti);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<byte[]> deleteAsync(K key) {
+        return submitAsync(() -> delete(key));
+    }
+
+    /**
+     * runs the operation on an I/O thread. When maxAsyncInFlight operations are pending the caller waits
+     * until one of them completes, which pushes back on producers faster than the storage.
+     *
+     * The I/O threads never wait: the callbacks of a future which run on them and submit again are queued
+     * even without a permit, else they could wait for permits held by the very operations queued behind them.
+     */
+    private <T> CompletableFuture<T> submitAsync(AsyncOperation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean permitted;
+        if(isAsyncThread()){
+            permitted = asyncPermits.tryAcquire();
+        } else {
+            try {
+                asyncPermits.acquire();
+                permitted = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        long submitted = System.nanoTime();
+        asyncQueueDepth.incrementAndGet();
+        try {
+            asyncExecutor().execute(() -> {
+                asyncQueueDepth.decrementAndGet();
+                T result = null;
+                Throwable failure = null;
+                try {
+                    result = operation.run();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                asyncLatency.addAndGet(System.nanoTime() - submitted);
+                asyncCompleted.incrementAndGet();
+                if(permitted){
+                    asyncPermits.release();
+                }
+                if(failure == null){
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            asyncQueueDepth.decrementAndGet();
+            if(permitted){
+                asyncPermits.release();
+            }
+            future.completeExceptionally(new IllegalStateException("cache is closed", e));
+        }
+        return future;
+    }
+
+    private ExecutorService asyncExecutor() {
+        ExecutorService executor = asyncExecutor;
+        if(executor == null){
+            synchronized (this){
+                if(asyncClosed){
+                    throw new RejectedExecutionException("async operations are shut down");
+                }
+                executor = asyncExecutor;
+                if(executor == null){
+                    AtomicInteger threadNumber = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 0L, TimeUnit.MILLISECONDS,
+                            new LinkedBlockingQueue<>(), (Runnable r) -> {
+                        Thread thread = new AsyncThread(this, r, "bigcache-io-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * waits for the pending async operations, so that they complete before the storage is closed.
+     */
+    private void shutdownAsync() {
+        ExecutorService executor;
+        synchronized (this){
+            asyncClosed = true;
+            executor = asyncExecutor;
+        }
+        if(executor == null){
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the current thread is one of the I/O threads of this cache
+     */
+    private boolean isAsyncThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof AsyncThread && ((AsyncThread) thread).cache == this;
+    }
+
+    private interface AsyncOperation<T> {
+        T run() throws IOException;
+    }
+
+    private static final class AsyncThread extends Thread {
+        private final BigCache<?> cache;
+
+        AsyncThread(BigCache<?> cache, Runnable runnable, String name) {
+            super(runnable, name);
+            this.cache = cache;
+        }
     }
 
     @Override
     public boolean contains(K key) throws IOException {
-        return pointerMap.contains(key);
+        return pointerMap.containsKey(key);
     }
 
     @Override
@@ -191,23 +1199,87 @@ public class BigCache<K> implements ICache<K> {
         this.storageManager.free();
 
         this.pointerMap.clear();
+        this.blockKeys.clear();
+        this.expiryWheel.clear();
+        if(evictionPolicy != null){
+            this.evictionPolicy.clear();
+        }
         this.usedSize.set(0);
     }
 
     @Override
     public double hitRate() {
-        return 1.0 * hitCounter.get() / (hitCounter.get() + missCounter.get());
+        return 1.0 * hitCounter.sum() / (hitCounter.sum() + missCounter.sum());
     }
 
     @Override
     public void close() throws IOException {
+        this.shutdownAsync();
+        if(recoveryEnabled){
+            this.ses.shutdownNow();
+            try {
+                this.ses.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.checkpoint();
+            this.storageManager.close();
+            this.pointerMap.close();
+            return;
+        }
         this.clear();
         this.ses.shutdownNow();
         this.storageManager.close();
+        this.pointerMap.close();
+    }
+
+    /**
+     * Rebuilds the pointer map from the index logs left by the previous run.
+     */
+    @SuppressWarnings("unchecked")
+    private void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        storageManager.recover((IndexRecord record, Pointer pointer) -> {
+            CacheValueWrapper wrapper = new CacheValueWrapper(pointer, record.getLastAccessTime(), record.getTimeToIdle(), record.getExpireTime());
+            if(wrapper.isExpired()){
+                storageManager.removeLight(pointer);
+                return;
+            }
+            K key = (K) KeySerializer.deserialize(record.getKey());
+            pointerMap.put(key, wrapper);
+            blockKeys.add(pointer.getStorageBlock().getIndex(), key);
+            long expiryTime = wrapper.getExpiryTime();
+            if(expiryTime != Long.MAX_VALUE){
+                expiryWheel.schedule(key, expiryTime);
+            }
+            usedSize.addAndGet(pointer.getLength());
+        });
+        this.recoveredEntries = pointerMap.size();
+        this.recoveryTime = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Replaces the index logs with compact ones which hold exactly one record per live entry.
+     */
+    private void checkpoint() throws IOException {
+        storageManager.startCheckpoint();
+        pointerMap.forEach((K key, CacheValueWrapper wrapper) -> {
+            if(!wrapper.isExpired()){
+                storageManager.logCheckpoint(KeySerializer.serialize(key), wrapper.getPointer(), wrapper.getTimeToIdle(), wrapper.getLastAccessTime(), wrapper.getExpireTime());
+            }
+        });
+        storageManager.finishCheckpoint();
+    }
+
+    /**
+     * frees the empty blocks, the keys recorded for them are forgotten before the blocks can be reused.
+     */
+    void cleanFreeBlocks() {
+        storageManager.clean((IStorageBlock block) -> blockKeys.remove(block.getIndex()));
     }
 
-    private ReadWriteLock getLock(K key) {
-        return readWriteLock.getLock(Math.abs(key.hashCode()));
+    private int getStripeIndex(K key) {
+        return readWriteLock.getStripeIndex(Math.abs(key.hashCode()));
     }
 
     protected void readLock(K key){
@@ -215,7 +1287,7 @@ public class BigCache<K> implements ICache<K> {
     }
 
     protected void readUnlock(K key){
-        readWriteLock.readLock(Math.abs(key.hashCode()));
+        readWriteLock.readUnlock(Math.abs(key.hashCode()));
     }
 
     protected void writeLock(K key){
@@ -223,7 +1295,7 @@ public class BigCache<K> implements ICache<K> {
     }
 
     protected void writeUnlock(K key){
-        readWriteLock.writeLock(Math.abs(key.hashCode()));
+        readWriteLock.writeUnlock(Math.abs(key.hashCode()));
     }
 
     public long count(){
@@ -231,7 +1303,7 @@ public class BigCache<K> implements ICache<K> {
     }
 
     public double hitRatio() {
-        return 1.0 * hitCounter.get() / (hitCounter.get() + missCounter.get());
+        return 1.0 * hitCounter.sum() / (hitCounter.sum() + missCounter.sum());
     }
 
     abstract static class CacheDaemonWorker<K> implements Runnable{
@@ -259,7 +1331,7 @@ public class BigCache<K> implements ICache<K> {
             }catch (IOException e){
                 e.printStackTrace();
             }
-            cache.storageManager.clean();
+            cache.cleanFreeBlocks();
         }
 
         abstract void process(BigCache<K> cache) throws IOException;
@@ -276,48 +1348,76 @@ public class BigCache<K> implements ICache<K> {
 
         @Override
         void process(BigCache<K> cache) throws IOException {
-            Set<K> keys = cache.pointerMap.keySet();
-
-            // store the expired keys according to their associated lock
-            Map<ReadWriteLock, List<K>> expiredKeys = new HashMap<>();
-
-            // find all the keys that may be expired. It's lock less as we will validate later
-            for(K key : keys){
-                CacheValueWrapper wrapper = cache.pointerMap.get(key);
-                if(wrapper != null && wrapper.isExpired()){
-                    ReadWriteLock lock = cache.getLock(key);
-                    List<K> keyList = expiredKeys.get(lock);
-                    if(keyList == null){
-                        keyList = new ArrayList<>();
-                        expiredKeys.put(lock, keyList);
-                    }
-                    keyList.add(key);
+            // store the keys which may be expired according to their associated lock stripe
+            Map<Integer, List<K>> expiredKeys = new HashMap<>();
+
+            // only the keys whose timer is due are looked at, they are validated under the lock
+            long now = System.currentTimeMillis();
+            cache.expiryWheel.advance(now, (K key, long expiryTime) -> {
+                int stripe = cache.getStripeIndex(key);
+                List<K> keyList = expiredKeys.get(stripe);
+                if(keyList == null){
+                    keyList = new ArrayList<>();
+                    expiredKeys.put(stripe, keyList);
                 }
-            }
+                keyList.add(key);
+            });
 
             // expired keys with write lock, this will complete quickly
-            for(ReadWriteLock lock : expiredKeys.keySet()){
-                List<K> keyList = expiredKeys.get(lock);
+            for(int stripe : expiredKeys.keySet()){
+                List<K> keyList = expiredKeys.get(stripe);
                 if(keyList == null || keyList.isEmpty()){
                     continue;
                 }
-                lock.writeLock().lock();
+                cache.readWriteLock.writeLock(stripe);
                 try{
                     for(K key : keyList){
                         CacheValueWrapper wrapper = cache.pointerMap.get(key);
-                        if(wrapper != null && wrapper.isExpired()){
-                            Pointer oldPointer = wrapper.getPointer();
-                            cache.usedSize.addAndGet(-1 * oldPointer.getLength());
-                            cache.storageManager.removeLight(oldPointer);
-                            cache.pointerMap.remove(key);
-                            cache.purgeCounter.incrementAndGet();
+                        if(wrapper == null){
+                            continue;
+                        }
+                        long expiryTime = wrapper.getExpiryTime();
+                        if(expiryTime == Long.MAX_VALUE){
+                            continue;
+                        }
+                        if(!wrapper.isExpired()){
+                            // accessed or put again since the timer was set
+                            cache.expiryWheel.schedule(key, expiryTime);
+                            continue;
+                        }
+                        Pointer oldPointer = wrapper.getPointer();
+                        cache.usedSize.addAndGet(-1 * oldPointer.getLength());
+                        cache.storageManager.removeLight(oldPointer);
+                        cache.pointerMap.remove(key);
+                        cache.purgeCounter.incrementAndGet();
+                        cache.purgeLatency.addAndGet(Math.max(0, now - expiryTime));
+                        if(cache.recoveryEnabled){
+                            cache.storageManager.logRemove(KeySerializer.serialize(key), oldPointer);
                         }
                     }
                 } finally {
-                    lock.writeLock().unlock();
+                    cache.readWriteLock.writeUnlock(stripe);
                 }
             }
             cache.NO_OF_PURGE_RUN.incrementAndGet();
+
+            // the first dictionary is trained as soon as there are enough samples
+            if(cache.dictionaryTrainer != null && cache.dictionaryTrainer.needsDictionary()){
+                try {
+                    cache.ses.execute(cache.dictionaryRetrainer);
+                } catch (RejectedExecutionException e){
+                    // the cache is being closed
+                }
+            }
+
+            // purging leaves dirty space behind, compact now if there is too much of it
+            if(cache.ringBlocks == 0 && cache.storageManager.getDirtyRatio() > cache.compactionTriggerRatio){
+                try {
+                    cache.ses.execute(cache.merger);
+                } catch (RejectedExecutionException e){
+                    // the cache is being closed
+                }
+            }
         }
     }
 
@@ -327,74 +1427,172 @@ public class BigCache<K> implements ICache<K> {
      * @return all stats.
      */
     public BigCacheStats getStats() {
-        return new BigCacheStats(hitCounter.get(), missCounter.get(), getCounter.get(),
-                putCounter.get(), deleteCounter.get(), purgeCounter.get(), moveCounter.get(),
+        return new BigCacheStats(hitCounter.sum(), missCounter.sum(), getCounter.sum(),
+                putCounter.sum(), deleteCounter.sum(), purgeCounter.get(), moveCounter.get(),
                 count(), storageManager.getUsed(), storageManager.getDirty(),
                 storageManager.getCapacity(), storageManager.getUsedBlockCount(), storageManager.getFreeBlockCount(),
-                storageManager.getTotalBlockCount());
+                storageManager.getTotalBlockCount(), recoveredEntries, recoveryTime,
+                asyncQueueDepth.get(), maxAsyncInFlight - asyncPermits.availablePermits(), asyncCompleted.get(), asyncLatency.get(),
+                expiryWheel.getBacklog(), purgeLatency.get(), evictCounter.get(),
+                storageManager.getFreeExtentCount(), storageManager.getFreeExtentBytes(),
+                storageManager.getLargestFreeExtent(), storageManager.getReusedBytes(),
+                entryCodec == null ? 0 : entryCodec.getRawBytes(), entryCodec == null ? 0 : entryCodec.getEncodedBytes(),
+                entryCodec == null ? 0 : entryCodec.getCompressTime(), entryCodec == null ? 0 : entryCodec.getDecompressTime(),
+                dictionaryCodec == null ? 0 : dictionaryCodec.getVersion(), corruptCounter.get(), scrubCounter.get());
     }
 
-    static class CacheMerger<K> extends CacheDaemonWorker<K>{
-        CacheMerger(BigCache<K> cache) {
+    /**
+     * trains a new compression dictionary from the values sampled since the last training.
+     *
+     * @param <K>
+     */
+    static class DictionaryRetrainer<K> extends CacheDaemonWorker<K>{
+        DictionaryRetrainer(BigCache<K> cache) {
             super(cache);
         }
 
         @Override
         void process(BigCache<K> cache) throws IOException {
-            Set<K> keys = cache.pointerMap.keySet();
-
-            // store the keys in dirty block according to the block index
-            Map<Integer, List<K>> keysInDirtyBlock = new HashMap<>();
-
-            // 先统计，后计算
-            for(K key : keys){
-                CacheValueWrapper wrapper = cache.pointerMap.get(key);
-                StorageBlock sb;
-                Pointer pointer;
-                if(wrapper != null
-                        && ((pointer = wrapper.getPointer()) != null)
-                        && ((sb = pointer.getStorageBlock()) != null)
-                        && (sb.getDirtyRatio() > cache.dirtyRatioThreshold)){
-                    Integer index = sb.getIndex();
-                    List<K> keyList = keysInDirtyBlock.get(index);
-                    if(keyList == null){
-                        keyList = new ArrayList<>();
-                        keysInDirtyBlock.put(index, keyList);
-                    }
-                    keyList.add(key);
-                }
-            }
+            cache.dictionaryTrainer.train();
+        }
+    }
 
-            for(List<K> keyList : keysInDirtyBlock.values()){
-                if(keyList == null || keyList.isEmpty()){
-                    continue;
-                }
+    /**
+     * checks the entries of all the blocks against their checksums and removes the corrupted ones, the reads
+     * are throttled. Only the stripe of the key being read is locked, and not while checking.
+     *
+     * @param <K>
+     */
+    static class CacheScrubber<K> extends CacheDaemonWorker<K>{
+        private final Throttle throttle;
 
-                for(K key: keyList){
+        CacheScrubber(BigCache<K> cache) {
+            super(cache);
+            throttle = new Throttle(cache.scrubBytesPerSecond);
+        }
+
+        @Override
+        void process(BigCache<K> cache) throws IOException {
+            throttle.start();
+            for(IStorageBlock block : cache.storageManager.getUsedBlocks()){
+                for(K key : cache.blockKeys.keys(block.getIndex())){
+                    byte[] entry = null;
                     cache.readLock(key);
                     try {
                         CacheValueWrapper wrapper = cache.pointerMap.get(key);
-                        if(wrapper == null){
-                            continue;
-                        }
-
-                        // wrapper is acessed/modified by reader and the merger use lock here
-                        synchronized (this){
-                            StorageBlock sb = wrapper.getPointer().getStorageBlock();
-                            if(sb.getDirtyRatio() > cache.dirtyRatioThreshold){
-                                byte[] payload = cache.storageManager.remove(wrapper.getPointer());
-                                Pointer newPointer = cache.storageManager.storeExcluding(payload, sb);
-                                wrapper.setPointer(newPointer);
-                                cache.moveCounter.incrementAndGet();
-                            }
+                        // the key has been removed or stored elsewhere since
+                        if(wrapper != null && wrapper.getPointer().getStorageBlock() == block){
+                            entry = cache.storageManager.retrieve(wrapper.getPointer());
                         }
-                    }finally {
+                    } finally {
                         cache.readUnlock(key);
                     }
+                    if(entry == null){
+                        continue;
+                    }
+                    cache.scrubCounter.incrementAndGet();
+                    if(!EntryChecksum.verify(entry)){
+                        cache.dropCorrupted(key);
+                    }
+                    if(!throttle.acquire(entry.length)){
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * writes the index logs and the values through to the disk
+     *
+     * @param <K>
+     */
+    static class IndexSyncer<K> extends CacheDaemonWorker<K>{
+        IndexSyncer(BigCache<K> cache) {
+            super(cache);
+        }
 
+        @Override
+        void process(BigCache<K> cache) throws IOException {
+            cache.storageManager.syncIndexLogs();
+        }
+    }
+
+    /**
+     * Compacts the storage: the blocks dirtier than the threshold are evacuated one at a time, the dirtiest
+     * first, by moving their live values into other blocks so that they can be freed. The keys of a block
+     * come from the {@link BlockKeyTracker}, so no scan of the index is needed, and only the stripe of the
+     * key being moved is locked. The moves may be throttled to a number of bytes per second.
+     *
+     * @param <K>
+     */
+    static class CacheMerger<K> extends CacheDaemonWorker<K>{
+        private final Throttle throttle;
+
+        CacheMerger(BigCache<K> cache) {
+            super(cache);
+            throttle = new Throttle(cache.compactionBytesPerSecond);
+        }
+
+        @Override
+        void process(BigCache<K> cache) throws IOException {
+            // the scheduled runs and the ones started by the cleaner must not overlap
+            if(!cache.compacting.compareAndSet(false, true)){
+                return;
+            }
+            try {
+                throttle.start();
+                for(IStorageBlock block : cache.storageManager.getDirtyBlocks(cache.dirtyRatioThreshold)){
+                    if(!evacuate(cache, block)){
+                        break;
+                    }
+                    // the evacuated block is empty, give it back before moving on to the next one
+                    cache.cleanFreeBlocks();
                 }
+            } finally {
+                cache.compacting.set(false);
             }
             cache.NO_OF_MERGE_RUN.incrementAndGet();
         }
+
+        /**
+         * moves all the live values of the block into other blocks.
+         *
+         * @return false if the compaction has been interrupted
+         */
+        private boolean evacuate(BigCache<K> cache, IStorageBlock block) throws IOException {
+            // the values stored into the block meanwhile would have to be moved too
+            cache.storageManager.stopReuse(block);
+            for(K key : cache.blockKeys.drain(block.getIndex())){
+                int moved = 0;
+                // moving the value changes the pointer, readers of the key must wait for it
+                cache.writeLock(key);
+                try {
+                    CacheValueWrapper wrapper = cache.pointerMap.get(key);
+                    // the key has been removed or stored elsewhere since
+                    if(wrapper != null && wrapper.getPointer().getStorageBlock() == block){
+                        Pointer oldPointer = wrapper.getPointer();
+                        byte[] payload = cache.storageManager.remove(oldPointer);
+                        Pointer newPointer = cache.storageManager.storeExcluding(payload, oldPointer.getStorageBlock());
+                        wrapper.setPointer(newPointer);
+                        cache.pointerMap.put(key, wrapper);
+                        cache.blockKeys.add(newPointer.getStorageBlock().getIndex(), key);
+                        cache.moveCounter.incrementAndGet();
+                        if(cache.recoveryEnabled){
+                            byte[] keyBytes = KeySerializer.serialize(key);
+                            cache.storageManager.logRemove(keyBytes, oldPointer);
+                            cache.storageManager.logPut(keyBytes, newPointer, wrapper.getTimeToIdle(), wrapper.getLastAccessTime(), wrapper.getExpireTime());
+                        }
+                        moved = payload.length;
+                    }
+                } finally {
+                    cache.writeUnlock(key);
+                }
+                if(!throttle.acquire(moved)){
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
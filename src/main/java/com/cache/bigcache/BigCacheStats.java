@@ -19,7 +19,82 @@ public class BigCacheStats {
     private final long storageFreeBlocks;
     private final long storageTotalBlocks;
 
+    /** the entries rebuilt from disk when the cache was created */
+    private final long recoveredEntries;
+    /** how long the warm start took in milliseconds */
+    private final long recoveryTime;
+
+    /** the async operations waiting for an I/O thread */
+    private final long asyncQueueDepth;
+    /** the async operations submitted and not completed yet */
+    private final long asyncInFlight;
+    private final long asyncCompleted;
+    /** the total time in nanoseconds from submission to completion of the completed async operations */
+    private final long asyncLatency;
+
+    /** the expiry timers which are not due yet */
+    private final long expiryBacklog;
+    /** the total time in milliseconds between the expiry and the purge of the purged entries */
+    private final long purgeLatency;
+
+    /** the entries dropped to stay under the max storage bytes or the max entries */
+    private final long cacheEvict;
+
+    /** the extents released inside the blocks and waiting to be reused */
+    private final long storageFreeExtents;
+    private final long storageFreeExtentBytes;
+    private final long storageLargestFreeExtent;
+    /** the bytes stored into released extents */
+    private final long storageReused;
+
+    /** the length of the values written through the codec and of the entries they became */
+    private final long codecRawBytes;
+    private final long codecEncodedBytes;
+    /** the time spent compressing and decompressing in nanoseconds */
+    private final long compressTime;
+    private final long decompressTime;
+
+    /** the version of the dictionary the values are compressed with, 0 if there is none */
+    private final long dictionaryVersion;
+
+    /** the entries found corrupted by a read or the scrubber, and removed */
+    private final long cacheCorrupt;
+    /** the entries checked by the scrubber */
+    private final long scrubbedEntries;
+
     public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, 0L, 0L, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, expiryBacklog, purgeLatency, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency, long cacheEvict) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, expiryBacklog, purgeLatency, cacheEvict, 0L, 0L, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency, long cacheEvict, long storageFreeExtents, long storageFreeExtentBytes, long storageLargestFreeExtent, long storageReused) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, expiryBacklog, purgeLatency, cacheEvict, storageFreeExtents, storageFreeExtentBytes, storageLargestFreeExtent, storageReused, 0L, 0L, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency, long cacheEvict, long storageFreeExtents, long storageFreeExtentBytes, long storageLargestFreeExtent, long storageReused, long codecRawBytes, long codecEncodedBytes, long compressTime, long decompressTime) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, expiryBacklog, purgeLatency, cacheEvict, storageFreeExtents, storageFreeExtentBytes, storageLargestFreeExtent, storageReused, codecRawBytes, codecEncodedBytes, compressTime, decompressTime, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency, long cacheEvict, long storageFreeExtents, long storageFreeExtentBytes, long storageLargestFreeExtent, long storageReused, long codecRawBytes, long codecEncodedBytes, long compressTime, long decompressTime, long dictionaryVersion) {
+        this(cacheHit, cacheMiss, cacheGet, cachePut, cacheDelete, cacheExpire, cacheMove, cacheTotalEntries, storageUsed, storageDirty, storageCapacity, storageUsedBlocks, storageFreeBlocks, storageTotalBlocks, recoveredEntries, recoveryTime, asyncQueueDepth, asyncInFlight, asyncCompleted, asyncLatency, expiryBacklog, purgeLatency, cacheEvict, storageFreeExtents, storageFreeExtentBytes, storageLargestFreeExtent, storageReused, codecRawBytes, codecEncodedBytes, compressTime, decompressTime, dictionaryVersion, 0L, 0L);
+    }
+
+    public BigCacheStats(long cacheHit, long cacheMiss, long cacheGet, long cachePut, long cacheDelete, long cacheExpire, long cacheMove, long cacheTotalEntries, long storageUsed, long storageDirty, long storageCapacity, long storageUsedBlocks, long storageFreeBlocks, long storageTotalBlocks, long recoveredEntries, long recoveryTime, long asyncQueueDepth, long asyncInFlight, long asyncCompleted, long asyncLatency, long expiryBacklog, long purgeLatency, long cacheEvict, long storageFreeExtents, long storageFreeExtentBytes, long storageLargestFreeExtent, long storageReused, long codecRawBytes, long codecEncodedBytes, long compressTime, long decompressTime, long dictionaryVersion, long cacheCorrupt, long scrubbedEntries) {
         this.cacheHit = cacheHit;
         this.cacheMiss = cacheMiss;
 
@@ -37,6 +112,34 @@ public class BigCacheStats {
         this.storageUsedBlocks = storageUsedBlocks;
         this.storageFreeBlocks = storageFreeBlocks;
         this.storageTotalBlocks = storageTotalBlocks;
+
+        this.recoveredEntries = recoveredEntries;
+        this.recoveryTime = recoveryTime;
+
+        this.asyncQueueDepth = asyncQueueDepth;
+        this.asyncInFlight = asyncInFlight;
+        this.asyncCompleted = asyncCompleted;
+        this.asyncLatency = asyncLatency;
+
+        this.expiryBacklog = expiryBacklog;
+        this.purgeLatency = purgeLatency;
+
+        this.cacheEvict = cacheEvict;
+
+        this.storageFreeExtents = storageFreeExtents;
+        this.storageFreeExtentBytes = storageFreeExtentBytes;
+        this.storageLargestFreeExtent = storageLargestFreeExtent;
+        this.storageReused = storageReused;
+
+        this.codecRawBytes = codecRawBytes;
+        this.codecEncodedBytes = codecEncodedBytes;
+        this.compressTime = compressTime;
+        this.decompressTime = decompressTime;
+
+        this.dictionaryVersion = dictionaryVersion;
+
+        this.cacheCorrupt = cacheCorrupt;
+        this.scrubbedEntries = scrubbedEntries;
     }
 
     public BigCacheStats() {
@@ -63,7 +166,28 @@ public class BigCacheStats {
                 this.storageCapacity,
                 this.storageUsedBlocks,
                 this.storageFreeBlocks,
-                this.storageTotalBlocks
+                this.storageTotalBlocks,
+                this.recoveredEntries,
+                this.recoveryTime,
+                this.asyncQueueDepth,
+                this.asyncInFlight,
+
+                this.asyncCompleted - previousStats.asyncCompleted,
+                this.asyncLatency - previousStats.asyncLatency,
+                this.expiryBacklog,
+                this.purgeLatency - previousStats.purgeLatency,
+                this.cacheEvict - previousStats.cacheEvict,
+                this.storageFreeExtents,
+                this.storageFreeExtentBytes,
+                this.storageLargestFreeExtent,
+                this.storageReused - previousStats.storageReused,
+                this.codecRawBytes - previousStats.codecRawBytes,
+                this.codecEncodedBytes - previousStats.codecEncodedBytes,
+                this.compressTime - previousStats.compressTime,
+                this.decompressTime - previousStats.decompressTime,
+                this.dictionaryVersion,
+                this.cacheCorrupt - previousStats.cacheCorrupt,
+                this.scrubbedEntries - previousStats.scrubbedEntries
         );
     }
 
@@ -122,4 +246,114 @@ public class BigCacheStats {
     public long getStorageTotalBlocks() {
         return storageTotalBlocks;
     }
+
+    public long getRecoveredEntries() {
+        return recoveredEntries;
+    }
+
+    public long getRecoveryTime() {
+        return recoveryTime;
+    }
+
+    public long getAsyncQueueDepth() {
+        return asyncQueueDepth;
+    }
+
+    public long getAsyncInFlight() {
+        return asyncInFlight;
+    }
+
+    public long getAsyncCompleted() {
+        return asyncCompleted;
+    }
+
+    public long getAsyncLatency() {
+        return asyncLatency;
+    }
+
+    /**
+     * @return the average time in nanoseconds from submission to completion of an async operation
+     */
+    public long getAsyncAverageLatency() {
+        return asyncCompleted == 0 ? 0 : asyncLatency / asyncCompleted;
+    }
+
+    public long getExpiryBacklog() {
+        return expiryBacklog;
+    }
+
+    public long getPurgeLatency() {
+        return purgeLatency;
+    }
+
+    /**
+     * @return the average time in milliseconds an expired entry stayed in the cache before it was purged
+     */
+    public long getAveragePurgeLatency() {
+        return cacheExpire == 0 ? 0 : purgeLatency / cacheExpire;
+    }
+
+    public long getCacheEvict() {
+        return cacheEvict;
+    }
+
+    public long getStorageFreeExtents() {
+        return storageFreeExtents;
+    }
+
+    public long getStorageFreeExtentBytes() {
+        return storageFreeExtentBytes;
+    }
+
+    public long getStorageLargestFreeExtent() {
+        return storageLargestFreeExtent;
+    }
+
+    public long getStorageReused() {
+        return storageReused;
+    }
+
+    /**
+     * @return how scattered the free extents are, from 0 when they are one extent to almost 1 when the
+     *         biggest of them is a tiny part of the free bytes
+     */
+    public double getStorageFragmentation() {
+        return storageFreeExtentBytes == 0 ? 0 : 1 - storageLargestFreeExtent * 1.0 / storageFreeExtentBytes;
+    }
+
+    public long getCodecRawBytes() {
+        return codecRawBytes;
+    }
+
+    public long getCodecEncodedBytes() {
+        return codecEncodedBytes;
+    }
+
+    /**
+     * @return the length of the values written divided by the length of the entries stored for them,
+     *         1 if nothing has been written through a codec
+     */
+    public double getCompressionRatio() {
+        return codecEncodedBytes == 0 ? 1 : codecRawBytes * 1.0 / codecEncodedBytes;
+    }
+
+    public long getCompressTime() {
+        return compressTime;
+    }
+
+    public long getDecompressTime() {
+        return decompressTime;
+    }
+
+    public long getDictionaryVersion() {
+        return dictionaryVersion;
+    }
+
+    public long getCacheCorrupt() {
+        return cacheCorrupt;
+    }
+
+    public long getScrubbedEntries() {
+        return scrubbedEntries;
+    }
 }
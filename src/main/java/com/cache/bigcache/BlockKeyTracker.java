@@ -0,0 +1,245 @@
+package com.cache.bigcache;
+
+import com.cache.bigcache.index.IPointerIndex;
+import com.cache.bigcache.index.OffHeapPointerIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers which keys have been stored in every storage block, so a dirty block can be evacuated without
+ * scanning the whole index.
+ *
+ * With a heap index the keys are kept in a list per block. The keys are only appended, a key which has been
+ * removed or moved since stays in the list of its old block until the list is pruned: once a list has doubled
+ * since it was last pruned, the keys which are no longer in its block and the repeated ones are dropped, so a
+ * list holds about twice the live keys of its block at most. The users must still check the current pointer of
+ * every key they get.
+ *
+ * An off-heap index chains the slots of every block itself instead, keeping its keys in lists on heap would
+ * undo it. The keys of a block are found by walking its chains, without looking at the other keys.
+ *
+ * @param <K> the key type
+ */
+class BlockKeyTracker<K> {
+    /** a list is not pruned before it has this # of keys */
+    static final int MIN_PRUNED_SIZE = 1024;
+
+    private final ConcurrentHashMap<Integer, BlockKeys<K>> keysByBlock = new ConcurrentHashMap<>();
+
+    private final IPointerIndex<K> index;
+
+    /** the index to scan, null if the keys are kept in lists */
+    private final OffHeapPointerIndex<K> offHeapIndex;
+
+    BlockKeyTracker(IPointerIndex<K> index){
+        this.index = index;
+        this.offHeapIndex = index instanceof OffHeapPointerIndex ? (OffHeapPointerIndex<K>) index : null;
+    }
+
+    /**
+     * records that the value of the key has been stored in the block, must be called after the index
+     * has been updated.
+     */
+    void add(int blockIndex, K key){
+        if(offHeapIndex != null){
+            return;
+        }
+        BlockKeys<K> blockKeys = keysByBlock.get(blockIndex);
+        if(blockKeys == null){
+            blockKeys = keysByBlock.computeIfAbsent(blockIndex, (Integer i) -> new BlockKeys<>(this, i));
+        }
+        blockKeys.add(key);
+    }
+
+    /**
+     * takes the keys recorded for the block, the block starts over with an empty list.
+     *
+     * @return the keys which may still be in the block
+     */
+    List<K> drain(int blockIndex) throws IOException {
+        if(offHeapIndex != null){
+            return offHeapIndex.keysInBlock(blockIndex);
+        }
+        BlockKeys<K> blockKeys = keysByBlock.get(blockIndex);
+        return blockKeys == null ? new ArrayList<>() : blockKeys.drain();
+    }
+
+    /**
+     * @return a copy of the keys which may still be in the block
+     */
+    List<K> keys(int blockIndex) throws IOException {
+        if(offHeapIndex != null){
+            return offHeapIndex.keysInBlock(blockIndex);
+        }
+        BlockKeys<K> blockKeys = keysByBlock.get(blockIndex);
+        return blockKeys == null ? new ArrayList<>() : blockKeys.copy();
+    }
+
+    /**
+     * forgets the keys of a block which has been freed.
+     */
+    void remove(int blockIndex){
+        BlockKeys<K> blockKeys = keysByBlock.get(blockIndex);
+        if(blockKeys != null){
+            blockKeys.drain();
+        }
+    }
+
+    void clear(){
+        keysByBlock.clear();
+    }
+
+    /**
+     * picks keys at random over all the blocks, a block with more keys is picked more often.
+     *
+     * @param count the # of keys to pick, fewer may be returned
+     * @return the picked keys, which may be stale or repeated
+     */
+    List<K> sample(int count, Random random) throws IOException {
+        if(offHeapIndex != null){
+            return offHeapIndex.sample(count, random);
+        }
+        List<K> sample = new ArrayList<>(count);
+        List<BlockKeys<K>> blocks = new ArrayList<>(keysByBlock.values());
+        // the sizes are a snapshot, a list drained meanwhile just yields no key
+        long[] ends = new long[blocks.size()];
+        long total = 0;
+        for(int i = 0; i < ends.length; i++){
+            total += blocks.get(i).size();
+            ends[i] = total;
+        }
+        if(total == 0){
+            return sample;
+        }
+        for(int n = 0; n < count; n++){
+            long position = (long) (random.nextDouble() * total);
+            int block = 0;
+            while(ends[block] <= position){
+                block++;
+            }
+            long start = block == 0 ? 0 : ends[block - 1];
+            K key = blocks.get(block).get((int) (position - start));
+            if(key != null){
+                sample.add(key);
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * @return the # of keys recorded over all the blocks, the stale ones included
+     */
+    long size(){
+        if(offHeapIndex != null){
+            return index.size();
+        }
+        long size = 0;
+        for(BlockKeys<K> blockKeys : keysByBlock.values()){
+            size += blockKeys.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return true if the index stores the value of the key in the block
+     */
+    private boolean isInBlock(K key, int blockIndex){
+        try {
+            CacheValueWrapper wrapper = index.get(key);
+            return wrapper != null && wrapper.getPointer().getStorageBlock().getIndex() == blockIndex;
+        } catch (IOException e){
+            // keep the key, the users check it anyway
+            return true;
+        }
+    }
+
+    private static class BlockKeys<K> {
+        private final BlockKeyTracker<K> tracker;
+        private final int blockIndex;
+        private final ReentrantLock lock = new ReentrantLock();
+        private ArrayList<K> keys = new ArrayList<>();
+
+        /** the list is pruned when it reaches this size */
+        private int pruneSize = MIN_PRUNED_SIZE;
+
+        BlockKeys(BlockKeyTracker<K> tracker, int blockIndex){
+            this.tracker = tracker;
+            this.blockIndex = blockIndex;
+        }
+
+        void add(K key){
+            lock.lock();
+            try {
+                keys.add(key);
+                if(keys.size() >= pruneSize){
+                    prune();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * drops the stale and the repeated keys. A key added meanwhile is checked after the index has been
+         * updated, so it is never dropped by mistake.
+         */
+        private void prune(){
+            LinkedHashSet<K> live = new LinkedHashSet<>();
+            for(K key : keys){
+                if(tracker.isInBlock(key, blockIndex)){
+                    live.add(key);
+                }
+            }
+            keys = new ArrayList<>(live);
+            pruneSize = Math.max(MIN_PRUNED_SIZE, 2 * keys.size());
+        }
+
+        List<K> drain(){
+            lock.lock();
+            try {
+                List<K> drained = keys;
+                keys = new ArrayList<>();
+                pruneSize = MIN_PRUNED_SIZE;
+                return drained;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<K> copy(){
+            lock.lock();
+            try {
+                return new ArrayList<>(keys);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the key at the index or null if the list has been drained since
+         */
+        K get(int index){
+            lock.lock();
+            try {
+                return index < keys.size() ? keys.get(index) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size(){
+            lock.lock();
+            try {
+                return keys.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
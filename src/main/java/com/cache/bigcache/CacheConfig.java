@@ -1,5 +1,7 @@
 package com.cache.bigcache;
 
+import com.cache.bigcache.codec.DictionaryCodec;
+import com.cache.bigcache.codec.ICodec;
 import com.cache.bigcache.sotrage.StorageManager;
 
 public class CacheConfig {
@@ -8,9 +10,34 @@ public class CacheConfig {
     private int initialNumberOfBlocks = StorageManager.DEFAULT_INITIAL_NUMBER_OF_BLOCKS;
     private long purgeInterval = BigCache.DEFAULT_PURGE_INTERVAL;
     private long mergeInterval = BigCache.DEFAULT_MERGE_INTERVAL;
+    private long expiryWheelResolution = BigCache.DEFAULT_EXPIRY_WHEEL_RESOLUTION;
     private double dirtyRatioThreshold = BigCache.DEFAULT_DIRTY_RATIO_THRESHOLD;
+    private double compactionTriggerRatio = BigCache.DEFAULT_COMPACTION_TRIGGER_RATIO;
+    private long compactionBytesPerSecond = BigCache.DEFAULT_COMPACTION_BYTES_PER_SECOND;
     private long maxOffHeapMemorySize = StorageManager.DEFAULT_MAX_OFFHEAP_MEMORY_SIZE;
     private StorageMode storageMode = StorageMode.PureFile;
+    private boolean recoveryEnabled = false;
+    private IndexSyncMode indexSyncMode = IndexSyncMode.Periodic;
+    private long indexSyncInterval = BigCache.DEFAULT_INDEX_SYNC_INTERVAL;
+    private IndexMode indexMode = IndexMode.Heap;
+    private int readCoalescingGap = StorageManager.DEFAULT_READ_COALESCING_GAP;
+    private int asyncThreads = BigCache.DEFAULT_ASYNC_THREADS;
+    private int maxAsyncInFlight = BigCache.DEFAULT_MAX_ASYNC_IN_FLIGHT;
+    private boolean optimisticReadEnabled = true;
+    private int statsSampleRate = 1;
+    private long maxStorageBytes = 0;
+    private long maxEntries = 0;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.SampledLru;
+    private int ringBlocks = 0;
+    private boolean ringReinsertEnabled = true;
+    private boolean freeListEnabled = false;
+    private ICodec codec = null;
+    private int compressionThreshold = 64;
+    private int dictionarySize = 0;
+    private long dictionaryRetrainInterval = BigCache.DEFAULT_DICTIONARY_RETRAIN_INTERVAL;
+    private boolean checksumEnabled = false;
+    private long scrubInterval = 0;
+    private long scrubBytesPerSecond = BigCache.DEFAULT_SCRUB_BYTES_PER_SECOND;
 
     public int getConcurrencyLevel() {
         return concurrencyLevel;
@@ -52,15 +79,49 @@ public class CacheConfig {
         return this;
     }
 
+    /**
+     * @return the purge interval in milliseconds, one tick of the expiry wheel if it is not set
+     */
     public long getPurgeInterval() {
-        return purgeInterval;
+        return purgeInterval > 0 ? purgeInterval : expiryWheelResolution;
     }
 
+    /**
+     * The cleaner purges the entries whose timer is due every purge interval. It follows the resolution of
+     * the expiry wheel by default, so an expired entry lingers about one tick; a longer interval trades
+     * that delay for fewer cleaner runs.
+     *
+     * @param purgeInterval the purge interval in milliseconds, 0 for one tick of the expiry wheel
+     * @return CacheConfig
+     */
     public CacheConfig setPurgeInterval(long purgeInterval) {
+        if(purgeInterval < 0){
+            throw new IllegalArgumentException("purgeInterval must be >= 0!");
+        }
         this.purgeInterval = purgeInterval;
         return this;
     }
 
+    public long getExpiryWheelResolution() {
+        return expiryWheelResolution;
+    }
+
+    /**
+     * The expiry times are kept in a timing wheel whose ticks are this long, the cleaner reads it every purge
+     * interval, which is one tick unless it is set. An expired entry is purged at most about one tick plus
+     * one purge interval late.
+     *
+     * @param expiryWheelResolution the length of a tick in milliseconds
+     * @return CacheConfig
+     */
+    public CacheConfig setExpiryWheelResolution(long expiryWheelResolution) {
+        if(expiryWheelResolution <= 0){
+            throw new IllegalArgumentException("expiryWheelResolution must be > 0!");
+        }
+        this.expiryWheelResolution = expiryWheelResolution;
+        return this;
+    }
+
     public long getMergeInterval() {
         return mergeInterval;
     }
@@ -79,6 +140,40 @@ public class CacheConfig {
         return this;
     }
 
+    public double getCompactionTriggerRatio() {
+        return compactionTriggerRatio;
+    }
+
+    /**
+     * The blocks are compacted every merge interval, and also as soon as the cleaner finds the dirty ratio of
+     * the whole storage above this one.
+     *
+     * @param compactionTriggerRatio the dirty ratio of the storage which starts a compaction
+     * @return CacheConfig
+     */
+    public CacheConfig setCompactionTriggerRatio(double compactionTriggerRatio) {
+        this.compactionTriggerRatio = compactionTriggerRatio;
+        return this;
+    }
+
+    public long getCompactionBytesPerSecond() {
+        return compactionBytesPerSecond;
+    }
+
+    /**
+     * Limits the I/O of the compaction, which sleeps between two moves when it gets ahead of the rate.
+     *
+     * @param compactionBytesPerSecond the max # of bytes moved per second, 0 for no limit
+     * @return CacheConfig
+     */
+    public CacheConfig setCompactionBytesPerSecond(long compactionBytesPerSecond) {
+        if(compactionBytesPerSecond < 0){
+            throw new IllegalArgumentException("compactionBytesPerSecond must be >= 0!");
+        }
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        return this;
+    }
+
     public StorageMode getStorageMode() {
         return storageMode;
     }
@@ -91,7 +186,7 @@ public class CacheConfig {
     /**
      * Limiting Offheap memory usage.
      *
-     * Only takes effect when the {@link StorageMode} is set to MemoryMappedPlusFile or OffHeapPlusFile mode,
+     * Only takes effect when the {@link StorageMode} is set to MemoryMappedPlusFile, OffHeapPlusFile or SlabOffHeap mode,
      * in these cases, this setting limits the max offheap memory size.
      *
      * @param maxOffHeapMemorySize max offheap memory size allowed, unit : byte.
@@ -109,10 +204,433 @@ public class CacheConfig {
         return this.maxOffHeapMemorySize;
     }
 
+    public boolean isRecoveryEnabled() {
+        return recoveryEnabled;
+    }
+
+    /**
+     * Keeps the cached data after close or restart.
+     *
+     * When enabled the cache directory is not wiped on startup, every file backed block keeps an append-only
+     * index next to its data file and the cache rebuilds its keys from these indexes when it is created.
+     * The data of the OffHeapPlusFile and SlabOffHeap blocks which live in memory is not recoverable.
+     * What survives a crash, as opposed to a close, depends on the {@link IndexSyncMode}.
+     *
+     * @param recoveryEnabled true to recover the cached data on startup
+     * @return CacheConfig
+     */
+    public CacheConfig setRecoveryEnabled(boolean recoveryEnabled) {
+        this.recoveryEnabled = recoveryEnabled;
+        return this;
+    }
+
+    public IndexSyncMode getIndexSyncMode() {
+        return indexSyncMode;
+    }
+
+    /**
+     * Selects when the recoverable data is written through to the disk, only used with the recovery enabled.
+     *
+     * @param indexSyncMode the sync mode, Periodic by default
+     * @return CacheConfig
+     */
+    public CacheConfig setIndexSyncMode(IndexSyncMode indexSyncMode) {
+        this.indexSyncMode = indexSyncMode;
+        return this;
+    }
+
+    public long getIndexSyncInterval() {
+        return indexSyncInterval;
+    }
+
+    /**
+     * The time between two syncs of the Periodic {@link IndexSyncMode}, which is the most a crash loses.
+     *
+     * @param indexSyncInterval the time between two syncs in milliseconds
+     * @return CacheConfig
+     */
+    public CacheConfig setIndexSyncInterval(long indexSyncInterval) {
+        if(indexSyncInterval <= 0){
+            throw new IllegalArgumentException("indexSyncInterval must be > 0!");
+        }
+        this.indexSyncInterval = indexSyncInterval;
+        return this;
+    }
+
+    public IndexMode getIndexMode() {
+        return indexMode;
+    }
+
+    /**
+     * Selects where the cache keeps its keys and the pointers to their values.
+     *
+     * The OffHeap index serializes the keys and packs every entry into a few longs outside the java heap,
+     * which removes the per entry objects and the GC cost of very big caches at the price of a key
+     * serialization on every operation. Keys must be String, Integer, Long, byte[] or Serializable.
+     *
+     * @param indexMode the index mode, Heap by default
+     * @return CacheConfig
+     */
+    public CacheConfig setIndexMode(IndexMode indexMode) {
+        this.indexMode = indexMode;
+        return this;
+    }
+
+    public int getReadCoalescingGap() {
+        return readCoalescingGap;
+    }
+
+    /**
+     * Merges the reads of a batch get.
+     *
+     * Values of the same file backed block which are at most this many bytes apart are fetched with one read
+     * and split in memory, which trades reading the bytes in between for fewer system calls. Memory backed
+     * blocks are never coalesced.
+     *
+     * @param readCoalescingGap the largest gap in bytes, 0 to merge only adjacent values, negative to disable
+     * @return CacheConfig
+     */
+    public CacheConfig setReadCoalescingGap(int readCoalescingGap) {
+        this.readCoalescingGap = readCoalescingGap;
+        return this;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    /**
+     * The number of I/O threads which run the async operations, they are started by the first async call.
+     *
+     * @param asyncThreads the number of threads
+     * @return CacheConfig
+     */
+    public CacheConfig setAsyncThreads(int asyncThreads) {
+        if(asyncThreads <= 0){
+            throw new IllegalArgumentException("asyncThreads must be > 0!");
+        }
+        this.asyncThreads = asyncThreads;
+        return this;
+    }
+
+    public int getMaxAsyncInFlight() {
+        return maxAsyncInFlight;
+    }
+
+    /**
+     * Bounds the async operations which are submitted and not completed yet, an async call blocks the caller
+     * until an operation completes when the bound is reached.
+     *
+     * @param maxAsyncInFlight the max number of pending async operations
+     * @return CacheConfig
+     */
+    public CacheConfig setMaxAsyncInFlight(int maxAsyncInFlight) {
+        if(maxAsyncInFlight <= 0){
+            throw new IllegalArgumentException("maxAsyncInFlight must be > 0!");
+        }
+        this.maxAsyncInFlight = maxAsyncInFlight;
+        return this;
+    }
+
+    public boolean isOptimisticReadEnabled() {
+        return optimisticReadEnabled;
+    }
+
+    /**
+     * Lets the gets read without taking the lock of their stripe. The value is read first and kept only if
+     * no writer (nor the merger) held the stripe meanwhile, otherwise the get is done again under the lock.
+     *
+     * @param optimisticReadEnabled false to always take the read lock
+     * @return CacheConfig
+     */
+    public CacheConfig setOptimisticReadEnabled(boolean optimisticReadEnabled) {
+        this.optimisticReadEnabled = optimisticReadEnabled;
+        return this;
+    }
+
+    public int getStatsSampleRate() {
+        return statsSampleRate;
+    }
+
+    /**
+     * How often the get/hit/miss/put/delete counters of the stats are updated. With n about one in n
+     * operations is counted, n times, so the counters become estimates which cost less to keep.
+     *
+     * @param statsSampleRate 1 to count every operation, n to sample one in n, 0 to disable these counters
+     * @return CacheConfig
+     */
+    public CacheConfig setStatsSampleRate(int statsSampleRate) {
+        if(statsSampleRate < 0){
+            throw new IllegalArgumentException("statsSampleRate must be >= 0!");
+        }
+        this.statsSampleRate = statsSampleRate;
+        return this;
+    }
+
+    public long getMaxStorageBytes() {
+        return maxStorageBytes;
+    }
+
+    /**
+     * Bounds the bytes of the values held by the cache, the eviction policy drops entries when a put goes
+     * beyond it. The files may still be bigger by the dirty space the compaction has not reclaimed yet.
+     *
+     * @param maxStorageBytes the max # of value bytes, 0 for no limit
+     * @return CacheConfig
+     */
+    public CacheConfig setMaxStorageBytes(long maxStorageBytes) {
+        if(maxStorageBytes < 0){
+            throw new IllegalArgumentException("maxStorageBytes must be >= 0!");
+        }
+        this.maxStorageBytes = maxStorageBytes;
+        return this;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Bounds the # of entries held by the cache, the eviction policy drops entries when a put goes beyond it.
+     *
+     * @param maxEntries the max # of entries, 0 for no limit
+     * @return CacheConfig
+     */
+    public CacheConfig setMaxEntries(long maxEntries) {
+        if(maxEntries < 0){
+            throw new IllegalArgumentException("maxEntries must be >= 0!");
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Selects which entries are dropped when the cache is full, see {@link EvictionPolicy}.
+     *
+     * @param evictionPolicy the eviction policy, SampledLru by default
+     * @return CacheConfig
+     */
+    public CacheConfig setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    public int getRingBlocks() {
+        return ringBlocks;
+    }
+
+    /**
+     * Turns the storage into a ring of blocks: once this many blocks are in use, the oldest one is recycled
+     * as a whole, its entries are dropped (see {@link #setRingReinsertEnabled(boolean)}) and the block is
+     * written again. Nothing is compacted, the space of the removed values is only reused with their block.
+     *
+     * The ring may take one more block for a while when the writes fill a whole block during a recycle.
+     *
+     * @param ringBlocks the # of blocks of the ring, at least 2, 0 to let the storage grow
+     * @return CacheConfig
+     */
+    public CacheConfig setRingBlocks(int ringBlocks) {
+        if(ringBlocks < 0 || ringBlocks == 1){
+            throw new IllegalArgumentException("ringBlocks must be 0 or >= 2!");
+        }
+        this.ringBlocks = ringBlocks;
+        return this;
+    }
+
+    public boolean isRingReinsertEnabled() {
+        return ringReinsertEnabled;
+    }
+
+    /**
+     * Gives the entries of a recycled block a second chance, CLOCK-style: an entry read since its block was
+     * sealed is copied into the active block instead of being dropped, as long as the active block has room.
+     *
+     * @param ringReinsertEnabled false to drop all the entries of a recycled block
+     * @return CacheConfig
+     */
+    public CacheConfig setRingReinsertEnabled(boolean ringReinsertEnabled) {
+        this.ringReinsertEnabled = ringReinsertEnabled;
+        return this;
+    }
+
+    public boolean isFreeListEnabled() {
+        return freeListEnabled;
+    }
+
+    /**
+     * Keeps the space released by deletes and updates in per block free lists of size classes and stores new
+     * values there before appending to the active block, so less space waits for compaction. Best for values
+     * of similar sizes, the extents are not coalesced. Ignored when recovery is enabled, a logged entry may
+     * still point at the released space.
+     *
+     * @param freeListEnabled true to reuse the released space
+     * @return CacheConfig
+     */
+    public CacheConfig setFreeListEnabled(boolean freeListEnabled) {
+        this.freeListEnabled = freeListEnabled;
+        return this;
+    }
+
+    public ICodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Compresses the values before they are stored, e.g. with a {@link com.cache.bigcache.codec.DeflateCodec}
+     * or a {@link com.cache.bigcache.codec.Lz4Codec}. Every entry then gets a header telling how it is stored,
+     * a cache which recovers its data must keep using a codec once it has one.
+     *
+     * @param codec the codec, null to store the values as they are
+     * @return CacheConfig
+     */
+    public CacheConfig setCodec(ICodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * The values shorter than this are stored as they are, compressing them is not worth the time.
+     *
+     * @param compressionThreshold the length a value must reach to be compressed
+     * @return CacheConfig
+     */
+    public CacheConfig setCompressionThreshold(int compressionThreshold) {
+        if(compressionThreshold < 0){
+            throw new IllegalArgumentException("compressionThreshold must be >= 0!");
+        }
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * Compresses the values with a dictionary trained from a sample of them, which pays off for small values
+     * sharing their structure. The dictionaries are saved in the cache directory, the entries keep the
+     * version of the dictionary they were compressed with. It can't be used with another codec.
+     *
+     * @param dictionarySize the max length of the dictionary, 0 for no dictionary
+     * @return CacheConfig
+     */
+    public CacheConfig setDictionarySize(int dictionarySize) {
+        if(dictionarySize < 0 || dictionarySize > DictionaryCodec.MAX_DICTIONARY_SIZE){
+            throw new IllegalArgumentException("dictionarySize must be between 0 and " + DictionaryCodec.MAX_DICTIONARY_SIZE + " inclusive!");
+        }
+        this.dictionarySize = dictionarySize;
+        return this;
+    }
+
+    public long getDictionaryRetrainInterval() {
+        return dictionaryRetrainInterval;
+    }
+
+    /**
+     * A dictionary is trained from the values put since the previous training, it only replaces the
+     * current one if it compresses them clearly better.
+     *
+     * @param dictionaryRetrainInterval the time between two trainings in milliseconds
+     * @return CacheConfig
+     */
+    public CacheConfig setDictionaryRetrainInterval(long dictionaryRetrainInterval) {
+        if(dictionaryRetrainInterval <= 0){
+            throw new IllegalArgumentException("dictionaryRetrainInterval must be > 0!");
+        }
+        this.dictionaryRetrainInterval = dictionaryRetrainInterval;
+        return this;
+    }
+
+    public boolean isChecksumEnabled() {
+        return checksumEnabled;
+    }
+
+    /**
+     * Stores every entry with its length and a CRC32C of it, which are checked on every read. A corrupted
+     * entry is read as a miss and removed. A cache which recovers its data must keep the same setting.
+     *
+     * @param checksumEnabled true to check the entries
+     * @return CacheConfig
+     */
+    public CacheConfig setChecksumEnabled(boolean checksumEnabled) {
+        this.checksumEnabled = checksumEnabled;
+        return this;
+    }
+
+    public long getScrubInterval() {
+        return scrubInterval;
+    }
+
+    /**
+     * Checks all the stored entries in the background, so that the corrupted ones are found before they are
+     * read. Only used with the checksums enabled.
+     *
+     * @param scrubInterval the time between two scrubs in milliseconds, 0 for no scrubbing
+     * @return CacheConfig
+     */
+    public CacheConfig setScrubInterval(long scrubInterval) {
+        if(scrubInterval < 0){
+            throw new IllegalArgumentException("scrubInterval must be >= 0!");
+        }
+        this.scrubInterval = scrubInterval;
+        return this;
+    }
+
+    public long getScrubBytesPerSecond() {
+        return scrubBytesPerSecond;
+    }
+
+    /**
+     * Limits the reads of the scrubber so that it leaves the disk to the cache.
+     *
+     * @param scrubBytesPerSecond the max # of bytes checked per second, 0 for no limit
+     * @return CacheConfig
+     */
+    public CacheConfig setScrubBytesPerSecond(long scrubBytesPerSecond) {
+        if(scrubBytesPerSecond < 0){
+            throw new IllegalArgumentException("scrubBytesPerSecond must be >= 0!");
+        }
+        this.scrubBytesPerSecond = scrubBytesPerSecond;
+        return this;
+    }
 
     public enum StorageMode{
         PureFile,
         MemoryMappedPlusFile,
         OffHeapPlusFile,
+        /** off heap like OffHeapPlusFile, the small values are kept in fixed size chunks which are reused as soon as they are released */
+        SlabOffHeap,
+    }
+
+    public enum IndexMode{
+        Heap,
+        OffHeap,
+    }
+
+    public enum IndexSyncMode{
+        /**
+         * the index and the values are written through every sync interval. A crash loses the writes of the last
+         * interval, a key written in it may come back with its previous value or not at all.
+         */
+        Periodic,
+        /** a write returns once its value and its index record are on disk, at the cost of a disk sync per write */
+        EveryWrite,
+    }
+
+    public enum EvictionPolicy{
+        /** drops all the entries of the oldest block at once, the cheapest but blind to the accesses */
+        FifoBlock,
+        /** drops the least recently accessed of a few sampled entries */
+        SampledLru,
+        /** new entries go through a small window, then stay only if they are accessed more often than the entry they would replace */
+        WTinyLfu,
     }
 }
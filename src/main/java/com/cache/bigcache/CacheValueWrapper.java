@@ -10,6 +10,9 @@ public class CacheValueWrapper {
     /** time to idel in millisecond */
     protected long timeToIdle = -1L;
 
+    /** absolute expiry time in millisecond, whatever the accesses */
+    protected long expireTime = -1L;
+
     public long getLastAccessTime(){
         return lastAccessTime;
     }
@@ -24,6 +27,11 @@ public class CacheValueWrapper {
         this.timeToIdle = timeToIdle;
     }
 
+    public CacheValueWrapper(Pointer pointer, long lastAccessTime, long timeToIdle, long expireTime) {
+        this(pointer, lastAccessTime, timeToIdle);
+        this.expireTime = expireTime;
+    }
+
     public void setLastAccessTime(long accessTime){
         if(lastAccessTime < 0){
             lastAccessTime = accessTime;
@@ -54,13 +62,54 @@ public class CacheValueWrapper {
         this.timeToIdle = timeToIdle;
     }
 
+    public long getExpireTime() {
+        return expireTime;
+    }
+
+    public void setExpireTime(long expireTime) {
+        this.expireTime = expireTime;
+    }
+
+    /**
+     * sets the absolute expiry time from a time to live.
+     *
+     * @param now the current time in millisecond
+     * @param ttl time to live in millisecond, <= 0 for none
+     */
+    public void setTimeToLive(long now, long ttl) {
+        this.expireTime = ttl > 0 ? saturatedAdd(now, ttl) : -1L;
+    }
+
+    /**
+     * @return the earliest time the entry expires at if it is not accessed any more, Long.MAX_VALUE if never
+     */
+    public long getExpiryTime(){
+        long expiryTime = Long.MAX_VALUE;
+        if(timeToIdle > 0 && lastAccessTime >= 0){
+            expiryTime = saturatedAdd(lastAccessTime, timeToIdle);
+        }
+        if(expireTime > 0){
+            expiryTime = Math.min(expiryTime, expireTime);
+        }
+        return expiryTime;
+    }
+
     public boolean isExpired(){
+        long now = System.currentTimeMillis();
+        if(expireTime > 0 && now >= expireTime){
+            return true;
+        }
         if(timeToIdle <= 0 ){
             return false;
         }
         if(lastAccessTime < 0){
             return false;
         }
-        return System.currentTimeMillis() - lastAccessTime > timeToIdle;
+        return now - lastAccessTime > timeToIdle;
+    }
+
+    private static long saturatedAdd(long time, long duration){
+        long sum = time + duration;
+        return sum < time ? Long.MAX_VALUE : sum;
     }
 }
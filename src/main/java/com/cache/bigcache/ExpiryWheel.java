@@ -0,0 +1,263 @@
+package com.cache.bigcache;
+
+import com.cache.bigcache.index.IPointerIndex;
+import com.cache.bigcache.index.OffHeapPointerIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hierarchical timing wheel of the expiry times of the keys, so the cleaner only looks at the keys which
+ * are due instead of the whole index.
+ *
+ * Time is cut into ticks of the resolution. Each of the {@value #LEVELS} levels has {@value #SLOTS} slots, a
+ * slot of level n spans SLOTS^n ticks, and the timers of a slot are pushed down one level when the wheel
+ * reaches it. The timers beyond the last level wait in an overflow list.
+ *
+ * Any thread may schedule, the timers are queued and only put into the wheel by {@link #advance}, which
+ * must be called by one thread at a time. A timer is only a hint: the owner checks the entry when the timer
+ * is due and schedules it again if its expiry time has been pushed back since.
+ *
+ * A key has one live timer at most, scheduling it again or cancelling it marks its previous timer cancelled.
+ * The cancelled timers are skipped when they are due, and swept out of the wheel once they are as many as
+ * the live ones, so they never hold on to much memory.
+ *
+ * An off-heap index keeps the timing wheels of its keys itself, a timer per key on heap would undo it. Its
+ * segments link their slots into off-heap buckets, this wheel only moves them up to now.
+ *
+ * @param <K> the key type
+ */
+class ExpiryWheel<K> {
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 4;
+
+    /** the cancelled timers are not swept before they are this many */
+    static final int MIN_SWEPT_TIMERS = 1024;
+
+    /** the length of a tick in milliseconds */
+    private final long resolution;
+
+    /** the timers scheduled since the last advance */
+    private final ConcurrentLinkedQueue<Timer<K>> incoming = new ConcurrentLinkedQueue<>();
+
+    /** the slots of all the levels, the slot s of the level l is at l * SLOTS + s */
+    private final List<List<Timer<K>>> wheel = new ArrayList<>(LEVELS * SLOTS);
+
+    private List<Timer<K>> overflow = new ArrayList<>();
+
+    /** the next tick to expire */
+    private long currentTick;
+
+    /** the live timer of every key */
+    private final ConcurrentHashMap<K, Timer<K>> timers = new ConcurrentHashMap<>();
+
+    /** about the # of cancelled timers still in the wheel */
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /** the index with the timing wheels of the keys, null if the keys have timers here */
+    private final OffHeapPointerIndex<K> offHeapIndex;
+
+    ExpiryWheel(long resolution, long now){
+        this(resolution, now, null);
+    }
+
+    /**
+     * @param index the index of the keys, an off-heap one keeps the expiry of its keys instead of timers
+     */
+    ExpiryWheel(long resolution, long now, IPointerIndex<K> index){
+        if(resolution <= 0){
+            throw new IllegalArgumentException("resolution must be > 0!");
+        }
+        this.resolution = resolution;
+        for(int i = 0; i < LEVELS * SLOTS; i++){
+            wheel.add(null);
+        }
+        this.currentTick = now / resolution;
+        this.offHeapIndex = index instanceof OffHeapPointerIndex ? (OffHeapPointerIndex<K>) index : null;
+    }
+
+    /**
+     * schedules a timer for the key, in place of the one it had.
+     *
+     * @param key the key
+     * @param expiryTime when the key expires, in milliseconds
+     */
+    void schedule(K key, long expiryTime){
+        if(offHeapIndex != null){
+            return;
+        }
+        Timer<K> timer = new Timer<>(key, expiryTime);
+        incoming.add(timer);
+        cancel(timers.put(key, timer));
+    }
+
+    /**
+     * cancels the timer of the key, if it has one.
+     */
+    void cancel(K key){
+        if(offHeapIndex != null){
+            return;
+        }
+        cancel(timers.remove(key));
+    }
+
+    private void cancel(Timer<K> timer){
+        if(timer != null){
+            timer.cancelled = true;
+            cancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * moves the wheel up to now and hands the live timers which are due to the visitor.
+     *
+     * @param now the current time in milliseconds
+     * @param visitor gets the due timers, it may schedule new ones
+     */
+    void advance(long now, TimerVisitor<K> visitor) throws IOException {
+        if(offHeapIndex != null){
+            offHeapIndex.forEachDue(now, (K key, CacheValueWrapper wrapper) -> visitor.visit(key, wrapper.getExpiryTime()));
+            return;
+        }
+        if(cancelled.get() > Math.max(MIN_SWEPT_TIMERS, timers.size())){
+            sweep();
+        }
+        Timer<K> timer;
+        while((timer = incoming.poll()) != null){
+            insert(timer);
+        }
+        long nowTick = now / resolution;
+        while(currentTick <= nowTick){
+            cascade();
+            int slot = (int) (currentTick & (SLOTS - 1));
+            List<Timer<K>> due = wheel.set(slot, null);
+            currentTick++;
+            if(due == null){
+                continue;
+            }
+            for(Timer<K> dueTimer : due){
+                if(dueTimer.cancelled){
+                    cancelled.decrementAndGet();
+                } else if(timers.remove(dueTimer.key, dueTimer)){
+                    visitor.visit(dueTimer.key, dueTimer.expiryTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the # of live timers which are not due yet, or the # of keys in the wheels of an off-heap index
+     */
+    long getBacklog(){
+        if(offHeapIndex != null){
+            return offHeapIndex.getExpiryBacklog();
+        }
+        return timers.size();
+    }
+
+    void clear(){
+        incoming.clear();
+        for(int i = 0; i < wheel.size(); i++){
+            wheel.set(i, null);
+        }
+        overflow = new ArrayList<>();
+        timers.clear();
+        cancelled.set(0);
+    }
+
+    /**
+     * drops the cancelled timers from the wheel.
+     */
+    private void sweep(){
+        long swept = 0;
+        for(int i = 0; i < wheel.size(); i++){
+            List<Timer<K>> slot = wheel.get(i);
+            if(slot != null){
+                swept += sweep(slot);
+                if(slot.isEmpty()){
+                    wheel.set(i, null);
+                }
+            }
+        }
+        swept += sweep(overflow);
+        cancelled.addAndGet(-swept);
+    }
+
+    private static <K> int sweep(Collection<Timer<K>> timers){
+        int size = timers.size();
+        timers.removeIf((Timer<K> timer) -> timer.cancelled);
+        return size - timers.size();
+    }
+
+    /**
+     * pushes the timers of the slots which start at the current tick down, the highest level first.
+     */
+    private void cascade(){
+        if((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0){
+            List<Timer<K>> pushed = overflow;
+            overflow = new ArrayList<>();
+            for(Timer<K> timer : pushed){
+                insert(timer);
+            }
+        }
+        for(int level = LEVELS - 1; level > 0; level--){
+            int shift = SLOT_BITS * level;
+            if((currentTick & ((1L << shift) - 1)) != 0){
+                continue;
+            }
+            int slot = (int) ((currentTick >>> shift) & (SLOTS - 1));
+            List<Timer<K>> pushed = wheel.set(level * SLOTS + slot, null);
+            if(pushed != null){
+                for(Timer<K> timer : pushed){
+                    insert(timer);
+                }
+            }
+        }
+    }
+
+    /**
+     * puts the timer in the lowest level whose span holds both the current tick and the tick of the timer.
+     */
+    private void insert(Timer<K> timer){
+        if(timer.cancelled){
+            cancelled.decrementAndGet();
+            return;
+        }
+        long tick = Math.max(timer.expiryTime / resolution, currentTick);
+        for(int level = 0; level < LEVELS; level++){
+            int shift = SLOT_BITS * (level + 1);
+            if((tick >>> shift) == (currentTick >>> shift)){
+                int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                List<Timer<K>> timers = wheel.get(level * SLOTS + slot);
+                if(timers == null){
+                    timers = new ArrayList<>();
+                    wheel.set(level * SLOTS + slot, timers);
+                }
+                timers.add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    interface TimerVisitor<K> {
+        void visit(K key, long expiryTime) throws IOException;
+    }
+
+    private static class Timer<K> {
+        private final K key;
+        private final long expiryTime;
+        private volatile boolean cancelled;
+
+        private Timer(K key, long expiryTime){
+            this.key = key;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.cache.bigcache;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.cache.bigcache.sotrage.IStorageBlock;
+
+/**
+ * Drops the oldest block as a whole: all the entries still stored in it are evicted and the block is freed.
+ *
+ * As the storage is only appended to, the oldest block holds the entries written longest ago, and it goes
+ * away without a read nor any compaction. The accesses are not looked at, and the max storage bytes should
+ * span a good many blocks as each eviction drops a whole one. The active block is not dropped, while it is
+ * the only block in use its entries are evicted one at a time.
+ *
+ * @param <K> the key type
+ */
+class FifoBlockEviction<K> implements IEvictionPolicy<K> {
+    private final BigCache<K> cache;
+
+    FifoBlockEviction(BigCache<K> cache){
+        this.cache = cache;
+    }
+
+    @Override
+    public void recordAccess(K key){
+    }
+
+    @Override
+    public void recordPut(K key, boolean created){
+    }
+
+    @Override
+    public boolean evict() throws IOException {
+        IStorageBlock block = cache.storageManager.getOldestBlock();
+        if(block == null){
+            return evictFromActiveBlock();
+        }
+        List<K> keys = cache.blockKeys.drain(block.getIndex());
+        boolean evicted = false;
+        for(K key : keys){
+            // the keys which have moved to another block since are left alone
+            evicted |= cache.evict(key, block);
+        }
+        int usedBlocks = cache.storageManager.getUsedBlockCount();
+        cache.cleanFreeBlocks();
+        return evicted || cache.storageManager.getUsedBlockCount() < usedBlocks;
+    }
+
+    /**
+     * the active block is never dropped, the values being written to it would go with it: the entry it got
+     * first is evicted alone.
+     */
+    private boolean evictFromActiveBlock() throws IOException {
+        IStorageBlock active = cache.storageManager.getActiveBlock();
+        for(K key : cache.blockKeys.keys(active.getIndex())){
+            if(cache.evict(key, active)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear(){
+    }
+}
@@ -2,6 +2,11 @@ package com.cache.bigcache;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public interface ICache<K> extends Closeable {
     /**
@@ -22,6 +27,48 @@ public interface ICache<K> extends Closeable {
      */
     void put(K key, byte[] value, long tti) throws IOException;
 
+    /**
+     * puts the value with time to idle and time to live in milliseconds, the entry expires when it has not
+     * been accessed for tti or when ttl has passed since the put, whichever comes first. A value <= 0 turns
+     * the matching expiry off.
+     *
+     * @param key
+     * @param value
+     * @param tti
+     * @param ttl
+     * @throws IOException
+     */
+    void put(K key, byte[] value, long tti, long ttl) throws IOException;
+
+    /**
+     * puts the remaining bytes of the buffer as the value, the buffer is not consumed
+     *
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    void put(K key, ByteBuffer value) throws IOException;
+
+    /**
+     * puts the remaining bytes of the buffer as the value with time to idle in milliseconds
+     *
+     * @param key
+     * @param value
+     * @param tti
+     * @throws IOException
+     */
+    void put(K key, ByteBuffer value, long tti) throws IOException;
+
+    /**
+     * puts the remaining bytes of the buffers, one after another, as the value. Useful for values which
+     * arrive in several buffers (e.g. a header and a body) as they are gathered into the storage without copy.
+     *
+     * @param key
+     * @param values
+     * @throws IOException
+     */
+    void put(K key, ByteBuffer... values) throws IOException;
+
     /**
      *
      * @param key
@@ -30,6 +77,45 @@ public interface ICache<K> extends Closeable {
      */
     byte[] get(K key) throws IOException;
 
+    /**
+     * copies the value into dest, the position of dest is moved forward by the length of the value
+     *
+     * @param key
+     * @param dest
+     * @return the length of the value, or -1 if there is no such key
+     * @throws IOException
+     * @throws java.nio.BufferOverflowException if dest has not enough room for the value
+     */
+    int get(K key, ByteBuffer dest) throws IOException;
+
+    /**
+     * hands a read-only view of the value to the reader, in the memory backed modes the view is the stored
+     * bytes themselves. The view must not be used after the reader returns.
+     *
+     * @param key
+     * @param reader
+     * @return the result of the reader, or null if there is no such key
+     * @throws IOException
+     */
+    <R> R get(K key, Function<ByteBuffer, R> reader) throws IOException;
+
+    /**
+     * gets the values of many keys at once
+     *
+     * @param keys
+     * @return the values of the keys which are in the cache, the missing keys are left out
+     * @throws IOException
+     */
+    Map<K, byte[]> getAll(Collection<? extends K> keys) throws IOException;
+
+    /**
+     * puts many entries at once
+     *
+     * @param entries
+     * @throws IOException
+     */
+    void putAll(Map<? extends K, byte[]> entries) throws IOException;
+
     /**
      *
      * @param key
@@ -38,6 +124,41 @@ public interface ICache<K> extends Closeable {
      */
     byte[] delete(K key) throws IOException;
 
+    /**
+     * gets the value on an I/O thread, the caller is not blocked by the storage
+     *
+     * @param key
+     * @return the future of the value, it completes with null if there is no such key
+     */
+    CompletableFuture<byte[]> getAsync(K key);
+
+    /**
+     * puts the value on an I/O thread, the value must not be changed until the future completes
+     *
+     * @param key
+     * @param value
+     * @return the future of the put
+     */
+    CompletableFuture<Void> putAsync(K key, byte[] value);
+
+    /**
+     * puts the value with time to idle in milliseconds on an I/O thread
+     *
+     * @param key
+     * @param value
+     * @param tti
+     * @return the future of the put
+     */
+    CompletableFuture<Void> putAsync(K key, byte[] value, long tti);
+
+    /**
+     * deletes the key on an I/O thread
+     *
+     * @param key
+     * @return the future of the deleted value
+     */
+    CompletableFuture<byte[]> deleteAsync(K key);
+
     /**
      *
      * @param key
@@ -0,0 +1,34 @@
+package com.cache.bigcache;
+
+import java.io.IOException;
+
+/**
+ * Decides which entries leave a cache which has gone beyond its max storage bytes or max entries.
+ *
+ * The cache reports the reads and the puts to the policy, then calls {@link #evict()} until it is back under
+ * its limits. evict is called by one thread at a time, without any stripe lock held.
+ *
+ * @param <K> the key type
+ */
+interface IEvictionPolicy<K> {
+    /**
+     * called for every read of the key, hit or miss.
+     */
+    void recordAccess(K key);
+
+    /**
+     * called after the value of the key has been stored, under the write lock of the key.
+     *
+     * @param created true if the key was not in the cache before
+     */
+    void recordPut(K key, boolean created);
+
+    /**
+     * evicts one or more entries.
+     *
+     * @return false if nothing could be evicted
+     */
+    boolean evict() throws IOException;
+
+    void clear();
+}
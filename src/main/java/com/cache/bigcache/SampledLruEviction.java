@@ -0,0 +1,98 @@
+package com.cache.bigcache;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.cache.bigcache.sotrage.IStorageBlock;
+
+/**
+ * An approximate LRU: a few keys are picked at random and the one accessed least recently is evicted.
+ *
+ * No list of the entries is kept in access order, the gets only update the access time of the entry, which
+ * the index holds anyway. The keys are picked from the keys recorded per block for the compaction.
+ *
+ * @param <K> the key type
+ */
+class SampledLruEviction<K> implements IEvictionPolicy<K> {
+    /** the # of keys compared for an eviction */
+    static final int SAMPLE_SIZE = 8;
+
+    /** the # of samples taken at most to find SAMPLE_SIZE keys which are still in the cache */
+    private static final int MAX_SAMPLES = 8;
+
+    private final BigCache<K> cache;
+
+    SampledLruEviction(BigCache<K> cache){
+        this.cache = cache;
+    }
+
+    @Override
+    public void recordAccess(K key){
+    }
+
+    @Override
+    public void recordPut(K key, boolean created){
+    }
+
+    @Override
+    public boolean evict() throws IOException {
+        K victim = findVictim(null);
+        if(victim == null){
+            return false;
+        }
+        cache.evict(victim, null);
+        return true;
+    }
+
+    /**
+     * @param excluded the keys which must not be picked, may be null
+     * @return the least recently accessed of the sampled keys. If none of them is in the cache, the first key
+     * still stored in the oldest block, null if there is none
+     */
+    K findVictim(Set<K> excluded) throws IOException {
+        K victim = null;
+        long oldestAccess = Long.MAX_VALUE;
+        int compared = 0;
+        // the recorded keys include the ones removed since, they are skipped
+        for(int i = 0; i < MAX_SAMPLES && compared < SAMPLE_SIZE; i++){
+            for(K key : cache.blockKeys.sample(SAMPLE_SIZE, ThreadLocalRandom.current())){
+                if(excluded != null && excluded.contains(key)){
+                    continue;
+                }
+                CacheValueWrapper wrapper = cache.pointerMap.get(key);
+                if(wrapper == null){
+                    continue;
+                }
+                compared++;
+                if(wrapper.getLastAccessTime() < oldestAccess){
+                    oldestAccess = wrapper.getLastAccessTime();
+                    victim = key;
+                }
+            }
+        }
+        return victim != null ? victim : findOldest(excluded);
+    }
+
+    /**
+     * the samples may all be stale after many removals, the keys of the oldest blocks are scanned instead.
+     */
+    private K findOldest(Set<K> excluded) throws IOException {
+        for(IStorageBlock block : cache.storageManager.getUsedBlocks()){
+            for(K key : cache.blockKeys.keys(block.getIndex())){
+                if(excluded != null && excluded.contains(key)){
+                    continue;
+                }
+                CacheValueWrapper wrapper = cache.pointerMap.get(key);
+                if(wrapper != null && wrapper.getPointer().getStorageBlock() == block){
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void clear(){
+    }
+}
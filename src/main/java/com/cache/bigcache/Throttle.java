@@ -0,0 +1,52 @@
+package com.cache.bigcache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a background run under a # of bytes per second by sleeping while it is ahead of the rate, the
+ * callers must not hold any lock. Not thread safe, a run has its own.
+ */
+class Throttle {
+    /** 0 for no limit */
+    private final long bytesPerSecond;
+
+    /** when the current run started, in nanoseconds */
+    private long start;
+
+    /** the bytes processed by the current run */
+    private long bytes;
+
+    Throttle(long bytesPerSecond){
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * starts a new run.
+     */
+    void start(){
+        start = System.nanoTime();
+        bytes = 0;
+    }
+
+    /**
+     * accounts the bytes just processed and waits if the run is ahead of the rate.
+     *
+     * @return false if interrupted
+     */
+    boolean acquire(int processed){
+        if(bytesPerSecond <= 0 || processed == 0){
+            return true;
+        }
+        bytes += processed;
+        long ahead = (long) (bytes * 1e9 / bytesPerSecond) - (System.nanoTime() - start);
+        if(ahead > TimeUnit.MILLISECONDS.toNanos(1)){
+            try {
+                TimeUnit.NANOSECONDS.sleep(ahead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
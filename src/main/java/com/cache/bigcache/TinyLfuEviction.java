@@ -0,0 +1,109 @@
+package com.cache.bigcache;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.cache.bigcache.utils.FrequencySketch;
+
+/**
+ * W-TinyLFU: the new keys are admitted into a small window, 1% of the entries, in FIFO order. When the
+ * cache is full, the key leaving the window is compared with the victim the sampled LRU picks among the
+ * other entries, and the one accessed less often according to a {@link FrequencySketch} is evicted.
+ *
+ * The window lets a burst of new keys in, while the frequency keeps a one-off scan from flushing the
+ * entries which are read over and over. The misses are counted too, so a key which keeps coming back gets
+ * in even though it is evicted a few times.
+ *
+ * @param <K> the key type
+ */
+class TinyLfuEviction<K> implements IEvictionPolicy<K> {
+    /** the share of the entries in the window */
+    static final double WINDOW_RATIO = 0.01;
+
+    /** the # of keys the sketch is sized for when only the storage bytes are bounded */
+    static final int DEFAULT_SKETCH_KEYS = 1 << 16;
+
+    private final BigCache<K> cache;
+
+    private final FrequencySketch sketch;
+
+    /** picks the victims among the entries out of the window */
+    private final SampledLruEviction<K> main;
+
+    /** the keys in the window */
+    private final Set<K> window = ConcurrentHashMap.newKeySet();
+
+    /** the keys in the window, oldest first */
+    private final ConcurrentLinkedQueue<K> windowOrder = new ConcurrentLinkedQueue<>();
+
+    TinyLfuEviction(BigCache<K> cache, long maxEntries){
+        this.cache = cache;
+        this.sketch = new FrequencySketch(maxEntries > 0 ? maxEntries : DEFAULT_SKETCH_KEYS);
+        this.main = new SampledLruEviction<>(cache);
+    }
+
+    @Override
+    public void recordAccess(K key){
+        sketch.increment(key.hashCode());
+    }
+
+    @Override
+    public void recordPut(K key, boolean created){
+        if(created && window.add(key)){
+            windowOrder.add(key);
+        }
+        if(cache.isOverCapacity()){
+            // the keys leaving the window have to compete with the victims
+            return;
+        }
+        long windowCapacity = windowCapacity();
+        while(window.size() > windowCapacity){
+            K oldest = windowOrder.poll();
+            if(oldest == null){
+                break;
+            }
+            window.remove(oldest);
+        }
+    }
+
+    @Override
+    public boolean evict() throws IOException {
+        if(window.size() > windowCapacity()){
+            K candidate = windowOrder.poll();
+            if(candidate != null){
+                window.remove(candidate);
+                K victim = main.findVictim(window);
+                if(victim != null && sketch.admit(candidate.hashCode(), victim.hashCode())){
+                    cache.evict(victim, null);
+                } else {
+                    cache.evict(candidate, null);
+                }
+                return true;
+            }
+        }
+        K victim = main.findVictim(window);
+        if(victim == null){
+            victim = windowOrder.poll();
+            if(victim == null){
+                return false;
+            }
+            window.remove(victim);
+        }
+        cache.evict(victim, null);
+        return true;
+    }
+
+    @Override
+    public void clear(){
+        window.clear();
+        windowOrder.clear();
+        sketch.clear();
+    }
+
+    private long windowCapacity(){
+        long entries = cache.getMaxEntries() > 0 ? cache.getMaxEntries() : cache.count();
+        return Math.max(1, (long) (entries * WINDOW_RATIO));
+    }
+}
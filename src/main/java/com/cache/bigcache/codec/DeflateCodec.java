@@ -0,0 +1,112 @@
+package com.cache.bigcache.codec;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate of the JDK, the best ratio of the built in codecs. The deflaters and inflaters hold native
+ * memory, they are pooled rather than kept per thread so that many virtual threads do not multiply them.
+ */
+public class DeflateCodec implements ICodec {
+    public static final byte ID = 1;
+
+    private final int level;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level the compression level, from 1 (fastest) to 9 (smallest)
+     */
+    public DeflateCodec(int level) {
+        if(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("level must be between 1 and 9 inclusive!");
+        }
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // the bound of zlib for the stored blocks
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) throws IOException {
+        return deflate(null, src, srcOffset, length, dest, destOffset);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) throws IOException {
+        inflate(null, src, srcOffset, length, dest, destOffset, originalLength);
+    }
+
+    /**
+     * @param dictionary the preset dictionary, null for none
+     */
+    int deflate(byte[] dictionary, byte[] src, int srcOffset, int length, byte[] dest, int destOffset) throws IOException {
+        Deflater deflater = deflaters.poll();
+        if(deflater == null){
+            deflater = new Deflater(level, true);
+        }
+        try {
+            if(dictionary != null){
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(src, srcOffset, length);
+            deflater.finish();
+            int compressed = deflater.deflate(dest, destOffset, dest.length - destOffset);
+            if(!deflater.finished()){
+                throw new IOException("the output of deflate does not fit in " + (dest.length - destOffset) + " bytes");
+            }
+            return compressed;
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    /**
+     * @param dictionary the preset dictionary the input was deflated with, null for none
+     */
+    void inflate(byte[] dictionary, byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) throws IOException {
+        Inflater inflater = inflaters.poll();
+        if(inflater == null){
+            inflater = new Inflater(true);
+        }
+        try {
+            if(dictionary != null){
+                // a raw stream does not ask for its dictionary, it is set up front
+                inflater.setDictionary(dictionary);
+            }
+            inflater.setInput(src, srcOffset, length);
+            int inflated = inflater.inflate(dest, destOffset, originalLength);
+            if(inflated == originalLength && !inflater.finished()){
+                // the end of the stream may only be seen once more output is offered, none must come out
+                inflated += inflater.inflate(new byte[1]);
+            }
+            if(inflated != originalLength || !inflater.finished()){
+                throw new IOException("corrupted value: inflated " + inflated + " bytes instead of " + originalLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted value", e);
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+}
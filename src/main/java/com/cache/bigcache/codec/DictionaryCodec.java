@@ -0,0 +1,162 @@
+package com.cache.bigcache.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Raw deflate with a preset dictionary shared by all the values, so that a small value which has little to
+ * compress on its own can refer to the field names and the class descriptors it has in common with the others.
+ *
+ * The dictionaries are versioned: the compressed bytes start with the 2 byte version of the dictionary they
+ * were deflated with, 0 for none, and a new dictionary never replaces an old one, so the entries written
+ * before a retraining stay readable. The dictionaries are kept as {@value #DICTIONARY_FILE_SUFFIX} files in
+ * the directory of the cache, a dictionary is on disk before any entry uses it.
+ */
+public class DictionaryCodec implements ICodec {
+    public static final byte ID = 3;
+
+    public static final String DICTIONARY_FILE_SUFFIX = ".dict";
+
+    /** the last version a dictionary can get */
+    public static final int MAX_VERSION = 0xFFFF;
+
+    private static final int VERSION_LENGTH = 2;
+
+    /** deflate can not look further back than its window */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private final DeflateCodec deflate;
+
+    /** where the dictionaries are kept, null if they are not */
+    private final File dir;
+
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    /** the version of the dictionary of the new entries, 0 if there is none yet */
+    private volatile int version;
+
+    /**
+     * @param dir the directory of the dictionaries, those already in it are loaded, null to keep them in memory only
+     * @throws IOException
+     */
+    public DictionaryCodec(String dir) throws IOException {
+        // on small values the default level of zlib does better than the fastest one and costs little more
+        this.deflate = new DeflateCodec(6);
+        this.dir = dir == null ? null : new File(dir);
+        if(this.dir != null){
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        File[] files = dir.listFiles();
+        if(files == null){
+            return;
+        }
+        for(File file : files){
+            String name = file.getName();
+            if(!name.endsWith(DICTIONARY_FILE_SUFFIX)){
+                continue;
+            }
+            int fileVersion;
+            try {
+                fileVersion = Integer.parseInt(name.substring(0, name.length() - DICTIONARY_FILE_SUFFIX.length()));
+            } catch (NumberFormatException e){
+                continue;
+            }
+            dictionaries.put(fileVersion, Files.readAllBytes(file.toPath()));
+            version = Math.max(version, fileVersion);
+        }
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    /**
+     * @return the version of the dictionary of the new entries, 0 if there is none yet
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the dictionary of the new entries, null if there is none yet
+     */
+    public byte[] getDictionary() {
+        int current = version;
+        return current == 0 ? null : dictionaries.get(current);
+    }
+
+    /**
+     * makes the dictionary the one of the new entries, the previous ones are kept to read the older entries.
+     *
+     * @param dictionary the dictionary, at most {@value #MAX_DICTIONARY_SIZE} bytes
+     * @return the version of the dictionary, or -1 if no version is left
+     * @throws IOException if the dictionary can not be saved
+     */
+    public synchronized int install(byte[] dictionary) throws IOException {
+        if(dictionary.length == 0 || dictionary.length > MAX_DICTIONARY_SIZE){
+            throw new IllegalArgumentException("dictionary length must be between 1 and " + MAX_DICTIONARY_SIZE + " inclusive!");
+        }
+        if(version == MAX_VERSION){
+            return -1;
+        }
+        int next = version + 1;
+        if(dir != null){
+            dir.mkdirs();
+            File tmp = new File(dir, next + DICTIONARY_FILE_SUFFIX + ".tmp");
+            Files.write(tmp.toPath(), dictionary);
+            Files.move(tmp.toPath(), new File(dir, next + DICTIONARY_FILE_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        dictionaries.put(next, dictionary);
+        version = next;
+        return next;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return VERSION_LENGTH + deflate.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) throws IOException {
+        int current = version;
+        dest[destOffset] = (byte) (current >>> 8);
+        dest[destOffset + 1] = (byte) current;
+        byte[] dictionary = current == 0 ? null : dictionaries.get(current);
+        return VERSION_LENGTH + deflate.deflate(dictionary, src, srcOffset, length, dest, destOffset + VERSION_LENGTH);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) throws IOException {
+        if(length < VERSION_LENGTH){
+            throw new IOException("corrupted value: no dictionary version");
+        }
+        int entryVersion = ((src[srcOffset] & 0xFF) << 8) | (src[srcOffset + 1] & 0xFF);
+        byte[] dictionary = null;
+        if(entryVersion != 0){
+            dictionary = dictionaries.get(entryVersion);
+            if(dictionary == null){
+                throw new IOException("unknown dictionary " + entryVersion);
+            }
+        }
+        deflate.inflate(dictionary, src, srcOffset + VERSION_LENGTH, length - VERSION_LENGTH, dest, destOffset, originalLength);
+    }
+
+    /**
+     * @param dictionary a dictionary, null for none
+     * @param value a value
+     * @return the length of the value deflated with the dictionary, without the version
+     */
+    int compressedLength(byte[] dictionary, byte[] value) throws IOException {
+        byte[] dest = new byte[deflate.maxCompressedLength(value.length)];
+        return deflate.deflate(dictionary, value, 0, value.length, dest, 0);
+    }
+}
@@ -0,0 +1,260 @@
+package com.cache.bigcache.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Samples the stored values and trains the dictionaries of a {@link DictionaryCodec} from them.
+ *
+ * The samples are a reservoir of the values put since the last training, so a retraining follows the values
+ * as they change. The training is a simplified cover algorithm: the samples are cut into as many epochs as
+ * the dictionary has segments, each epoch gives its segment whose {@value #DMER} byte sequences are found in
+ * the most samples, and the sequences of a chosen segment score nothing afterwards. The best segments go to
+ * the end of the dictionary, where deflate reaches them with the shortest distances.
+ */
+public class DictionaryTrainer {
+    /** the # of values to sample before a dictionary is trained */
+    public static final int MIN_SAMPLES = 128;
+
+    public static final int MAX_SAMPLES = 2048;
+
+    /** only the head of a longer value is sampled, a long value compresses well enough on its own */
+    public static final int MAX_SAMPLE_LENGTH = 1024;
+
+    /** a new dictionary must deflate the samples this much smaller than the current one to replace it */
+    private static final double MIN_IMPROVEMENT = 0.1;
+
+    private static final int DMER = 6;
+
+    private static final int SEGMENT = 32;
+
+    private static final int HASH_LOG = 18;
+
+    private final DictionaryCodec codec;
+
+    private final int dictionarySize;
+
+    private final AtomicReferenceArray<byte[]> samples = new AtomicReferenceArray<>(MAX_SAMPLES);
+
+    /** the # of values offered since the last training */
+    private final AtomicLong seen = new AtomicLong();
+
+    /** the # of trainings which installed a dictionary */
+    private final AtomicLong trainings = new AtomicLong();
+
+    /**
+     * @param codec the codec which gets the dictionaries
+     * @param dictionarySize the max length of a dictionary
+     */
+    public DictionaryTrainer(DictionaryCodec codec, int dictionarySize) {
+        if(dictionarySize <= 0 || dictionarySize > DictionaryCodec.MAX_DICTIONARY_SIZE){
+            throw new IllegalArgumentException("dictionarySize must be between 1 and " + DictionaryCodec.MAX_DICTIONARY_SIZE + " inclusive!");
+        }
+        this.codec = codec;
+        this.dictionarySize = dictionarySize;
+    }
+
+    /**
+     * may keep a copy of the value as a sample, the values which are not kept are not copied.
+     *
+     * @param values the value, its buffers are not consumed
+     */
+    public void sample(ByteBuffer... values) {
+        long n = seen.getAndIncrement();
+        int slot;
+        if(n < MAX_SAMPLES){
+            slot = (int) n;
+        } else {
+            long r = ThreadLocalRandom.current().nextLong(n + 1);
+            if(r >= MAX_SAMPLES){
+                return;
+            }
+            slot = (int) r;
+        }
+        int length = 0;
+        for(ByteBuffer value : values){
+            length += value.remaining();
+        }
+        byte[] sample = new byte[Math.min(length, MAX_SAMPLE_LENGTH)];
+        int position = 0;
+        for(ByteBuffer value : values){
+            int count = Math.min(value.remaining(), sample.length - position);
+            value.duplicate().get(sample, position, count);
+            position += count;
+            if(position == sample.length){
+                break;
+            }
+        }
+        samples.set(slot, sample);
+    }
+
+    /**
+     * @return true if there is no dictionary yet and enough samples to train one
+     */
+    public boolean needsDictionary() {
+        return codec.getVersion() == 0 && seen.get() >= MIN_SAMPLES;
+    }
+
+    /**
+     * trains a dictionary from the samples taken since the last training and installs it if it does better
+     * than the current one, the samples are dropped either way.
+     *
+     * @return true if a new dictionary was installed
+     * @throws IOException if the dictionary can not be saved
+     */
+    public synchronized boolean train() throws IOException {
+        if(seen.get() < MIN_SAMPLES){
+            return false;
+        }
+        List<byte[]> training = new ArrayList<>();
+        List<byte[]> testing = new ArrayList<>();
+        for(int i = 0; i < MAX_SAMPLES; i++){
+            byte[] sample = samples.getAndSet(i, null);
+            if(sample != null){
+                // the dictionary is judged on values it was not trained with
+                (i % 2 == 0 ? training : testing).add(sample);
+            }
+        }
+        seen.set(0);
+        byte[] dictionary = build(training, dictionarySize);
+        if(dictionary.length == 0){
+            return false;
+        }
+        long current = compressedLength(codec.getDictionary(), testing);
+        long candidate = compressedLength(dictionary, testing);
+        if(candidate > current * (1 - MIN_IMPROVEMENT)){
+            return false;
+        }
+        if(codec.install(dictionary) < 0){
+            return false;
+        }
+        trainings.incrementAndGet();
+        return true;
+    }
+
+    private long compressedLength(byte[] dictionary, List<byte[]> values) throws IOException {
+        long length = 0;
+        for(byte[] value : values){
+            length += codec.compressedLength(dictionary, value);
+        }
+        return length;
+    }
+
+    /**
+     * @return the # of trainings which installed a dictionary
+     */
+    public long getTrainings() {
+        return trainings.get();
+    }
+
+    /**
+     * @param samples the values to learn from
+     * @param size the max length of the dictionary
+     * @return the dictionary, empty if the samples have nothing in common
+     */
+    static byte[] build(List<byte[]> samples, int size) {
+        int total = 0;
+        for(byte[] sample : samples){
+            total += sample.length;
+        }
+        byte[] data = new byte[total];
+        int[] sampleOf = new int[total];
+        int position = 0;
+        for(int i = 0; i < samples.size(); i++){
+            byte[] sample = samples.get(i);
+            System.arraycopy(sample, 0, data, position, sample.length);
+            Arrays.fill(sampleOf, position, position + sample.length, i);
+            position += sample.length;
+        }
+
+        // the # of samples each sequence is found in
+        int[] frequencies = new int[1 << HASH_LOG];
+        int[] lastSample = new int[1 << HASH_LOG];
+        for(int p = 0; p + DMER <= total; p++){
+            if(sampleOf[p] != sampleOf[p + DMER - 1]){
+                continue;
+            }
+            int h = hash(data, p);
+            if(lastSample[h] != sampleOf[p] + 1){
+                lastSample[h] = sampleOf[p] + 1;
+                frequencies[h]++;
+            }
+        }
+
+        int epochs = Math.max(1, Math.min(size / SEGMENT, total / SEGMENT));
+        int epochLength = total / epochs;
+        long[] segments = new long[epochs];
+        int chosen = 0;
+        for(int e = 0; e < epochs; e++){
+            int from = e * epochLength;
+            int to = e == epochs - 1 ? total : from + epochLength;
+            int segmentLength = Math.min(SEGMENT, to - from);
+            if(segmentLength < DMER){
+                continue;
+            }
+            // slides a window of the segment length over the epoch
+            long score = 0;
+            for(int p = from; p + DMER <= from + segmentLength; p++){
+                score += weight(data, sampleOf, frequencies, p);
+            }
+            long bestScore = score;
+            int best = from;
+            for(int p = from + 1; p + segmentLength <= to; p++){
+                score -= weight(data, sampleOf, frequencies, p - 1);
+                score += weight(data, sampleOf, frequencies, p + segmentLength - DMER);
+                if(score > bestScore){
+                    bestScore = score;
+                    best = p;
+                }
+            }
+            if(bestScore == 0){
+                continue;
+            }
+            for(int p = best; p + DMER <= best + segmentLength; p++){
+                frequencies[hash(data, p)] = 0;
+            }
+            // the score fits in the high bits, the start of the segment in the low ones
+            segments[chosen++] = Math.min(bestScore, Integer.MAX_VALUE) << 32 | best;
+        }
+
+        Arrays.sort(segments, 0, chosen);
+        int length = 0;
+        for(int i = 0; i < chosen; i++){
+            int start = (int) segments[i];
+            length += Math.min(SEGMENT, total - start);
+        }
+        byte[] dictionary = new byte[Math.min(length, size)];
+        position = 0;
+        // the lowest scores are dropped if the dictionary is full
+        for(int i = chosen - 1; i >= 0 && position < dictionary.length; i--){
+            int start = (int) segments[i];
+            int segmentLength = Math.min(Math.min(SEGMENT, total - start), dictionary.length - position);
+            System.arraycopy(data, start, dictionary, dictionary.length - position - segmentLength, segmentLength);
+            position += segmentLength;
+        }
+        return dictionary;
+    }
+
+    private static int weight(byte[] data, int[] sampleOf, int[] frequencies, int p) {
+        if(sampleOf[p] != sampleOf[p + DMER - 1]){
+            return 0;
+        }
+        int frequency = frequencies[hash(data, p)];
+        // a sequence of a single sample helps no other value
+        return frequency > 1 ? frequency : 0;
+    }
+
+    private static int hash(byte[] data, int p) {
+        long sequence = 0;
+        for(int i = 0; i < DMER; i++){
+            sequence = sequence << 8 | (data[p + i] & 0xFF);
+        }
+        return (int) ((sequence * 0x9E3779B97F4A7C15L) >>> (64 - HASH_LOG));
+    }
+}
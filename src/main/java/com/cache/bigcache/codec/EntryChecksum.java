@@ -0,0 +1,56 @@
+package com.cache.bigcache.codec;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Frames the stored entries with their length and a CRC32C of the length and the bytes, so that a torn
+ * write or a flipped bit is found when the entry is read instead of being handed out as a value. CRC32C is
+ * computed with the CRC instructions of the CPU where the JDK has them.
+ */
+public final class EntryChecksum {
+    public static final int HEADER_LENGTH = 8;
+
+    private EntryChecksum() {
+    }
+
+    /**
+     * @param entry the entry, its buffers are not consumed
+     * @return the buffers to store, the buffers of the entry are part of them
+     */
+    public static ByteBuffer[] frame(ByteBuffer... entry) {
+        int length = 0;
+        for(ByteBuffer buffer : entry){
+            length += buffer.remaining();
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(0, length);
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 0, 4);
+        for(ByteBuffer buffer : entry){
+            crc.update(buffer.duplicate());
+        }
+        header.putInt(4, (int) crc.getValue());
+        ByteBuffer[] framed = new ByteBuffer[entry.length + 1];
+        framed[0] = header;
+        System.arraycopy(entry, 0, framed, 1, entry.length);
+        return framed;
+    }
+
+    /**
+     * @param stored the stored bytes
+     * @return true if the header matches the bytes, the entry starts at {@link #HEADER_LENGTH}
+     */
+    public static boolean verify(byte[] stored) {
+        if(stored.length < HEADER_LENGTH){
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.wrap(stored, 0, HEADER_LENGTH);
+        if(header.getInt(0) != stored.length - HEADER_LENGTH){
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(stored, 0, 4);
+        crc.update(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH);
+        return header.getInt(4) == (int) crc.getValue();
+    }
+}
@@ -0,0 +1,173 @@
+package com.cache.bigcache.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Frames the values stored by a BigCache which compresses: every entry starts with the id of its codec, 0 if
+ * it is stored as is, and a compressed entry then holds the 4 byte length of the value and the compressed
+ * bytes. A value shorter than the threshold or which does not get smaller is stored as is.
+ *
+ * The entries of the built in codecs can always be read back, so the codec of a persistent cache may be
+ * changed between runs, but not turned on or off. The entries of a {@link DictionaryCodec} need its
+ * dictionaries, they are only read back by a DictionaryCodec.
+ */
+public class EntryCodec {
+    /** the id of the entries stored as is */
+    public static final byte RAW = 0;
+
+    public static final int RAW_HEADER_LENGTH = 1;
+
+    public static final int COMPRESSED_HEADER_LENGTH = 5;
+
+    private static final ICodec[] BUILT_IN = { null, new DeflateCodec(), new Lz4Codec() };
+
+    private final ICodec codec;
+
+    private final int threshold;
+
+    /** the length of the values encoded */
+    private final LongAdder rawBytes = new LongAdder();
+
+    /** the length of the entries they became, headers included */
+    private final LongAdder encodedBytes = new LongAdder();
+
+    private final LongAdder compressTime = new LongAdder();
+
+    private final LongAdder decompressTime = new LongAdder();
+
+    /**
+     * @param codec the codec of the new entries
+     * @param threshold the length a value must reach to be compressed
+     */
+    public EntryCodec(ICodec codec, int threshold) {
+        if(codec.getId() <= RAW){
+            throw new IllegalArgumentException("codec id must be > 0!");
+        }
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param values the value, its buffers are not consumed
+     * @return the buffers of the entry, the buffers of the value are part of it if it is stored as is
+     */
+    public ByteBuffer[] encode(ByteBuffer... values) throws IOException {
+        int length = 0;
+        for(ByteBuffer value : values){
+            length += value.remaining();
+        }
+        rawBytes.add(length);
+        if(length >= threshold){
+            long start = System.nanoTime();
+            byte[] src;
+            int srcOffset;
+            if(values.length == 1 && values[0].hasArray()){
+                src = values[0].array();
+                srcOffset = values[0].arrayOffset() + values[0].position();
+            } else {
+                src = new byte[length];
+                srcOffset = 0;
+                int position = 0;
+                for(ByteBuffer value : values){
+                    int remaining = value.remaining();
+                    value.duplicate().get(src, position, remaining);
+                    position += remaining;
+                }
+            }
+            byte[] entry = new byte[COMPRESSED_HEADER_LENGTH + codec.maxCompressedLength(length)];
+            int compressed = codec.compress(src, srcOffset, length, entry, COMPRESSED_HEADER_LENGTH);
+            compressTime.add(System.nanoTime() - start);
+            if(COMPRESSED_HEADER_LENGTH + compressed < RAW_HEADER_LENGTH + length){
+                entry[0] = codec.getId();
+                ByteBuffer.wrap(entry, 1, 4).putInt(length);
+                encodedBytes.add(COMPRESSED_HEADER_LENGTH + compressed);
+                return new ByteBuffer[] { ByteBuffer.wrap(entry, 0, COMPRESSED_HEADER_LENGTH + compressed) };
+            }
+        }
+        encodedBytes.add(RAW_HEADER_LENGTH + length);
+        ByteBuffer[] entry = new ByteBuffer[values.length + 1];
+        entry[0] = ByteBuffer.wrap(new byte[] { RAW });
+        System.arraycopy(values, 0, entry, 1, values.length);
+        return entry;
+    }
+
+    /**
+     * @param entry a stored entry
+     * @return the value
+     * @throws IOException if the entry is corrupted or its codec is unknown
+     */
+    public byte[] decode(byte[] entry) throws IOException {
+        return decode(entry, 0);
+    }
+
+    /**
+     * @param entry the bytes holding a stored entry
+     * @param offset where the entry starts, it runs to the end of the bytes
+     * @return the value
+     * @throws IOException if the entry is corrupted or its codec is unknown
+     */
+    public byte[] decode(byte[] entry, int offset) throws IOException {
+        if(entry.length - offset < RAW_HEADER_LENGTH){
+            throw new IOException("corrupted value: no header");
+        }
+        byte id = entry[offset];
+        if(id == RAW){
+            return Arrays.copyOfRange(entry, offset + RAW_HEADER_LENGTH, entry.length);
+        }
+        if(entry.length - offset < COMPRESSED_HEADER_LENGTH){
+            throw new IOException("corrupted value: truncated header");
+        }
+        ICodec entryCodec = codecOf(id);
+        int length = ByteBuffer.wrap(entry, offset + 1, 4).getInt();
+        if(length < 0){
+            throw new IOException("corrupted value: negative length");
+        }
+        long start = System.nanoTime();
+        byte[] value = new byte[length];
+        int compressedOffset = offset + COMPRESSED_HEADER_LENGTH;
+        entryCodec.decompress(entry, compressedOffset, entry.length - compressedOffset, value, 0, length);
+        decompressTime.add(System.nanoTime() - start);
+        return value;
+    }
+
+    private ICodec codecOf(byte id) throws IOException {
+        if(id == codec.getId()){
+            return codec;
+        }
+        if(id > 0 && id < BUILT_IN.length){
+            return BUILT_IN[id];
+        }
+        throw new IOException("unknown codec " + id);
+    }
+
+    /**
+     * @return the length of the values encoded so far
+     */
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * @return the length of the entries the values became, headers included
+     */
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    /**
+     * @return the time spent compressing in nanoseconds
+     */
+    public long getCompressTime() {
+        return compressTime.sum();
+    }
+
+    /**
+     * @return the time spent decompressing in nanoseconds
+     */
+    public long getDecompressTime() {
+        return decompressTime.sum();
+    }
+}
@@ -0,0 +1,45 @@
+package com.cache.bigcache.codec;
+
+import java.io.IOException;
+
+/**
+ * Compresses the values of a BigCache, see {@link EntryCodec} for the framing of the stored entries.
+ *
+ * The implementations must be thread safe.
+ */
+public interface ICodec {
+
+    /**
+     * @return the id recorded in the header of the compressed entries, from 1 to 127, the ids of the built in
+     *         codecs are taken
+     */
+    byte getId();
+
+    /**
+     * @param length the length of the input
+     * @return the biggest output of {@link #compress} for an input of the length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @param src the input
+     * @param srcOffset the offset of the input
+     * @param length the length of the input
+     * @param dest the output, at least {@link #maxCompressedLength(int)} bytes after the offset
+     * @param destOffset the offset of the output
+     * @return the length of the output
+     * @throws IOException
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) throws IOException;
+
+    /**
+     * @param src the compressed input
+     * @param srcOffset the offset of the input
+     * @param length the length of the input
+     * @param dest the output
+     * @param destOffset the offset of the output
+     * @param originalLength the length of the uncompressed value
+     * @throws IOException if the input is corrupted or does not decompress to the original length
+     */
+    void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) throws IOException;
+}
@@ -0,0 +1,195 @@
+package com.cache.bigcache.codec;
+
+import java.io.IOException;
+
+/**
+ * The LZ4 block format in pure Java: a greedy match finder over a hash table of 4 byte sequences, no entropy
+ * coding. It compresses less than deflate but several times faster and decompresses at memory speed.
+ *
+ * A sequence is a token (literal length << 4 | match length - 4), the extra literal length bytes, the literals,
+ * the 2 byte little endian offset of the match and the extra match length bytes. The last sequence only has
+ * literals, the last {@value #LAST_LITERALS} bytes are always literals.
+ */
+public class Lz4Codec implements ICodec {
+    public static final byte ID = 2;
+
+    private static final int MIN_MATCH = 4;
+
+    private static final int HASH_LOG = 12;
+
+    private static final int LAST_LITERALS = 5;
+
+    /** a match must start at least this many bytes before the end */
+    private static final int MF_LIMIT = 12;
+
+    private static final int MAX_DISTANCE = 65535;
+
+    /** the match finder steps faster after this many misses in a row, 1 << 6 */
+    private static final int SKIP_TRIGGER = 6;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) throws IOException {
+        int srcEnd = srcOffset + length;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOffset;
+        int dp = destOffset;
+        if(length > MF_LIMIT){
+            // the positions are stored + 1, 0 is no position
+            int[] table = new int[1 << HASH_LOG];
+            int sp = srcOffset;
+            int misses = 0;
+            while(sp < mfLimit){
+                int sequence = readInt(src, sp);
+                int h = hash(sequence);
+                int ref = table[h] - 1;
+                table[h] = sp + 1;
+                if(ref < 0 || sp - ref > MAX_DISTANCE || readInt(src, ref) != sequence){
+                    sp += 1 + (misses++ >>> SKIP_TRIGGER);
+                    continue;
+                }
+                misses = 0;
+                while(sp > anchor && ref > srcOffset && src[sp - 1] == src[ref - 1]){
+                    sp--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while(sp + matchLength < matchLimit && src[sp + matchLength] == src[ref + matchLength]){
+                    matchLength++;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, sp - ref, matchLength, dest, dp);
+                sp += matchLength;
+                anchor = sp;
+                if(sp < mfLimit){
+                    table[hash(readInt(src, sp - 2))] = sp - 2 + 1;
+                }
+            }
+        }
+        dp = writeLiterals(src, anchor, srcEnd - anchor, dest, dp);
+        return dp - destOffset;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] dest, int dp){
+        int extraMatch = matchLength - MIN_MATCH;
+        dest[dp++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(extraMatch, 15));
+        dp = writeLength(literalLength, dest, dp);
+        System.arraycopy(src, literalStart, dest, dp, literalLength);
+        dp += literalLength;
+        dest[dp++] = (byte) offset;
+        dest[dp++] = (byte) (offset >>> 8);
+        return writeLength(extraMatch, dest, dp);
+    }
+
+    private static int writeLiterals(byte[] src, int literalStart, int literalLength, byte[] dest, int dp){
+        dest[dp++] = (byte) (Math.min(literalLength, 15) << 4);
+        dp = writeLength(literalLength, dest, dp);
+        System.arraycopy(src, literalStart, dest, dp, literalLength);
+        return dp + literalLength;
+    }
+
+    /**
+     * writes the part of a length the token does not hold.
+     */
+    private static int writeLength(int length, byte[] dest, int dp){
+        if(length < 15){
+            return dp;
+        }
+        length -= 15;
+        while(length >= 255){
+            dest[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dest[dp++] = (byte) length;
+        return dp;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) throws IOException {
+        int sp = srcOffset;
+        int srcEnd = srcOffset + length;
+        int dp = destOffset;
+        int destEnd = destOffset + originalLength;
+        while(true){
+            if(sp >= srcEnd){
+                throw new IOException("corrupted value: truncated sequence");
+            }
+            int token = src[sp++] & 0xFF;
+            int literalLength = token >>> 4;
+            if(literalLength == 15){
+                int b;
+                do {
+                    if(sp >= srcEnd){
+                        throw new IOException("corrupted value: truncated literal length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    literalLength += b;
+                } while(b == 255);
+            }
+            if(literalLength > srcEnd - sp || literalLength > destEnd - dp){
+                throw new IOException("corrupted value: literals out of bounds");
+            }
+            System.arraycopy(src, sp, dest, dp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if(sp == srcEnd){
+                break;
+            }
+            if(srcEnd - sp < 2){
+                throw new IOException("corrupted value: truncated offset");
+            }
+            int offset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            if(offset == 0 || offset > dp - destOffset){
+                throw new IOException("corrupted value: offset out of bounds");
+            }
+            int matchLength = token & 0x0F;
+            if(matchLength == 15){
+                int b;
+                do {
+                    if(sp >= srcEnd){
+                        throw new IOException("corrupted value: truncated match length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while(b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if(matchLength > destEnd - dp){
+                throw new IOException("corrupted value: match out of bounds");
+            }
+            int ref = dp - offset;
+            if(offset >= matchLength){
+                System.arraycopy(dest, ref, dest, dp, matchLength);
+            } else {
+                // the match overlaps its own output, e.g. a run of one byte
+                for(int i = 0; i < matchLength; i++){
+                    dest[dp + i] = dest[ref + i];
+                }
+            }
+            dp += matchLength;
+        }
+        if(dp != destEnd){
+            throw new IOException("corrupted value: decompressed " + (dp - destOffset) + " bytes instead of " + originalLength);
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset){
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence){
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
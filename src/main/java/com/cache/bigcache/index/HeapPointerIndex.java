@@ -0,0 +1,67 @@
+package com.cache.bigcache.index;
+
+import com.cache.bigcache.CacheValueWrapper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default index which keeps the keys and their wrappers on heap.
+ *
+ * @param <K> the key type
+ */
+public class HeapPointerIndex<K> implements IPointerIndex<K> {
+    private final ConcurrentHashMap<K, CacheValueWrapper> map = new ConcurrentHashMap<>();
+
+    @Override
+    public CacheValueWrapper get(K key) {
+        return map.get(key);
+    }
+
+    @Override
+    public CacheValueWrapper access(K key, long accessTime) {
+        CacheValueWrapper wrapper = map.get(key);
+        if(wrapper != null){
+            wrapper.setLastAccessTime(accessTime);
+        }
+        return wrapper;
+    }
+
+    @Override
+    public void put(K key, CacheValueWrapper wrapper) {
+        map.put(key, wrapper);
+    }
+
+    @Override
+    public CacheValueWrapper remove(K key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public long size() {
+        return map.size();
+    }
+
+    @Override
+    public void forEach(EntryVisitor<K> visitor) throws IOException {
+        for(Map.Entry<K, CacheValueWrapper> entry : map.entrySet()){
+            visitor.visit(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public void close() {
+        map.clear();
+    }
+}
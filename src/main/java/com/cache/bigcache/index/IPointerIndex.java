@@ -0,0 +1,65 @@
+package com.cache.bigcache.index;
+
+import com.cache.bigcache.CacheValueWrapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Maps the keys of a BigCache to the location of their values.
+ *
+ * The wrappers handed out by an index are not necessarily the stored ones, any change made to a wrapper
+ * must be written back with {@link #put(Object, CacheValueWrapper)}.
+ *
+ * @param <K> the key type
+ */
+public interface IPointerIndex<K> extends Closeable {
+
+    /**
+     * @param key the key
+     * @return the wrapper of the key or null if the key is not in the index
+     */
+    CacheValueWrapper get(K key) throws IOException;
+
+    /**
+     * Gets the wrapper of the key and, if it is not expired, updates its last access time.
+     *
+     * @param key the key
+     * @param accessTime the access time
+     * @return the wrapper of the key or null if the key is not in the index
+     */
+    CacheValueWrapper access(K key, long accessTime) throws IOException;
+
+    /**
+     * Associates the wrapper with the key.
+     *
+     * @param key the key
+     * @param wrapper the wrapper
+     */
+    void put(K key, CacheValueWrapper wrapper) throws IOException;
+
+    /**
+     * @param key the key
+     * @return the removed wrapper or null if the key is not in the index
+     */
+    CacheValueWrapper remove(K key) throws IOException;
+
+    boolean containsKey(K key) throws IOException;
+
+    long size();
+
+    /**
+     * Visits all the entries of the index. The visitor may modify the index, such changes may or may not
+     * be seen by the remaining visit.
+     *
+     * @param visitor the visitor
+     * @throws IOException if the visitor throws
+     */
+    void forEach(EntryVisitor<K> visitor) throws IOException;
+
+    void clear();
+
+    interface EntryVisitor<K> {
+        void visit(K key, CacheValueWrapper wrapper) throws IOException;
+    }
+}
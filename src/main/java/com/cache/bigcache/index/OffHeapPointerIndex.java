@@ -0,0 +1,890 @@
+package com.cache.bigcache.index;
+
+import com.cache.bigcache.BigCache;
+import com.cache.bigcache.CacheValueWrapper;
+import com.cache.bigcache.sotrage.Pointer;
+import com.cache.bigcache.sotrage.StorageManager;
+import com.cache.bigcache.utils.KeySerializer;
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An index which keeps the keys and their pointers off heap, so a cache with hundreds of millions of
+ * entries does not put hundreds of millions of objects on the java heap.
+ *
+ * The index is split into segments, each of them is an open addressing (linear probing) table guarded by
+ * its own read write lock. The keys are serialized by {@link KeySerializer} into an append-only key arena
+ * of the segment, a slot of the table is 10 longs:
+ * [key offset in arena + 1][hash << 32 | key length][block index << 32 | position][length][tti][last access][expire time]
+ * [expiry links][expiry bucket + 1][block links].
+ * Removed keys leave garbage in the arena which is dropped when the segment is rehashed.
+ *
+ * Every segment has a hierarchical timing wheel of the keys which may expire, laid out as the one of
+ * {@code ExpiryWheel}: a bucket is a chain of slots linked through their expiry links, which hold the
+ * indexes + 1 of the next and the previous slot of the chain. Finding the due keys only visits the buckets
+ * of the ticks which have passed, and the slots pushed down from the higher levels. The wheel is a hint as
+ * well: a slot whose key has been read since it was linked is linked again at its new expiry time when its
+ * bucket is visited.
+ *
+ * The slots of every storage block are chained the same way through their block links, so the keys of a block
+ * are found without looking at the keys of the other blocks. The chains are rebuilt when the segment is
+ * rehashed, as the slots move.
+ *
+ * The wrappers returned by this index are copies, changes must be written back with put.
+ *
+ * @param <K> the key type
+ */
+public class OffHeapPointerIndex<K> implements IPointerIndex<K> {
+    private static final Unsafe UNSAFE = getUnsafe();
+    private static final long BYTE_ARRAY_OFFSET = (long) UNSAFE.arrayBaseOffset(byte[].class);
+
+    private static final int SLOT_SIZE = 10 * 8;
+    private static final int KEY_REF = 0;
+    private static final int HASH_KEY_LENGTH = 8;
+    private static final int BLOCK_POSITION = 16;
+    private static final int LENGTH = 24;
+    private static final int TTI = 32;
+    private static final int LAST_ACCESS = 40;
+    private static final int EXPIRE_TIME = 48;
+    private static final int EXPIRY_LINKS = 56;
+    private static final int EXPIRY_BUCKET = 64;
+    private static final int BLOCK_LINKS = 72;
+
+    /** the timing wheels of the segments have as many levels of as many slots as {@code ExpiryWheel} */
+    private static final int WHEEL_SLOT_BITS = 6;
+    private static final int WHEEL_SLOTS = 1 << WHEEL_SLOT_BITS;
+    private static final int WHEEL_LEVELS = 4;
+    /** the bucket of the slots beyond the last level */
+    private static final int OVERFLOW_BUCKET = WHEEL_LEVELS * WHEEL_SLOTS;
+
+    /** key ref of a slot never used */
+    private static final long FREE = 0L;
+    /** key ref of a slot whose key was removed, the probe must go on */
+    private static final long REMOVED = -1L;
+
+    private static final int INITIAL_SLOTS = 64;
+    private static final long INITIAL_ARENA = 1024;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final StorageManager storageManager;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    /** the length of a tick of the timing wheels in milliseconds */
+    private final long expiryResolution;
+
+    private static Unsafe getUnsafe() {
+        try {
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return (Unsafe) f.get(null);
+        } catch (Exception e) {
+            throw new RuntimeException();
+        }
+    }
+
+    /**
+     * @param storageManager resolves the block index of a slot back to its block
+     * @param concurrencyLevel there are 2^concurrencyLevel segments
+     */
+    public OffHeapPointerIndex(StorageManager storageManager, int concurrencyLevel) {
+        this(storageManager, concurrencyLevel, BigCache.DEFAULT_EXPIRY_WHEEL_RESOLUTION);
+    }
+
+    /**
+     * @param storageManager resolves the block index of a slot back to its block
+     * @param concurrencyLevel there are 2^concurrencyLevel segments
+     * @param expiryResolution the length of a tick of the timing wheels in milliseconds
+     */
+    public OffHeapPointerIndex(StorageManager storageManager, int concurrencyLevel, long expiryResolution) {
+        if(expiryResolution <= 0){
+            throw new IllegalArgumentException("expiryResolution must be > 0!");
+        }
+        this.storageManager = storageManager;
+        this.expiryResolution = expiryResolution;
+        this.segments = new Segment[1 << concurrencyLevel];
+        this.segmentMask = segments.length - 1;
+        long tick = System.currentTimeMillis() / expiryResolution;
+        for(int i = 0; i < segments.length; i++){
+            segments[i] = new Segment(expiryResolution, tick);
+        }
+    }
+
+    @Override
+    public CacheValueWrapper get(K key) throws IOException {
+        byte[] keyBytes = KeySerializer.serialize(key);
+        long hash = hash(keyBytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            long slot = segment.find(keyBytes, (int) hash);
+            return slot == 0 ? null : wrapper(slot);
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CacheValueWrapper access(K key, long accessTime) throws IOException {
+        byte[] keyBytes = KeySerializer.serialize(key);
+        long hash = hash(keyBytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            long slot = segment.find(keyBytes, (int) hash);
+            if(slot == 0){
+                return null;
+            }
+            CacheValueWrapper wrapper = wrapper(slot);
+            long lastAccessTime = wrapper.getLastAccessTime();
+            wrapper.setLastAccessTime(accessTime);
+            if(wrapper.getLastAccessTime() != lastAccessTime){
+                // concurrent readers only ever move the access time forward
+                long current;
+                do {
+                    current = UNSAFE.getLongVolatile(null, slot + LAST_ACCESS);
+                } while (current < accessTime
+                        && !UNSAFE.compareAndSwapLong(null, slot + LAST_ACCESS, current, accessTime));
+            }
+            return wrapper;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(K key, CacheValueWrapper wrapper) throws IOException {
+        byte[] keyBytes = KeySerializer.serialize(key);
+        long hash = hash(keyBytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            long slot = segment.find(keyBytes, (int) hash);
+            boolean added = slot == 0;
+            if(added){
+                slot = segment.insert(keyBytes, (int) hash);
+            }
+            Pointer pointer = wrapper.getPointer();
+            int blockIndex = pointer.getStorageBlock().getIndex();
+            boolean moved = added || blockOf(slot) != blockIndex;
+            if(moved && !added){
+                segment.unlinkBlock(segment.indexOf(slot));
+            }
+            UNSAFE.putLong(slot + BLOCK_POSITION, ((long) blockIndex << 32) | (pointer.getPosition() & 0xFFFFFFFFL));
+            if(moved){
+                segment.linkBlock(segment.indexOf(slot), blockIndex);
+            }
+            UNSAFE.putLong(slot + LENGTH, pointer.getLength());
+            UNSAFE.putLong(slot + TTI, wrapper.getTimeToIdle());
+            UNSAFE.putLong(slot + LAST_ACCESS, wrapper.getLastAccessTime());
+            UNSAFE.putLong(slot + EXPIRE_TIME, wrapper.getExpireTime());
+            int index = segment.indexOf(slot);
+            segment.unschedule(index);
+            segment.schedule(index, wrapper.getExpiryTime());
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CacheValueWrapper remove(K key) throws IOException {
+        byte[] keyBytes = KeySerializer.serialize(key);
+        long hash = hash(keyBytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            long slot = segment.find(keyBytes, (int) hash);
+            if(slot == 0){
+                return null;
+            }
+            CacheValueWrapper wrapper = wrapper(slot);
+            segment.delete(slot, keyBytes.length);
+            return wrapper;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) throws IOException {
+        byte[] keyBytes = KeySerializer.serialize(key);
+        long hash = hash(keyBytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            return segment.find(keyBytes, (int) hash) != 0;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for(Segment segment : segments){
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Every segment is copied out under its read lock, the visitor runs without holding any lock.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryVisitor<K> visitor) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        List<CacheValueWrapper> wrappers = new ArrayList<>();
+        for(Segment segment : segments){
+            segment.lock.readLock().lock();
+            try {
+                for(int i = 0; i < segment.capacity; i++){
+                    long slot = segment.table + (long) i * SLOT_SIZE;
+                    long ref = UNSAFE.getLong(slot + KEY_REF);
+                    if(ref == FREE || ref == REMOVED){
+                        continue;
+                    }
+                    keys.add(keyBytes(segment, slot, ref));
+                    wrappers.add(wrapper(slot));
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            for(int i = 0; i < keys.size(); i++){
+                visitor.visit((K) KeySerializer.deserialize(keys.get(i)), wrappers.get(i));
+            }
+            keys.clear();
+            wrappers.clear();
+        }
+    }
+
+    /**
+     * Finds the keys whose values are stored in the block by walking the chain of the block in every segment,
+     * the other keys are not looked at.
+     *
+     * @param blockIndex the index of the block
+     * @return the keys
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> keysInBlock(int blockIndex) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for(Segment segment : segments){
+            segment.lock.readLock().lock();
+            try {
+                int index = blockIndex < segment.blockHeads.length ? segment.blockHeads[blockIndex] - 1 : -1;
+                while(index >= 0){
+                    long slot = segment.slotAt(index);
+                    keys.add(keyBytes(segment, slot, UNSAFE.getLong(slot + KEY_REF)));
+                    index = (int) (UNSAFE.getLong(slot + BLOCK_LINKS) >>> 32) - 1;
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        List<K> result = new ArrayList<>(keys.size());
+        for(byte[] key : keys){
+            result.add((K) KeySerializer.deserialize(key));
+        }
+        return result;
+    }
+
+    /**
+     * Visits the entries which are expired at the given time. The timing wheel of every segment is moved up
+     * to now under its write lock, only the slots of the buckets which are due are looked at. The visitor runs
+     * without holding any lock.
+     *
+     * A due slot stays in the bucket of the next tick until its key is removed, in case the key is read
+     * before the visitor gets to it and is due later.
+     *
+     * @param now the current time in milliseconds
+     * @param visitor the visitor
+     * @throws IOException if the visitor throws
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachDue(long now, EntryVisitor<K> visitor) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        List<CacheValueWrapper> wrappers = new ArrayList<>();
+        List<Integer> due = new ArrayList<>();
+        for(Segment segment : segments){
+            segment.lock.writeLock().lock();
+            try {
+                if(segment.table == 0){
+                    continue;
+                }
+                segment.advance(now, due);
+                for(int index : due){
+                    long slot = segment.slotAt(index);
+                    keys.add(keyBytes(segment, slot, UNSAFE.getLong(slot + KEY_REF)));
+                    wrappers.add(wrapper(slot));
+                }
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+            for(int i = 0; i < keys.size(); i++){
+                visitor.visit((K) KeySerializer.deserialize(keys.get(i)), wrappers.get(i));
+            }
+            keys.clear();
+            wrappers.clear();
+            due.clear();
+        }
+    }
+
+    /**
+     * @return the # of keys in the timing wheels, which may expire and have not been visited as due yet
+     */
+    public long getExpiryBacklog() {
+        long backlog = 0;
+        for(Segment segment : segments){
+            backlog += segment.scheduled;
+        }
+        return backlog;
+    }
+
+    /**
+     * @return the # of slots the timing wheels have looked at, due or pushed down, since the index was created
+     */
+    public long getExpirySlotsVisited() {
+        long visited = 0;
+        for(Segment segment : segments){
+            visited += segment.visited;
+        }
+        return visited;
+    }
+
+    /**
+     * Picks keys at random, each one is the first key found from a random slot of a random segment.
+     *
+     * @param count the # of keys to pick, fewer may be returned if the index is (nearly) empty
+     * @return the picked keys, which may be repeated
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> sample(int count, Random random) throws IOException {
+        List<K> sample = new ArrayList<>(count);
+        for(int attempts = 0; sample.size() < count && attempts < 4 * count; attempts++){
+            Segment segment = segments[random.nextInt(segments.length)];
+            byte[] key = null;
+            segment.lock.readLock().lock();
+            try {
+                if(segment.size > 0){
+                    int start = random.nextInt(segment.capacity);
+                    for(int probes = 0; probes < segment.capacity && key == null; probes++){
+                        long slot = segment.table + (long) ((start + probes) & (segment.capacity - 1)) * SLOT_SIZE;
+                        long ref = UNSAFE.getLong(slot + KEY_REF);
+                        if(ref != FREE && ref != REMOVED){
+                            key = keyBytes(segment, slot, ref);
+                        }
+                    }
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            if(key != null){
+                sample.add((K) KeySerializer.deserialize(key));
+            }
+        }
+        return sample;
+    }
+
+    @Override
+    public void clear() {
+        for(Segment segment : segments){
+            segment.lock.writeLock().lock();
+            try {
+                segment.release();
+                segment.allocate(INITIAL_SLOTS, INITIAL_ARENA);
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for(Segment segment : segments){
+            segment.lock.writeLock().lock();
+            try {
+                segment.release();
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 48) & segmentMask];
+    }
+
+    private static int blockOf(long slot) {
+        return (int) (UNSAFE.getLong(slot + BLOCK_POSITION) >>> 32);
+    }
+
+    private static byte[] keyBytes(Segment segment, long slot, long ref) {
+        byte[] keyBytes = new byte[(int) UNSAFE.getLong(slot + HASH_KEY_LENGTH)];
+        UNSAFE.copyMemory(null, segment.arena + ref - 1, keyBytes, BYTE_ARRAY_OFFSET, keyBytes.length);
+        return keyBytes;
+    }
+
+    private CacheValueWrapper wrapper(long slot) {
+        long blockPosition = UNSAFE.getLong(slot + BLOCK_POSITION);
+        Pointer pointer = new Pointer((int) blockPosition, (int) UNSAFE.getLong(slot + LENGTH),
+                storageManager.getBlock((int) (blockPosition >>> 32)));
+        return new CacheValueWrapper(pointer, UNSAFE.getLongVolatile(null, slot + LAST_ACCESS), UNSAFE.getLong(slot + TTI),
+                UNSAFE.getLong(slot + EXPIRE_TIME));
+    }
+
+    /**
+     * @return the earliest time the entry of the slot expires at if it is not accessed any more, as
+     * {@link CacheValueWrapper#getExpiryTime()} does
+     */
+    private static long expiryTime(long slot) {
+        long expiryTime = Long.MAX_VALUE;
+        long timeToIdle = UNSAFE.getLong(slot + TTI);
+        long lastAccessTime = UNSAFE.getLongVolatile(null, slot + LAST_ACCESS);
+        if(timeToIdle > 0 && lastAccessTime >= 0){
+            long sum = lastAccessTime + timeToIdle;
+            expiryTime = sum < lastAccessTime ? Long.MAX_VALUE : sum;
+        }
+        long expireTime = UNSAFE.getLong(slot + EXPIRE_TIME);
+        if(expireTime > 0){
+            expiryTime = Math.min(expiryTime, expireTime);
+        }
+        return expiryTime;
+    }
+
+    static long hash(byte[] key) {
+        long h = 0x9E3779B97F4A7C15L ^ key.length;
+        int i = 0;
+        for(; i + 8 <= key.length; i += 8){
+            h ^= UNSAFE.getLong(key, BYTE_ARRAY_OFFSET + i) * 0xC2B2AE3D27D4EB4FL;
+            h = Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+        }
+        for(; i < key.length; i++){
+            h ^= (key[i] & 0xFF) * 0x165667B19E3779F9L;
+            h = Long.rotateLeft(h, 11) * 0x9E3779B97F4A7C15L;
+        }
+        // murmur3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static boolean keyEquals(long address, byte[] key) {
+        int i = 0;
+        for(; i + 8 <= key.length; i += 8){
+            if(UNSAFE.getLong(address + i) != UNSAFE.getLong(key, BYTE_ARRAY_OFFSET + i)){
+                return false;
+            }
+        }
+        for(; i < key.length; i++){
+            if(UNSAFE.getByte(address + i) != key[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The fields are guarded by the lock, the slots are read under the read lock and changed under the write lock.
+     */
+    private static final class Segment {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /** address of the slot table, 0 once the index is closed */
+        long table;
+        int capacity;
+        volatile int size;
+        int removed;
+
+        /** address of the key arena */
+        long arena;
+        long arenaCapacity;
+        long arenaUsed;
+        /** bytes of the removed keys which are still in the arena */
+        long arenaGarbage;
+
+        final long expiryResolution;
+
+        /** the head index + 1 of the chain of every bucket of the timing wheel, the last one is the overflow */
+        final int[] expiryBuckets = new int[OVERFLOW_BUCKET + 1];
+
+        /** the next tick of the timing wheel to expire */
+        long currentTick;
+
+        /** the # of slots in the timing wheel */
+        volatile long scheduled;
+
+        /** the # of slots looked at by the timing wheel */
+        volatile long visited;
+
+        /** the head index + 1 of the chain of the slots of every block, grown with the block indexes */
+        int[] blockHeads = new int[0];
+
+        Segment(long expiryResolution, long tick) {
+            this.expiryResolution = expiryResolution;
+            this.currentTick = tick;
+            allocate(INITIAL_SLOTS, INITIAL_ARENA);
+        }
+
+        void allocate(int slots, long arenaBytes) {
+            table = UNSAFE.allocateMemory((long) slots * SLOT_SIZE);
+            UNSAFE.setMemory(table, (long) slots * SLOT_SIZE, (byte) 0);
+            capacity = slots;
+            arena = UNSAFE.allocateMemory(arenaBytes);
+            arenaCapacity = arenaBytes;
+            arenaUsed = 0;
+            arenaGarbage = 0;
+            size = 0;
+            removed = 0;
+            Arrays.fill(expiryBuckets, 0);
+            scheduled = 0;
+            Arrays.fill(blockHeads, 0);
+        }
+
+        void release() {
+            if(table != 0){
+                UNSAFE.freeMemory(table);
+                UNSAFE.freeMemory(arena);
+            }
+            table = 0;
+            arena = 0;
+            capacity = 0;
+            arenaCapacity = 0;
+            arenaUsed = 0;
+            arenaGarbage = 0;
+            size = 0;
+            removed = 0;
+            Arrays.fill(expiryBuckets, 0);
+            scheduled = 0;
+            Arrays.fill(blockHeads, 0);
+        }
+
+        /**
+         * @return the address of the slot holding the key or 0 if the key is absent
+         */
+        long find(byte[] key, int hash) {
+            int mask = capacity - 1;
+            int i = hash & mask;
+            for(int probes = 0; probes < capacity; probes++){
+                long slot = table + (long) i * SLOT_SIZE;
+                long ref = UNSAFE.getLong(slot + KEY_REF);
+                if(ref == FREE){
+                    return 0;
+                }
+                if(ref != REMOVED){
+                    long hashKeyLength = UNSAFE.getLong(slot + HASH_KEY_LENGTH);
+                    if((int) (hashKeyLength >>> 32) == hash && (int) hashKeyLength == key.length
+                            && keyEquals(arena + ref - 1, key)){
+                        return slot;
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+            return 0;
+        }
+
+        /**
+         * Adds an absent key, the caller fills the other fields of the returned slot.
+         */
+        long insert(byte[] key, int hash) {
+            if(table == 0){
+                throw new IllegalStateException("index is closed");
+            }
+            if(size + removed + 1 > capacity * LOAD_FACTOR){
+                // only grow if the table is really full, otherwise just get rid of the removed slots
+                rehash(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity << 1 : capacity);
+            }
+            if(arenaUsed + key.length > arenaCapacity){
+                if(arenaGarbage > arenaUsed / 2){
+                    rehash(capacity);
+                }
+                if(arenaUsed + key.length > arenaCapacity){
+                    long newCapacity = arenaCapacity << 1;
+                    while (arenaUsed + key.length > newCapacity){
+                        newCapacity <<= 1;
+                    }
+                    arena = UNSAFE.reallocateMemory(arena, newCapacity);
+                    arenaCapacity = newCapacity;
+                }
+            }
+            long slot = table + (long) freeSlot(table, capacity, hash) * SLOT_SIZE;
+            if(UNSAFE.getLong(slot + KEY_REF) == REMOVED){
+                removed--;
+            }
+            UNSAFE.copyMemory(key, BYTE_ARRAY_OFFSET, null, arena + arenaUsed, key.length);
+            UNSAFE.putLong(slot + KEY_REF, arenaUsed + 1);
+            UNSAFE.putLong(slot + HASH_KEY_LENGTH, ((long) hash << 32) | key.length);
+            UNSAFE.putLong(slot + EXPIRY_LINKS, 0L);
+            UNSAFE.putLong(slot + EXPIRY_BUCKET, 0L);
+            UNSAFE.putLong(slot + BLOCK_LINKS, 0L);
+            arenaUsed += key.length;
+            size++;
+            return slot;
+        }
+
+        void delete(long slot, int keyLength) {
+            unschedule(indexOf(slot));
+            unlinkBlock(indexOf(slot));
+            int next = (int) ((slot - table) / SLOT_SIZE + 1) & (capacity - 1);
+            if(UNSAFE.getLong(table + (long) next * SLOT_SIZE + KEY_REF) == FREE){
+                // no probe goes through this slot
+                UNSAFE.putLong(slot + KEY_REF, FREE);
+            } else {
+                UNSAFE.putLong(slot + KEY_REF, REMOVED);
+                removed++;
+            }
+            arenaGarbage += keyLength;
+            size--;
+        }
+
+        /**
+         * Moves the live keys to a new table and a compacted arena.
+         */
+        void rehash(int newCapacity) {
+            long liveBytes = arenaUsed - arenaGarbage;
+            long newArenaCapacity = Math.max(INITIAL_ARENA, liveBytes + (liveBytes >> 1));
+            long newTable = UNSAFE.allocateMemory((long) newCapacity * SLOT_SIZE);
+            UNSAFE.setMemory(newTable, (long) newCapacity * SLOT_SIZE, (byte) 0);
+            long newArena = UNSAFE.allocateMemory(newArenaCapacity);
+            long newArenaUsed = 0;
+            for(int i = 0; i < capacity; i++){
+                long slot = table + (long) i * SLOT_SIZE;
+                long ref = UNSAFE.getLong(slot + KEY_REF);
+                if(ref == FREE || ref == REMOVED){
+                    continue;
+                }
+                long hashKeyLength = UNSAFE.getLong(slot + HASH_KEY_LENGTH);
+                int keyLength = (int) hashKeyLength;
+                long newSlot = newTable + (long) freeSlot(newTable, newCapacity, (int) (hashKeyLength >>> 32)) * SLOT_SIZE;
+                UNSAFE.copyMemory(slot, newSlot, SLOT_SIZE);
+                UNSAFE.copyMemory(arena + ref - 1, newArena + newArenaUsed, keyLength);
+                UNSAFE.putLong(newSlot + KEY_REF, newArenaUsed + 1);
+                newArenaUsed += keyLength;
+            }
+            UNSAFE.freeMemory(table);
+            UNSAFE.freeMemory(arena);
+            table = newTable;
+            capacity = newCapacity;
+            arena = newArena;
+            arenaCapacity = newArenaCapacity;
+            arenaUsed = newArenaUsed;
+            arenaGarbage = 0;
+            removed = 0;
+            // the slots have moved, link them again
+            Arrays.fill(expiryBuckets, 0);
+            scheduled = 0;
+            Arrays.fill(blockHeads, 0);
+            for(int i = 0; i < capacity; i++){
+                long slot = slotAt(i);
+                long ref = UNSAFE.getLong(slot + KEY_REF);
+                if(ref == FREE || ref == REMOVED){
+                    continue;
+                }
+                UNSAFE.putLong(slot + EXPIRY_LINKS, 0L);
+                UNSAFE.putLong(slot + EXPIRY_BUCKET, 0L);
+                schedule(i, expiryTime(slot));
+                linkBlock(i, blockOf(slot));
+            }
+        }
+
+        long slotAt(int index) {
+            return table + (long) index * SLOT_SIZE;
+        }
+
+        int indexOf(long slot) {
+            return (int) ((slot - table) / SLOT_SIZE);
+        }
+
+        /**
+         * links the slot into the bucket of the timing wheel of its expiry time, nothing is done if it never
+         * expires. Must be called under the write lock, the slot must not be linked.
+         */
+        void schedule(int index, long expiryTime) {
+            if(expiryTime == Long.MAX_VALUE){
+                return;
+            }
+            long tick = Math.max(expiryTime / expiryResolution, currentTick);
+            int bucket = OVERFLOW_BUCKET;
+            for(int level = 0; level < WHEEL_LEVELS; level++){
+                int shift = WHEEL_SLOT_BITS * (level + 1);
+                if((tick >>> shift) == (currentTick >>> shift)){
+                    bucket = level * WHEEL_SLOTS + (int) ((tick >>> (WHEEL_SLOT_BITS * level)) & (WHEEL_SLOTS - 1));
+                    break;
+                }
+            }
+            pushChain(expiryBuckets, bucket, index, EXPIRY_LINKS);
+            UNSAFE.putLong(slotAt(index) + EXPIRY_BUCKET, bucket + 1);
+            scheduled++;
+        }
+
+        /**
+         * unlinks the slot from the timing wheel if it is linked, must be called under the write lock.
+         */
+        void unschedule(int index) {
+            long slot = slotAt(index);
+            int bucket = (int) UNSAFE.getLong(slot + EXPIRY_BUCKET) - 1;
+            if(bucket < 0){
+                return;
+            }
+            unlinkChain(expiryBuckets, bucket, index, EXPIRY_LINKS);
+            UNSAFE.putLong(slot + EXPIRY_BUCKET, 0L);
+            scheduled--;
+        }
+
+        /**
+         * links the slot into the chain of the block, must be called under the write lock.
+         */
+        void linkBlock(int index, int blockIndex) {
+            if(blockIndex >= blockHeads.length){
+                blockHeads = Arrays.copyOf(blockHeads, Math.max(blockIndex + 1, blockHeads.length << 1));
+            }
+            pushChain(blockHeads, blockIndex, index, BLOCK_LINKS);
+        }
+
+        /**
+         * unlinks the slot from the chain of the block it is stored in, must be called under the write lock.
+         */
+        void unlinkBlock(int index) {
+            unlinkChain(blockHeads, blockOf(slotAt(index)), index, BLOCK_LINKS);
+        }
+
+        /**
+         * puts the slot first in a chain, the links at the offset hold next index + 1 << 32 | previous index + 1.
+         */
+        private void pushChain(int[] heads, int chain, int index, int links) {
+            long slot = slotAt(index);
+            int head = heads[chain];
+            UNSAFE.putLong(slot + links, (long) head << 32);
+            if(head != 0){
+                long next = slotAt(head - 1);
+                UNSAFE.putLong(next + links, (UNSAFE.getLong(next + links) & 0xFFFFFFFF00000000L) | (index + 1));
+            }
+            heads[chain] = index + 1;
+        }
+
+        private void unlinkChain(int[] heads, int chain, int index, int links) {
+            long slot = slotAt(index);
+            long value = UNSAFE.getLong(slot + links);
+            int next = (int) (value >>> 32);
+            int previous = (int) value;
+            if(previous == 0){
+                heads[chain] = next;
+            } else {
+                long previousSlot = slotAt(previous - 1);
+                UNSAFE.putLong(previousSlot + links, ((long) next << 32) | (UNSAFE.getLong(previousSlot + links) & 0xFFFFFFFFL));
+            }
+            if(next != 0){
+                long nextSlot = slotAt(next - 1);
+                UNSAFE.putLong(nextSlot + links, (UNSAFE.getLong(nextSlot + links) & 0xFFFFFFFF00000000L) | previous);
+            }
+            UNSAFE.putLong(slot + links, 0L);
+        }
+
+        /**
+         * moves the timing wheel up to now, must be called under the write lock.
+         *
+         * @param due gets the indexes of the slots which are expired, they are linked into the bucket of the
+         *            next tick
+         */
+        void advance(long now, List<Integer> due) {
+            long nowTick = now / expiryResolution;
+            if(scheduled == 0){
+                currentTick = Math.max(currentTick, nowTick + 1);
+                return;
+            }
+            while(currentTick <= nowTick){
+                cascade();
+                int bucket = (int) (currentTick & (WHEEL_SLOTS - 1));
+                int index = detach(bucket);
+                currentTick++;
+                while(index >= 0){
+                    long slot = slotAt(index);
+                    int next = unlinkDetached(slot);
+                    long expiryTime = expiryTime(slot);
+                    if(expiryTime <= now){
+                        due.add(index);
+                    } else {
+                        schedule(index, expiryTime);
+                    }
+                    index = next;
+                }
+            }
+            for(int index : due){
+                schedule(index, currentTick * expiryResolution);
+            }
+        }
+
+        /**
+         * pushes the slots of the buckets which start at the current tick down, the highest level first.
+         */
+        private void cascade() {
+            if((currentTick & ((1L << (WHEEL_SLOT_BITS * WHEEL_LEVELS)) - 1)) == 0){
+                reschedule(detach(OVERFLOW_BUCKET));
+            }
+            for(int level = WHEEL_LEVELS - 1; level > 0; level--){
+                int shift = WHEEL_SLOT_BITS * level;
+                if((currentTick & ((1L << shift) - 1)) != 0){
+                    continue;
+                }
+                reschedule(detach(level * WHEEL_SLOTS + (int) ((currentTick >>> shift) & (WHEEL_SLOTS - 1))));
+            }
+        }
+
+        private void reschedule(int index) {
+            while(index >= 0){
+                long slot = slotAt(index);
+                int next = unlinkDetached(slot);
+                schedule(index, expiryTime(slot));
+                index = next;
+            }
+        }
+
+        /**
+         * empties the bucket, its slots are unlinked one by one with {@link #unlinkDetached} while walking the chain.
+         *
+         * @return the index of the first slot of the bucket, -1 if it was empty
+         */
+        private int detach(int bucket) {
+            int head = expiryBuckets[bucket];
+            expiryBuckets[bucket] = 0;
+            return head - 1;
+        }
+
+        /**
+         * unlinks a slot of a detached chain and counts it as visited.
+         *
+         * @return the index of the next slot of the chain, -1 if it was the last one
+         */
+        private int unlinkDetached(long slot) {
+            int next = (int) (UNSAFE.getLong(slot + EXPIRY_LINKS) >>> 32) - 1;
+            UNSAFE.putLong(slot + EXPIRY_LINKS, 0L);
+            UNSAFE.putLong(slot + EXPIRY_BUCKET, 0L);
+            scheduled--;
+            visited++;
+            return next;
+        }
+
+        private static int freeSlot(long table, int capacity, int hash) {
+            int mask = capacity - 1;
+            int i = hash & mask;
+            while (true){
+                long ref = UNSAFE.getLong(table + (long) i * SLOT_SIZE + KEY_REF);
+                if(ref == FREE || ref == REMOVED){
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+}
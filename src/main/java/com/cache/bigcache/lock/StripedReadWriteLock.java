@@ -1,10 +1,22 @@
 package com.cache.bigcache.lock;
 
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Striped read write locks. Every stripe also carries a version (a seqlock) which is odd while a writer holds
+ * the stripe, so readers may skip the lock: take a stamp with {@link #tryOptimisticRead(int)}, read, and keep
+ * the result only if {@link #validate(int, long)} says no writer came in between.
+ */
 public class StripedReadWriteLock {
+    /** the versions are a cache line apart, the writers of a stripe don't disturb the readers of the others */
+    private static final int VERSION_STRIDE = 8;
+
     private final ReentrantReadWriteLock[] locks;
 
+    private final AtomicLongArray versions;
+
     public StripedReadWriteLock(){
         this(4);
     }
@@ -15,8 +27,11 @@ public class StripedReadWriteLock {
         }
         int lockSize = (int) Math.pow(2, storagePower);
         locks = new ReentrantReadWriteLock[lockSize];
+        versions = new AtomicLongArray(lockSize * VERSION_STRIDE);
         for(int i = 0; i < lockSize; i++){
             locks[i] = new ReentrantReadWriteLock();
+            // 0 is never a valid stamp
+            versions.set(i * VERSION_STRIDE, 2);
         }
     }
 
@@ -29,26 +44,69 @@ public class StripedReadWriteLock {
     }
 
     public void writeLock(int id){
-        getLock(id).writeLock().lock();
+        ReentrantReadWriteLock lock = getLock(id);
+        lock.writeLock().lock();
+        if(lock.getWriteHoldCount() == 1){
+            versions.incrementAndGet(getStripeIndex(id) * VERSION_STRIDE);
+        }
     }
 
     public void writeUnlock(int id){
-        getLock(id).writeLock().unlock();
+        ReentrantReadWriteLock lock = getLock(id);
+        if(lock.getWriteHoldCount() == 1){
+            versions.incrementAndGet(getStripeIndex(id) * VERSION_STRIDE);
+        }
+        lock.writeLock().unlock();
     }
 
     public void writeLockForAll(){
-        for(ReentrantReadWriteLock lock : locks){
-            lock.writeLock().lock();
+        for(int i = 0; i < locks.length; i++){
+            writeLock(i);
         }
     }
 
     public void writeUnlockForAll(){
-        for(ReentrantReadWriteLock lock : locks){
-            lock.writeLock().unlock();
+        for(int i = 0; i < locks.length; i++){
+            writeUnlock(i);
         }
     }
+
+    /**
+     * starts an optimistic read of the stripe associated with the id.
+     *
+     * @param id
+     * @return a stamp for {@link #validate(int, long)}, 0 if a writer holds the stripe
+     */
+    public long tryOptimisticRead(int id){
+        long version = versions.get(getStripeIndex(id) * VERSION_STRIDE);
+        return (version & 1) == 0 ? version : 0;
+    }
+
+    /**
+     * @param id
+     * @param stamp the stamp of {@link #tryOptimisticRead(int)}
+     * @return true if no writer has held the stripe since the stamp was taken, so what was read is consistent
+     */
+    public boolean validate(int id, long stamp){
+        // the reads done before must not be moved after the check of the version
+        VarHandle.acquireFence();
+        return stamp != 0 && versions.get(getStripeIndex(id) * VERSION_STRIDE) == stamp;
+    }
+
+    /**
+     * find the index of the stripe associated with the id, a thread which holds several stripes at once
+     * must lock them in ascending index order.
+     *
+     * @param id
+     * @return
+     */
+    public int getStripeIndex(int id){
+        return id & (locks.length - 1);
+    }
+
     /**
-     * find the lock associated with the id
+     * find the lock associated with the id. Writers should use {@link #writeLock(int)} instead, a write lock
+     * taken directly is not seen by the optimistic readers.
      *
      * @param id
      * @return
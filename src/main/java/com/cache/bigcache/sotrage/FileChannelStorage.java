@@ -1,21 +1,27 @@
 package com.cache.bigcache.sotrage;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class FileChannelStorage implements IStorage{
     private FileChannel fileChannel;
     private RandomAccessFile raf;
 
+    /** gathering writes go through the position of the channel, which is shared by all the writers */
+    private final Lock gatherLock = new ReentrantLock();
+
     public FileChannelStorage(String dir, int index, int capacity) throws IOException{
         File dirFile = new File(dir);
         if(!dirFile.exists()){
             dirFile.mkdirs();
         }
-        String fullName = dir + index + "-" + System.currentTimeMillis() + DATA_FILE_SUFFIX;
+        String fullName = dir + index + DATA_FILE_SUFFIX;
         raf = new RandomAccessFile(fullName, "rw");
         raf.setLength(capacity);
         fileChannel = raf.getChannel();
@@ -26,16 +32,68 @@ public class FileChannelStorage implements IStorage{
         fileChannel.read(ByteBuffer.wrap(dest), position);
     }
 
+    @Override
+    public void get(int position, ByteBuffer dest) throws IOException {
+        long offset = position;
+        while (dest.hasRemaining()){
+            int read = fileChannel.read(dest, offset);
+            if(read < 0){
+                throw new EOFException("position " + offset + " is beyond the end of the storage");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * the bytes live in the file, they can't be exposed without reading them.
+     */
+    @Override
+    public ByteBuffer slice(int position, int length) {
+        return null;
+    }
+
     @Override
     public void put(int position, byte[] source) throws IOException {
         fileChannel.write(ByteBuffer.wrap(source),position);
     }
 
+    @Override
+    public void put(int position, ByteBuffer... sources) throws IOException {
+        if(sources.length == 1){
+            ByteBuffer source = sources[0].duplicate();
+            long offset = position;
+            while (source.hasRemaining()){
+                offset += fileChannel.write(source, offset);
+            }
+            return;
+        }
+        ByteBuffer[] duplicates = new ByteBuffer[sources.length];
+        long remaining = 0;
+        for(int i = 0; i < sources.length; i++){
+            duplicates[i] = sources[i].duplicate();
+            remaining += duplicates[i].remaining();
+        }
+        gatherLock.lock();
+        try {
+            fileChannel.position(position);
+            while (remaining > 0){
+                remaining -= fileChannel.write(duplicates);
+            }
+        } finally {
+            gatherLock.unlock();
+        }
+    }
+
     @Override
     public void free() {
         // nothing to do
     }
 
+    @Override
+    public void force() throws IOException {
+        fileChannel.force(false);
+    }
+
     @Override
     public void close() throws IOException {
         if(this.fileChannel!=null){
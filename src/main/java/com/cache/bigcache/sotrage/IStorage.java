@@ -1,6 +1,7 @@
 package com.cache.bigcache.sotrage;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface IStorage extends AutoCloseable{
     public static final String DATA_FILE_SUFFIX = ".data";
@@ -13,6 +14,25 @@ public interface IStorage extends AutoCloseable{
      */
     void get(int position, byte[] dest) throws IOException;
 
+    /**
+     * reads dest.remaining() bytes from the position into dest, the position of dest is moved forward.
+     *
+     * @param position
+     * @param dest
+     * @throws IOException
+     */
+    void get(int position, ByteBuffer dest) throws IOException;
+
+    /**
+     * returns a read-only view of the stored bytes without copying them. The view is only valid as long as
+     * the bytes are not overwritten and the storage is not closed.
+     *
+     * @param position
+     * @param length
+     * @return the view or null if the bytes are not kept in memory
+     */
+    ByteBuffer slice(int position, int length);
+
     /**
      *
      * @param position
@@ -21,8 +41,26 @@ public interface IStorage extends AutoCloseable{
      */
     void put(int position, byte[] source) throws IOException;
 
+    /**
+     * writes the remaining bytes of the sources one after another from the position, the positions of the
+     * sources are not changed.
+     *
+     * @param position
+     * @param sources
+     * @throws IOException
+     */
+    void put(int position, ByteBuffer... sources) throws IOException;
+
     /**
      * free the storage
      */
     void free();
+
+    /**
+     * writes the stored bytes through to the disk, nothing to do if the storage is not backed by a file.
+     *
+     * @throws IOException
+     */
+    default void force() throws IOException {
+    }
 }
@@ -2,6 +2,7 @@ package com.cache.bigcache.sotrage;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  *
@@ -19,6 +20,23 @@ public interface IStorageBlock extends Comparable<IStorageBlock>, Closeable {
      */
     byte[] retrieve(Pointer pointer) throws IOException;
 
+    /**
+     * Copies the payload associated with the pointer into dest without an intermediate array
+     *
+     * @param pointer
+     * @param dest the buffer, it must have room for the whole payload
+     * @throws IOException
+     */
+    void retrieve(Pointer pointer, ByteBuffer dest) throws IOException;
+
+    /**
+     * Exposes the payload associated with the pointer without copying it
+     *
+     * @param pointer
+     * @return a read-only view of the payload, or null if the payload is not kept in memory
+     */
+    ByteBuffer slice(Pointer pointer);
+
     /**
      * Removes the payload and marks the used space as dirty
      *
@@ -44,6 +62,14 @@ public interface IStorageBlock extends Comparable<IStorageBlock>, Closeable {
      */
     Pointer store(byte[] payload) throws IOException;
 
+    /**
+     * stores the remaining bytes of the buffers as one payload, the buffers are not consumed
+     * @param payload
+     * @return
+     * @throws IOException
+     */
+    Pointer store(ByteBuffer... payload) throws IOException;
+
     /**
      * Update the payload by marking exSpace as dirty
      *
@@ -54,6 +80,16 @@ public interface IStorageBlock extends Comparable<IStorageBlock>, Closeable {
      */
     Pointer update(Pointer pointer, byte[] payload) throws IOException;
 
+    /**
+     * Update the payload with the remaining bytes of the buffers
+     *
+     * @param pointer
+     * @param payload
+     * @return
+     * @throws IOException
+     */
+    Pointer update(Pointer pointer, ByteBuffer... payload) throws IOException;
+
     /**
      *
      * @return the total size of the dirty space
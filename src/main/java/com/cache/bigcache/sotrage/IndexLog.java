@@ -0,0 +1,321 @@
+package com.cache.bigcache.sotrage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The append-only index file of one storage block.
+ *
+ * Layout: a header (magic, version) followed by records
+ * [sequence:long][type:byte][keyLength:int][key][position:int][length:int][tti:long][lastAccess:long][expireTime:long][crc:int],
+ * remove records have no fields between the key and the CRC32C, which covers all the bytes of the record before it.
+ * The first record which is torn (crash while appending), corrupted or has a key longer than the rest of the file
+ * ends the log, it is cut off the file on read together with everything after it.
+ * A log of version 1 or 2, whose records have no checksum, is upgraded when it is opened.
+ *
+ * The appended records are buffered, they reach the file on {@link #flush()} and the disk on {@link #sync()}.
+ *
+ * @Author: fake1997
+ */
+public class IndexLog implements Closeable {
+    public static final String INDEX_FILE_SUFFIX = ".index";
+
+    private static final String REWRITE_FILE_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x4A434958; // "JCIX"
+
+    /** 2 added the expire time to the put records, 3 the checksum */
+    private static final int VERSION = 3;
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private final File rewriteFile;
+
+    private FileOutputStream fileOut;
+
+    private DataOutputStream out;
+
+    /** the checksum of the record being appended, it is fed by out */
+    private final CRC32C crc = new CRC32C();
+
+    /** true if we are writing a compacted copy which replaces the file when finished */
+    private boolean rewriting;
+
+    /** guards the stream, a lock rather than a monitor as it is held during file I/O */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public IndexLog(String dir, int index) throws IOException {
+        File dirFile = new File(dir);
+        if(!dirFile.exists()){
+            dirFile.mkdirs();
+        }
+        this.file = new File(dir + index + INDEX_FILE_SUFFIX);
+        this.rewriteFile = new File(dir + index + INDEX_FILE_SUFFIX + REWRITE_FILE_SUFFIX);
+        int version = readVersion(file);
+        if(version == 1 || version == 2){
+            upgrade(version, index);
+        } else if(version != VERSION){
+            writeHeader(file);
+        }
+        openAppend(file);
+    }
+
+    /**
+     * Reads all the complete records of the log, the torn tail (if any) is cut off the file.
+     *
+     * @return the records in the order they were appended
+     * @throws IOException
+     */
+    public List<IndexRecord> read(int blockIndex) throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+            List<IndexRecord> records = new ArrayList<>();
+            long fileLength = file.length();
+            long validLength = HEADER_LENGTH;
+            CRC32C readCrc = new CRC32C();
+            try(DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), readCrc))){
+                in.readInt();
+                in.readInt();
+                IndexRecord record;
+                while ((record = readRecord(in, readCrc, VERSION, blockIndex, fileLength - validLength)) != null){
+                    records.add(record);
+                    validLength += recordLength(record.getType(), record.getKey().length, VERSION);
+                }
+            }
+            if(fileLength > validLength){
+                out.close();
+                try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+                    raf.setLength(validLength);
+                }
+                openAppend(file);
+            }
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(IndexRecord record) throws IOException {
+        lock.lock();
+        try {
+            writeRecord(out, crc, record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * hands the buffered records to the file system, they survive a crash of the process but not of the machine.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * writes the buffered records through to the disk, they survive a crash of the machine.
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+            fileOut.getChannel().force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * drop all the records, used when the block is freed.
+     */
+    public void truncate() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+            writeHeader(rewriting ? rewriteFile : file);
+            openAppend(rewriting ? rewriteFile : file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts writing a compacted copy of the log, the appended records go to the copy until
+     * {@link #finishRewrite()} atomically replaces the current log with it.
+     */
+    public void startRewrite() throws IOException {
+        lock.lock();
+        try {
+            if(rewriting){
+                return;
+            }
+            out.close();
+            writeHeader(rewriteFile);
+            openAppend(rewriteFile);
+            rewriting = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void finishRewrite() throws IOException {
+        lock.lock();
+        try {
+            if(!rewriting){
+                return;
+            }
+            // the copy must be on disk before it replaces the log
+            out.flush();
+            fileOut.getChannel().force(false);
+            out.close();
+            Files.move(rewriteFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openAppend(file);
+            rewriting = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if(rewriting){
+                finishRewrite();
+            }
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openAppend(File f) throws IOException {
+        fileOut = new FileOutputStream(f, true);
+        out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE), crc));
+    }
+
+    private static void writeHeader(File f) throws IOException {
+        try(DataOutputStream header = new DataOutputStream(new FileOutputStream(f, false))){
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * @return the version of the log, -1 if the file is not a log
+     */
+    private static int readVersion(File f) throws IOException {
+        if(!f.isFile() || f.length() < HEADER_LENGTH){
+            return -1;
+        }
+        try(DataInputStream in = new DataInputStream(new FileInputStream(f))){
+            return in.readInt() == MAGIC ? in.readInt() : -1;
+        }
+    }
+
+    /**
+     * rewrites a log of an older version with the current layout, the entries of version 1 never expire at a fixed time.
+     */
+    private void upgrade(int version, int blockIndex) throws IOException {
+        writeHeader(rewriteFile);
+        long fileLength = file.length();
+        long validLength = HEADER_LENGTH;
+        CRC32C readCrc = new CRC32C();
+        CRC32C writeCrc = new CRC32C();
+        try(DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), readCrc));
+            FileOutputStream upgradedFile = new FileOutputStream(rewriteFile, true)){
+            DataOutputStream upgraded = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(upgradedFile, BUFFER_SIZE), writeCrc));
+            in.readInt();
+            in.readInt();
+            IndexRecord record;
+            while ((record = readRecord(in, readCrc, version, blockIndex, fileLength - validLength)) != null){
+                writeRecord(upgraded, writeCrc, record);
+                validLength += recordLength(record.getType(), record.getKey().length, version);
+            }
+            upgraded.flush();
+            upgradedFile.getChannel().force(false);
+        }
+        Files.move(rewriteFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param crc the checksum fed by in
+     * @param remaining the # of bytes left in the file from the start of the record
+     * @return the next record, null at the end of the log or at a torn or corrupted record
+     */
+    private static IndexRecord readRecord(DataInputStream in, CRC32C crc, int version, int blockIndex, long remaining) throws IOException {
+        try {
+            crc.reset();
+            long sequence = in.readLong();
+            byte type = in.readByte();
+            int keyLength = in.readInt();
+            // a garbage length must not make us allocate more than the file holds
+            if((type != IndexRecord.TYPE_PUT && type != IndexRecord.TYPE_REMOVE)
+                    || keyLength < 0 || keyLength > remaining - recordLength(type, 0, version)){
+                return null;
+            }
+            byte[] key = new byte[keyLength];
+            in.readFully(key);
+            IndexRecord record;
+            if(type == IndexRecord.TYPE_REMOVE){
+                record = new IndexRecord(sequence, type, key, blockIndex, -1, -1, -1L, -1L);
+            } else {
+                int position = in.readInt();
+                int length = in.readInt();
+                long tti = in.readLong();
+                long lastAccess = in.readLong();
+                long expireTime = version > 1 ? in.readLong() : -1L;
+                record = new IndexRecord(sequence, type, key, blockIndex, position, length, tti, lastAccess, expireTime);
+            }
+            if(version > 2 && (int) crc.getValue() != in.readInt()){
+                return null;
+            }
+            return record;
+        } catch (EOFException e){
+            return null;
+        }
+    }
+
+    private static long recordLength(byte type, int keyLength, int version){
+        long recordLength = 8 + 1 + 4 + keyLength + (version > 2 ? 4 : 0);
+        if(type == IndexRecord.TYPE_PUT){
+            recordLength += 4 + 4 + 8 + 8 + (version > 1 ? 8 : 0);
+        }
+        return recordLength;
+    }
+
+    /**
+     * @param crc the checksum fed by out
+     */
+    private static void writeRecord(DataOutputStream out, CRC32C crc, IndexRecord record) throws IOException {
+        crc.reset();
+        out.writeLong(record.getSequence());
+        out.writeByte(record.getType());
+        out.writeInt(record.getKey().length);
+        out.write(record.getKey());
+        if(record.getType() == IndexRecord.TYPE_PUT){
+            out.writeInt(record.getPosition());
+            out.writeInt(record.getLength());
+            out.writeLong(record.getTimeToIdle());
+            out.writeLong(record.getLastAccessTime());
+            out.writeLong(record.getExpireTime());
+        }
+        out.writeInt((int) crc.getValue());
+    }
+}
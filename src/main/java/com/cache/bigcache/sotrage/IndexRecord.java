@@ -0,0 +1,93 @@
+package com.cache.bigcache.sotrage;
+
+/**
+ * One entry of the on-disk index, it records where the value of a key lives or that the key has left the block.
+ */
+public class IndexRecord {
+    public static final byte TYPE_PUT = 1;
+    public static final byte TYPE_REMOVE = 2;
+
+    /** global sequence number, the record with the biggest one wins during recovery */
+    private final long sequence;
+
+    private final byte type;
+
+    /** the serialized key */
+    private final byte[] key;
+
+    private final int blockIndex;
+    private final int position;
+    private final int length;
+
+    /** time to idle in millisecond */
+    private final long timeToIdle;
+
+    private final long lastAccessTime;
+
+    /** absolute expiry time in millisecond, -1 for none */
+    private final long expireTime;
+
+    public IndexRecord(long sequence, byte type, byte[] key, int blockIndex, int position, int length, long timeToIdle, long lastAccessTime) {
+        this(sequence, type, key, blockIndex, position, length, timeToIdle, lastAccessTime, -1L);
+    }
+
+    public IndexRecord(long sequence, byte type, byte[] key, int blockIndex, int position, int length, long timeToIdle, long lastAccessTime, long expireTime) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.blockIndex = blockIndex;
+        this.position = position;
+        this.length = length;
+        this.timeToIdle = timeToIdle;
+        this.lastAccessTime = lastAccessTime;
+        this.expireTime = expireTime;
+    }
+
+    public static IndexRecord put(long sequence, byte[] key, Pointer pointer, long timeToIdle, long lastAccessTime, long expireTime){
+        return new IndexRecord(sequence, TYPE_PUT, key, pointer.getStorageBlock().getIndex(), pointer.getPosition(), pointer.getLength(), timeToIdle, lastAccessTime, expireTime);
+    }
+
+    public static IndexRecord remove(long sequence, byte[] key, Pointer pointer){
+        return new IndexRecord(sequence, TYPE_REMOVE, key, pointer.getStorageBlock().getIndex(), -1, -1, -1L, -1L);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public boolean isRemove(){
+        return type == TYPE_REMOVE;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public int getBlockIndex() {
+        return blockIndex;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getTimeToIdle() {
+        return timeToIdle;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public long getExpireTime() {
+        return expireTime;
+    }
+}
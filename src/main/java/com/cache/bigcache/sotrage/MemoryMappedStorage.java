@@ -9,68 +9,79 @@ import java.nio.channels.FileChannel;
 
 public class MemoryMappedStorage implements IStorage{
     private RandomAccessFile raf;
-    private ThreadLocalByteBuffer threadLocalByteBuffer;
+    private MappedByteBuffer mappedByteBuffer;
+    private final boolean writeBack;
 
     public MemoryMappedStorage(String dir, int index, int capacity) throws IOException{
+        this(dir, index, capacity, FileChannel.MapMode.PRIVATE);
+    }
+
+    /**
+     * @param mapMode PRIVATE never writes back to the file, READ_WRITE is needed if the data should survive a restart
+     */
+    public MemoryMappedStorage(String dir, int index, int capacity, FileChannel.MapMode mapMode) throws IOException{
         File backFile = new File(dir);
         if(!backFile.exists()){
-            backFile.exists();
+            backFile.mkdirs();
         }
-        String backFileName = dir + index + "-" + System.currentTimeMillis() + DATA_FILE_SUFFIX;
+        String backFileName = dir + index + DATA_FILE_SUFFIX;
         raf = new RandomAccessFile(backFileName,"rw");
-        MappedByteBuffer mappedByteBuffer = raf.getChannel().map(FileChannel.MapMode.PRIVATE, 0, capacity);
-        threadLocalByteBuffer = new ThreadLocalByteBuffer(mappedByteBuffer);
+        mappedByteBuffer = raf.getChannel().map(mapMode, 0, capacity);
+        writeBack = mapMode == FileChannel.MapMode.READ_WRITE;
     }
 
-    private ByteBuffer getLocal(int position){
-        ByteBuffer buffer = threadLocalByteBuffer.getSourceBuffer();
-        buffer.position(position);
-        return buffer;
+    @Override
+    public void get(int position, byte[] dest) throws IOException {
+        // absolute bulk operations leave the shared position alone, no per-thread duplicates are needed
+        mappedByteBuffer.get(position, dest);
     }
 
     @Override
-    public void get(int position, byte[] dest) throws IOException {
-        ByteBuffer buffer = getLocal(position);
-        buffer.get(dest);
+    public void get(int position, ByteBuffer dest) throws IOException {
+        dest.put(mappedByteBuffer.slice(position, dest.remaining()));
     }
 
     @Override
-    public void put(int position, byte[] source) throws IOException {
-        ByteBuffer buffer = getLocal(position);
-        buffer.put(source);
+    public ByteBuffer slice(int position, int length) {
+        return mappedByteBuffer.slice(position, length).asReadOnlyBuffer();
     }
 
     @Override
-    public void free() {
-        MappedByteBuffer buffer = (MappedByteBuffer)threadLocalByteBuffer.getSourceBuffer();
-        buffer.clear();
+    public void put(int position, byte[] source) throws IOException {
+        mappedByteBuffer.put(position, source);
     }
 
     @Override
-    public void close() throws Exception {
-        if(raf!=null){
-            raf.close();
+    public void put(int position, ByteBuffer... sources) throws IOException {
+        for(ByteBuffer source : sources){
+            int length = source.remaining();
+            mappedByteBuffer.put(position, source, source.position(), length);
+            position += length;
         }
-        // implies system gc
-        threadLocalByteBuffer.set(null);
-        threadLocalByteBuffer = null;
     }
 
-    private static class ThreadLocalByteBuffer extends ThreadLocal<ByteBuffer> {
-        private ByteBuffer _src;
-        private ThreadLocalByteBuffer(ByteBuffer src){
-            this._src = src;
-        }
+    @Override
+    public void free() {
+        mappedByteBuffer.clear();
+    }
 
-        public ByteBuffer getSourceBuffer(){
-            return this._src;
+    @Override
+    public void force() throws IOException {
+        // a private mapping is never written back
+        if(writeBack){
+            mappedByteBuffer.force();
         }
+    }
 
-        @Override
-        protected synchronized ByteBuffer initialValue(){
-            ByteBuffer dup = _src.duplicate();
-            return dup;
+    @Override
+    public void close() throws Exception {
+        if(writeBack){
+            mappedByteBuffer.force();
         }
-
+        if(raf!=null){
+            raf.close();
+        }
+        // implies system gc
+        mappedByteBuffer = null;
     }
 }
@@ -3,8 +3,10 @@ package com.cache.bigcache.sotrage;
 import sun.misc.Unsafe;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -14,9 +16,14 @@ public class OffHeapStorage implements IStorage {
 
     private static final Unsafe UNSAFE = getUnsafe();
     private static final long BYTE_ARRAY_OFFSET = (long) UNSAFE.arrayBaseOffset(byte[].class);
+    private static final long BUFFER_ADDRESS_OFFSET = fieldOffset("address");
+    private static final long BUFFER_CAPACITY_OFFSET = fieldOffset("capacity");
 
     private final long address;
 
+    /** a direct buffer over the whole storage which does not own the memory, used to hand out slices */
+    private final ByteBuffer view;
+
     private static Unsafe getUnsafe() {
         try {
             Field f = Unsafe.class.getDeclaredField("theUnsafe");
@@ -27,12 +34,27 @@ public class OffHeapStorage implements IStorage {
         }
     }
 
+    private static long fieldOffset(String name) {
+        try {
+            return UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField(name));
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public OffHeapStorage(int capacity) {
         this.address = UNSAFE.allocateMemory(capacity);
+        // a duplicate has no cleaner, so the view never frees the memory
+        this.view = ByteBuffer.allocateDirect(0).duplicate();
+        UNSAFE.putLong(view, BUFFER_ADDRESS_OFFSET, address);
+        UNSAFE.putInt(view, BUFFER_CAPACITY_OFFSET, capacity);
+        view.clear();
     }
 
     public OffHeapStorage(int capacity, ByteBuffer byteBuffer) {
-        this.buffer = ByteBuffer.allocateDirect(capacity);
+        // keep the buffer reachable, its memory is freed once it is collected
+        this.buffer = byteBuffer;
+        this.view = byteBuffer.duplicate();
         try {
             Method method = byteBuffer.getClass().getDeclaredMethod("address");
             method.setAccessible(true);
@@ -58,6 +80,19 @@ public class OffHeapStorage implements IStorage {
         UNSAFE.copyMemory(null, baseAddress, dest, destOffset, length);
     }
 
+    @Override
+    public void get(int position, ByteBuffer dest) throws IOException {
+        assert !disposed.get() : "disposed";
+        assert position >= 0 : position;
+        dest.put(view.slice(position, dest.remaining()));
+    }
+
+    @Override
+    public ByteBuffer slice(int position, int length) {
+        assert !disposed.get() : "disposed";
+        return view.slice(position, length).asReadOnlyBuffer();
+    }
+
     @Override
     public void put(int position, byte[] source) throws IOException {
         assert !disposed.get() : "disposed";
@@ -69,6 +104,27 @@ public class OffHeapStorage implements IStorage {
         UNSAFE.copyMemory(source, sourceOffset, null, baseAddress, length);
     }
 
+    @Override
+    public void put(int position, ByteBuffer... sources) throws IOException {
+        assert !disposed.get() : "disposed";
+        assert position >= 0 : position;
+        long target = address + position;
+        for(ByteBuffer source : sources){
+            int length = source.remaining();
+            if(source.isDirect()){
+                UNSAFE.copyMemory(UNSAFE.getLong(source, BUFFER_ADDRESS_OFFSET) + source.position(), target, length);
+                // the memory of the source must not be freed before the copy is done
+                Reference.reachabilityFence(source);
+            } else if(source.hasArray()){
+                this.put(BYTE_ARRAY_OFFSET + source.arrayOffset() + source.position(), source.array(), target, length);
+            } else {
+                // read-only heap buffer
+                view.slice((int) (target - address), length).put(source.duplicate());
+            }
+            target += length;
+        }
+    }
+
     @Override
     public void free() {
         // do nothing
@@ -0,0 +1,148 @@
+package com.cache.bigcache.sotrage;
+
+import java.util.Arrays;
+
+/**
+ * The released extents of a block, segregated by size class: class k holds the extents of 2^k up to
+ * 2^(k+1) - 1 bytes, so any extent of a class above the one of a request is big enough for it.
+ *
+ * An allocation takes the first extent which fits, the rest of it goes back to its own class. The extents
+ * are not coalesced and the ones smaller than {@value #MIN_EXTENT} bytes are not kept.
+ *
+ * Not thread safe, the block guards it.
+ */
+class SizeClassFreeList {
+    static final int MIN_CLASS = 4;
+
+    /** the smallest extent worth keeping */
+    static final int MIN_EXTENT = 1 << MIN_CLASS;
+
+    private static final int CLASSES = Integer.SIZE;
+
+    /** the # of extents of the class of a request looked at, as they may be too small for it */
+    private static final int FIT_SCAN = 8;
+
+    /** the extents of every class as (offset << 32 | length), used as stacks */
+    private final long[][] extents = new long[CLASSES][];
+
+    private final int[] counts = new int[CLASSES];
+
+    /** bit k is set if class k has extents */
+    private long classMask;
+
+    private int extentCount;
+
+    private long freeBytes;
+
+    /**
+     * @return the class of the extents of the length
+     */
+    static int classOf(int length){
+        return 31 - Integer.numberOfLeadingZeros(length);
+    }
+
+    /**
+     * @return the classes which may hold an extent of at least the length
+     */
+    static long fittingClasses(int length){
+        return -1L << classOf(Math.max(length, 1));
+    }
+
+    /**
+     * @return false if the extent is too small to be kept
+     */
+    boolean add(int offset, int length){
+        if(length < MIN_EXTENT){
+            return false;
+        }
+        int sizeClass = classOf(length);
+        long[] stack = extents[sizeClass];
+        if(stack == null){
+            stack = new long[8];
+            extents[sizeClass] = stack;
+        } else if(counts[sizeClass] == stack.length){
+            stack = Arrays.copyOf(stack, stack.length * 2);
+            extents[sizeClass] = stack;
+        }
+        stack[counts[sizeClass]++] = ((long) offset << 32) | length;
+        classMask |= 1L << sizeClass;
+        extentCount++;
+        freeBytes += length;
+        return true;
+    }
+
+    /**
+     * takes the space of the length out of an extent, the rest of the extent stays free.
+     *
+     * @return the offset of the space or -1 if no extent fits
+     */
+    int take(int length){
+        if(length <= 0){
+            return -1;
+        }
+        int sizeClass = classOf(length);
+        int count = counts[sizeClass];
+        for(int i = count - 1; i >= Math.max(0, count - FIT_SCAN); i--){
+            if((int) extents[sizeClass][i] >= length){
+                return split(sizeClass, i, length);
+            }
+        }
+        long bigger = sizeClass + 1 < CLASSES ? classMask & (-1L << (sizeClass + 1)) : 0;
+        if(bigger == 0){
+            return -1;
+        }
+        int biggerClass = Long.numberOfTrailingZeros(bigger);
+        return split(biggerClass, counts[biggerClass] - 1, length);
+    }
+
+    private int split(int sizeClass, int position, int length){
+        long extent = extents[sizeClass][position];
+        int last = --counts[sizeClass];
+        extents[sizeClass][position] = extents[sizeClass][last];
+        if(last == 0){
+            classMask &= ~(1L << sizeClass);
+        }
+        extentCount--;
+        int offset = (int) (extent >>> 32);
+        int extentLength = (int) extent;
+        freeBytes -= extentLength;
+        // a rest too small to be kept stays dirty until the block is compacted
+        add(offset + length, extentLength - length);
+        return offset;
+    }
+
+    void clear(){
+        Arrays.fill(extents, null);
+        Arrays.fill(counts, 0);
+        classMask = 0;
+        extentCount = 0;
+        freeBytes = 0;
+    }
+
+    long getClassMask(){
+        return classMask;
+    }
+
+    int getExtentCount(){
+        return extentCount;
+    }
+
+    long getFreeBytes(){
+        return freeBytes;
+    }
+
+    /**
+     * @return the length of the biggest extent, 0 if there is none
+     */
+    int getLargestExtent(){
+        if(classMask == 0){
+            return 0;
+        }
+        int sizeClass = 63 - Long.numberOfLeadingZeros(classMask);
+        int largest = 0;
+        for(int i = 0; i < counts[sizeClass]; i++){
+            largest = Math.max(largest, (int) extents[sizeClass][i]);
+        }
+        return largest;
+    }
+}
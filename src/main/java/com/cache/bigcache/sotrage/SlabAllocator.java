@@ -0,0 +1,296 @@
+package com.cache.bigcache.sotrage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out the space of a block in fixed size chunks, memcached style. The chunk sizes grow from
+ * {@value #MIN_CHUNK_SIZE} bytes by a factor of {@value #GROWTH_FACTOR}, a value takes the smallest chunk
+ * which holds it. A class takes a page of {@value #PAGE_SIZE} bytes from the block when its pages are full
+ * and keeps it until the block is freed.
+ *
+ * A released chunk is pushed on the free stack of its class and handed out again in O(1). The values bigger
+ * than {@link #MAX_CHUNK_SIZE} do not go through the slabs.
+ */
+class SlabAllocator {
+    static final int PAGE_SIZE = 1024 * 1024;
+
+    static final int MIN_CHUNK_SIZE = 32;
+
+    static final double GROWTH_FACTOR = 1.25;
+
+    /** the biggest chunk, a page holds at least two of them */
+    static final int MAX_CHUNK_SIZE = PAGE_SIZE / 2;
+
+    private static final int[] CHUNK_SIZES = chunkSizes();
+
+    private final SlabClass[] classes = new SlabClass[CHUNK_SIZES.length];
+
+    private final PageSource pageSource;
+
+    /** bit k is set if class k has free chunks, readable without any lock */
+    private final AtomicLong freeClassMask = new AtomicLong();
+
+    /** the bytes of the chunks handed out */
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /** the bytes of the chunks released since the block was freed and not handed out again */
+    private final AtomicLong freeBytes = new AtomicLong();
+
+    /** the bytes of the released chunks handed out again */
+    private final AtomicLong reusedBytes = new AtomicLong();
+
+    /** false while the block is being evacuated or freed, no chunk is handed out */
+    private volatile boolean enabled = true;
+
+    SlabAllocator(PageSource pageSource){
+        this.pageSource = pageSource;
+        for(int i = 0; i < classes.length; i++){
+            classes[i] = new SlabClass(CHUNK_SIZES[i]);
+        }
+    }
+
+    private static int[] chunkSizes(){
+        int[] sizes = new int[Long.SIZE];
+        int count = 0;
+        int size = MIN_CHUNK_SIZE;
+        while(size < MAX_CHUNK_SIZE){
+            sizes[count++] = size;
+            // the chunks stay 8 bytes aligned
+            size = Math.min(MAX_CHUNK_SIZE, ((int) (size * GROWTH_FACTOR) + 7) & ~7);
+        }
+        sizes[count++] = MAX_CHUNK_SIZE;
+        return Arrays.copyOf(sizes, count);
+    }
+
+    /**
+     * @return true if the value of the length is stored in a chunk
+     */
+    static boolean fits(int length){
+        return length > 0 && length <= MAX_CHUNK_SIZE;
+    }
+
+    /**
+     * @return the class of the chunks which hold the values of the length, the length must fit
+     */
+    static int classOf(int length){
+        int low = 0;
+        int high = CHUNK_SIZES.length - 1;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(CHUNK_SIZES[middle] < length){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static int chunkSize(int length){
+        return CHUNK_SIZES[classOf(length)];
+    }
+
+    /**
+     * @param length the length of the value, it must fit
+     * @param freeOnly true to only hand out a released chunk, no new one is carved
+     * @return the offset of the chunk or -1 if there is none
+     */
+    int allocate(int length, boolean freeOnly){
+        int sizeClass = classOf(length);
+        if(freeOnly && (freeClassMask.get() & (1L << sizeClass)) == 0){
+            return -1;
+        }
+        SlabClass slabClass = classes[sizeClass];
+        slabClass.lock.lock();
+        try {
+            if(!enabled){
+                return -1;
+            }
+            int offset;
+            if(slabClass.freeCount > 0){
+                offset = slabClass.free[--slabClass.freeCount];
+                if(slabClass.freeCount == 0){
+                    clearFree(sizeClass);
+                }
+                freeBytes.addAndGet(-slabClass.chunkSize);
+                reusedBytes.addAndGet(slabClass.chunkSize);
+            } else if(freeOnly){
+                return -1;
+            } else {
+                if(slabClass.next + slabClass.chunkSize > slabClass.end){
+                    int page = pageSource.allocatePage(PAGE_SIZE);
+                    if(page < 0){
+                        return -1;
+                    }
+                    slabClass.next = page;
+                    slabClass.end = page + PAGE_SIZE;
+                }
+                offset = slabClass.next;
+                slabClass.next += slabClass.chunkSize;
+            }
+            // counted under the lock, so the block is never seen empty while a chunk is being written
+            usedBytes.addAndGet(slabClass.chunkSize);
+            return offset;
+        } finally {
+            slabClass.lock.unlock();
+        }
+    }
+
+    /**
+     * gives the chunk of the value back to its class.
+     */
+    void release(int offset, int length){
+        int sizeClass = classOf(length);
+        SlabClass slabClass = classes[sizeClass];
+        slabClass.lock.lock();
+        try {
+            usedBytes.addAndGet(-slabClass.chunkSize);
+            freeBytes.addAndGet(slabClass.chunkSize);
+            if(!enabled){
+                return;
+            }
+            if(slabClass.freeCount == slabClass.free.length){
+                slabClass.free = Arrays.copyOf(slabClass.free, Math.max(16, slabClass.free.length * 2));
+            }
+            slabClass.free[slabClass.freeCount++] = offset;
+            if(slabClass.freeCount == 1){
+                freeClassMask.getAndUpdate((long mask) -> mask | (1L << sizeClass));
+            }
+        } finally {
+            slabClass.lock.unlock();
+        }
+    }
+
+    private void clearFree(int sizeClass){
+        freeClassMask.getAndUpdate((long mask) -> mask & ~(1L << sizeClass));
+    }
+
+    /**
+     * @return true if a released chunk can hold a value of the length
+     */
+    boolean hasFreeChunk(int length){
+        return fits(length) && (freeClassMask.get() & (1L << classOf(length))) != 0;
+    }
+
+    /**
+     * stops handing out chunks, the released chunks are forgotten but still counted as free bytes.
+     *
+     * @param ifUnused only disables if no chunk is in use, checked with all the classes locked
+     * @return false if a chunk is still in use
+     */
+    boolean disable(boolean ifUnused){
+        lockAll();
+        try {
+            if(ifUnused && usedBytes.get() != 0){
+                return false;
+            }
+            enabled = false;
+            for(SlabClass slabClass : classes){
+                slabClass.forget();
+            }
+            freeClassMask.set(0);
+            return true;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * forgets all the pages and chunks, the block is empty again.
+     */
+    void reset(){
+        lockAll();
+        try {
+            for(SlabClass slabClass : classes){
+                slabClass.forget();
+                slabClass.next = 0;
+                slabClass.end = 0;
+            }
+            freeClassMask.set(0);
+            usedBytes.set(0);
+            freeBytes.set(0);
+            enabled = true;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void lockAll(){
+        for(SlabClass slabClass : classes){
+            slabClass.lock.lock();
+        }
+    }
+
+    private void unlockAll(){
+        for(int i = classes.length - 1; i >= 0; i--){
+            classes[i].lock.unlock();
+        }
+    }
+
+    long getUsedBytes(){
+        return usedBytes.get();
+    }
+
+    long getFreeBytes(){
+        return freeBytes.get();
+    }
+
+    long getReusedBytes(){
+        return reusedBytes.get();
+    }
+
+    /**
+     * @return the # of released chunks which can be handed out again
+     */
+    int getFreeChunkCount(){
+        int count = 0;
+        for(SlabClass slabClass : classes){
+            slabClass.lock.lock();
+            try {
+                count += slabClass.freeCount;
+            } finally {
+                slabClass.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the size of the biggest chunk which can be handed out again, 0 if there is none
+     */
+    int getLargestFreeChunk(){
+        long mask = freeClassMask.get();
+        return mask == 0 ? 0 : CHUNK_SIZES[63 - Long.numberOfLeadingZeros(mask)];
+    }
+
+    interface PageSource {
+        /**
+         * @return the offset of the page or -1 if the block is full
+         */
+        int allocatePage(int pageSize);
+    }
+
+    private static class SlabClass {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int chunkSize;
+
+        /** the offsets of the released chunks, used as a stack */
+        private int[] free = new int[0];
+        private int freeCount;
+
+        /** the next chunk of the current page and the end of that page */
+        private int next;
+        private int end;
+
+        SlabClass(int chunkSize){
+            this.chunkSize = chunkSize;
+        }
+
+        void forget(){
+            free = new int[0];
+            freeCount = 0;
+        }
+    }
+}
@@ -3,7 +3,12 @@ package com.cache.bigcache.sotrage;
 import com.cache.bigcache.CacheConfig.StorageMode;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class StorageBlock implements IStorageBlock{
     /** the index of block among all free blocks in freeBlockQueue */
@@ -24,7 +29,45 @@ public class StorageBlock implements IStorageBlock{
     /** the used storage */
     private final AtomicInteger usedStorage = new AtomicInteger(0);
 
+    /** the on-disk index of the block, null if the block is not persistent */
+    private IndexLog indexLog;
+
+    /** when the block stopped being the active one, Long.MAX_VALUE while it is active or free */
+    private volatile long sealTime = Long.MAX_VALUE;
+
+    /** the released extents which new values may reuse, null if the space is only reused by compaction */
+    private final SizeClassFreeList freeList;
+
+    /** guards the free list and the accounting of the space taken from it */
+    private final ReentrantLock freeListLock = new ReentrantLock();
+
+    /** the size classes which have free extents, readable without the lock */
+    private volatile long freeClassMask;
+
+    /** false once the block is being evacuated or freed, until it is reused */
+    private volatile boolean reuseEnabled;
+
+    /** the bytes stored into released extents */
+    private final AtomicLong reusedBytes = new AtomicLong(0);
+
+    /** the chunks of the small values in the SlabOffHeap mode, null otherwise */
+    private final SlabAllocator slabs;
+
     public StorageBlock(String dir, int index, int capacity, StorageMode storageMode) throws IOException{
+        this(dir, index, capacity, storageMode, false);
+    }
+
+    public StorageBlock(String dir, int index, int capacity, StorageMode storageMode, boolean persistent) throws IOException{
+        this(dir, index, capacity, storageMode, persistent, false);
+    }
+
+    /**
+     * @param persistent keeps the data and an index of it on disk so that the block can be recovered after restart,
+     *                   only file backed storage modes can be persistent.
+     * @param freeListEnabled keeps the extents released by removes and updates in size class free lists and
+     *                        reuses them, ignored by persistent blocks whose index may still point at them.
+     */
+    public StorageBlock(String dir, int index, int capacity, StorageMode storageMode, boolean persistent, boolean freeListEnabled) throws IOException{
         this.index = index;
         this.capacity = capacity;
         switch (storageMode){
@@ -33,14 +76,29 @@ public class StorageBlock implements IStorageBlock{
                 break;
             }
             case MemoryMappedPlusFile -> {
-                underlyingStorage = new MemoryMappedStorage(dir, index, capacity);
+                underlyingStorage = new MemoryMappedStorage(dir, index, capacity,
+                        persistent ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.PRIVATE);
                 break;
             }
-            case OffHeapPlusFile -> {
+            case OffHeapPlusFile, SlabOffHeap -> {
                 underlyingStorage = new OffHeapStorage(capacity);
+                persistent = false;
                 break;
             }
         }
+        if(persistent){
+            indexLog = new IndexLog(dir, index);
+        }
+        if(storageMode == StorageMode.SlabOffHeap){
+            this.slabs = new SlabAllocator((int pageSize) -> {
+                Allocation page = allocate(pageSize);
+                return page == null ? -1 : page.getOffset();
+            });
+        } else {
+            this.slabs = null;
+        }
+        this.freeList = freeListEnabled && !persistent && slabs == null ? new SizeClassFreeList() : null;
+        this.reuseEnabled = this.freeList != null;
     }
 
     /**
@@ -57,18 +115,263 @@ public class StorageBlock implements IStorageBlock{
         return payload;
     }
 
+    @Override
+    public void retrieve(Pointer pointer, ByteBuffer dest) throws IOException {
+        if(dest.remaining() < pointer.getLength()){
+            throw new BufferOverflowException();
+        }
+        int limit = dest.limit();
+        dest.limit(dest.position() + pointer.getLength());
+        try {
+            underlyingStorage.get(pointer.getPosition(), dest);
+        } finally {
+            dest.limit(limit);
+        }
+    }
+
+    @Override
+    public ByteBuffer slice(Pointer pointer) {
+        return underlyingStorage.slice(pointer.getPosition(), pointer.getLength());
+    }
+
     @Override
     public byte[] remove(Pointer pointer) throws IOException {
         byte[] payload = retrieve(pointer);
+        if(inChunk(pointer.getLength())){
+            slabs.release(pointer.getPosition(), pointer.getLength());
+            return payload;
+        }
         dirtyStorage.addAndGet(pointer.getLength());
         usedStorage.addAndGet(-1*pointer.getLength());
+        release(pointer.getPosition(), pointer.getLength());
         return payload;
     }
 
     @Override
     public void removeLight(Pointer pointer) throws IOException {
+        if(inChunk(pointer.getLength())){
+            slabs.release(pointer.getPosition(), pointer.getLength());
+            return;
+        }
         dirtyStorage.addAndGet(pointer.getLength());
         usedStorage.addAndGet(-1*pointer.getLength());
+        release(pointer.getPosition(), pointer.getLength());
+    }
+
+    /**
+     * @return true if a value of the length is stored in a slab chunk
+     */
+    private boolean inChunk(int length){
+        return slabs != null && SlabAllocator.fits(length);
+    }
+
+    /**
+     * stores the payload into a chunk of its slab class.
+     *
+     * @param freeOnly true to only use a released chunk
+     * @return the pointer or null if there is no chunk
+     */
+    private Pointer storeInChunk(boolean freeOnly, byte[] payload) throws IOException {
+        int offset = slabs.allocate(payload.length, freeOnly);
+        if(offset < 0) { return null; }
+        underlyingStorage.put(offset, payload);
+        return new Pointer(offset, payload.length, this);
+    }
+
+    private Pointer storeInChunk(boolean freeOnly, ByteBuffer... payload) throws IOException {
+        int length = remaining(payload);
+        int offset = slabs.allocate(length, freeOnly);
+        if(offset < 0) { return null; }
+        underlyingStorage.put(offset, payload);
+        return new Pointer(offset, length, this);
+    }
+
+    /**
+     * offers the dirty extent to the free list.
+     */
+    private void release(int offset, int length){
+        if(!reuseEnabled || length < SizeClassFreeList.MIN_EXTENT){
+            return;
+        }
+        freeListLock.lock();
+        try {
+            if(reuseEnabled && freeList.add(offset, length)){
+                freeClassMask = freeList.getClassMask();
+            }
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * takes the space out of the free list, it is accounted as used right away so that the block cannot be
+     * retired before the value is written.
+     *
+     * @return the allocation or null if no released extent fits
+     */
+    private Allocation reuse(int payloadLength){
+        if((freeClassMask & SizeClassFreeList.fittingClasses(payloadLength)) == 0){
+            return null;
+        }
+        freeListLock.lock();
+        try {
+            if(!reuseEnabled){
+                return null;
+            }
+            int offset = freeList.take(payloadLength);
+            freeClassMask = freeList.getClassMask();
+            if(offset < 0){
+                return null;
+            }
+            dirtyStorage.addAndGet(-payloadLength);
+            usedStorage.addAndGet(payloadLength);
+            reusedBytes.addAndGet(payloadLength);
+            return new Allocation(offset, payloadLength);
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * stores the payload into a released extent, the space after the offset is not touched.
+     *
+     * @return the pointer or null if no released extent fits
+     */
+    public Pointer storeInFreeSpace(byte[] payload) throws IOException {
+        if(inChunk(payload.length)){
+            return storeInChunk(true, payload);
+        }
+        Allocation allocation = reuse(payload.length);
+        if(allocation == null) { return null; }
+        underlyingStorage.put(allocation.getOffset(), payload);
+        return new Pointer(allocation.getOffset(), allocation.getLength(), this);
+    }
+
+    public Pointer storeInFreeSpace(ByteBuffer... payload) throws IOException {
+        if(inChunk(remaining(payload))){
+            return storeInChunk(true, payload);
+        }
+        Allocation allocation = reuse(remaining(payload));
+        if(allocation == null) { return null; }
+        underlyingStorage.put(allocation.getOffset(), payload);
+        return new Pointer(allocation.getOffset(), allocation.getLength(), this);
+    }
+
+    /**
+     * @return true if a released extent or chunk may hold a value of the length, checked without any lock
+     */
+    public boolean hasFreeSpaceFor(int length){
+        if(slabs != null && SlabAllocator.fits(length)){
+            return slabs.hasFreeChunk(length);
+        }
+        return (freeClassMask & SizeClassFreeList.fittingClasses(length)) != 0;
+    }
+
+    /**
+     * stops reusing the released extents, e.g. while the block is evacuated. The free block reuses them again.
+     */
+    public void stopReuse(){
+        if(slabs != null){
+            slabs.disable(false);
+        }
+        if(freeList == null){
+            return;
+        }
+        freeListLock.lock();
+        try {
+            reuseEnabled = false;
+            freeList.clear();
+            freeClassMask = 0;
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * stops reusing the released extents if the block holds no data, so it can be freed.
+     *
+     * @return true if the block holds no data
+     */
+    public boolean retire(){
+        if(slabs != null){
+            return usedStorage.get() == 0 && slabs.disable(true);
+        }
+        if(freeList == null){
+            return getUsed() == 0;
+        }
+        freeListLock.lock();
+        try {
+            if(getUsed() != 0){
+                return false;
+            }
+            reuseEnabled = false;
+            freeList.clear();
+            freeClassMask = 0;
+            return true;
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * @return the # of released extents waiting to be reused
+     */
+    public int getFreeExtentCount(){
+        if(slabs != null){
+            return slabs.getFreeChunkCount();
+        }
+        if(freeList == null){
+            return 0;
+        }
+        freeListLock.lock();
+        try {
+            return freeList.getExtentCount();
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of the released extents waiting to be reused
+     */
+    public long getFreeExtentBytes(){
+        if(slabs != null){
+            return slabs.getFreeBytes();
+        }
+        if(freeList == null){
+            return 0;
+        }
+        freeListLock.lock();
+        try {
+            return freeList.getFreeBytes();
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * @return the length of the biggest released extent
+     */
+    public int getLargestFreeExtent(){
+        if(slabs != null){
+            return slabs.getLargestFreeChunk();
+        }
+        if(freeList == null){
+            return 0;
+        }
+        freeListLock.lock();
+        try {
+            return freeList.getLargestExtent();
+        } finally {
+            freeListLock.unlock();
+        }
+    }
+
+    /**
+     * @return the bytes stored into released extents so far
+     */
+    public long getReusedBytes(){
+        return reusedBytes.get() + (slabs != null ? slabs.getReusedBytes() : 0);
     }
 
     /**
@@ -78,12 +381,16 @@ public class StorageBlock implements IStorageBlock{
      * @throws IOException
      */
     protected Allocation allocate(byte[] payload) throws IOException{
-        int payloadLength = payload.length;
+        return allocate(payload.length);
+    }
+
+    protected Allocation allocate(int payloadLength){
         int allocationOffset = currentOffset.addAndGet(payloadLength);
         if(this.capacity < allocationOffset){
             return null;
         }
-        Allocation allocation = new Allocation(allocationOffset, payloadLength);
+        // addAndGet returns the end of the allocated space
+        Allocation allocation = new Allocation(allocationOffset - payloadLength, payloadLength);
         return allocation;
     }
 
@@ -94,36 +401,111 @@ public class StorageBlock implements IStorageBlock{
         return pointer;
     }
 
+    protected Pointer store(Allocation allocation, ByteBuffer... payload) throws IOException{
+        Pointer pointer = new Pointer(allocation.getOffset(),allocation.getLength(),this);
+        underlyingStorage.put(allocation.getOffset(), payload);
+        usedStorage.addAndGet(allocation.getLength());
+        return pointer;
+    }
+
     @Override
     public Pointer store(byte[] payload) throws IOException {
+        if(inChunk(payload.length)){
+            return storeInChunk(false, payload);
+        }
         Allocation allocation = allocate(payload);
         if(allocation == null) { return  null; }
         Pointer pointer = store(allocation, payload);
         return pointer;
     }
 
+    @Override
+    public Pointer store(ByteBuffer... payload) throws IOException {
+        if(inChunk(remaining(payload))){
+            return storeInChunk(false, payload);
+        }
+        Allocation allocation = allocate(remaining(payload));
+        if(allocation == null) { return  null; }
+        return store(allocation, payload);
+    }
+
     @Override
     public Pointer update(Pointer pointer, byte[] payload) throws IOException {
+        if(inChunk(pointer.getLength()) || inChunk(payload.length)){
+            if(sameChunk(pointer.getLength(), payload.length)){
+                underlyingStorage.put(pointer.getPosition(), payload);
+                return new Pointer(pointer.getPosition(), payload.length, this);
+            }
+            removeLight(pointer);
+            return store(payload);
+        }
         if(pointer.getLength() >= payload.length){
             dirtyStorage.addAndGet(pointer.getLength() - payload.length);
             usedStorage.addAndGet(-1* pointer.getLength());
             Allocation allocation = new Allocation(pointer.getPosition(), payload.length);
-            return store(allocation, payload);
+            Pointer updated = store(allocation, payload);
+            release(pointer.getPosition() + payload.length, pointer.getLength() - payload.length);
+            return updated;
         } else{
             dirtyStorage.addAndGet(pointer.getLength());
             usedStorage.addAndGet(-1*pointer.getLength());
+            release(pointer.getPosition(), pointer.getLength());
             return store(payload);
         }
     }
 
+    @Override
+    public Pointer update(Pointer pointer, ByteBuffer... payload) throws IOException {
+        int payloadLength = remaining(payload);
+        if(inChunk(pointer.getLength()) || inChunk(payloadLength)){
+            if(sameChunk(pointer.getLength(), payloadLength)){
+                underlyingStorage.put(pointer.getPosition(), payload);
+                return new Pointer(pointer.getPosition(), payloadLength, this);
+            }
+            removeLight(pointer);
+            return store(payload);
+        }
+        if(pointer.getLength() >= payloadLength){
+            dirtyStorage.addAndGet(pointer.getLength() - payloadLength);
+            usedStorage.addAndGet(-1* pointer.getLength());
+            Allocation allocation = new Allocation(pointer.getPosition(), payloadLength);
+            Pointer updated = store(allocation, payload);
+            release(pointer.getPosition() + payloadLength, pointer.getLength() - payloadLength);
+            return updated;
+        } else{
+            dirtyStorage.addAndGet(pointer.getLength());
+            usedStorage.addAndGet(-1*pointer.getLength());
+            release(pointer.getPosition(), pointer.getLength());
+            return store(payload);
+        }
+    }
+
+    /**
+     * @return true if both lengths are stored in chunks of the same class
+     */
+    private boolean sameChunk(int length, int otherLength){
+        return inChunk(length) && inChunk(otherLength) && SlabAllocator.classOf(length) == SlabAllocator.classOf(otherLength);
+    }
+
+    /**
+     * @return the total length of the remaining bytes of the buffers
+     */
+    static int remaining(ByteBuffer... buffers){
+        int length = 0;
+        for(ByteBuffer buffer : buffers){
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
     @Override
     public long getDirty() {
-        return this.dirtyStorage.get();
+        return this.dirtyStorage.get() + (slabs != null ? slabs.getFreeBytes() : 0);
     }
 
     @Override
     public long getUsed() {
-        return this.usedStorage.get();
+        return this.usedStorage.get() + (slabs != null ? slabs.getUsedBytes() : 0);
     }
 
     @Override
@@ -143,15 +525,102 @@ public class StorageBlock implements IStorageBlock{
 
     @Override
     public void free() {
+        sealTime = Long.MAX_VALUE;
+        if(slabs != null){
+            slabs.reset();
+        }
+        if(freeList != null){
+            freeListLock.lock();
+            try {
+                freeList.clear();
+                freeClassMask = 0;
+                reuseEnabled = true;
+            } finally {
+                freeListLock.unlock();
+            }
+        }
         currentOffset.set(0);
         dirtyStorage.set(0);
         usedStorage.set(0);
 
         underlyingStorage.free();
+        if(indexLog != null){
+            try {
+                indexLog.truncate();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * writes the stored values through to the disk.
+     */
+    public void force() throws IOException {
+        underlyingStorage.force();
+    }
+
+    /**
+     * @return true if the values are read from a file rather than from memory
+     */
+    public boolean isFileBacked(){
+        return underlyingStorage instanceof FileChannelStorage;
+    }
+
+    public boolean isPersistent(){
+        return indexLog != null;
+    }
+
+    public IndexLog getIndexLog() {
+        return indexLog;
+    }
+
+    public long getSealTime() {
+        return sealTime;
+    }
+
+    public void setSealTime(long sealTime) {
+        this.sealTime = sealTime;
+    }
+
+    /**
+     * Marks the space of a recovered entry as used.
+     *
+     * @param position the position of the entry
+     * @param length the length of the entry
+     */
+    void restore(int position, int length){
+        usedStorage.addAndGet(length);
+        reserve(position + length);
+    }
+
+    /**
+     * Moves the offset forward so that the space before it will never be allocated again,
+     * the space which is not used is marked as dirty.
+     *
+     * @param offset the end of the reserved space
+     */
+    void reserve(int offset){
+        int current;
+        while ((current = currentOffset.get()) < offset){
+            if(currentOffset.compareAndSet(current, offset)){
+                break;
+            }
+        }
+    }
+
+    /**
+     * recalculates the dirty space after recovery, everything below the offset which is not used is dirty.
+     */
+    void settle(){
+        dirtyStorage.set(Math.max(0, Math.min(currentOffset.get(), capacity) - usedStorage.get()));
     }
 
     @Override
     public void close() throws IOException {
+        if(indexLog != null){
+            indexLog.close();
+        }
         if(this.underlyingStorage != null) {
             try {
                 underlyingStorage.close();
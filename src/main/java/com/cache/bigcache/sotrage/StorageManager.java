@@ -1,15 +1,16 @@
 package com.cache.bigcache.sotrage;
 
+import com.cache.bigcache.CacheConfig.IndexSyncMode;
 import com.cache.bigcache.CacheConfig.StorageMode;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -30,6 +31,9 @@ public class StorageManager implements IStorageBlock{
     /** the active storage block change lock. */
     private final Lock activateBlockChangeLock = new ReentrantLock();
 
+    /** the lock of the recycling of the empty blocks */
+    private final Lock cleanLock = new ReentrantLock();
+
     /**
      * a list of used storage blocks
      */
@@ -49,13 +53,63 @@ public class StorageManager implements IStorageBlock{
     /** the number of memory blocks allow to be created */
     private int allowedOffHeapModeBlockCount;
 
+    /** keep the data and the index on disk so that they can be recovered after restart */
+    private final boolean persistent;
+
+    /** when the index records and the values they point at are written through to the disk */
+    private final IndexSyncMode indexSyncMode;
+
+    /** reuse the extents released inside the blocks before appending to the active one */
+    private final boolean freeListEnabled;
+
+    /** all the blocks created, indexed by the block index */
+    private volatile StorageBlock[] blocks = new StorageBlock[0];
+
+    /** the sequence of the index records */
+    private final AtomicLong indexSequence = new AtomicLong(0);
+
+    /** the # of reads saved by coalescing */
+    private final AtomicLong coalescedReads = new AtomicLong(0);
+
     public static final int DEFAULT_CAPACITY_PER_BLOCK = 128 * 1024 * 1024; // 128MB
 
     public static final int DEFAULT_INITIAL_NUMBER_OF_BLOCKS = 8; // 1GB total
 
     public static final long DEFAULT_MAX_OFFHEAP_MEMORY_SIZE = 2 * 1024 * 2014 * 1024L; // Unit:GB
 
+    /** values of a file backed block which are at most 4K apart are read together */
+    public static final int DEFAULT_READ_COALESCING_GAP = 4 * 1024;
+
+    /** the largest read made of several values */
+    public static final int MAX_COALESCED_READ_SIZE = 1024 * 1024;
+
     public StorageManager(String dir, int capacityPerBlock, int initialNumberOfBlocks, StorageMode storageMode, long maxOffHeapMemorySize) throws IOException {
+        this(dir, capacityPerBlock, initialNumberOfBlocks, storageMode, maxOffHeapMemorySize, false);
+    }
+
+    public StorageManager(String dir, int capacityPerBlock, int initialNumberOfBlocks, StorageMode storageMode, long maxOffHeapMemorySize, boolean persistent) throws IOException {
+        this(dir, capacityPerBlock, initialNumberOfBlocks, storageMode, maxOffHeapMemorySize, persistent, false);
+    }
+
+    public StorageManager(String dir, int capacityPerBlock, int initialNumberOfBlocks, StorageMode storageMode, long maxOffHeapMemorySize, boolean persistent, boolean freeListEnabled) throws IOException {
+        this(dir, capacityPerBlock, initialNumberOfBlocks, storageMode, maxOffHeapMemorySize, persistent, freeListEnabled, IndexSyncMode.Periodic);
+    }
+
+    /**
+     * @param persistent if true, the blocks found in the directory are reopened instead of recreated and
+     *                   each file backed block keeps an index log, see {@link #recover(RecoveryListener)}.
+     * @param freeListEnabled if true, new values are stored into the space released inside the blocks when
+     *                        it fits, ignored if persistent.
+     * @param indexSyncMode with EveryWrite every index record is on disk, after the value it points at, when
+     *                      it is logged, else the logs are written through by {@link #syncIndexLogs()}.
+     */
+    public StorageManager(String dir, int capacityPerBlock, int initialNumberOfBlocks, StorageMode storageMode, long maxOffHeapMemorySize, boolean persistent, boolean freeListEnabled, IndexSyncMode indexSyncMode) throws IOException {
+        this.persistent = persistent;
+        this.indexSyncMode = indexSyncMode;
+        this.freeListEnabled = freeListEnabled && !persistent;
+        if(persistent){
+            initialNumberOfBlocks = Math.max(initialNumberOfBlocks, existingBlockCount(dir));
+        }
         if(storageMode != StorageMode.PureFile){
             this.allowedOffHeapModeBlockCount = (int)(maxOffHeapMemorySize / capacityPerBlock);
         }else {
@@ -76,13 +130,58 @@ public class StorageManager implements IStorageBlock{
     }
 
     private IStorageBlock createNewBlock(int index) throws IOException{
+        StorageBlock block;
         if(this.allowedOffHeapModeBlockCount > 0){
-            IStorageBlock block = new StorageBlock(this.dir, index, this.capacityPerBlock, this.storageMode);
+            block = new StorageBlock(this.dir, index, this.capacityPerBlock, this.storageMode, this.persistent, this.freeListEnabled);
             this.allowedOffHeapModeBlockCount--;
-            return block;
         } else {
-            return new StorageBlock(this.dir, index, this.capacityPerBlock, StorageMode.PureFile);
+            block = new StorageBlock(this.dir, index, this.capacityPerBlock, StorageMode.PureFile, this.persistent, this.freeListEnabled);
+        }
+        registerBlock(block);
+        return block;
+    }
+
+    private synchronized void registerBlock(StorageBlock block){
+        StorageBlock[] current = this.blocks;
+        if(block.getIndex() >= current.length){
+            current = Arrays.copyOf(current, Math.max(block.getIndex() + 1, current.length * 2));
+        } else {
+            current = current.clone();
+        }
+        current[block.getIndex()] = block;
+        this.blocks = current;
+    }
+
+    /**
+     * @param index the index of the block
+     * @return the block with the index or null if no such block has been created
+     */
+    public StorageBlock getBlock(int index){
+        StorageBlock[] current = this.blocks;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    /**
+     * finds the number of blocks left in the directory by a previous run.
+     */
+    private static int existingBlockCount(String dir){
+        String[] names = new File(dir).list();
+        int count = 0;
+        if(names == null){
+            return count;
+        }
+        for(String name : names){
+            if(!name.endsWith(IndexLog.INDEX_FILE_SUFFIX)){
+                continue;
+            }
+            try {
+                int index = Integer.parseInt(name.substring(0, name.length() - IndexLog.INDEX_FILE_SUFFIX.length()));
+                count = Math.max(count, index + 1);
+            } catch (NumberFormatException e){
+                // not ours
+            }
         }
+        return count;
     }
 
     @Override
@@ -90,6 +189,69 @@ public class StorageManager implements IStorageBlock{
         return pointer.getStorageBlock().retrieve(pointer);
     }
 
+    /**
+     * Retrieves the payloads of many pointers. Neighbouring payloads of a file backed block which are at most
+     * maxGap bytes apart are fetched with a single read and split afterwards, so the pointers should be sorted
+     * by block and position.
+     *
+     * @param pointers the pointers, sorted by block and position
+     * @param maxGap the largest gap between two payloads which are still read together, negative to disable
+     * @return the payloads in the order of the pointers
+     * @throws IOException
+     */
+    public byte[][] retrieve(Pointer[] pointers, int maxGap) throws IOException {
+        byte[][] payloads = new byte[pointers.length][];
+        int start = 0;
+        while (start < pointers.length){
+            Pointer first = pointers[start];
+            StorageBlock block = first.getStorageBlock();
+            int runStart = first.getPosition();
+            int runEnd = runStart + first.getLength();
+            int end = start + 1;
+            if(maxGap >= 0 && block.isFileBacked()){
+                for(; end < pointers.length; end++){
+                    Pointer next = pointers[end];
+                    int nextEnd = Math.max(runEnd, next.getPosition() + next.getLength());
+                    if(next.getStorageBlock() != block || next.getPosition() < runStart
+                            || next.getPosition() - runEnd > maxGap || nextEnd - runStart > MAX_COALESCED_READ_SIZE){
+                        break;
+                    }
+                    runEnd = nextEnd;
+                }
+            }
+            if(end - start == 1){
+                payloads[start] = block.retrieve(first);
+            } else {
+                ByteBuffer run = ByteBuffer.allocate(runEnd - runStart);
+                block.retrieve(new Pointer(runStart, runEnd - runStart, block), run);
+                for(int i = start; i < end; i++){
+                    int offset = pointers[i].getPosition() - runStart;
+                    payloads[i] = Arrays.copyOfRange(run.array(), offset, offset + pointers[i].getLength());
+                }
+                coalescedReads.addAndGet(end - start - 1);
+            }
+            start = end;
+        }
+        return payloads;
+    }
+
+    /**
+     * @return the # of reads saved by reading neighbouring payloads together
+     */
+    public long getCoalescedReadCount(){
+        return coalescedReads.get();
+    }
+
+    @Override
+    public void retrieve(Pointer pointer, ByteBuffer dest) throws IOException {
+        pointer.getStorageBlock().retrieve(pointer, dest);
+    }
+
+    @Override
+    public ByteBuffer slice(Pointer pointer) {
+        return pointer.getStorageBlock().slice(pointer);
+    }
+
     @Override
     public byte[] remove(Pointer pointer) throws IOException {
         return pointer.getStorageBlock().remove(pointer);
@@ -102,13 +264,54 @@ public class StorageManager implements IStorageBlock{
 
     @Override
     public Pointer store(byte[] payload) throws IOException {
-        Pointer pointer = activateBlock.store(payload);
+        Pointer pointer = writeInFreeSpace(payload.length, (StorageBlock block) -> block.storeInFreeSpace(payload));
+        if(pointer != null){
+            return pointer;
+        }
+        return write((IStorageBlock block) -> block.store(payload));
+    }
+
+    @Override
+    public Pointer store(ByteBuffer... payload) throws IOException {
+        Pointer pointer = writeInFreeSpace(StorageBlock.remaining(payload), (StorageBlock block) -> block.storeInFreeSpace(payload));
+        if(pointer != null){
+            return pointer;
+        }
+        return write((IStorageBlock block) -> block.store(payload));
+    }
+
+    /**
+     * writes into the first block which has a released extent or slab chunk big enough, the blocks are
+     * checked without taking any lock.
+     *
+     * @return the pointer or null if no released extent fits
+     */
+    private Pointer writeInFreeSpace(int length, FreeSpaceWriter writer) throws IOException {
+        if(!freeListEnabled && storageMode != StorageMode.SlabOffHeap){
+            return null;
+        }
+        for(StorageBlock block : blocks){
+            if(block != null && block.hasFreeSpaceFor(length)){
+                Pointer pointer = writer.write(block);
+                if(pointer != null){
+                    return pointer;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * writes into the active block, a free block becomes the active one if it is full.
+     */
+    private Pointer write(BlockWriter writer) throws IOException {
+        Pointer pointer = writer.write(activateBlock);
         if(pointer != null){
             return pointer;
         }
         activateBlockChangeLock.lock();
         try{
-            pointer = activateBlock.store(payload);
+            pointer = writer.write(activateBlock);
             if(pointer != null){
                 return pointer;
             }
@@ -116,15 +319,33 @@ public class StorageManager implements IStorageBlock{
             if(freeBlock == null){
                 freeBlock = this.createNewBlock(this.blockCount.getAndIncrement());
             }
-            pointer = freeBlock.store(payload);
-            this.activateBlock = freeBlock;
-            this.usedBlocks.add(this.activateBlock);
+            pointer = writer.write(freeBlock);
+            activate(freeBlock);
             return pointer;
         } finally {
             activateBlockChangeLock.unlock();
         }
     }
 
+    /**
+     * the block becomes the active one, the previous one is sealed. Must be called under the active block
+     * change lock.
+     */
+    private void activate(IStorageBlock block){
+        getBlock(activateBlock.getIndex()).setSealTime(System.currentTimeMillis());
+        this.activateBlock = block;
+        this.usedBlocks.add(block);
+    }
+
+    /**
+     * stores the payload only if it fits into the active block, no other block is taken.
+     *
+     * @return the pointer or null if the active block is full
+     */
+    public Pointer storeIfRoom(byte[] payload) throws IOException {
+        return activateBlock.store(payload);
+    }
+
     public Pointer storeExcluding(byte[] payload, StorageBlock exludingBlock) throws IOException{
         while(this.activateBlock == exludingBlock){
             activateBlockChangeLock.lock();
@@ -136,8 +357,7 @@ public class StorageManager implements IStorageBlock{
                 if(freeBlock == null){
                     freeBlock = this.createNewBlock(this.blockCount.getAndIncrement());
                 }
-                this.activateBlock = freeBlock;
-                this.usedBlocks.add(this.activateBlock);
+                activate(freeBlock);
             } finally {
                 activateBlockChangeLock.unlock();
             }
@@ -148,6 +368,12 @@ public class StorageManager implements IStorageBlock{
 
     @Override
     public Pointer update(Pointer pointer, byte[] payload) throws IOException {
+        if(persistent && pointer.getStorageBlock().isPersistent() && pointer.getLength() != payload.length){
+            // overwriting in place would leave the on-disk index pointing at a value of another length
+            // if we crash before the index is written, so write the new value elsewhere
+            pointer.getStorageBlock().removeLight(pointer);
+            return store(payload);
+        }
         Pointer updatePointer = pointer.getStorageBlock().update(pointer, payload);
         if(updatePointer != null){
             return updatePointer;
@@ -155,6 +381,27 @@ public class StorageManager implements IStorageBlock{
         return store(payload);
     }
 
+    @Override
+    public Pointer update(Pointer pointer, ByteBuffer... payload) throws IOException {
+        if(persistent && pointer.getStorageBlock().isPersistent() && pointer.getLength() != StorageBlock.remaining(payload)){
+            pointer.getStorageBlock().removeLight(pointer);
+            return store(payload);
+        }
+        Pointer updatePointer = pointer.getStorageBlock().update(pointer, payload);
+        if(updatePointer != null){
+            return updatePointer;
+        }
+        return store(payload);
+    }
+
+    private interface BlockWriter {
+        Pointer write(IStorageBlock block) throws IOException;
+    }
+
+    private interface FreeSpaceWriter {
+        Pointer write(StorageBlock block) throws IOException;
+    }
+
     @Override
     public long getDirty() {
         long dirtyStorage = 0;
@@ -187,6 +434,113 @@ public class StorageManager implements IStorageBlock{
         return (this.getDirty() * 1.0) / this.getCapacity();
     }
 
+    /**
+     * @return the # of released extents waiting to be reused over all the blocks
+     */
+    public long getFreeExtentCount() {
+        long count = 0;
+        for(StorageBlock block : blocks){
+            if(block != null){
+                count += block.getFreeExtentCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the bytes of the released extents waiting to be reused over all the blocks
+     */
+    public long getFreeExtentBytes() {
+        long bytes = 0;
+        for(StorageBlock block : blocks){
+            if(block != null){
+                bytes += block.getFreeExtentBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the length of the biggest released extent, the biggest value which can be stored without appending
+     */
+    public int getLargestFreeExtent() {
+        int largest = 0;
+        for(StorageBlock block : blocks){
+            if(block != null){
+                largest = Math.max(largest, block.getLargestFreeExtent());
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @return the bytes stored into released extents so far
+     */
+    public long getReusedBytes() {
+        long bytes = 0;
+        for(StorageBlock block : blocks){
+            if(block != null){
+                bytes += block.getReusedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * stops storing new values into the released extents of the block, which is about to be evacuated.
+     */
+    public void stopReuse(IStorageBlock block) {
+        getBlock(block.getIndex()).stopReuse();
+    }
+
+    /**
+     * @return the used block which has been activated first, never the active block, null if it is the only one
+     */
+    public IStorageBlock getOldestBlock() {
+        IStorageBlock active = activateBlock;
+        for(IStorageBlock block : usedBlocks){
+            if(block != active){
+                return block;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the block the values are currently appended to
+     */
+    public IStorageBlock getActiveBlock() {
+        return activateBlock;
+    }
+
+    /**
+     * @return a snapshot of the used blocks, the oldest first
+     */
+    public List<IStorageBlock> getUsedBlocks() {
+        return new ArrayList<>(usedBlocks);
+    }
+
+    /**
+     * @param dirtyRatioThreshold the dirty ratio a block must exceed
+     * @return the used blocks which are dirtier than the threshold, dirtiest first
+     */
+    public List<IStorageBlock> getDirtyBlocks(double dirtyRatioThreshold) {
+        // the ratios keep changing, sort by a snapshot of them
+        List<Map.Entry<IStorageBlock, Double>> ratios = new ArrayList<>();
+        for(IStorageBlock block : usedBlocks){
+            double dirtyRatio = block.getDirtyRatio();
+            if(dirtyRatio > dirtyRatioThreshold){
+                ratios.add(new AbstractMap.SimpleEntry<>(block, dirtyRatio));
+            }
+        }
+        ratios.sort((Map.Entry<IStorageBlock, Double> a, Map.Entry<IStorageBlock, Double> b) -> Double.compare(b.getValue(), a.getValue()));
+        List<IStorageBlock> dirtyBlocks = new ArrayList<>(ratios.size());
+        for(Map.Entry<IStorageBlock, Double> ratio : ratios){
+            dirtyBlocks.add(ratio.getKey());
+        }
+        return dirtyBlocks;
+    }
+
     @Override
     public int getIndex() {
         throw new IllegalStateException(" Not implemented!");
@@ -217,21 +571,36 @@ public class StorageManager implements IStorageBlock{
     }
 
     public void clean(){
-        synchronized (this){
+        clean(null);
+    }
+
+    /**
+     * frees the blocks which hold no data any more.
+     *
+     * @param freeListener if not null, called for every freed block before it can be reused
+     */
+    public void clean(Consumer<IStorageBlock> freeListener){
+        // freeing a block does I/O, so no monitor is held here
+        cleanLock.lock();
+        try {
             Iterator<IStorageBlock> it = usedBlocks.iterator();
             while(it.hasNext()){
                 IStorageBlock storageBlock = it.next();
                 if(storageBlock == activateBlock){
                     continue;
                 }
-                if(storageBlock.getUsed() == 0){
+                if(storageBlock.getUsed() == 0 && getBlock(storageBlock.getIndex()).retire()){
                     // we will not allocating memory from it any more and it is used by nobody?
                     storageBlock.free();
+                    if(freeListener != null){
+                        freeListener.accept(storageBlock);
+                    }
                     freeBlocks.add(storageBlock);
                     it.remove();
                 }
             }
-
+        } finally {
+            cleanLock.unlock();
         }
     }
 
@@ -240,6 +609,244 @@ public class StorageManager implements IStorageBlock{
         throw new IllegalStateException("Not Implemented!");
     }
 
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Records in the index of the block that the key is stored at the pointer.
+     *
+     * @param key the serialized key
+     * @param pointer where the value is stored
+     * @param tti the time to idle
+     * @param lastAccessTime the last access time
+     * @param expireTime the absolute expiry time, -1 for none
+     * @throws IOException
+     */
+    public void logPut(byte[] key, Pointer pointer, long tti, long lastAccessTime, long expireTime) throws IOException {
+        StorageBlock block = pointer.getStorageBlock();
+        if(block.isPersistent()){
+            if(indexSyncMode == IndexSyncMode.EveryWrite){
+                // the record must never reach the disk before the value
+                block.force();
+            }
+            block.getIndexLog().append(IndexRecord.put(indexSequence.incrementAndGet(), key, pointer, tti, lastAccessTime, expireTime));
+            if(indexSyncMode == IndexSyncMode.EveryWrite){
+                block.getIndexLog().sync();
+            }
+        }
+    }
+
+    /**
+     * Records in the index of the block that the key is no longer stored at the pointer.
+     *
+     * @param key the serialized key
+     * @param pointer where the value was stored
+     * @throws IOException
+     */
+    public void logRemove(byte[] key, Pointer pointer) throws IOException {
+        StorageBlock block = pointer.getStorageBlock();
+        if(block.isPersistent()){
+            block.getIndexLog().append(IndexRecord.remove(indexSequence.incrementAndGet(), key, pointer));
+            if(indexSyncMode == IndexSyncMode.EveryWrite){
+                block.getIndexLog().sync();
+            }
+        }
+    }
+
+    public void flushIndexLogs() throws IOException {
+        for(StorageBlock block : blocks){
+            if(block != null && block.isPersistent()){
+                block.getIndexLog().flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the index logs and the values through to the disk, so that the entries logged so far are
+     * recovered even after a crash of the machine.
+     *
+     * The logs are flushed before the values are forced and forced after them, only the records appended in
+     * between may point at values which are not on disk yet.
+     */
+    public void syncIndexLogs() throws IOException {
+        StorageBlock[] current = blocks;
+        for(StorageBlock block : current){
+            if(block != null && block.isPersistent()){
+                block.getIndexLog().flush();
+            }
+        }
+        for(StorageBlock block : current){
+            if(block != null && block.isPersistent()){
+                block.force();
+            }
+        }
+        for(StorageBlock block : current){
+            if(block != null && block.isPersistent()){
+                block.getIndexLog().sync();
+            }
+        }
+    }
+
+    /**
+     * Starts writing compacted index logs, the caller then logs every live entry once with
+     * {@link #logCheckpoint} and calls {@link #finishCheckpoint()} to replace the old logs.
+     */
+    public void startCheckpoint() throws IOException {
+        for(StorageBlock block : blocks){
+            if(block != null && block.isPersistent()){
+                block.getIndexLog().startRewrite();
+            }
+        }
+    }
+
+    /**
+     * Records a live entry in the compacted index, like {@link #logPut} but never synced on its own,
+     * {@link #finishCheckpoint()} syncs all the blocks at once.
+     */
+    public void logCheckpoint(byte[] key, Pointer pointer, long tti, long lastAccessTime, long expireTime) throws IOException {
+        StorageBlock block = pointer.getStorageBlock();
+        if(block.isPersistent()){
+            block.getIndexLog().append(IndexRecord.put(indexSequence.incrementAndGet(), key, pointer, tti, lastAccessTime, expireTime));
+        }
+    }
+
+    public void finishCheckpoint() throws IOException {
+        for(StorageBlock block : blocks){
+            if(block != null && block.isPersistent()){
+                block.force();
+                block.getIndexLog().finishRewrite();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the state of the blocks from their index logs, must be called before any other operation.
+     *
+     * The logs are read in parallel, one task per block. For every key the record with the biggest sequence
+     * wins, the winners which are not removals are restored in their blocks and passed to the listener, again
+     * in parallel per block. At last the blocks are split into used and free blocks.
+     *
+     * @param listener receives the recovered entries, it may be called from several threads at the same time
+     * @return the number of entries recovered
+     * @throws IOException
+     */
+    public long recover(RecoveryListener listener) throws IOException {
+        if(!persistent){
+            return 0;
+        }
+        List<StorageBlock> recoverable = new ArrayList<>();
+        for(StorageBlock block : blocks){
+            if(block != null && block.isPersistent()){
+                recoverable.add(block);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(recoverable.size(), Runtime.getRuntime().availableProcessors())));
+        AtomicLong recovered = new AtomicLong();
+        try {
+            // phase 1: the latest record of each key
+            ConcurrentHashMap<ByteBuffer, IndexRecord> latest = new ConcurrentHashMap<>();
+            AtomicLong maxSequence = new AtomicLong();
+            List<Callable<Void>> readTasks = new ArrayList<>();
+            for(StorageBlock block : recoverable){
+                readTasks.add(() -> {
+                    for(IndexRecord record : block.getIndexLog().read(block.getIndex())){
+                        maxSequence.accumulateAndGet(record.getSequence(), Math::max);
+                        latest.merge(ByteBuffer.wrap(record.getKey()), record,
+                                (a, b) -> a.getSequence() >= b.getSequence() ? a : b);
+                    }
+                    return null;
+                });
+            }
+            invokeAll(executor, readTasks);
+            indexSequence.set(maxSequence.get());
+
+            Map<Integer, List<IndexRecord>> liveRecords = new HashMap<>();
+            for(IndexRecord record : latest.values()){
+                StorageBlock block = getBlock(record.getBlockIndex());
+                if(record.isRemove() || block == null || !block.isPersistent()
+                        || record.getPosition() < 0 || record.getLength() < 0
+                        || (long) record.getPosition() + record.getLength() > block.getCapacity()){
+                    continue;
+                }
+                liveRecords.computeIfAbsent(record.getBlockIndex(), i -> new ArrayList<>()).add(record);
+            }
+            latest.clear();
+
+            // phase 2: restore the entries
+            List<Callable<Void>> restoreTasks = new ArrayList<>();
+            for(Map.Entry<Integer, List<IndexRecord>> entry : liveRecords.entrySet()){
+                StorageBlock block = getBlock(entry.getKey());
+                restoreTasks.add(() -> {
+                    for(IndexRecord record : entry.getValue()){
+                        block.restore(record.getPosition(), record.getLength());
+                    }
+                    block.settle();
+                    for(IndexRecord record : entry.getValue()){
+                        listener.onRecovered(record, new Pointer(record.getPosition(), record.getLength(), block));
+                        recovered.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            invokeAll(executor, restoreTasks);
+        } finally {
+            executor.shutdown();
+        }
+
+        // phase 3: rebuild the used and free blocks
+        activateBlockChangeLock.lock();
+        try {
+            usedBlocks.clear();
+            freeBlocks.clear();
+            for(StorageBlock block : blocks){
+                if(block == null){
+                    continue;
+                }
+                if(block.getUsed() > 0){
+                    block.setSealTime(System.currentTimeMillis());
+                    usedBlocks.add(block);
+                } else {
+                    block.free();
+                    freeBlocks.offer(block);
+                }
+            }
+            IStorageBlock freeBlock = freeBlocks.poll();
+            if(freeBlock == null){
+                freeBlock = createNewBlock(blockCount.getAndIncrement());
+            }
+            this.activateBlock = freeBlock;
+            this.usedBlocks.add(this.activateBlock);
+        } finally {
+            activateBlockChangeLock.unlock();
+        }
+        return recovered.get();
+    }
+
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for(Future<Void> future : executor.invokeAll(tasks)){
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("recovery interrupted", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("recovery failed", e.getCause());
+        }
+    }
+
+    /**
+     * Receives the entries rebuilt by {@link #recover(RecoveryListener)}.
+     */
+    public interface RecoveryListener {
+        void onRecovered(IndexRecord record, Pointer pointer) throws IOException;
+    }
+
     public int getUsedBlockCount() {
         return usedBlocks.size();
     }
@@ -0,0 +1,147 @@
+package com.cache.bigcache.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch of how often the keys have been accessed lately, made of 4 bit counters, and the
+ * TinyLFU admission built on it.
+ *
+ * Every key has one counter in each of 4 rows, the estimate is the smallest of them. All the counters are
+ * halved once the # of increments reaches 10 times the width, so the old accesses fade away.
+ *
+ * The keys are given by their hash, the caller picks which one: the hash code of the key, or a hash it
+ * has spread already. The sketch is safe to share between threads. It can be grown when more keys are
+ * expected than it was sized for, the counters are carried over then and the increments made meanwhile by
+ * other threads may be lost.
+ */
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_FREQUENCY = 15;
+
+    /** 16 counters per long, its length is a power of 2 */
+    private volatile AtomicLongArray table;
+
+    private final AtomicInteger increments = new AtomicInteger();
+
+    /**
+     * @param expectedKeys the # of keys whose frequency matters, the sketch takes 8 bytes per key
+     */
+    public FrequencySketch(long expectedKeys){
+        this.table = new AtomicLongArray(tableLength(expectedKeys));
+    }
+
+    /**
+     * grows the sketch when more keys are expected than it was sized for. The slot of a key in the larger
+     * table is its old slot plus a multiple of the old length, so the old table is copied into every part of
+     * the new one and the estimates stay the same.
+     */
+    public void ensureCapacity(long expectedKeys){
+        int length = tableLength(expectedKeys);
+        AtomicLongArray table = this.table;
+        if(length > table.length()){
+            int mask = table.length() - 1;
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for(int i = 0; i < length; i++){
+                grown.set(i, table.get(i & mask));
+            }
+            this.table = grown;
+        }
+    }
+
+    private static int tableLength(long expectedKeys){
+        return Integer.highestOneBit((int) Math.max(8, Math.min(expectedKeys, 1 << 22)) * 2 - 1);
+    }
+
+    /**
+     * @return the estimated # of accesses of the key, up to 15
+     */
+    public int frequency(int hash){
+        AtomicLongArray table = this.table;
+        long h = spread(hash);
+        int frequency = MAX_FREQUENCY;
+        for(int row = 0; row < DEPTH; row++){
+            long rowHash = rehash(h, row);
+            frequency = Math.min(frequency, (int) ((table.get(slot(table, rowHash)) >>> counterShift(rowHash)) & 0xF));
+        }
+        return frequency;
+    }
+
+    public void increment(int hash){
+        AtomicLongArray table = this.table;
+        long h = spread(hash);
+        boolean added = false;
+        for(int row = 0; row < DEPTH; row++){
+            long rowHash = rehash(h, row);
+            added |= incrementAt(table, slot(table, rowHash), counterShift(rowHash));
+        }
+        if(added && increments.incrementAndGet() == 10 * table.length()){
+            reset(table);
+        }
+    }
+
+    /**
+     * decides whether a new key may take the place of the victim of the eviction.
+     *
+     * @return true if the candidate has been accessed more often than the victim, a tie goes against the
+     * candidate as the victim has proven itself already
+     */
+    public boolean admit(int candidateHash, int victimHash){
+        return frequency(candidateHash) > frequency(victimHash);
+    }
+
+    public void clear(){
+        AtomicLongArray table = this.table;
+        for(int i = 0; i < table.length(); i++){
+            table.set(i, 0L);
+        }
+        increments.set(0);
+    }
+
+    private static boolean incrementAt(AtomicLongArray table, int slot, int shift){
+        long value;
+        do {
+            value = table.get(slot);
+            if(((value >>> shift) & 0xF) == MAX_FREQUENCY){
+                return false;
+            }
+        } while (!table.compareAndSet(slot, value, value + (1L << shift)));
+        return true;
+    }
+
+    /**
+     * halves all the counters, only the thread whose increment reached the sample size gets here.
+     */
+    private void reset(AtomicLongArray table){
+        for(int i = 0; i < table.length(); i++){
+            long value;
+            do {
+                value = table.get(i);
+            } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+        }
+        increments.addAndGet(-5 * table.length());
+    }
+
+    private static int slot(AtomicLongArray table, long rowHash){
+        return (int) (rowHash >>> 32) & (table.length() - 1);
+    }
+
+    private static int counterShift(long rowHash){
+        return (int) (rowHash & 0xF) << 2;
+    }
+
+    private static long rehash(long hash, int row){
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 29);
+    }
+
+    private static long spread(int hash){
+        long h = hash * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,87 @@
+package com.cache.bigcache.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts cache keys to bytes and back.
+ *
+ * The first byte is a type tag, so the common key types (String, Integer, Long and byte[]) are
+ * stored compactly, every other key falls back to java serialization and must be Serializable.
+ */
+public class KeySerializer {
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BYTES = 4;
+    private static final byte TYPE_OBJECT = 5;
+
+    public static byte[] serialize(Object key) throws IOException {
+        if(key instanceof String){
+            byte[] chars = ((String) key).getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = new byte[chars.length + 1];
+            bytes[0] = TYPE_STRING;
+            System.arraycopy(chars, 0, bytes, 1, chars.length);
+            return bytes;
+        }
+        if(key instanceof Integer){
+            int v = (Integer) key;
+            return new byte[]{TYPE_INTEGER, (byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v};
+        }
+        if(key instanceof Long){
+            long v = (Long) key;
+            byte[] bytes = new byte[9];
+            bytes[0] = TYPE_LONG;
+            for(int i = 8; i > 0; i--){
+                bytes[i] = (byte) v;
+                v >>>= 8;
+            }
+            return bytes;
+        }
+        if(key instanceof byte[]){
+            byte[] raw = (byte[]) key;
+            byte[] bytes = new byte[raw.length + 1];
+            bytes[0] = TYPE_BYTES;
+            System.arraycopy(raw, 0, bytes, 1, raw.length);
+            return bytes;
+        }
+        if(!(key instanceof Serializable)){
+            throw new IllegalArgumentException("key must be Serializable: " + key.getClass());
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(TYPE_OBJECT);
+        try(ObjectOutputStream oos = new ObjectOutputStream(bos)){
+            oos.writeObject(key);
+        }
+        return bos.toByteArray();
+    }
+
+    public static Object deserialize(byte[] bytes) throws IOException {
+        switch (bytes[0]){
+            case TYPE_STRING:
+                return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+            case TYPE_INTEGER:
+                return ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+            case TYPE_LONG: {
+                long v = 0;
+                for(int i = 1; i <= 8; i++){
+                    v = (v << 8) | (bytes[i] & 0xFF);
+                }
+                return v;
+            }
+            case TYPE_BYTES: {
+                byte[] raw = new byte[bytes.length - 1];
+                System.arraycopy(bytes, 1, raw, 0, raw.length);
+                return raw;
+            }
+            case TYPE_OBJECT:
+                try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))){
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("unknown key class", e);
+                }
+            default:
+                throw new IOException("unknown key type: " + bytes[0]);
+        }
+    }
+}
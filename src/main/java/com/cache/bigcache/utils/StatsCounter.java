@@ -0,0 +1,53 @@
+package com.cache.bigcache.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A statistics counter for the hot paths. The count is striped over cells (a {@link LongAdder}) so the
+ * threads don't fight over one cache line, and it may be sampled: with a sample rate of n about one in
+ * n updates is recorded, multiplied by n.
+ */
+public class StatsCounter {
+    private final LongAdder adder = new LongAdder();
+
+    /** 1 records every update, 0 none */
+    private final int sampleRate;
+
+    public StatsCounter(){
+        this(1);
+    }
+
+    /**
+     * @param sampleRate 1 to record every update, n to record about one in n, 0 to record nothing
+     */
+    public StatsCounter(int sampleRate){
+        if(sampleRate < 0){
+            throw new IllegalArgumentException("sampleRate must be >= 0!");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public void increment(){
+        add(1);
+    }
+
+    public void add(long x){
+        if(sampleRate == 1){
+            adder.add(x);
+        } else if(sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) == 0){
+            adder.add(x * sampleRate);
+        }
+    }
+
+    /**
+     * @return the count, an estimate if the counter is sampled
+     */
+    public long sum(){
+        return adder.sum();
+    }
+
+    public void reset(){
+        adder.reset();
+    }
+}
@@ -10,6 +10,8 @@ import java.util.concurrent.TimeUnit;
 public class CacheBuilder<K extends Serializable, V extends Serializable> {
     private int initCapacity = 1;
     private long maximumSize = 2000;
+    private long maximumWeight = -1L;
+    private Weigher<K, V> weigher;
     private int concurrencyLevel = 1;
 
     private long expireAfterAccess = -1L;
@@ -18,6 +20,7 @@ public class CacheBuilder<K extends Serializable, V extends Serializable> {
 
     private float evictionStartFactor = 0.85f;
     private float evictionStopFactor = 0.70f;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.Lru;
 
     private final List<CacheStore<K, V>> evictStores = new ArrayList<CacheStore<K, V>>();
     private final List<BehindStore<K, V>> writeBehindStores = new ArrayList<BehindStore<K, V>>();
@@ -34,6 +37,32 @@ public class CacheBuilder<K extends Serializable, V extends Serializable> {
         return this;
     }
 
+    /**
+     * Bounds the entries in memory by their total weight instead of their #, see {@link #weigher(Weigher)}.
+     */
+    public CacheBuilder<K, V> maximumWeight(long weight) {
+        checkArgument(weight >= 0, "maximum weight must not be negative");
+        this.maximumWeight = weight;
+        return this;
+    }
+
+    /**
+     * Bounds the entries in memory by an estimate of the heap they retain, see {@link HeapSizeWeigher}.
+     */
+    public CacheBuilder<K, V> maximumHeapBytes(long bytes) {
+        checkArgument(bytes >= 0, "maximum heap bytes must not be negative");
+        checkArgument(weigher == null || weigher instanceof HeapSizeWeigher, "a weigher has already been set");
+        this.maximumWeight = bytes;
+        this.weigher = new HeapSizeWeigher<K, V>();
+        return this;
+    }
+
+    public CacheBuilder<K, V> weigher(Weigher<K, V> weigher) {
+        checkArgument(weigher != null, "weigher must not be null.");
+        this.weigher = weigher;
+        return this;
+    }
+
     public CacheBuilder<K, V> concurrencyLevel(int concurrencyLevel) {
         checkArgument(concurrencyLevel > 0);
         this.concurrencyLevel = concurrencyLevel;
@@ -66,6 +95,12 @@ public class CacheBuilder<K extends Serializable, V extends Serializable> {
         return this;
     }
 
+    public CacheBuilder<K, V> evictionPolicy(EvictionPolicy evictionPolicy) {
+        checkArgument(evictionPolicy != null, "evictionPolicy must not be null.");
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
     public CacheBuilder<K, V> addEvictStore(CacheStore<K,V> store) {
         checkArgument(store!=null, "evictStore must not be null.");
         checkArgument(!evictStores.contains(store), "the evictStore has already added");
@@ -83,7 +118,8 @@ public class CacheBuilder<K extends Serializable, V extends Serializable> {
     }
 
     public Cache<K,V> build() {
-        return new CacheImpl<K, V>(initCapacity, maximumSize, concurrencyLevel, expireAfterAccess, expireAfterWrite, expireAfterCreate, evictionStartFactor, evictionStopFactor, evictStores, writeBehindStores);
+        checkArgument((maximumWeight >= 0) == (weigher != null), "maximumWeight and weigher must be set together");
+        return new CacheImpl<K, V>(initCapacity, maximumSize, concurrencyLevel, expireAfterAccess, expireAfterWrite, expireAfterCreate, evictionStartFactor, evictionStopFactor, maximumWeight, weigher, evictionPolicy, evictStores, writeBehindStores);
     }
 
     public static CacheBuilder<? extends Serializable, ? extends Serializable> newBuilder(){
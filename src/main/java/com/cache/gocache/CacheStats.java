@@ -22,8 +22,13 @@ public class CacheStats {
 
     private final long size;
     private final long memorySize;
+    private final long weight;
 
     public CacheStats(long hitCount, long missCount, long memoryHitCount, long memoryMissCount, long createCount, long updateCount, long removeCount, long evictCount, long expireCount, long evictStoreHitCount, long evictStoreMissCount, long behindStoreHitCount, long behindStoreMissCount, long size, long memorySize) {
+        this(hitCount, missCount, memoryHitCount, memoryMissCount, createCount, updateCount, removeCount, evictCount, expireCount, evictStoreHitCount, evictStoreMissCount, behindStoreHitCount, behindStoreMissCount, size, memorySize, 0);
+    }
+
+    public CacheStats(long hitCount, long missCount, long memoryHitCount, long memoryMissCount, long createCount, long updateCount, long removeCount, long evictCount, long expireCount, long evictStoreHitCount, long evictStoreMissCount, long behindStoreHitCount, long behindStoreMissCount, long size, long memorySize, long weight) {
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.memoryHitCount = memoryHitCount;
@@ -39,10 +44,11 @@ public class CacheStats {
         this.behindStoreMissCount = behindStoreMissCount;
         this.size = size;
         this.memorySize = memorySize;
+        this.weight = weight;
     }
 
     public CacheStats() {
-        this(0,0,0,0,0,0,0,0,0,0,0,0,0,0,0);
+        this(0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0);
     }
 
     public long requestCount() {
@@ -129,6 +135,13 @@ public class CacheStats {
         return memorySize;
     }
 
+    /**
+     * @return the total weight of the entries in memory, their # unless the cache is bounded by weight
+     */
+    public long getWeight() {
+        return weight;
+    }
+
     public CacheStats minus(CacheStats other) {
         return new CacheStats(
                 Math.max(0, hitCount - other.hitCount),
@@ -145,7 +158,8 @@ public class CacheStats {
                 Math.max(0, behindStoreHitCount - other.behindStoreHitCount),
                 Math.max(0, behindStoreMissCount - other.behindStoreMissCount),
                 Math.max(0, size - other.size),
-                Math.max(0, memorySize - other.memorySize)
+                Math.max(0, memorySize - other.memorySize),
+                Math.max(0, weight - other.weight)
         );
     }
 
@@ -165,7 +179,8 @@ public class CacheStats {
                 Math.max(0, behindStoreHitCount + other.behindStoreHitCount),
                 Math.max(0, behindStoreMissCount + other.behindStoreMissCount),
                 Math.max(0, size + other.size),
-                Math.max(0, memorySize + other.memorySize)
+                Math.max(0, memorySize + other.memorySize),
+                Math.max(0, weight + other.weight)
         );
     }
 
@@ -187,6 +202,7 @@ public class CacheStats {
                 .append("\t").append("behindStoreMissCount").append(":").append(behindStoreMissCount).append("\n")
                 .append("\t").append("size").append(":").append(size).append("\n")
                 .append("\t").append("memorySize").append(":").append(memorySize).append("\n")
+                .append("\t").append("weight").append(":").append(weight).append("\n")
                 .toString();
     }
 }
@@ -0,0 +1,18 @@
+package com.cache.gocache;
+
+/**
+ * Selects which entries are moved out of memory, to the evict stores if any, when a segment goes beyond
+ * its maximum size.
+ */
+public enum EvictionPolicy {
+    /**
+     * Evicts the entries accessed least recently.
+     */
+    Lru,
+    /**
+     * W-TinyLFU: the new entries enter a small LRU window, 1% of the entries. The entries leaving the window
+     * only get into the main region if they were accessed more often than the entries it would evict, so a
+     * scan of one-off keys doesn't flush the entries which are read over and over.
+     */
+    WTinyLfu
+}
@@ -0,0 +1,305 @@
+package com.cache.gocache;
+
+import com.cache.gocache.impl.HashCacheEntry;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Weighs an entry by an estimate of the heap it retains: the entry itself, its key and its value, in bytes.
+ * <p>
+ * Strings, arrays, boxed primitives, collections and maps are sized from their structure, a large collection
+ * from a sample of its elements. The other objects are sized by walking their fields, which is slow: once
+ * a class has been walked {@link #WALKED_INSTANCES} times, only one instance in {@link #WALK_INTERVAL} is
+ * walked and the others are given the average of the walks of their class.
+ * <p>
+ * The estimates assume the layout of HotSpot, strings are assumed to be Latin-1 when they are compact.
+ */
+final class HeapSizeWeigher<K, V> implements Weigher<K, V> {
+    /** the # of instances of a class which are walked before the average of the class is used */
+    static final int WALKED_INSTANCES = 16;
+
+    /** then one instance in this # is walked */
+    static final int WALK_INTERVAL = 64;
+
+    /** the # of elements of a collection which are sized, the others are assumed to be alike */
+    static final int SAMPLED_ELEMENTS = 16;
+
+    /** the # of objects a walk visits at most */
+    static final int MAX_WALKED_OBJECTS = 4096;
+
+    static final int REFERENCE_SIZE;
+    static final int OBJECT_HEADER;
+    static final int ARRAY_HEADER;
+
+    /** a node of a linked or hashed collection */
+    static final int NODE_SIZE;
+
+    /** the entry, and its slot in the table of the segment */
+    static final long ENTRY_OVERHEAD;
+
+    private static final boolean COMPACT_STRINGS;
+    private static final long STRING_SIZE;
+
+    private final ConcurrentHashMap<Class<?>, long[]> shallowSizes = new ConcurrentHashMap<Class<?>, long[]>();
+    private final ConcurrentHashMap<Class<?>, ClassSample> samples = new ConcurrentHashMap<Class<?>, ClassSample>();
+
+    @Override
+    public int weigh(K key, V value) {
+        return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + estimate(key) + estimate(value));
+    }
+
+    /**
+     * @return the estimated bytes retained by the object
+     */
+    long estimate(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        long size = structuralSize(o);
+        return size >= 0 ? size : sampledSize(o);
+    }
+
+    /**
+     * @return the size of the object if it is of a well known type, else -1
+     */
+    private long structuralSize(Object o) {
+        if (o instanceof String) {
+            int length = ((String) o).length();
+            return STRING_SIZE + align(ARRAY_HEADER + (COMPACT_STRINGS ? length : 2L * length));
+        }
+        Class<?> c = o.getClass();
+        if (c.isArray()) {
+            return arraySize(o, c);
+        }
+        if (o instanceof Number || o instanceof Boolean || o instanceof Character) {
+            if (c.getName().startsWith("java.lang.")) {
+                return shallowSize(c);
+            }
+            return -1;
+        }
+        if (o instanceof Collection) {
+            Collection<?> collection = (Collection<?>) o;
+            int size = collection.size();
+            long structure = o instanceof RandomAccess
+                    ? align(ARRAY_HEADER + (long) size * REFERENCE_SIZE)
+                    : (long) size * NODE_SIZE + hashTableSize(o, size);
+            return shallowSize(c) + structure + sampledElementsSize(collection.iterator(), size);
+        }
+        if (o instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) o;
+            int size = map.size();
+            long elements = sampledElementsSize(map.keySet().iterator(), size)
+                    + sampledElementsSize(map.values().iterator(), size);
+            return shallowSize(c) + (long) size * NODE_SIZE + hashTableSize(o, size) + elements;
+        }
+        return -1;
+    }
+
+    private long arraySize(Object array, Class<?> c) {
+        Class<?> component = c.getComponentType();
+        if (component.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) java.lang.reflect.Array.getLength(array) * primitiveSize(component));
+        }
+        Object[] elements = (Object[]) array;
+        long shallow = align(ARRAY_HEADER + (long) elements.length * REFERENCE_SIZE);
+        if (elements.length <= SAMPLED_ELEMENTS) {
+            long size = shallow;
+            for (Object e : elements) {
+                size += estimate(e);
+            }
+            return size;
+        }
+        //Spread the sample over the array
+        long sampled = 0;
+        int step = elements.length / SAMPLED_ELEMENTS;
+        for (int i = 0; i < SAMPLED_ELEMENTS; i++) {
+            sampled += estimate(elements[i * step]);
+        }
+        return shallow + sampled * elements.length / SAMPLED_ELEMENTS;
+    }
+
+    private long sampledElementsSize(Iterator<?> it, int size) {
+        long sampled = 0;
+        int n = 0;
+        while (n < SAMPLED_ELEMENTS && it.hasNext()) {
+            sampled += estimate(it.next());
+            n++;
+        }
+        return n == 0 ? 0 : sampled * size / n;
+    }
+
+    //The table of a hashed collection, sized for the default load factor
+    private static long hashTableSize(Object o, int size) {
+        String name = o.getClass().getName();
+        if (!name.contains("Hash")) {
+            return 0;
+        }
+        int slots = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(1, size * 4L / 3)) * 2 - 1);
+        return align(ARRAY_HEADER + (long) slots * REFERENCE_SIZE);
+    }
+
+    /**
+     * Walks the object, or gives it the average of its class once enough instances have been walked.
+     */
+    private long sampledSize(Object o) {
+        Class<?> c = o.getClass();
+        ClassSample sample = samples.get(c);
+        if (sample == null) {
+            sample = new ClassSample();
+            ClassSample previous = samples.putIfAbsent(c, sample);
+            if (previous != null) {
+                sample = previous;
+            }
+        }
+        long n = sample.estimates.incrementAndGet();
+        if (n <= WALKED_INSTANCES || n % WALK_INTERVAL == 0) {
+            long size = walk(o);
+            sample.walks.incrementAndGet();
+            sample.walkedBytes.addAndGet(size);
+            return size;
+        }
+        return sample.walkedBytes.get() / Math.max(1, sample.walks.get());
+    }
+
+    /**
+     * Sums the sizes of the objects reachable from the object, each counted once. The well known types met
+     * on the way are sized from their structure.
+     */
+    private long walk(Object root) {
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+        Deque<Object> pending = new ArrayDeque<Object>();
+        pending.push(root);
+        visited.put(root, Boolean.TRUE);
+
+        long size = 0;
+        while (!pending.isEmpty() && visited.size() <= MAX_WALKED_OBJECTS) {
+            Object o = pending.pop();
+            if (o != root) {
+                long structural = structuralSize(o);
+                if (structural >= 0) {
+                    size += structural;
+                    continue;
+                }
+            }
+            long[] layout = layout(o.getClass());
+            size += layout[0];
+            for (int i = 1; i < layout.length; i++) {
+                Object child = UNSAFE.getObject(o, layout[i]);
+                if (child != null && !(child instanceof Class) && visited.put(child, Boolean.TRUE) == null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return size;
+    }
+
+    private long shallowSize(Class<?> c) {
+        return layout(c)[0];
+    }
+
+    /**
+     * @return the shallow size of the instances of the class, then the offsets of their reference fields
+     */
+    private long[] layout(Class<?> c) {
+        long[] layout = shallowSizes.get(c);
+        if (layout != null) {
+            return layout;
+        }
+        long end = OBJECT_HEADER;
+        List<Long> references = new ArrayList<Long>();
+        for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) {
+                    continue;
+                }
+                long offset;
+                try {
+                    offset = UNSAFE.objectFieldOffset(f);
+                } catch (RuntimeException e) {
+                    //Hidden classes and records, count the field without following it
+                    end += REFERENCE_SIZE;
+                    continue;
+                }
+                Class<?> type = f.getType();
+                end = Math.max(end, offset + (type.isPrimitive() ? primitiveSize(type) : REFERENCE_SIZE));
+                if (!type.isPrimitive()) {
+                    references.add(offset);
+                }
+            }
+        }
+        layout = new long[references.size() + 1];
+        layout[0] = align(end);
+        for (int i = 0; i < references.size(); i++) {
+            layout[i + 1] = references.get(i);
+        }
+        shallowSizes.put(c, layout);
+        return layout;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static final class ClassSample {
+        final AtomicLong estimates = new AtomicLong();
+        final AtomicLong walks = new AtomicLong();
+        final AtomicLong walkedBytes = new AtomicLong();
+    }
+
+    // Unsafe mechanics
+    private static final Unsafe UNSAFE;
+
+    static {
+        try {
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            UNSAFE = (Unsafe) f.get(null);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+        REFERENCE_SIZE = Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+        ARRAY_HEADER = Unsafe.ARRAY_BYTE_BASE_OFFSET;
+        //12 bytes with compressed class pointers, the length of an array follows
+        OBJECT_HEADER = ARRAY_HEADER == 16 ? 12 : 16;
+        NODE_SIZE = (int) align(OBJECT_HEADER + 4 + 3L * REFERENCE_SIZE);
+
+        boolean compact;
+        try {
+            String.class.getDeclaredField("coder");
+            compact = true;
+        } catch (NoSuchFieldException e) {
+            compact = false;
+        }
+        COMPACT_STRINGS = compact;
+
+        HeapSizeWeigher<Object, Object> weigher = new HeapSizeWeigher<Object, Object>();
+        STRING_SIZE = weigher.shallowSize(String.class);
+        ENTRY_OVERHEAD = weigher.shallowSize(HashCacheEntry.class) + REFERENCE_SIZE;
+    }
+}
@@ -1,7 +1,51 @@
 package com.cache.gocache;
 
 public class TimeHelper {
+    /**
+     * How often the approximate clock is updated, in ms. The segments also move it forward when they clean up.
+     */
+    public static final long TICK_MS = 10;
+
     public static long nowMs(){
         return System.currentTimeMillis();
     }
+
+    /**
+     * The time in ms, late by up to a tick. It's a volatile read instead of a call to the OS clock, for the
+     * read paths which only need it to check expiration and to order the accesses.
+     */
+    public static long approximateNowMs(){
+        return ApproximateClock.now;
+    }
+
+    /**
+     * Moves the approximate clock forward to a time just read from the OS clock.
+     */
+    public static void advanceApproximateNow(long now){
+        if (now > ApproximateClock.now) {
+            ApproximateClock.now = now;
+        }
+    }
+
+    /**
+     * Started with the first read of the approximate time.
+     */
+    private static final class ApproximateClock {
+        static volatile long now = System.currentTimeMillis();
+
+        static {
+            Thread ticker = new Thread(() -> {
+                while (true) {
+                    now = System.currentTimeMillis();
+                    try {
+                        Thread.sleep(TICK_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "gocache-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+    }
 }
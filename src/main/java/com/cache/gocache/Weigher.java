@@ -0,0 +1,16 @@
+package com.cache.gocache;
+
+/**
+ * Weighs the entries of a cache bounded by {@link CacheBuilder#maximumWeight(long)}, e.g. by the bytes
+ * their values take.
+ * <p>
+ * An entry is weighed when it is put into memory or its value is replaced, its weight must not change
+ * while it stays there.
+ */
+public interface Weigher<K, V> {
+    /**
+     * @return the weight of the entry, not negative
+     * @throws IllegalArgumentException is thrown by the cache, which is left unchanged, if the weight is negative
+     */
+    int weigh(K key, V value);
+}
@@ -15,6 +15,8 @@ public class CacheImpl<K extends Serializable, V extends Serializable> implement
 
     private int initCapacity = 2000;
     private long maximumSize = 2000;
+    private long maximumWeight = -1L;
+    private Weigher<K, V> weigher;
     private int concurrencyLevel = 1;
 
     private long expireAfterAccess = -1L;
@@ -23,13 +25,14 @@ public class CacheImpl<K extends Serializable, V extends Serializable> implement
 
     private float evictionStartFactor = 0.85f;
     private float evictionStopFactor = 0.70f;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.Lru;
 
     private int segmentCount = 1;
     private int segmentShift;
     private int segmentMask = 0;
     private final CacheSegment[] segments; // 每个segment里面都保存了一个数组
 
-    public CacheImpl(int initCapacity, long maximumSize, int concurrencyLevel, long expireAfterAccess, long expireAfterWrite, long expireAfterCreate, float evictionStartFactor, float evictionStopFactor, List<CacheStore<K, V>> evictStores, List<BehindStore<K, V>> writeBehindStores) {
+    public CacheImpl(int initCapacity, long maximumSize, int concurrencyLevel, long expireAfterAccess, long expireAfterWrite, long expireAfterCreate, float evictionStartFactor, float evictionStopFactor, long maximumWeight, Weigher<K, V> weigher, EvictionPolicy evictionPolicy, List<CacheStore<K, V>> evictStores, List<BehindStore<K, V>> writeBehindStores) {
         this.initCapacity = Math.min(initCapacity, (int) maximumSize);
         this.maximumSize = Math.max(initCapacity, maximumSize);
         this.concurrencyLevel = Math.max(concurrencyLevel, 1);
@@ -38,6 +41,9 @@ public class CacheImpl<K extends Serializable, V extends Serializable> implement
         this.expireAfterCreate = expireAfterCreate;
         this.evictionStartFactor = Math.max(evictionStartFactor, evictionStopFactor);
         this.evictionStopFactor = Math.min(evictionStopFactor, evictionStartFactor);
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.evictionPolicy = evictionPolicy;
         this.evictStores.addAll(evictStores);
         this.writeBehindStores.addAll(writeBehindStores);
 
@@ -52,13 +58,14 @@ public class CacheImpl<K extends Serializable, V extends Serializable> implement
 
         int init = this.initCapacity / scount + 1;
         long max = this.maximumSize / scount + 1;
+        long maxWeight = this.maximumWeight / scount + 1;
 
         this.segmentMask = this.segmentCount - 1;
         segments = new CacheSegment[scount];
 
         CacheSegment<K,V> s;
         for (int i = 0; i < scount; i++) {
-            s = new CacheSegment<K, V>(init, max, evictionStartFactor, evictionStopFactor, evictStores, writeBehindStores);
+            s = new CacheSegment<K, V>(init, max, evictionStartFactor, evictionStopFactor, maxWeight, weigher, evictionPolicy, evictStores, writeBehindStores);
             UNSAFE.putOrderedObject(segments, SBASE + (i << SSHIFT), s);
         }
     }
@@ -18,12 +18,16 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     private volatile HashCacheEntry[] table;
     private volatile SegmentAccessQueue accessQueue = new SegmentAccessQueue();
     private volatile SegmentStatsCounter statsCounter = new SegmentStatsCounter();
+    private final SegmentReadBuffer<K, V> readBuffer = new SegmentReadBuffer<K, V>();
+    private final SegmentEvictionPolicy<K, V> evictionPolicy;
 
     private final List<CacheStore<K, V>> evictStores = new ArrayList<CacheStore<K, V>>();
     private final List<BehindStore<K, V>> writeBehindStores = new ArrayList<BehindStore<K, V>>();
 
     private int initCapacity = 32;
     private long maximumSize = 2000;
+    private long maximumWeight = -1L;
+    private final Weigher<K, V> weigher;
 
     private float evictionStartFactor = 0.85f;
     private float evictionStopFactor = 0.70f;
@@ -33,13 +37,27 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     transient int threshold;
     final float loadFactor;
 
-    public CacheSegment(int initCap, long maximumSize, float evictionStartFactor, float evictionStopFactor, List<CacheStore<K, V>> evictStores, List<BehindStore<K, V>> writeBehindStores) {
+    public CacheSegment(int initCap, long maximumSize, float evictionStartFactor, float evictionStopFactor, long maximumWeight, Weigher<K, V> weigher, EvictionPolicy evictionPolicy, List<CacheStore<K, V>> evictStores, List<BehindStore<K, V>> writeBehindStores) {
         this.initCapacity = Math.min(initCap, (int) maximumSize);
         this.maximumSize = Math.max(initCap, maximumSize);
 
         this.evictionStartFactor = Math.max(evictionStartFactor, evictionStopFactor);
         this.evictionStopFactor = Math.min(evictionStopFactor, evictionStartFactor);
 
+        //Bounded by weight if there is a weigher, else by the # of entries
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+
+        if (evictionPolicy == EvictionPolicy.WTinyLfu) {
+            if (weigher != null) {
+                this.evictionPolicy = new TinyLfuSegmentEviction<K, V>((long) (maximumWeight * this.evictionStopFactor), 0);
+            } else {
+                this.evictionPolicy = new TinyLfuSegmentEviction<K, V>((long) (this.maximumSize * this.evictionStopFactor), this.maximumSize);
+            }
+        } else {
+            this.evictionPolicy = new LruSegmentEviction<K, V>(accessQueue);
+        }
+
         this.evictStores.addAll(evictStores);
         this.writeBehindStores.addAll(writeBehindStores);
 
@@ -55,6 +73,14 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     }
 
     public V get(int hash, K key, Cache.AccessLevel level, Cache.UpdateTimestamp strategy) {
+        //The write behind stores are updated on reads, which must stay ordered with the writes.
+        //Only the access time is touched without the lock, the write and create times are set under it.
+        if (writeBehindStores.isEmpty() && !strategy.updateWriteTime() && !strategy.updateCreateTime()) {
+            HashCacheEntry<K, V> e = getIfPresent(hash, key);
+            if (e != null) {
+                return e.value;
+            }
+        }
 
         if (!tryLock()) {
             scanAndLock(key, hash);
@@ -79,7 +105,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                 //The entry is in memory
                 if (isExpired(e, now)) {
                     //Remove it
-                    accessQueue.remove(e);
+                    unlink(e);
                     if (pred == null) {
                         setEntryAt(tab, index, e.next);
                     } else {
@@ -106,7 +132,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                         e.setCreateTime(now);
                     }
 
-                    accessQueue.addLast(e);
+                    recordAccess(e);
                     statsCounter.memoryHits(1);
                     statsCounter.hits(1);
                 }
@@ -129,7 +155,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     }
 
                     setEntryAt(tab, index, e);
-                    accessQueue.addLast(e);
+                    recordWrite(e);
 
                     statsCounter.memorySizeIncrement();
                     statsCounter.hits(1);
@@ -148,7 +174,47 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
         return value;
     }
 
+    /**
+     * Looks up a live entry in memory without locking, like ConcurrentHashMap.get, against the approximate
+     * clock. The read is buffered and replayed into the access queue later.
+     *
+     * @return null if the entry isn't in memory or is about to expire, the locked path then takes care of it
+     */
+    private HashCacheEntry<K, V> getIfPresent(int hash, K key) {
+        long now = TimeHelper.approximateNowMs();
+        HashCacheEntry<K, V> e;
+        for (e = entryForHash(this, hash); e != null; e = e.next) {
+            K k;
+            if ((k = e.key) == key || (e.hash == hash && Objects.deepEquals(key, k))) {
+                break;
+            }
+        }
+        //The clock may be a tick behind, an entry which expires within a tick is checked under the lock
+        if (e == null || isExpired(e, now + TimeHelper.TICK_MS)) {
+            return null;
+        }
+
+        //A hot entry is read many times within a tick, don't dirty its cache line for nothing.
+        //The approximate clock may also be behind the exact one the locked paths wrote with.
+        if (e.getAccessTime() < now) {
+            e.setAccessTime(now);
+        }
+        statsCounter.memoryHits(1);
+        statsCounter.hits(1);
+
+        if (readBuffer.offer(e) == SegmentReadBuffer.FULL && tryLock()) {
+            try {
+                tryClean();
+            } finally {
+                unlock();
+            }
+        }
+        return e;
+    }
+
     public V put(int hash, K key, V value, ExpirationPolicy expirationPolicy, boolean onlyIfAbsent) {
+        //The value is weighed before anything is locked or changed, a bad weight leaves the segment as it was
+        int weight = weigh(key, value);
         HashCacheEntry<K, V> node = tryLock() ? null : scanAndLockForPut(key, hash, value, expirationPolicy);
         long now = now();
         V oldValue = null;
@@ -170,7 +236,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                 //The entry is in memory
                 if (isExpired(e, now)) {
                     reincarnate(now, e, value, expirationPolicy);
-                    accessQueue.addLast(e);
+                    recordWrite(e, weight);
 
                     statsCounter.recordExpires(1);
                     statsCounter.recordCreates(1);
@@ -179,7 +245,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     oldValue = e.value;
                     if (!onlyIfAbsent) {
                         reincarnate(now, e, value, expirationPolicy);
-                        accessQueue.addLast(e);
+                        recordWrite(e, weight);
 
                         ++modCount;
                         statsCounter.recordCreates(1);
@@ -212,7 +278,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                 e.setNext(first);
                 e.setNextInAccessQueue(null);
                 e.setPreviousInAccessQueue(null);
-                accessQueue.addLast(e);
+                recordWrite(e, e == activation ? weigh(e.key, e.value) : weight);
 
                 int c = count + 1;
                 if (c > threshold && tab.length < MAXIMUM_CAPACITY) {
@@ -397,7 +463,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                 //The entry is in memory
                 if (isExpired(e, now)) {
                     //Remove it
-                    accessQueue.remove(e);
+                    unlink(e);
                     if (pred == null) {
                         setEntryAt(tab, index, e.next);
                     } else {
@@ -415,7 +481,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     if (value == null || value == v || Objects.deepEquals(value, v)) {
                         oldValue = v;
                         //Remove it
-                        accessQueue.remove(e);
+                        unlink(e);
                         if (pred == null) {
                             setEntryAt(tab, index, e.next);
                         } else {
@@ -431,7 +497,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
 
                     } else {
                         //Fresh the entry
-                        accessQueue.addLast(e);
+                        recordAccess(e);
                     }
                 }
             } else {
@@ -449,7 +515,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                         //Push it into memory
                         e.setNext(first);
                         setEntryAt(tab, index, e);
-                        accessQueue.addLast(e);
+                        recordWrite(e);
 
                         ++modCount;
                         ++count;
@@ -469,6 +535,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     }
 
     public boolean replace(K key, int hash, V oldValue, V newValue) {
+        int weight = weigh(key, newValue);
         if (!tryLock()) {
             scanAndLock(key, hash);
         }
@@ -492,7 +559,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
             if (e != null) {
                 if (isExpired(e, now)) {
                     //Remove it
-                    accessQueue.remove(e);
+                    unlink(e);
                     if (pred == null) {
                         setEntryAt(tab, index, e.next);
                     } else {
@@ -514,7 +581,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
 
                         statsCounter.recordUpdates(1);
                     }
-                    accessQueue.addLast(e);
+                    recordWrite(e, replaced ? weight : e.weight);
                 }
             } else {
                 //The entry isn't in memory
@@ -533,7 +600,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     //Push it into memory
                     e.setNext(first);
                     setEntryAt(tab, index, e);
-                    accessQueue.addLast(e);
+                    recordWrite(e, replaced ? weight : weigh(e.key, e.value));
 
                     ++modCount;
                     ++count;
@@ -552,6 +619,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     }
 
     public V replace(K key, int hash, V value) {
+        int weight = weigh(key, value);
         if (!tryLock()) {
             scanAndLock(key, hash);
         }
@@ -575,7 +643,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
             if (e != null) {
                 if (isExpired(e, now)) {
                     //Remove it
-                    accessQueue.remove(e);
+                    unlink(e);
                     if (pred == null) {
                         setEntryAt(tab, index, e.next);
                     } else {
@@ -593,7 +661,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     e.setValue(value);
                     e.setWriteTime(now);
 
-                    accessQueue.addLast(e);
+                    recordWrite(e, weight);
 
                     ++modCount;
                     statsCounter.recordUpdates(1);
@@ -613,7 +681,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     e.setNext(first);
                     setEntryAt(tab, index, e);
 
-                    accessQueue.addLast(e);
+                    recordWrite(e, weight);
 
                     ++modCount;
                     ++count;
@@ -674,7 +742,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
             if (e != null) {
                 if (isExpired(e, now)) {
                     //Remove it
-                    accessQueue.remove(e);
+                    unlink(e);
                     if (pred == null) {
                         setEntryAt(tab, index, e.next);
                     } else {
@@ -689,7 +757,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     statsCounter.sizeDecrement();
                 } else {
                     contained = true;
-                    accessQueue.addLast(e);
+                    recordAccess(e);
                 }
             } else {
                 //The entry isn't in memory
@@ -702,7 +770,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
                     //Push it into memory
                     e.setNext(first);
                     setEntryAt(tab, index, e);
-                    accessQueue.addLast(e);
+                    recordWrite(e);
 
                     ++modCount;
                     ++count;
@@ -791,12 +859,14 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     }
 
     void tryClean() {
+        readBuffer.drainTo(accessQueue, evictionPolicy);
         tryExpire();
         tryEvict();
     }
 
     private void tryExpire() {
         long now = now();
+        TimeHelper.advanceApproximateNow(now);
         HashCacheEntry<K, V> entry = null;
         entry = accessQueue.peek();
         while (entry != null && isExpired(entry, now)) {
@@ -811,25 +881,64 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
     }
 
     private void tryEvict() {
-        long s = statsCounter.memorySize;
-        long evictionCount = s > maximumSize * evictionStartFactor ? (long) (s - maximumSize * evictionStopFactor) : 0l;
-
-        if (evictionCount <= 0) {
+        long maximum = weigher != null ? maximumWeight : maximumSize;
+        if (memoryUsage() <= maximum * evictionStartFactor) {
             return;
         }
 
         HashCacheEntry<K, V> entry = null;
-
-        entry = accessQueue.peek();
-        do {
+        while (memoryUsage() > maximum * evictionStopFactor && (entry = evictionPolicy.victim()) != null) {
             _remove(entry.key, entry.hash);
 
             addToEvictStores(entry);
             statsCounter.recordEvicts(1);
+        }
+    }
 
-            evictionCount--;
-            entry = accessQueue.peek();
-        } while (evictionCount > 0 && entry != null);
+    //The weight of the entry by the weigher, 1 if the segment isn't bounded by weight
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be >= 0, got " + weight + " for key " + key);
+        }
+        return weight;
+    }
+
+    //The total weight of the entries in memory if the segment is bounded by weight, else their #
+    private long memoryUsage() {
+        return weigher != null ? statsCounter.weight : statsCounter.memorySize;
+    }
+
+    //Moves the entry to the tail of the access queue. Assume there has been locked.
+    private void recordAccess(HashCacheEntry<K, V> e) {
+        accessQueue.addLast(e);
+        evictionPolicy.recordAccess(e);
+    }
+
+    //Weighs the entry which was put into memory or got a new value, then records the access. Assume there has been locked.
+    private void recordWrite(HashCacheEntry<K, V> e) {
+        recordWrite(e, weigh(e.key, e.value));
+    }
+
+    //Records the access of the entry which was put into memory or got a new value of the given weight. Assume there has been locked.
+    private void recordWrite(HashCacheEntry<K, V> e, int weight) {
+        if (weight != e.weight) {
+            evictionPolicy.recordWeight(e, weight);
+            statsCounter.weightAdd(weight - e.weight);
+            e.weight = weight;
+        }
+        recordAccess(e);
+    }
+
+    //Takes the entry out of the access queue. Assume there has been locked.
+    private void unlink(HashCacheEntry<K, V> e) {
+        accessQueue.remove(e);
+        evictionPolicy.recordRemove(e);
+        statsCounter.weightAdd(-e.weight);
+        e.weight = 0;
     }
 
     //Remove from memory. Assume there has been locked.
@@ -843,7 +952,7 @@ public class CacheSegment<K extends Serializable, V extends Serializable> extend
         for (e = first; e != null; pred = e, e = e.next) {
             K k;
             if ((k = e.key) == key || (e.hash == hash && Objects.deepEquals(key, k))) {
-                accessQueue.remove(e);
+                unlink(e);
                 if (pred == null) {
                     setEntryAt(tab, index, e.next);
                 } else {
@@ -25,6 +25,14 @@ public class HashCacheEntry<K extends Serializable, V extends Serializable> impl
     transient volatile HashCacheEntry<K, V> nextAccess = null;
     transient volatile HashCacheEntry<K, V> previousAccess = null;
 
+    //The W-TinyLFU region the entry is in, only used under the segment lock
+    transient HashCacheEntry<K, V> nextInRegion = null;
+    transient HashCacheEntry<K, V> previousInRegion = null;
+    transient byte region;
+
+    //The weight the segment counted for the entry while it is in memory
+    transient int weight;
+
     public HashCacheEntry(int hash, K key, V value, ExpirationPolicy expirationPolicy) {
         this(hash,key, value, expirationPolicy.getAfterAccess(), expirationPolicy.getAfterWrite(), expirationPolicy.getAfterCreate());
     }
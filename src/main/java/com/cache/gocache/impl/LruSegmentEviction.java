@@ -0,0 +1,33 @@
+package com.cache.gocache.impl;
+
+import java.io.Serializable;
+
+/**
+ * Evicts from the head of the access queue, the entries accessed least recently.
+ */
+final class LruSegmentEviction<K extends Serializable, V extends Serializable> implements SegmentEvictionPolicy<K, V> {
+    private final SegmentAccessQueue accessQueue;
+
+    LruSegmentEviction(SegmentAccessQueue accessQueue) {
+        this.accessQueue = accessQueue;
+    }
+
+    @Override
+    public void recordAccess(HashCacheEntry<K, V> entry) {
+    }
+
+    @Override
+    public void recordWeight(HashCacheEntry<K, V> entry, int weight) {
+    }
+
+    @Override
+    public void recordRemove(HashCacheEntry<K, V> entry) {
+    }
+
+    //The access queue only holds the entries of the segment
+    @Override
+    @SuppressWarnings("unchecked")
+    public HashCacheEntry<K, V> victim() {
+        return accessQueue.peek();
+    }
+}
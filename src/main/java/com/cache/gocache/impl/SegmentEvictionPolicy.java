@@ -0,0 +1,32 @@
+package com.cache.gocache.impl;
+
+import java.io.Serializable;
+
+/**
+ * Decides which entries of a segment leave memory when it has gone beyond its maximum size.
+ * <p>
+ * All the methods are called by the owner of the segment lock.
+ */
+interface SegmentEvictionPolicy<K extends Serializable, V extends Serializable> {
+    /**
+     * Called when the entry is put into memory or accessed there, after it was moved to the tail of the
+     * access queue.
+     */
+    void recordAccess(HashCacheEntry<K, V> entry);
+
+    /**
+     * Called when the weight of the entry changes, before it is set on the entry.
+     */
+    void recordWeight(HashCacheEntry<K, V> entry, int weight);
+
+    /**
+     * Called when the entry leaves memory, whatever the reason.
+     */
+    void recordRemove(HashCacheEntry<K, V> entry);
+
+    /**
+     * @return the next entry to evict, it is removed with {@link #recordRemove} before the next call, or null
+     * if the segment is empty
+     */
+    HashCacheEntry<K, V> victim();
+}
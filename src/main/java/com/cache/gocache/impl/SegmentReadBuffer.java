@@ -0,0 +1,92 @@
+package com.cache.gocache.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A striped, lossy ring buffer of the entries read from a segment without its lock.
+ * <p>
+ * Readers append to the stripe of their thread with a single CAS, the owner of the segment lock replays
+ * the buffered reads into the {@link SegmentAccessQueue} in batches. When a stripe is full the read is
+ * dropped: the access order is only a hint for the eviction, losing a few reads of hot entries does not
+ * change which entries are evicted.
+ */
+final class SegmentReadBuffer<K extends Serializable, V extends Serializable> {
+    static final int SUCCESS = 0;
+    static final int FULL = 1;
+    static final int FAILED = 2;
+
+    /** the reads buffered per stripe, a power of two */
+    static final int STRIPE_SIZE = 16;
+    static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    /** one stripe per cpu, at most 16 */
+    static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final List<Stripe<K, V>> stripes = new ArrayList<Stripe<K, V>>(STRIPES);
+
+    SegmentReadBuffer() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new Stripe<K, V>());
+        }
+    }
+
+    /**
+     * Records a read, lock free.
+     *
+     * @return {@link #FULL} if the stripe of the thread must be drained, the read is then dropped
+     */
+    int offer(HashCacheEntry<K, V> entry) {
+        Stripe<K, V> stripe = stripes.get(probe() & (STRIPES - 1));
+        long head = stripe.readCounter;
+        long tail = stripe.writeCounter.get();
+        if (tail - head >= STRIPE_SIZE) {
+            return FULL;
+        }
+        if (!stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            return FAILED;
+        }
+        stripe.buffer.lazySet((int) (tail & STRIPE_MASK), entry);
+        return SUCCESS;
+    }
+
+    /**
+     * Moves the buffered entries to the tail of the queue, in the order they were read, and reports them to
+     * the eviction policy. The entries which left the queue since they were read are skipped. Assume the
+     * segment has been locked.
+     */
+    void drainTo(SegmentAccessQueue accessQueue, SegmentEvictionPolicy<K, V> evictionPolicy) {
+        for (Stripe<K, V> stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & STRIPE_MASK);
+                HashCacheEntry<K, V> entry = stripe.buffer.get(index);
+                if (entry == null) {
+                    //The reader won the slot but hasn't published the entry yet
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                if (accessQueue.contains(entry)) {
+                    accessQueue.addLast(entry);
+                    evictionPolicy.recordAccess(entry);
+                }
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private static final class Stripe<K extends Serializable, V extends Serializable> {
+        final AtomicReferenceArray<HashCacheEntry<K, V>> buffer = new AtomicReferenceArray<HashCacheEntry<K, V>>(STRIPE_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+    }
+}
@@ -2,11 +2,14 @@ package com.cache.gocache.impl;
 
 import com.cache.gocache.CacheStats;
 
+import java.util.concurrent.atomic.LongAdder;
+
 public class SegmentStatsCounter {
-    volatile long hitCount;
+    //Recorded by the reads which don't take the segment lock
+    final LongAdder hitCount = new LongAdder();
     volatile long missCount;
 
-    volatile long memoryHitCount = 0L;
+    final LongAdder memoryHitCount = new LongAdder();
     volatile long memoryMissCount = 0L;
 
     volatile long createCount = 0L;
@@ -24,12 +27,13 @@ public class SegmentStatsCounter {
 
     volatile long size = 0L;
     volatile long memorySize = 0L;
+    volatile long weight = 0L;
 
     volatile long evictStoreExceptionCount = 0L;
     volatile long behindStoreExceptionCount = 0L;
 
     public void hits(int count) {
-        hitCount += count;
+        hitCount.add(count);
     }
 
     public void misses(int count) {
@@ -37,7 +41,7 @@ public class SegmentStatsCounter {
     }
 
     public void memoryHits(int count) {
-        memoryHitCount += count;
+        memoryHitCount.add(count);
     }
 
     public void memoryMisses(int count) {
@@ -96,6 +100,10 @@ public class SegmentStatsCounter {
         memorySize--;
     }
 
+    public void weightAdd(long delta) {
+        weight += delta;
+    }
+
     public void evictStoreException(int count){
         evictStoreExceptionCount += count;
     }
@@ -106,9 +114,9 @@ public class SegmentStatsCounter {
 
     public CacheStats snapshot() {
         return new CacheStats(
-                hitCount,
+                hitCount.sum(),
                 missCount,
-                memoryHitCount,
+                memoryHitCount.sum(),
                 memoryMissCount,
                 createCount,
                 updateCount,
@@ -120,7 +128,8 @@ public class SegmentStatsCounter {
                 behindStoreHitCount,
                 behindStoreMissCount,
                 size,
-                memorySize
+                memorySize,
+                weight
         );
     }
 }
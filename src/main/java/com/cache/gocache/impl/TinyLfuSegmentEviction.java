@@ -0,0 +1,187 @@
+package com.cache.gocache.impl;
+
+import com.cache.bigcache.utils.FrequencySketch;
+
+import java.io.Serializable;
+
+/**
+ * W-TinyLFU eviction of a segment.
+ * <p>
+ * The new entries enter a window, 1% of the entries, in LRU order. The rest of the entries are in the main
+ * region, a segmented LRU: the entries enter the probation part and are promoted to the protected part,
+ * 80% of the main region, when they are accessed again. When the segment is full, the entry leaving the
+ * window is compared with the head of the main region, and the one accessed less often according to a
+ * {@link FrequencySketch} fed with the hashes of the entries is evicted. The sketch grows with the entries.
+ * <p>
+ * The regions are sized for the entries which are kept after an eviction, the entries put since the last
+ * eviction overflow the window and compete with the main region when the next eviction comes. The sizes are
+ * weights, which are 1 per entry unless the segment is bounded by weight.
+ */
+final class TinyLfuSegmentEviction<K extends Serializable, V extends Serializable> implements SegmentEvictionPolicy<K, V> {
+    /** the share of the entries in the window */
+    static final double WINDOW_RATIO = 0.01;
+
+    /** the share of the main region which is protected */
+    static final double PROTECTED_RATIO = 0.8;
+
+    static final byte WINDOW = 1;
+    static final byte PROBATION = 2;
+    static final byte PROTECTED = 3;
+
+    private final FrequencySketch sketch;
+
+    private final RegionQueue<K, V> window = new RegionQueue<K, V>(WINDOW);
+    private final RegionQueue<K, V> probation = new RegionQueue<K, V>(PROBATION);
+    private final RegionQueue<K, V> protectedRegion = new RegionQueue<K, V>(PROTECTED);
+
+    private final long windowCapacity;
+    private final long mainCapacity;
+    private final long protectedCapacity;
+
+    /** the # of entries in the regions, the sketch grows with it */
+    private long entries;
+
+    /**
+     * @param capacity     the weight of the entries the segment keeps after an eviction
+     * @param expectedKeys the # of keys the sketch is sized for at first
+     */
+    TinyLfuSegmentEviction(long capacity, long expectedKeys) {
+        this.sketch = new FrequencySketch(expectedKeys);
+        this.windowCapacity = Math.max(1, (long) (capacity * WINDOW_RATIO));
+        this.mainCapacity = Math.max(0, capacity - windowCapacity);
+        this.protectedCapacity = (long) (mainCapacity * PROTECTED_RATIO);
+    }
+
+    @Override
+    public void recordAccess(HashCacheEntry<K, V> entry) {
+        sketch.increment(entry.hash);
+        switch (entry.region) {
+            case WINDOW:
+                window.addLast(entry);
+                break;
+            case PROBATION:
+                probation.remove(entry);
+                protectedRegion.addLast(entry);
+                while (protectedRegion.size > protectedCapacity) {
+                    HashCacheEntry<K, V> demoted = protectedRegion.peekFirst();
+                    protectedRegion.remove(demoted);
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedRegion.addLast(entry);
+                break;
+            default:
+                entries++;
+                window.addLast(entry);
+                //The main region is filled up before anything is evicted
+                if (window.size > windowCapacity && probation.size + protectedRegion.size < mainCapacity) {
+                    HashCacheEntry<K, V> first = window.peekFirst();
+                    window.remove(first);
+                    probation.addLast(first);
+                }
+        }
+    }
+
+    @Override
+    public void recordWeight(HashCacheEntry<K, V> entry, int weight) {
+        RegionQueue<K, V> queue = regionOf(entry);
+        if (queue != null) {
+            queue.size += weight - entry.weight;
+        }
+    }
+
+    @Override
+    public void recordRemove(HashCacheEntry<K, V> entry) {
+        RegionQueue<K, V> queue = regionOf(entry);
+        if (queue != null) {
+            queue.remove(entry);
+            entries--;
+        }
+    }
+
+    @Override
+    public HashCacheEntry<K, V> victim() {
+        sketch.ensureCapacity(entries);
+
+        HashCacheEntry<K, V> victim = probation.peekFirst();
+        if (victim == null) {
+            victim = protectedRegion.peekFirst();
+        }
+
+        if (window.size > windowCapacity) {
+            HashCacheEntry<K, V> candidate = window.peekFirst();
+            if (victim == null || !sketch.admit(candidate.hash, victim.hash)) {
+                return candidate;
+            }
+            window.remove(candidate);
+            probation.addLast(candidate);
+            return victim;
+        }
+        return victim != null ? victim : window.peekFirst();
+    }
+
+    private RegionQueue<K, V> regionOf(HashCacheEntry<K, V> entry) {
+        switch (entry.region) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            case PROTECTED:
+                return protectedRegion;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The entries of a region in LRU order, linked through the region links of the entries.
+     */
+    static final class RegionQueue<K extends Serializable, V extends Serializable> {
+        final HashCacheEntry<K, V> head = new HashCacheEntry<K, V>(0, null, null, 0, 0, 0);
+        final byte region;
+        /** the total weight of the entries */
+        long size;
+
+        RegionQueue(byte region) {
+            this.region = region;
+            head.nextInRegion = head;
+            head.previousInRegion = head;
+        }
+
+        /**
+         * Appends the entry, or moves it to the tail if it is in the region already.
+         */
+        void addLast(HashCacheEntry<K, V> entry) {
+            if (entry.region == region) {
+                unlink(entry);
+            } else {
+                size += entry.weight;
+            }
+            HashCacheEntry<K, V> last = head.previousInRegion;
+            last.nextInRegion = entry;
+            entry.previousInRegion = last;
+            entry.nextInRegion = head;
+            head.previousInRegion = entry;
+            entry.region = region;
+        }
+
+        void remove(HashCacheEntry<K, V> entry) {
+            unlink(entry);
+            entry.nextInRegion = null;
+            entry.previousInRegion = null;
+            entry.region = 0;
+            size -= entry.weight;
+        }
+
+        HashCacheEntry<K, V> peekFirst() {
+            HashCacheEntry<K, V> first = head.nextInRegion;
+            return first == head ? null : first;
+        }
+
+        private void unlink(HashCacheEntry<K, V> entry) {
+            entry.previousInRegion.nextInRegion = entry.nextInRegion;
+            entry.nextInRegion.previousInRegion = entry.previousInRegion;
+        }
+    }
+}
@@ -30,8 +30,16 @@ public class BigCacheStore<K extends Serializable, V extends Serializable> imple
             return;
         }
 
+        // the entry keeps its absolute deadline in the second tier, accesses there must not extend it
         long ttl = CacheEntryHelper.calculateTTL(entry, TimeHelper.nowMs());
-        cache.put(key, value, ttl);
+        if (ttl <= 0) {
+            return;
+        }
+        if (ttl == Long.MAX_VALUE) {
+            cache.put(key, value);
+        } else {
+            cache.put(key, value, -1, ttl);
+        }
     }
 
     @Override
@@ -0,0 +1,150 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheAsyncTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_async/";
+
+    private BigCache<Integer> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile },
+                { StorageMode.OffHeapPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<Integer> cache(int maxAsyncInFlight) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setAsyncThreads(2)
+                .setMaxAsyncInFlight(maxAsyncInFlight);
+        return new BigCache<Integer>(TEST_DIR, config);
+    }
+
+    @Test
+    public void testAsyncOperations() throws Exception {
+        cache = cache(16);
+        cache.putAsync(1, "A".getBytes()).get();
+        cache.putAsync(2, "B".getBytes(), 60 * 1000).get();
+        assertEquals("A", new String(cache.getAsync(1).get()));
+        assertEquals("B", new String(cache.get(2)));
+        assertNull(cache.getAsync(3).get());
+
+        assertEquals("A", new String(cache.deleteAsync(1).get()));
+        assertFalse(cache.contains(1));
+        assertNull(cache.deleteAsync(1).get());
+
+        BigCacheStats stats = cache.getStats();
+        assertEquals(6, stats.getAsyncCompleted());
+        assertTrue(stats.getAsyncLatency() > 0);
+        assertTrue(stats.getAsyncAverageLatency() > 0);
+        assertEquals(0, stats.getAsyncQueueDepth());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        cache = cache(2);
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(cache.putAsync(i, ("value" + i).getBytes()));
+            BigCacheStats stats = cache.getStats();
+            assertTrue(stats.getAsyncInFlight() <= 2);
+            assertTrue(stats.getAsyncQueueDepth() <= 2);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        assertEquals(1000, cache.count());
+
+        // callbacks may submit again even if all the permits are taken
+        assertEquals("value1", new String(cache.getAsync(0).thenCompose(v -> cache.getAsync(1)).get()));
+    }
+
+    @Test
+    public void testResubmittingCallbacksWhilePermitsAreTaken() throws Exception {
+        cache = cache(2);
+        cache.put(0, "A".getBytes());
+        AtomicBoolean producing = new AtomicBoolean(true);
+        // keeps all the permits taken, a callback waiting for one would block an I/O thread for good
+        Thread producer = new Thread(() -> {
+            while (producing.get()) {
+                cache.getAsync(0);
+            }
+        });
+        producer.setDaemon(true);
+        producer.start();
+        try {
+            List<CompletableFuture<byte[]>> chains = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 0; i < 100; i++) {
+                CompletableFuture<byte[]> chain = cache.getAsync(0);
+                for (int j = 0; j < 10; j++) {
+                    chain = chain.thenCompose(v -> cache.getAsync(0));
+                }
+                chains.add(chain);
+            }
+            for (CompletableFuture<byte[]> chain : chains) {
+                assertEquals("A", new String(chain.get(30, TimeUnit.SECONDS)));
+            }
+        } finally {
+            producing.set(false);
+            producer.join(10 * 1000);
+        }
+    }
+
+    @Test
+    public void testFailureAndClose() throws Exception {
+        cache = cache(16);
+        try {
+            cache.putAsync(1, null).get();
+            fail("null values are rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        CompletableFuture<Void> put = cache.putAsync(2, "B".getBytes());
+        cache.close();
+        // pending operations complete before the storage is closed
+        put.get();
+        try {
+            cache.getAsync(2).get();
+            fail("the cache is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        cache = null;
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
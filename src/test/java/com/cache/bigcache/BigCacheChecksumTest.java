@@ -0,0 +1,205 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.codec.Lz4Codec;
+import com.cache.bigcache.sotrage.Pointer;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheChecksumTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_checksum/";
+
+    private BigCache<String> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile },
+                { StorageMode.OffHeapPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private CacheConfig config() {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(2)
+                .setChecksumEnabled(true);
+        return config;
+    }
+
+    /**
+     * flips a bit of the stored entry of the key, in place.
+     */
+    private void corrupt(String key, int index) throws IOException {
+        Pointer pointer = cache.pointerMap.get(key).getPointer();
+        byte[] stored = cache.storageManager.retrieve(pointer);
+        stored[index] ^= 0x10;
+        assertEquals(pointer.getPosition(), pointer.getStorageBlock().update(pointer, stored).getPosition());
+    }
+
+    @Test
+    public void testReads() throws IOException {
+        cache = new BigCache<String>(TEST_DIR, config());
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.put("empty", new byte[0]);
+        cache.put("buffers", ByteBuffer.wrap("split ".getBytes()), ByteBuffer.wrap("value".getBytes()));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value" + i, new String(cache.get("key" + i)));
+        }
+        assertEquals(0, cache.get("empty").length);
+        assertEquals("split value", new String(cache.get("buffers")));
+        ByteBuffer dest = ByteBuffer.allocate(100);
+        assertEquals(7, cache.get("key10", dest));
+        assertEquals("value10", new String(cache.get("key10", (ByteBuffer value) -> {
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            return bytes;
+        })));
+        Map<String, byte[]> values = cache.getAll(Arrays.asList("key1", "key2", "none"));
+        assertEquals(2, values.size());
+        assertEquals("value2", new String(values.get("key2")));
+        assertEquals("value3", new String(cache.delete("key3")));
+        assertEquals(0, cache.getStats().getCacheCorrupt());
+    }
+
+    @Test
+    public void testCompressedReads() throws IOException {
+        cache = new BigCache<String>(TEST_DIR, config().setCodec(new Lz4Codec()));
+        byte[] value = new byte[1000];
+        Arrays.fill(value, (byte) 'v');
+        cache.put("key", value);
+        cache.put("small", "value".getBytes());
+        assertArrayEquals(value, cache.get("key"));
+        assertEquals("value", new String(cache.get("small")));
+
+        corrupt("key", 12);
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getStats().getCacheCorrupt());
+    }
+
+    @Test
+    public void testCorruptedEntries() throws IOException {
+        cache = new BigCache<String>(TEST_DIR, config());
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.get("key0");
+
+        // in the value
+        corrupt("key1", 10);
+        assertNull(cache.get("key1"));
+        BigCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getCacheCorrupt());
+        assertEquals(1, stats.getCacheHit());
+        assertEquals(1, stats.getCacheMiss());
+        assertEquals(9, cache.count());
+        assertFalse(cache.contains("key1"));
+
+        // in the length of the header
+        corrupt("key2", 3);
+        Map<String, byte[]> values = cache.getAll(Arrays.asList("key2", "key4"));
+        assertEquals(1, values.size());
+        assertEquals("value4", new String(values.get("key4")));
+        assertEquals(2, cache.getStats().getCacheCorrupt());
+
+        // in the checksum
+        corrupt("key5", 6);
+        assertNull(cache.delete("key5"));
+        assertEquals(3, cache.getStats().getCacheCorrupt());
+        assertEquals(7, cache.count());
+
+        // a corrupted entry can be put again
+        cache.put("key1", "new value".getBytes());
+        assertEquals("new value", new String(cache.get("key1")));
+    }
+
+    @Test
+    public void testCorruptedEntriesAreCountedOnce() throws IOException {
+        cache = new BigCache<String>(TEST_DIR, config());
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        corrupt("key1", 10);
+        assertNull(cache.get("key1"));
+        ByteBuffer dest = ByteBuffer.allocate(100);
+        assertEquals(6, cache.get("key0", dest));
+        BigCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getCacheHit());
+        assertEquals(1, stats.getCacheMiss());
+
+        // the corrupted key is asked for twice, so is the good one
+        corrupt("key2", 10);
+        Map<String, byte[]> values = cache.getAll(Arrays.asList("key2", "key3", "key2", "key3", "none"));
+        assertEquals(1, values.size());
+        assertEquals("value3", new String(values.get("key3")));
+        stats = cache.getStats();
+        assertEquals(2, stats.getCacheCorrupt());
+        assertEquals(3, stats.getCacheHit());
+        assertEquals(4, stats.getCacheMiss());
+        assertEquals(7, stats.getCacheGet());
+    }
+
+    @Test
+    public void testScrubber() throws IOException {
+        cache = new BigCache<String>(TEST_DIR, config().setScrubInterval(100));
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        corrupt("key10", 9);
+        corrupt("key500", 12);
+        for (int i = 0; i < 50 && cache.getStats().getCacheCorrupt() < 2; i++) {
+            TestUtil.sleepQuietly(100);
+        }
+        BigCacheStats stats = cache.getStats();
+        assertEquals(2, stats.getCacheCorrupt());
+        // the run may still be going on
+        assertTrue(stats.getScrubbedEntries() > 500);
+        assertEquals(998, cache.count());
+        // found without being read
+        assertEquals(0, stats.getCacheMiss());
+        assertEquals("value11", new String(cache.get("key11")));
+    }
+
+    @After
+    public void close() throws IOException {
+        try {
+            cache.close();
+            FileUtil.deleteDirectory(new File(TEST_DIR));
+        } catch (IllegalStateException e) {
+            System.gc();
+            try {
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            } catch (IllegalStateException e1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e2) {
+                }
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.codec.DeflateCodec;
+import com.cache.bigcache.codec.ICodec;
+import com.cache.bigcache.codec.Lz4Codec;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheCodecTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_codec/";
+
+    private BigCache<String> cache;
+
+    @Parameter(value = 0)
+    public ICodec codec;
+
+    @Parameters
+    public static Collection<ICodec[]> data() throws IOException {
+        ICodec[][] data = { { new DeflateCodec() },
+                { new Lz4Codec() } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<String> cache(StorageMode storageMode, ICodec codec) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(2)
+                .setRecoveryEnabled(storageMode == StorageMode.PureFile)
+                .setCodec(codec);
+        return new BigCache<String>(TEST_DIR, config);
+    }
+
+    private static byte[] value(int i) {
+        StringBuilder builder = new StringBuilder("{\"orders\":[");
+        for (int j = 0; j < 20; j++) {
+            builder.append("{\"order\":").append(i * 100 + j).append(",\"status\":\"shipped\",\"currency\":\"EUR\"},");
+        }
+        return builder.append("]}").toString().getBytes();
+    }
+
+    @Test
+    public void testCompressedValues() throws IOException {
+        cache = cache(StorageMode.OffHeapPlusFile, codec);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, value(i));
+        }
+        cache.put("small", "tiny".getBytes());
+        cache.put("empty", new byte[0]);
+        cache.put("buffers", ByteBuffer.wrap(value(1), 0, 100), ByteBuffer.wrap(value(1), 100, value(1).length - 100));
+
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(value(i), cache.get("key" + i));
+        }
+        assertEquals("tiny", new String(cache.get("small")));
+        assertEquals(0, cache.get("empty").length);
+        assertArrayEquals(value(1), cache.get("buffers"));
+        assertNull(cache.get("none"));
+
+        BigCacheStats stats = cache.getStats();
+        assertTrue("ratio " + stats.getCompressionRatio(), stats.getCompressionRatio() > 2);
+        assertTrue(stats.getCodecEncodedBytes() < stats.getCodecRawBytes());
+        assertTrue(stats.getCompressTime() > 0);
+        assertTrue(stats.getDecompressTime() > 0);
+        // the storage only holds the compressed entries
+        assertTrue(stats.getStorageUsed() < stats.getCodecRawBytes() / 2);
+    }
+
+    @Test
+    public void testReadsAndDelete() throws IOException {
+        cache = cache(StorageMode.OffHeapPlusFile, codec);
+        Map<String, byte[]> entries = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            entries.put("key" + i, value(i));
+        }
+        cache.putAll(entries);
+
+        Map<String, byte[]> values = cache.getAll(Arrays.asList("key1", "key2", "none"));
+        assertEquals(2, values.size());
+        assertArrayEquals(value(1), values.get("key1"));
+        assertArrayEquals(value(2), values.get("key2"));
+
+        ByteBuffer dest = ByteBuffer.allocate(value(3).length + 10);
+        dest.position(10);
+        assertEquals(value(3).length, cache.get("key3", dest));
+        assertArrayEquals(value(3), Arrays.copyOfRange(dest.array(), 10, dest.position()));
+        assertEquals(-1, cache.get("none", dest));
+        try {
+            cache.get("key3", ByteBuffer.allocate(10));
+            fail("the value does not fit");
+        } catch (BufferOverflowException expected) {
+        }
+
+        assertEquals(Integer.valueOf(value(4).length), cache.get("key4", ByteBuffer::remaining));
+
+        assertArrayEquals(value(5), cache.delete("key5"));
+        assertNull(cache.get("key5"));
+        assertNull(cache.delete("key5"));
+
+        // an update may change the size of the stored entry
+        cache.put("key6", "short".getBytes());
+        assertEquals("short", new String(cache.get("key6")));
+        cache.put("key6", value(6));
+        assertArrayEquals(value(6), cache.get("key6"));
+    }
+
+    @Test
+    public void testRecoverWithAnotherCodec() throws IOException {
+        cache = cache(StorageMode.PureFile, codec);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, value(i));
+        }
+        cache.close();
+
+        // the entries keep the id of the codec which wrote them
+        cache = cache(StorageMode.PureFile, codec instanceof Lz4Codec ? new DeflateCodec() : new Lz4Codec());
+        assertEquals(100, cache.count());
+        cache.put("key0", value(1000));
+        assertArrayEquals(value(1000), cache.get("key0"));
+        for (int i = 1; i < 100; i++) {
+            assertArrayEquals(value(i), cache.get("key" + i));
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        try {
+            cache.close();
+            FileUtil.deleteDirectory(new File(TEST_DIR));
+        } catch (IllegalStateException e) {
+            System.gc();
+            try {
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            } catch (IllegalStateException e1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e2) {
+                }
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            }
+        }
+    }
+}
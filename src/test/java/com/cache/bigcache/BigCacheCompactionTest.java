@@ -0,0 +1,197 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.IndexMode;
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheCompactionTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_compaction/";
+
+    // 128 values per block
+    private static final int VALUE_LENGTH = 128 * 1024;
+
+    // the first two blocks are full, the third one holds 44 values
+    private static final int KEY_COUNT = 300;
+
+    private BigCache<Integer> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile },
+                { StorageMode.OffHeapPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private static byte[] value(int key) {
+        byte[] value = new byte[VALUE_LENGTH];
+        Arrays.fill(value, (byte) key);
+        return value;
+    }
+
+    /**
+     * fills the first two blocks and leaves only one value in four alive there.
+     */
+    private BigCache<Integer> dirtyCache(CacheConfig config) throws IOException {
+        config.setStorageMode(storageMode)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(2);
+        BigCache<Integer> cache = new BigCache<Integer>(TEST_DIR, config);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put(i, value(i));
+        }
+        for (int i = 0; i < 256; i++) {
+            if (i % 4 != 0) {
+                cache.delete(i);
+            }
+        }
+        return cache;
+    }
+
+    private void assertValues() throws IOException {
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (i < 256 && i % 4 != 0) {
+                assertNull(cache.get(i));
+            } else {
+                assertArrayEquals(value(i), cache.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEvacuatesDirtyBlocks() throws IOException {
+        cache = dirtyCache(new CacheConfig());
+        assertEquals(3, cache.storageManager.getUsedBlockCount());
+        assertEquals(2, cache.storageManager.getDirtyBlocks(0.5).size());
+
+        new BigCache.CacheMerger<Integer>(cache).process(cache);
+
+        assertEquals(64, cache.getStats().getCacheMove());
+        // the two evacuated blocks are freed, the live values fit in the third one
+        assertEquals(1, cache.storageManager.getUsedBlockCount());
+        assertEquals(0, cache.storageManager.getDirty());
+        assertEquals(0, cache.storageManager.getDirtyBlocks(0.5).size());
+        assertValues();
+
+        // nothing is left to move
+        new BigCache.CacheMerger<Integer>(cache).process(cache);
+        assertEquals(64, cache.getStats().getCacheMove());
+        assertEquals(108, cache.blockKeys.size());
+    }
+
+    @Test
+    public void testEvacuatesWithOffHeapIndex() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setIndexMode(IndexMode.OffHeap);
+        cache = dirtyCache(config);
+
+        new BigCache.CacheMerger<Integer>(cache).process(cache);
+
+        assertEquals(64, cache.getStats().getCacheMove());
+        assertEquals(1, cache.storageManager.getUsedBlockCount());
+        assertValues();
+        // the off-heap index is scanned, no key is kept on heap
+        assertEquals(cache.count(), cache.blockKeys.size());
+    }
+
+    @Test
+    public void testChurnDoesNotGrowKeyLists() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        for (int i = 0; i < 100 * BlockKeyTracker.MIN_PRUNED_SIZE; i++) {
+            cache.put(i, "value".getBytes());
+            cache.delete(i);
+        }
+        cache.put(-1, "value".getBytes());
+        // the stale keys are pruned as the lists grow
+        assertTrue(cache.blockKeys.size() <= BlockKeyTracker.MIN_PRUNED_SIZE);
+        assertEquals("value", new String(cache.get(-1)));
+    }
+
+    @Test
+    public void testThrottle() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setCompactionBytesPerSecond(32 * VALUE_LENGTH);
+        cache = dirtyCache(config);
+
+        long start = System.nanoTime();
+        new BigCache.CacheMerger<Integer>(cache).process(cache);
+        long elapsed = System.nanoTime() - start;
+
+        // 64 values at 32 values per second
+        assertEquals(64, cache.getStats().getCacheMove());
+        assertTrue(elapsed > 1500 * 1000 * 1000L);
+        assertValues();
+    }
+
+    @Test
+    public void testTriggeredByDirtyRatio() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setPurgeInterval(500)
+                .setCompactionTriggerRatio(0.3);
+        cache = dirtyCache(config);
+
+        // the merge interval is far away, the cleaner finds the storage dirty enough
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (cache.getStats().getCacheMove() < 64 && System.currentTimeMillis() < deadline) {
+            TestUtil.sleepQuietly(100);
+        }
+        assertEquals(64, cache.getStats().getCacheMove());
+        assertValues();
+    }
+
+    @Test
+    public void testFreeListReusesReleasedSpace() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setFreeListEnabled(true);
+        cache = dirtyCache(config);
+        BigCacheStats stats = cache.getStats();
+        assertEquals(192, stats.getStorageFreeExtents());
+        assertEquals(192L * VALUE_LENGTH, stats.getStorageFreeExtentBytes());
+        assertEquals(VALUE_LENGTH, stats.getStorageLargestFreeExtent());
+        assertEquals(1 - 1.0 / 192, stats.getStorageFragmentation(), 1e-9);
+
+        // the new values fill the holes instead of the active block
+        for (int i = KEY_COUNT; i < KEY_COUNT + 192; i++) {
+            cache.put(i, value(i));
+        }
+        stats = cache.getStats();
+        assertEquals(0, stats.getStorageFreeExtents());
+        assertEquals(192L * VALUE_LENGTH, stats.getStorageReused());
+        assertEquals(0, stats.getStorageDirty());
+        assertEquals(3, cache.storageManager.getUsedBlockCount());
+        assertEquals(0, cache.storageManager.getDirtyBlocks(0.5).size());
+        assertValues();
+        for (int i = KEY_COUNT; i < KEY_COUNT + 192; i++) {
+            assertArrayEquals(value(i), cache.get(i));
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
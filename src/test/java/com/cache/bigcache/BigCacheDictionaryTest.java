@@ -0,0 +1,106 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.codec.DeflateCodec;
+import com.cache.bigcache.codec.DictionaryCodec;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+public class BigCacheDictionaryTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_dictionary/";
+
+    private BigCache<String> cache;
+
+    private BigCache<String> cache() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(StorageMode.PureFile)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(2)
+                .setRecoveryEnabled(true)
+                .setPurgeInterval(100)
+                .setDictionarySize(8 * 1024);
+        return new BigCache<String>(TEST_DIR, config);
+    }
+
+    /**
+     * @return a value of about 200 bytes which shares most of its structure with the others
+     */
+    private static byte[] value(int i) {
+        return ("{\"id\":" + i + ",\"type\":\"com.example.session.UserSession\",\"user\":\"user" + i
+                + "\",\"roles\":[\"reader\",\"writer\"],\"locale\":\"en_US\",\"timezone\":\"Europe/Paris\","
+                + "\"created\":" + (1700000000000L + i) + ",\"active\":true}").getBytes();
+    }
+
+    private void waitForDictionary(int version) {
+        for (int i = 0; i < 50 && cache.getStats().getDictionaryVersion() < version; i++) {
+            TestUtil.sleepQuietly(100);
+        }
+        assertEquals(version, cache.getStats().getDictionaryVersion());
+    }
+
+    @Test
+    public void testTrainedDictionary() throws IOException {
+        cache = cache();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, value(i));
+        }
+        BigCacheStats before = cache.getStats();
+        waitForDictionary(1);
+        assertTrue(new File(TEST_DIR, 1 + DictionaryCodec.DICTIONARY_FILE_SUFFIX).exists());
+
+        for (int i = 1000; i < 2000; i++) {
+            cache.put("key" + i, value(i));
+        }
+        BigCacheStats delta = cache.getStats().getDeltaStats(before);
+        assertTrue(before.getCompressionRatio() + " without the dictionary, " + delta.getCompressionRatio() + " with",
+                delta.getCompressionRatio() > 2 * before.getCompressionRatio());
+
+        for (int i = 0; i < 2000; i++) {
+            assertArrayEquals(value(i), cache.get("key" + i));
+        }
+
+        // the dictionary comes back with the data
+        cache.close();
+        cache = cache();
+        assertEquals(1, cache.getStats().getDictionaryVersion());
+        for (int i = 0; i < 2000; i++) {
+            assertArrayEquals(value(i), cache.get("key" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodecAndDictionary() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setDictionarySize(1024).setCodec(new DeflateCodec());
+        new BigCache<String>(TEST_DIR, config);
+    }
+
+    @After
+    public void close() throws IOException {
+        try {
+            if (cache != null) {
+                cache.close();
+            }
+            FileUtil.deleteDirectory(new File(TEST_DIR));
+        } catch (IllegalStateException e) {
+            System.gc();
+            try {
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            } catch (IllegalStateException e1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e2) {
+                }
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.CacheConfig.EvictionPolicy;
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+/**
+ * The hit rate of the eviction policies on skewed traces: a miss is followed by a put of the key, as a
+ * read through cache would do.
+ */
+public class BigCacheEvictionPerfTest {
+    /********************* configurable parameters *********************/
+    private static final int KEY_SPACE = 400000;
+    private static final int MAX_ENTRIES = 20000;
+    private static final int REQUEST_COUNT = 1000000;
+    private static final double[] ZIPF_EXPONENTS = { 0.7, 0.9, 1.1 };
+    /** every this many requests, a scan of keys never seen before */
+    private static final int SCAN_INTERVAL = 100000;
+    private static final int SCAN_LENGTH = 20000;
+    /** the entries fill 5 blocks, the fifo drops a fifth of them at once */
+    private static final int VALUE_LEN = 4096;
+    /******************************************************************/
+
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "performance/bigcache_eviction/";
+
+    private BigCache<Integer> cache;
+
+    @Test
+    public void testHitRate() throws IOException {
+        EvictionPolicy[] policies = EvictionPolicy.values();
+        System.out.println("-----------------------------------------------");
+        System.out.printf("key space = %d, max entries = %d, requests = %d\n", KEY_SPACE, MAX_ENTRIES, REQUEST_COUNT);
+        System.out.printf("%-24s", "trace");
+        for (EvictionPolicy policy : policies) {
+            System.out.printf("%12s", policy);
+        }
+        System.out.println();
+        for (double exponent : ZIPF_EXPONENTS) {
+            for (boolean scans : new boolean[] { false, true }) {
+                int[] trace = trace(exponent, scans);
+                System.out.printf("%-24s", String.format("zipf %.1f%s", exponent, scans ? " + scans" : ""));
+                for (EvictionPolicy policy : policies) {
+                    System.out.printf("%11.2f%%", 100 * hitRate(policy, trace));
+                }
+                System.out.println();
+            }
+        }
+        System.out.println("-----------------------------------------------");
+    }
+
+    private double hitRate(EvictionPolicy policy, int[] trace) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(StorageMode.OffHeapPlusFile)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(1)
+                .setMaxEntries(MAX_ENTRIES)
+                .setEvictionPolicy(policy);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        byte[] value = new byte[VALUE_LEN];
+        long hits = 0;
+        for (int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, value);
+            }
+        }
+        assertEquals(trace.length, cache.getStats().getCacheGet());
+        close();
+        return 1.0 * hits / trace.length;
+    }
+
+    /**
+     * @return the keys of a zipf distribution over the key space, the most popular ones are spread over it
+     */
+    private static int[] trace(double exponent, boolean scans) {
+        double[] cumulative = new double[KEY_SPACE];
+        double sum = 0;
+        for (int i = 0; i < KEY_SPACE; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        int[] trace = new int[REQUEST_COUNT];
+        int scanKey = KEY_SPACE;
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            if (scans && i % SCAN_INTERVAL < SCAN_LENGTH) {
+                trace[i] = scanKey++;
+                continue;
+            }
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = KEY_SPACE - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            // a multiplicative hash keeps the popular keys out of the same blocks
+            trace[i] = (int) ((low * 2654435761L) % KEY_SPACE);
+        }
+        return trace;
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
@@ -0,0 +1,148 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.EvictionPolicy;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheEvictionTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_eviction/";
+
+    private static final int VALUE_LENGTH = 64 * 1024;
+
+    // 256 values per block
+    private static final int BLOCK_VALUES = 256;
+
+    private static final int MAX_ENTRIES = 600;
+
+    private static final int KEY_COUNT = 2000;
+
+    private BigCache<Integer> cache;
+
+    @Parameter(value = 0)
+    public EvictionPolicy evictionPolicy;
+
+    @Parameters
+    public static Collection<EvictionPolicy[]> data() throws IOException {
+        EvictionPolicy[][] data = { { EvictionPolicy.FifoBlock },
+                { EvictionPolicy.SampledLru },
+                { EvictionPolicy.WTinyLfu } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<Integer> cache(CacheConfig config) throws IOException {
+        config.setEvictionPolicy(evictionPolicy)
+                .setCapacityPerBlock(BLOCK_VALUES * VALUE_LENGTH)
+                .setInitialNumberOfBlocks(2);
+        return new BigCache<Integer>(TEST_DIR, config);
+    }
+
+    private static byte[] value(int key) {
+        byte[] value = new byte[VALUE_LENGTH];
+        Arrays.fill(value, (byte) key);
+        return value;
+    }
+
+    @Test
+    public void testMaxEntries() throws IOException {
+        cache = cache(new CacheConfig().setMaxEntries(MAX_ENTRIES));
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put(i, value(i));
+            assertTrue(cache.count() <= MAX_ENTRIES);
+        }
+        // a block at most is dropped at once
+        assertTrue(cache.count() > MAX_ENTRIES - BLOCK_VALUES);
+        assertEquals(KEY_COUNT - cache.count(), cache.getStats().getCacheEvict());
+        assertArrayEquals(value(KEY_COUNT - 1), cache.get(KEY_COUNT - 1));
+        int found = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (cache.get(i) != null) {
+                found++;
+            }
+        }
+        assertEquals(cache.count(), found);
+    }
+
+    @Test
+    public void testMaxStorageBytes() throws IOException {
+        cache = cache(new CacheConfig().setMaxStorageBytes(MAX_ENTRIES * VALUE_LENGTH));
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put(i, value(i));
+            assertTrue(cache.count() <= MAX_ENTRIES);
+        }
+        assertTrue(cache.count() > MAX_ENTRIES - BLOCK_VALUES);
+        assertArrayEquals(value(KEY_COUNT - 1), cache.get(KEY_COUNT - 1));
+        if (evictionPolicy == EvictionPolicy.FifoBlock) {
+            // the dropped blocks are reused right away
+            assertTrue(cache.getStats().getStorageTotalBlocks() <= MAX_ENTRIES / BLOCK_VALUES + 2);
+        }
+    }
+
+    @Test
+    public void testBoundWithinActiveBlock() throws IOException {
+        cache = cache(new CacheConfig().setMaxEntries(2));
+        // the removed keys are still recorded for the block
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value".getBytes());
+            cache.delete(i);
+        }
+        // all the values fit in the active block, which is never dropped as a whole
+        for (int i = 1000; i < 1010; i++) {
+            cache.put(i, "value".getBytes());
+            assertTrue(cache.count() <= 2);
+            if (evictionPolicy == EvictionPolicy.FifoBlock) {
+                assertArrayEquals("value".getBytes(), cache.get(i));
+            }
+        }
+        assertEquals(2, cache.count());
+        assertEquals(1, cache.getStats().getStorageUsedBlocks());
+    }
+
+    @Test
+    public void testKeepsHotEntries() throws IOException {
+        Assume.assumeTrue(evictionPolicy != EvictionPolicy.FifoBlock);
+        cache = cache(new CacheConfig().setMaxEntries(MAX_ENTRIES));
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, value(i));
+        }
+        for (int i = 50; i < KEY_COUNT; i++) {
+            cache.put(i, value(i));
+            if (i % 10 == 0) {
+                TestUtil.sleepQuietly(1);
+                for (int hot = 0; hot < 50; hot++) {
+                    cache.get(hot);
+                }
+            }
+        }
+        int hotFound = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(i) != null) {
+                hotFound++;
+            }
+        }
+        assertTrue("hot entries left: " + hotFound, hotFound >= 45);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
@@ -5,9 +5,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -34,6 +39,7 @@ public class BigCachePerfTestB {
     private static final int PRODUCER_COUNT = 4;
     private static final int CONSUMER_COUNT = 4;
     private static final int STRING_LEN = 16;
+    private static final int BATCH_SIZE = 100;
     /******************************************************************/
 
     private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "performance/bigcache/";
@@ -89,6 +95,105 @@ public class BigCachePerfTestB {
         System.out.println("[doRunMixed] test ends");
     }
 
+    @Test
+    public void testPerKeyVersusBatched() throws IOException, InterruptedException {
+        for (int i = 0; i < LOOP; i++) {
+            cache = cache();
+            System.out.println("[doRunPerKeyVersusBatched] round " + (i + 1) + " of " + LOOP);
+            this.doRunPerKeyVersusBatched();
+            this.close();
+        }
+        System.out.println("[doRunPerKeyVersusBatched] test ends");
+    }
+
+    private void doRunPerKeyVersusBatched() throws IOException, InterruptedException {
+        String[] keys = new String[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            keys[i] = TestUtil.randomString(STRING_LEN);
+        }
+
+        // half of the keys are put one by one, the other half in batches
+        long start = System.nanoTime();
+        for (int i = 0; i < ITEM_COUNT / 2; i++) {
+            cache.put(keys[i], keys[i].getBytes());
+        }
+        long perKeyPut = System.nanoTime() - start;
+        start = System.nanoTime();
+        Map<String, byte[]> batch = new HashMap<String, byte[]>();
+        for (int i = ITEM_COUNT / 2; i < ITEM_COUNT; i++) {
+            batch.put(keys[i], keys[i].getBytes());
+            if (batch.size() == BATCH_SIZE) {
+                cache.putAll(batch);
+                batch.clear();
+            }
+        }
+        cache.putAll(batch);
+        long batchedPut = System.nanoTime() - start;
+
+        long perKeyGet = runReaders(keys, false);
+        long batchedGet = runReaders(keys, true);
+
+        System.out.println("-----------------------------------------------");
+        System.out.printf("Item count = %d, batch size = %d, reader thread number = %d\n", ITEM_COUNT, BATCH_SIZE, CONSUMER_COUNT);
+        System.out.printf("Per key put throughput = %.2f per second\n", (ITEM_COUNT / 2) * 1e9 / perKeyPut);
+        System.out.printf("Batched put throughput = %.2f per second\n", (ITEM_COUNT - ITEM_COUNT / 2) * 1e9 / batchedPut);
+        System.out.printf("Per key get throughput = %.2f per second\n", 1.0 * ITEM_COUNT * 1e9 / perKeyGet);
+        System.out.printf("Batched get throughput = %.2f per second\n", 1.0 * ITEM_COUNT * 1e9 / batchedGet);
+        System.out.println("-----------------------------------------------");
+    }
+
+    /**
+     * every reader gets ITEM_COUNT / CONSUMER_COUNT random keys.
+     *
+     * @return the duration in nano seconds
+     */
+    private long runReaders(final String[] keys, final boolean batched) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(CONSUMER_COUNT);
+        final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            new Thread() {
+                public void run() {
+                    Result result = new Result();
+                    result.status = Status.SUCCESS;
+                    try {
+                        latch.countDown();
+                        latch.await();
+                        Random random = new Random();
+                        List<String> batch = new ArrayList<String>(BATCH_SIZE);
+                        for (int j = 0; j < ITEM_COUNT / CONSUMER_COUNT; j++) {
+                            String key = keys[random.nextInt(keys.length)];
+                            if (!batched) {
+                                if (!key.equals(new String(cache.get(key)))) {
+                                    result.status = Status.ERROR;
+                                }
+                                continue;
+                            }
+                            batch.add(key);
+                            if (batch.size() == BATCH_SIZE) {
+                                for (Map.Entry<String, byte[]> entry : cache.getAll(batch).entrySet()) {
+                                    if (!entry.getKey().equals(new String(entry.getValue()))) {
+                                        result.status = Status.ERROR;
+                                    }
+                                }
+                                batch.clear();
+                            }
+                        }
+                        cache.getAll(batch);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        result.status = Status.ERROR;
+                    }
+                    results.offer(result);
+                }
+            }.start();
+        }
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            assertEquals(Status.SUCCESS, results.take().status);
+        }
+        return System.nanoTime() - start;
+    }
+
     private void doRunProduceThenConsume() throws InterruptedException {
         CountDownLatch producerLatch = new CountDownLatch(PRODUCER_COUNT);
         CountDownLatch consumerLatch = new CountDownLatch(CONSUMER_COUNT);
@@ -0,0 +1,132 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+/**
+ * The get throughput of a read mostly workload from 1 to 64 threads, with the stripe read lock taken
+ * by every get and with the optimistic reads.
+ */
+@RunWith(Parameterized.class)
+public class BigCacheReadScalingPerfTest {
+    /********************* configurable parameters *********************/
+    private static final int ITEM_COUNT = 100000;
+    private static final int OPERATIONS_PER_THREAD = 500000;
+    private static final int MAX_THREAD_COUNT = 64;
+    private static final int WRITE_PERCENT = 5;
+    private static final int STRING_LEN = 16;
+    /******************************************************************/
+
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "performance/bigcache_read_scaling/";
+
+    private BigCache<String> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile },
+                { StorageMode.OffHeapPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<String> cache(boolean optimisticRead, String[] keys) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setOptimisticReadEnabled(optimisticRead);
+        BigCache<String> cache = new BigCache<String>(TEST_DIR, config);
+        for (String key : keys) {
+            cache.put(key, key.getBytes());
+        }
+        return cache;
+    }
+
+    @Test
+    public void testReadScaling() throws Exception {
+        String[] keys = new String[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            keys[i] = TestUtil.randomString(STRING_LEN);
+        }
+
+        System.out.println("-----------------------------------------------");
+        System.out.printf("Storage mode = %s, item count = %d, write percent = %d\n", storageMode, ITEM_COUNT, WRITE_PERCENT);
+        System.out.printf("%8s %20s %20s\n", "threads", "locked ops/s", "optimistic ops/s");
+        for (int threadCount = 1; threadCount <= MAX_THREAD_COUNT; threadCount *= 2) {
+            double[] throughput = new double[2];
+            for (int mode = 0; mode < 2; mode++) {
+                cache = cache(mode == 1, keys);
+                throughput[mode] = run(keys, threadCount);
+                close();
+            }
+            System.out.printf("%8d %20.2f %20.2f\n", threadCount, throughput[0], throughput[1]);
+        }
+        System.out.println("-----------------------------------------------");
+    }
+
+    /**
+     * @return the operations per second of all the threads
+     */
+    private double run(final String[] keys, int threadCount) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<Boolean>();
+        long start = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                public void run() {
+                    boolean success = true;
+                    try {
+                        latch.countDown();
+                        latch.await();
+                        Random random = new Random();
+                        for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                            String key = keys[random.nextInt(keys.length)];
+                            if (random.nextInt(100) < WRITE_PERCENT) {
+                                cache.put(key, key.getBytes());
+                            } else if (!key.equals(new String(cache.get(key)))) {
+                                success = false;
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        success = false;
+                    }
+                    results.offer(success);
+                }
+            }.start();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            assertEquals(true, results.take());
+        }
+        return 1.0 * threadCount * OPERATIONS_PER_THREAD * 1e9 / (System.nanoTime() - start);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
@@ -0,0 +1,229 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.IndexSyncMode;
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.sotrage.IndexLog;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheRecoveryTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_recovery/";
+
+    private BigCache<String> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<String> cache() throws IOException {
+        return cache(IndexSyncMode.Periodic);
+    }
+
+    private BigCache<String> cache(IndexSyncMode indexSyncMode) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(2)
+                .setRecoveryEnabled(true)
+                .setIndexSyncMode(indexSyncMode);
+        return new BigCache<String>(TEST_DIR, config);
+    }
+
+    /**
+     * @return the index logs which hold at least one record
+     */
+    private static File[] indexLogsWithRecords() {
+        return new File(TEST_DIR).listFiles((File f) -> f.getName().endsWith(IndexLog.INDEX_FILE_SUFFIX) && f.length() > 8);
+    }
+
+    @Test
+    public void testRecoverAfterClose() throws IOException {
+        cache = cache();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.delete("key" + i);
+        }
+        for (int i = 100; i < 200; i++) {
+            cache.put("key" + i, ("updated-value" + i).getBytes());
+        }
+        cache.put("expired", "value".getBytes(), 500);
+        cache.close();
+
+        TestUtil.sleepQuietly(1000);
+
+        cache = cache();
+        assertEquals(900, cache.count());
+        assertEquals(900, cache.getStats().getRecoveredEntries());
+        assertTrue(cache.getStats().getRecoveryTime() >= 0);
+        for (int i = 0; i < 100; i++) {
+            assertNull(cache.get("key" + i));
+        }
+        for (int i = 100; i < 200; i++) {
+            assertEquals("updated-value" + i, new String(cache.get("key" + i)));
+        }
+        for (int i = 200; i < 1000; i++) {
+            assertEquals("value" + i, new String(cache.get("key" + i)));
+        }
+        assertNull(cache.get("expired"));
+
+        // the recovered blocks keep working
+        cache.put("new", "new value".getBytes());
+        cache.put("key500", "replaced".getBytes());
+        assertEquals("new value", new String(cache.get("new")));
+        assertEquals("replaced", new String(cache.get("key500")));
+    }
+
+    @Test
+    public void testRecoverTimeToLive() throws IOException {
+        cache = cache();
+        cache.put("ttl", "value".getBytes(), 60 * 1000, 1000);
+        cache.put("long ttl", "value".getBytes(), -1, 60 * 1000);
+        cache.close();
+
+        cache = cache();
+        assertEquals(2, cache.count());
+        TestUtil.sleepQuietly(1200);
+        // the recovered entry keeps its deadline
+        assertNull(cache.get("ttl"));
+        assertNotNull(cache.get("long ttl"));
+    }
+
+    @Test
+    public void testRecoverWithoutCheckpoint() throws IOException {
+        cache = cache();
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.delete("key0");
+        cache.put("key1", "longer value than before".getBytes());
+        // simulate a crash: only the append-only logs are on disk
+        cache.storageManager.flushIndexLogs();
+
+        BigCache<String> restarted = cache();
+        try {
+            assertEquals(99, restarted.count());
+            assertNull(restarted.get("key0"));
+            assertEquals("longer value than before", new String(restarted.get("key1")));
+            assertEquals("value99", new String(restarted.get("key99")));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void testRecoverEveryWriteWithoutFlush() throws IOException {
+        cache = cache(IndexSyncMode.EveryWrite);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.delete("key0");
+        cache.put("key1", "longer value than before".getBytes());
+
+        // simulate a crash: nothing is flushed by hand
+        BigCache<String> restarted = cache();
+        try {
+            assertEquals(99, restarted.count());
+            assertNull(restarted.get("key0"));
+            assertEquals("longer value than before", new String(restarted.get("key1")));
+            assertEquals("value99", new String(restarted.get("key99")));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void testRecoverDropsTornAndCorruptedRecords() throws IOException {
+        cache = cache();
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.close();
+
+        // a torn record whose key length is garbage must not be allocated
+        File[] logs = indexLogsWithRecords();
+        assertTrue(logs.length > 0);
+        for (File log : logs) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(log, true))) {
+                out.writeLong(Long.MAX_VALUE);
+                out.writeByte(1);
+                out.writeInt(Integer.MAX_VALUE - 8);
+            }
+        }
+        cache = cache();
+        assertEquals(10, cache.count());
+        cache.close();
+
+        // a flipped bit in the last record of a log fails its checksum
+        File log = indexLogsWithRecords()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            long position = raf.length() - 5;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+        cache = cache();
+        assertEquals(9, cache.count());
+        for (int i = 0; i < 10; i++) {
+            byte[] value = cache.get("key" + i);
+            assertTrue(value == null || ("value" + i).equals(new String(value)));
+        }
+    }
+
+    @Test
+    public void testClearDropsRecoverableData() throws IOException {
+        cache = cache();
+        cache.put("key", "value".getBytes());
+        cache.clear();
+        cache.close();
+
+        cache = cache();
+        assertEquals(0, cache.count());
+        assertNull(cache.get("key"));
+    }
+
+    @After
+    public void close() throws IOException {
+        try {
+            cache.close();
+            FileUtil.deleteDirectory(new File(TEST_DIR));
+        } catch (IllegalStateException e) {
+            System.gc();
+            try {
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            } catch (IllegalStateException e1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e2) {
+                }
+                FileUtil.deleteDirectory(new File(TEST_DIR));
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+@RunWith(Parameterized.class)
+public class BigCacheRingTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/bigcache_ring/";
+
+    private static final int VALUE_LENGTH = 128 * 1024;
+
+    // 128 values per block
+    private static final int BLOCK_VALUES = 128;
+
+    private static final int RING_BLOCKS = 3;
+
+    private BigCache<Integer> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile },
+                { StorageMode.OffHeapPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private BigCache<Integer> cache(boolean reinsert) throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setCapacityPerBlock(BLOCK_VALUES * VALUE_LENGTH)
+                .setInitialNumberOfBlocks(2)
+                .setRingBlocks(RING_BLOCKS)
+                .setRingReinsertEnabled(reinsert);
+        return new BigCache<Integer>(TEST_DIR, config);
+    }
+
+    private static byte[] value(int key) {
+        byte[] value = new byte[VALUE_LENGTH];
+        Arrays.fill(value, (byte) key);
+        return value;
+    }
+
+    @Test
+    public void testRecyclesOldestBlock() throws IOException {
+        cache = cache(false);
+        int keyCount = 10 * BLOCK_VALUES + 5;
+        for (int i = 0; i < keyCount; i++) {
+            cache.put(i, value(i));
+            assertTrue(cache.getStats().getStorageTotalBlocks() <= RING_BLOCKS);
+        }
+        // the active block and the one before it
+        assertEquals(BLOCK_VALUES + 5, cache.count());
+        BigCacheStats stats = cache.getStats();
+        assertEquals(keyCount - cache.count(), stats.getCacheEvict());
+        assertEquals(0, stats.getCacheMove());
+        for (int i = 0; i < keyCount; i++) {
+            if (i < keyCount - cache.count()) {
+                assertNull(cache.get(i));
+            } else {
+                assertArrayEquals(value(i), cache.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testReinsertsEntriesReadSinceSealed() throws IOException {
+        cache = cache(true);
+        // the first block is sealed by the put which does not fit anymore
+        for (int i = 0; i <= BLOCK_VALUES; i++) {
+            cache.put(i, value(i));
+        }
+        TestUtil.sleepQuietly(10);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i));
+        }
+        // the first block is recycled when the third one is full
+        for (int i = BLOCK_VALUES + 1; i < 3 * BLOCK_VALUES; i++) {
+            cache.put(i, value(i));
+        }
+        assertEquals(10, cache.getStats().getCacheMove());
+        // contains does not read the entries
+        for (int i = 0; i < BLOCK_VALUES; i++) {
+            assertEquals(i < 10, cache.contains(i));
+        }
+
+        // the reads above only count for the block the entries were in, not read again they are dropped
+        for (int i = 3 * BLOCK_VALUES; i < 6 * BLOCK_VALUES; i++) {
+            cache.put(i, value(i));
+        }
+        assertEquals(10, cache.getStats().getCacheMove());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(cache.contains(i));
+        }
+        assertTrue(cache.getStats().getStorageTotalBlocks() <= RING_BLOCKS);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
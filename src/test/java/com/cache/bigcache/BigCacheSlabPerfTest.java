@@ -0,0 +1,94 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+/**
+ * Small values of 32 to 256 bytes: the load, the reads and a churn which replaces the values with values of
+ * other sizes, with the bytes taken per entry and the space waiting for compaction after the churn.
+ */
+public class BigCacheSlabPerfTest {
+    /********************* configurable parameters *********************/
+    private static final int ITEM_COUNT = 500000;
+    private static final int CHURN_COUNT = 2000000;
+    private static final int MIN_VALUE_LEN = 32;
+    private static final int MAX_VALUE_LEN = 256;
+    /******************************************************************/
+
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "performance/bigcache_slab/";
+
+    private BigCache<Integer> cache;
+
+    @Test
+    public void testSmallValues() throws IOException {
+        System.out.println("-----------------------------------------------");
+        System.out.printf("item count = %d, churn = %d, value length = %d to %d\n", ITEM_COUNT, CHURN_COUNT, MIN_VALUE_LEN, MAX_VALUE_LEN);
+        System.out.printf("%-24s %12s %12s %12s %14s %14s %12s\n", "storage", "puts/s", "gets/s", "churn/s",
+                "bytes/entry", "dirty bytes", "reused MB");
+        run("PureFile", new CacheConfig().setStorageMode(StorageMode.PureFile));
+        run("OffHeapPlusFile", new CacheConfig().setStorageMode(StorageMode.OffHeapPlusFile));
+        run("OffHeap + free lists", new CacheConfig().setStorageMode(StorageMode.OffHeapPlusFile).setFreeListEnabled(true));
+        run("SlabOffHeap", new CacheConfig().setStorageMode(StorageMode.SlabOffHeap));
+        System.out.println("-----------------------------------------------");
+    }
+
+    private void run(String name, CacheConfig config) throws IOException {
+        // the compaction would hide the dirty space left by the churn
+        config.setCapacityPerBlock(16 * 1024 * 1024)
+                .setInitialNumberOfBlocks(4)
+                .setMergeInterval(3600 * 1000);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        byte[][] values = new byte[MAX_VALUE_LEN + 1][];
+        for (int length = MIN_VALUE_LEN; length <= MAX_VALUE_LEN; length++) {
+            values[length] = new byte[length];
+        }
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            cache.put(i, values[length(random)]);
+        }
+        double puts = ITEM_COUNT * 1e9 / (System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            cache.get(random.nextInt(ITEM_COUNT));
+        }
+        double gets = ITEM_COUNT * 1e9 / (System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < CHURN_COUNT; i++) {
+            cache.put(random.nextInt(ITEM_COUNT), values[length(random)]);
+        }
+        double churn = CHURN_COUNT * 1e9 / (System.nanoTime() - start);
+
+        BigCacheStats stats = cache.getStats();
+        assertEquals(ITEM_COUNT, stats.getCacheTotalEntries());
+        System.out.printf("%-24s %12.0f %12.0f %12.0f %14.1f %14d %12.1f\n", name, puts, gets, churn,
+                1.0 * stats.getStorageUsed() / ITEM_COUNT, stats.getStorageDirty(), stats.getStorageReused() / 1024.0 / 1024);
+        close();
+    }
+
+    private static int length(Random random) {
+        return MIN_VALUE_LEN + random.nextInt(MAX_VALUE_LEN - MIN_VALUE_LEN + 1);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+            cache = null;
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
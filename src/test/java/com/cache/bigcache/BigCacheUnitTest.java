@@ -4,8 +4,14 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Test;
@@ -33,7 +39,8 @@ public class BigCacheUnitTest {
     public static Collection<StorageMode[]> data() throws IOException {
         StorageMode[][] data = { { StorageMode.PureFile },
                 { StorageMode.MemoryMappedPlusFile },
-                { StorageMode.OffHeapPlusFile } };
+                { StorageMode.OffHeapPlusFile },
+                { StorageMode.SlabOffHeap } };
         return Arrays.asList(data);
     }
 
@@ -91,6 +98,261 @@ public class BigCacheUnitTest {
         assertFalse(cache.contains(6));
     }
 
+    @Test
+    public void testGetAll() throws IOException {
+        cache = cache6();
+        Map<Integer, byte[]> values = cache.getAll(Arrays.asList(5, 0, 3, 6, 0));
+        assertEquals(3, values.size());
+        assertEquals("F", new String(values.get(5)));
+        assertEquals("A", new String(values.get(0)));
+        assertEquals("D", new String(values.get(3)));
+        assertFalse(values.containsKey(6));
+
+        // every requested key is counted, duplicates included
+        BigCacheStats stats = cache.getStats();
+        assertEquals(5, stats.getCacheGet());
+        assertEquals(4, stats.getCacheHit());
+        assertEquals(1, stats.getCacheMiss());
+    }
+
+    @Test
+    public void testPutAll() throws IOException {
+        cache = cache6();
+        Map<Integer, byte[]> entries = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.put(i, ("value" + i).getBytes());
+        }
+        cache.putAll(entries);
+        assertEquals(1000, cache.count());
+        assertEquals(1006, cache.getStats().getCachePut());
+        Map<Integer, byte[]> values = cache.getAll(entries.keySet());
+        assertEquals(1000, values.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value" + i, new String(values.get(i)));
+        }
+
+        entries.put(1000, null);
+        try {
+            cache.putAll(entries);
+            fail("null values are rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertFalse(cache.contains(1000));
+    }
+
+    @Test
+    public void testGetAllCoalescesReads() throws IOException {
+        cache = cache6();
+        for (int i = 6; i < 100; i++) {
+            cache.put(i, ("value" + i).getBytes());
+        }
+        cache.delete(50);
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 99; i >= 0; i--) {
+            keys.add(i);
+        }
+        Map<Integer, byte[]> values = cache.getAll(keys);
+        assertEquals(99, values.size());
+        assertEquals("A", new String(values.get(0)));
+        assertEquals("value49", new String(values.get(49)));
+        assertEquals("value51", new String(values.get(51)));
+        assertEquals("value99", new String(values.get(99)));
+        if (storageMode == StorageMode.PureFile) {
+            // all the values are neighbours in the same block
+            assertEquals(98, cache.storageManager.getCoalescedReadCount());
+        } else {
+            assertEquals(0, cache.storageManager.getCoalescedReadCount());
+        }
+    }
+
+    @Test
+    public void testGetAllSeesWholeValuesWhileWritten() throws Exception {
+        cache = cache6();
+        final byte[][] values = new byte[2][];
+        values[0] = new byte[100];
+        Arrays.fill(values[0], (byte) 'a');
+        values[1] = new byte[300];
+        Arrays.fill(values[1], (byte) 'b');
+        for (int i = 6; i < 16; i++) {
+            cache.put(i, values[0]);
+        }
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    cache.put(6 + i % 10, values[i / 10 % 2]);
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        List<Integer> keys = Arrays.asList(0, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15);
+        while (writer.isAlive()) {
+            Map<Integer, byte[]> read = cache.getAll(keys);
+            assertEquals(keys.size(), read.size());
+            assertEquals("A", new String(read.get(0)));
+            for (int i = 6; i < 16; i++) {
+                assertTrue(Arrays.equals(values[0], read.get(i)) || Arrays.equals(values[1], read.get(i)));
+            }
+        }
+        writer.join();
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testGetIntoBuffer() throws IOException {
+        cache = cache6();
+        cache.put(6, "value".getBytes());
+        ByteBuffer dest = ByteBuffer.allocateDirect(16);
+        assertEquals(5, cache.get(6, dest));
+        assertEquals(5, dest.position());
+        assertEquals(1, cache.get(0, dest));
+        dest.flip();
+        byte[] bytes = new byte[dest.remaining()];
+        dest.get(bytes);
+        assertEquals("valueA", new String(bytes));
+        assertEquals(-1, cache.get(7, dest));
+
+        try {
+            cache.get(6, ByteBuffer.allocate(4));
+            fail("the buffer is too small");
+        } catch (BufferOverflowException expected) {
+        }
+    }
+
+    @Test
+    public void testPutFromBuffer() throws IOException {
+        cache = cache6();
+        ByteBuffer direct = ByteBuffer.allocateDirect(16);
+        direct.put("direct".getBytes()).flip();
+        cache.put(6, direct);
+        assertEquals(6, direct.remaining());
+        assertEquals("direct", new String(cache.get(6)));
+
+        // replace in place and with a longer value
+        cache.put(6, ByteBuffer.wrap("heap".getBytes()), 60 * 1000);
+        assertEquals("heap", new String(cache.get(6)));
+        cache.put(6, ByteBuffer.wrap("header:".getBytes()), direct, ByteBuffer.wrap(":trailer".getBytes()));
+        assertEquals("header:direct:trailer", new String(cache.get(6)));
+        assertEquals(7, cache.count());
+    }
+
+    @Test
+    public void testGetWithReader() throws IOException {
+        cache = cache6();
+        cache.put(6, "value".getBytes());
+        assertEquals("value", cache.get(6, (ByteBuffer buffer) -> {
+            assertTrue(buffer.isReadOnly());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes);
+        }));
+        assertEquals(Integer.valueOf(1), cache.get(0, ByteBuffer::remaining));
+        assertNull(cache.get(7, ByteBuffer::remaining));
+        assertEquals(3, cache.getStats().getCacheGet());
+    }
+
+    @Test
+    public void testOptimisticReadsSeeWholeValues() throws Exception {
+        cache = cache6();
+        final byte[][] values = new byte[2][];
+        values[0] = new byte[100];
+        Arrays.fill(values[0], (byte) 'a');
+        values[1] = new byte[300];
+        Arrays.fill(values[1], (byte) 'b');
+        cache.put(6, values[0]);
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    cache.put(6, values[i % 2]);
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        ByteBuffer buffer = ByteBuffer.allocate(300);
+        while (writer.isAlive()) {
+            byte[] value = cache.get(6);
+            assertTrue(Arrays.equals(values[0], value) || Arrays.equals(values[1], value));
+            buffer.clear();
+            int length = cache.get(6, buffer);
+            assertEquals(length, buffer.position());
+            buffer.flip();
+            byte[] copy = new byte[length];
+            buffer.get(copy);
+            assertTrue(Arrays.equals(values[0], copy) || Arrays.equals(values[1], copy));
+        }
+        writer.join();
+        assertTrue(errors.isEmpty());
+        BigCacheStats stats = cache.getStats();
+        assertEquals(stats.getCacheGet(), stats.getCacheHit());
+    }
+
+    @Test
+    public void testTimeToLive() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode)
+                .setExpiryWheelResolution(100)
+                .setPurgeInterval(100);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        cache.put(0, "A".getBytes(), 60 * 1000, 500);
+        cache.put(1, "B".getBytes(), -1, 500);
+        cache.put(2, "C".getBytes(), 60 * 1000, Long.MAX_VALUE);
+        // a put replaces the time to live
+        cache.put(3, "D".getBytes(), -1, 500);
+        cache.put(3, "D".getBytes());
+
+        // the accesses do not push the time to live back
+        for (int i = 0; i < 4; i++) {
+            TestUtil.sleepQuietly(100);
+            assertEquals("A", new String(cache.get(0)));
+        }
+        TestUtil.sleepQuietly(200);
+        assertNull(cache.get(0));
+        assertNull(cache.get(1));
+        assertEquals("C", new String(cache.get(2)));
+        assertEquals("D", new String(cache.get(3)));
+
+        // and the cleaner purges them
+        TestUtil.sleepQuietly(500);
+        assertEquals(2, cache.count());
+        assertEquals(2, cache.getStats().getCacheExpire());
+    }
+
+    @Test
+    public void testStatsSampling() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode).setStatsSampleRate(0);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        cache.put(0, "A".getBytes());
+        assertEquals("A", new String(cache.get(0)));
+        assertNull(cache.get(1));
+        cache.delete(0);
+        BigCacheStats stats = cache.getStats();
+        assertEquals(0, stats.getCacheGet());
+        assertEquals(0, stats.getCacheHit());
+        assertEquals(0, stats.getCachePut());
+        assertEquals(0, stats.getCacheDelete());
+        cache.close();
+
+        config.setStatsSampleRate(10);
+        cache = new BigCache<Integer>(TEST_DIR, config);
+        cache.put(0, "A".getBytes());
+        for (int i = 0; i < 100000; i++) {
+            cache.get(0);
+        }
+        stats = cache.getStats();
+        assertEquals(0, stats.getCacheGet() % 10);
+        assertTrue(stats.getCacheGet() > 90000 && stats.getCacheGet() < 110000);
+        BigCacheStats delta = cache.getStats().getDeltaStats(stats);
+        assertEquals(0, delta.getCacheGet());
+    }
+
     @After
     public void close() throws IOException {
         try {
@@ -0,0 +1,145 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+/**
+ * Thousands of virtual threads hammering the cache, no carrier may be pinned by a monitor held in the cache.
+ * Needs a JDK with virtual threads (21+), skipped otherwise.
+ */
+@RunWith(Parameterized.class)
+public class BigCacheVirtualThreadStressTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "stress/bigcache_virtual/";
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final int KEY_COUNT = 100 * 1000;
+    private static final int READER_COUNT = 5000;
+    private static final int WRITER_COUNT = 500;
+    private static final int OPERATIONS = 100;
+
+    private BigCache<String> cache;
+
+    @Parameter(value = 0)
+    public StorageMode storageMode;
+
+    @Parameters
+    public static Collection<StorageMode[]> data() throws IOException {
+        StorageMode[][] data = { { StorageMode.PureFile },
+                { StorageMode.MemoryMappedPlusFile } };
+        return Arrays.asList(data);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testNoCarrierPinned() throws Exception {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        Assume.assumeNotNull(executor);
+
+        CacheConfig config = new CacheConfig();
+        config.setStorageMode(storageMode);
+        cache = new BigCache<String>(TEST_DIR, config);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put("" + i, ("" + i).getBytes());
+        }
+
+        Path dump = new File(TEST_DIR, "pinned.jfr").toPath();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            for (int t = 0; t < READER_COUNT + WRITER_COUNT; t++) {
+                final boolean writer = t < WRITER_COUNT;
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        String key = "" + random.nextInt(KEY_COUNT);
+                        if (writer) {
+                            cache.put(key, key.getBytes());
+                        } else {
+                            assertEquals(key, new String(cache.get(key)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        int pinned = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (PINNED_EVENT.equals(event.getEventType().getName()) && inCache(event)) {
+                System.out.println(event);
+                pinned++;
+            }
+        }
+        assertEquals(0, pinned);
+        assertEquals(KEY_COUNT, cache.count());
+    }
+
+    private static boolean inCache(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().startsWith("com.cache.bigcache.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
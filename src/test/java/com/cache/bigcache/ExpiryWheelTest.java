@@ -0,0 +1,184 @@
+package com.cache.bigcache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+public class ExpiryWheelTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/expiry_wheel/";
+
+    private BigCache<String> cache;
+
+    @Test
+    public void testTimersFireAtTheirTick() throws IOException {
+        long resolution = 10;
+        long start = 12345 * resolution;
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(resolution, start);
+        // one timer per level, one in the overflow and one already due
+        long[] ticks = { 0, 5, 63, 64, 100, 4096, 5000, 300000, 1L << 24, (1L << 24) + 7 };
+        for (long tick : ticks) {
+            wheel.schedule("key" + tick, start + tick * resolution);
+        }
+        wheel.schedule("past", start - 100 * resolution);
+        assertEquals(ticks.length + 1, wheel.getBacklog());
+
+        final Map<String, Long> fired = new HashMap<>();
+        final long[] now = new long[1];
+        for (now[0] = start; now[0] <= start + ((1L << 24) + 10) * resolution; now[0] += resolution) {
+            wheel.advance(now[0], (String key, long expiryTime) -> {
+                assertNull(fired.put(key, now[0]));
+                assertTrue(expiryTime <= now[0]);
+            });
+        }
+        for (long tick : ticks) {
+            assertEquals(Long.valueOf(start + tick * resolution), fired.get("key" + tick));
+        }
+        assertEquals(Long.valueOf(start), fired.get("past"));
+        assertEquals(0, wheel.getBacklog());
+    }
+
+    @Test
+    public void testLateAdvanceAndDuplicates() throws IOException {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(1000, 0);
+        wheel.schedule("a", 5000);
+        wheel.schedule("a", 5500);
+        wheel.schedule("b", 70 * 1000);
+        wheel.schedule("c", 80 * 1000);
+
+        final List<String> fired = new ArrayList<>();
+        wheel.advance(4999, (String key, long expiryTime) -> fired.add(key));
+        assertTrue(fired.isEmpty());
+        // the timers of a key due at the same tick are handed over once
+        wheel.advance(6000, (String key, long expiryTime) -> fired.add(key));
+        assertEquals(1, fired.size());
+        assertEquals(2, wheel.getBacklog());
+
+        // skipping many ticks at once
+        fired.clear();
+        wheel.advance(75 * 1000, (String key, long expiryTime) -> {
+            fired.add(key);
+            // the visitor may schedule again
+            wheel.schedule(key, 90 * 1000);
+        });
+        assertEquals(1, fired.size());
+        assertEquals("b", fired.get(0));
+        assertEquals(2, wheel.getBacklog());
+
+        fired.clear();
+        wheel.advance(100 * 1000, (String key, long expiryTime) -> fired.add(key));
+        assertEquals(2, fired.size());
+        assertEquals(0, wheel.getBacklog());
+    }
+
+    @Test
+    public void testCancelledTimersAreSkippedAndSwept() throws IOException {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(1000, 0);
+        int keys = 4 * ExpiryWheel.MIN_SWEPT_TIMERS;
+        for (int i = 0; i < keys; i++) {
+            wheel.schedule("key" + i, 10 * 1000);
+        }
+        // rescheduled, cancelled or scheduled again, a key keeps one live timer at most
+        for (int i = 0; i < keys; i++) {
+            if (i % 2 == 0) {
+                wheel.cancel("key" + i);
+            } else {
+                wheel.schedule("key" + i, 20 * 1000);
+            }
+        }
+        assertEquals(keys / 2, wheel.getBacklog());
+
+        final List<String> fired = new ArrayList<>();
+        wheel.advance(15 * 1000, (String key, long expiryTime) -> fired.add(key));
+        assertTrue(fired.isEmpty());
+        assertEquals(keys / 2, wheel.getBacklog());
+        wheel.advance(25 * 1000, (String key, long expiryTime) -> {
+            fired.add(key);
+            assertEquals(20 * 1000, expiryTime);
+        });
+        assertEquals(keys / 2, fired.size());
+        assertEquals(0, wheel.getBacklog());
+    }
+
+    @Test
+    public void testDeleteCancelsTimer() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setExpiryWheelResolution(100)
+                .setPurgeInterval(100);
+        cache = new BigCache<String>(TEST_DIR, config);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, "value".getBytes(), 60 * 1000);
+        }
+        assertEquals(10, cache.getStats().getExpiryBacklog());
+        for (int i = 0; i < 5; i++) {
+            cache.delete("key" + i);
+        }
+        // no time to idle any more
+        cache.put("key5", "value".getBytes());
+        assertEquals(4, cache.getStats().getExpiryBacklog());
+    }
+
+    @Test
+    public void testBigCacheExpiry() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setExpiryWheelResolution(100)
+                .setPurgeInterval(100);
+        cache = new BigCache<String>(TEST_DIR, config);
+        for (int i = 0; i < 100; i++) {
+            cache.put("idle" + i, "value".getBytes(), 300);
+        }
+        cache.put("forever", "value".getBytes());
+        cache.put("touched", "value".getBytes(), 600);
+        assertEquals(101, cache.getStats().getExpiryBacklog());
+
+        for (int i = 0; i < 10; i++) {
+            TestUtil.sleepQuietly(100);
+            assertNotNull(cache.get("touched"));
+        }
+        // the idle entries are gone a few ticks after they expired, the touched one is still there
+        assertEquals(2, cache.count());
+        BigCacheStats stats = cache.getStats();
+        assertEquals(100, stats.getCacheExpire());
+        assertTrue(stats.getAveragePurgeLatency() < 500);
+        assertEquals(1, stats.getExpiryBacklog());
+
+        TestUtil.sleepQuietly(1500);
+        assertEquals(1, cache.count());
+        assertNotNull(cache.get("forever"));
+        assertEquals(0, cache.getStats().getExpiryBacklog());
+    }
+
+    @Test
+    public void testDefaultConfigPurgesWithinATick() throws IOException {
+        CacheConfig config = new CacheConfig();
+        assertEquals(BigCache.DEFAULT_EXPIRY_WHEEL_RESOLUTION, config.getPurgeInterval());
+        cache = new BigCache<String>(TEST_DIR, config);
+        cache.put("ttl", "value".getBytes(), -1, 200);
+        cache.put("forever", "value".getBytes());
+
+        // due on the tick it expires in, or on the next one if the cleaner read its slot early
+        TestUtil.sleepQuietly(200 + 2 * BigCache.DEFAULT_EXPIRY_WHEEL_RESOLUTION + 500);
+        assertEquals(1, cache.count());
+        BigCacheStats stats = cache.getStats();
+        assertEquals(1, stats.getCacheExpire());
+        assertTrue(stats.getAveragePurgeLatency() <= 2 * BigCache.DEFAULT_EXPIRY_WHEEL_RESOLUTION);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
@@ -0,0 +1,151 @@
+package com.cache.bigcache.codec;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class CodecTest {
+    @Parameter(value = 0)
+    public ICodec codec;
+
+    @Parameters
+    public static Collection<ICodec[]> data() throws IOException {
+        ICodec[][] data = { { new DeflateCodec() },
+                { new DeflateCodec(9) },
+                { new Lz4Codec() } };
+        return Arrays.asList(data);
+    }
+
+    private static byte[] json(int records) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < records; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"user").append(i % 17)
+                    .append("\",\"active\":").append(i % 3 == 0).append("},");
+        }
+        return builder.append("]").toString().getBytes();
+    }
+
+    /**
+     * compresses the bytes at an offset and checks they come back.
+     *
+     * @return the compressed length
+     */
+    private int roundTrip(byte[] value) throws IOException {
+        byte[] src = new byte[value.length + 7];
+        System.arraycopy(value, 0, src, 7, value.length);
+        byte[] compressed = new byte[3 + codec.maxCompressedLength(value.length)];
+        int length = codec.compress(src, 7, value.length, compressed, 3);
+        assertTrue(length <= codec.maxCompressedLength(value.length));
+        byte[] result = new byte[value.length + 2];
+        codec.decompress(compressed, 3, length, result, 2, value.length);
+        assertArrayEquals(value, Arrays.copyOfRange(result, 2, result.length));
+        return length;
+    }
+
+    @Test
+    public void testRoundTrips() throws IOException {
+        Random random = new Random(7);
+        int[] lengths = { 0, 1, 4, 12, 13, 14, 15, 16, 17, 100, 255, 270, 271, 4096, 65535, 65536, 200000 };
+        for (int length : lengths) {
+            byte[] noise = new byte[length];
+            random.nextBytes(noise);
+            roundTrip(noise);
+
+            byte[] run = new byte[length];
+            Arrays.fill(run, (byte) 'x');
+            roundTrip(run);
+
+            // short repeats overlap their own output, long literals and matches need extra length bytes
+            byte[] mixed = new byte[length];
+            for (int i = 0; i < length; i++) {
+                mixed[i] = (byte) (i % 1000 < 300 ? random.nextInt() : "abc".charAt(i % 3));
+            }
+            roundTrip(mixed);
+        }
+    }
+
+    @Test
+    public void testCompressesStructuredValues() throws IOException {
+        byte[] value = json(200);
+        int length = roundTrip(value);
+        assertTrue(value.length + " -> " + length, length * 3 < value.length);
+    }
+
+    @Test
+    public void testCorruptedInput() throws IOException {
+        byte[] value = json(20);
+        byte[] compressed = new byte[codec.maxCompressedLength(value.length)];
+        int length = codec.compress(value, 0, value.length, compressed, 0);
+        byte[] result = new byte[value.length];
+        try {
+            codec.decompress(compressed, 0, length / 2, result, 0, value.length);
+            fail("the input is truncated");
+        } catch (IOException expected) {
+        }
+        try {
+            codec.decompress(compressed, 0, length, result, 0, value.length - 1);
+            fail("the length does not match");
+        } catch (IOException | IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testEntryCodec() throws IOException {
+        EntryCodec entryCodec = new EntryCodec(codec, 64);
+        byte[] value = json(50);
+
+        ByteBuffer[] entry = entryCodec.encode(ByteBuffer.wrap(value, 0, 100), ByteBuffer.wrap(value, 100, value.length - 100));
+        assertEquals(1, entry.length);
+        assertEquals(codec.getId(), entry[0].get(0));
+        assertArrayEquals(value, entryCodec.decode(toArray(entry)));
+
+        // too short to be compressed
+        byte[] small = "small".getBytes();
+        entry = entryCodec.encode(ByteBuffer.wrap(small));
+        assertEquals(EntryCodec.RAW, entry[0].get(0));
+        assertArrayEquals(small, entryCodec.decode(toArray(entry)));
+
+        // does not get smaller
+        byte[] noise = new byte[1000];
+        new Random(1).nextBytes(noise);
+        entry = entryCodec.encode(ByteBuffer.wrap(noise));
+        assertEquals(EntryCodec.RAW, entry[0].get(0));
+        assertArrayEquals(noise, entryCodec.decode(toArray(entry)));
+
+        assertEquals(value.length + small.length + noise.length, entryCodec.getRawBytes());
+        assertTrue(entryCodec.getEncodedBytes() < entryCodec.getRawBytes());
+        assertTrue(entryCodec.getCompressTime() > 0);
+
+        // the entries of the other built in codecs can be read too
+        EntryCodec other = new EntryCodec(codec instanceof Lz4Codec ? new DeflateCodec() : new Lz4Codec(), 0);
+        assertArrayEquals(value, entryCodec.decode(toArray(other.encode(ByteBuffer.wrap(value)))));
+        try {
+            entryCodec.decode(new byte[] { 100, 0, 0, 0, 1, 0 });
+            fail("unknown codec");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer[] buffers) {
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        ByteBuffer result = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : buffers) {
+            result.put(buffer.duplicate());
+        }
+        return result.array();
+    }
+}
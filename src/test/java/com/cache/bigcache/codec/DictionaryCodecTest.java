@@ -0,0 +1,167 @@
+package com.cache.bigcache.codec;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+public class DictionaryCodecTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/dictionary_codec/";
+
+    static class Session implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String userName;
+        long lastSeen;
+        int visits;
+        String locale = "en_US";
+
+        Session(int i) {
+            userName = "user" + i;
+            lastSeen = 1700000000000L + i * 7919L;
+            visits = i % 100;
+        }
+    }
+
+    /**
+     * @return a small java serialized value, most of it is the class descriptor all the values share
+     */
+    static byte[] value(int i) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Session(i));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int compressedLength(ICodec codec, byte[] value) throws IOException {
+        byte[] compressed = new byte[codec.maxCompressedLength(value.length)];
+        int length = codec.compress(value, 0, value.length, compressed, 0);
+        byte[] result = new byte[value.length];
+        codec.decompress(compressed, 0, length, result, 0, value.length);
+        assertArrayEquals(value, result);
+        return length;
+    }
+
+    @Test
+    public void testBuild() throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            samples.add(value(i));
+        }
+        byte[] dictionary = DictionaryTrainer.build(samples, 4096);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= 4096);
+
+        DictionaryCodec codec = new DictionaryCodec(null);
+        byte[] value = value(1000);
+        int plain = compressedLength(codec, value);
+        assertEquals(1, codec.install(dictionary));
+        int trained = compressedLength(codec, value);
+        assertTrue(value.length + " bytes, " + plain + " without dictionary, " + trained + " with",
+                trained * 2 < plain);
+
+        assertEquals(0, DictionaryTrainer.build(new ArrayList<>(), 4096).length);
+    }
+
+    @Test
+    public void testVersions() throws IOException {
+        DictionaryCodec codec = new DictionaryCodec(TEST_DIR);
+        assertEquals(0, codec.getVersion());
+        assertNull(codec.getDictionary());
+        byte[] value = value(1);
+        byte[] plain = new byte[codec.maxCompressedLength(value.length)];
+        int plainLength = codec.compress(value, 0, value.length, plain, 0);
+
+        assertEquals(1, codec.install(Arrays.copyOf(value(2), 100)));
+        byte[] first = new byte[codec.maxCompressedLength(value.length)];
+        int firstLength = codec.compress(value, 0, value.length, first, 0);
+        assertEquals(2, codec.install(value(3)));
+        assertEquals(2, codec.getVersion());
+
+        // the entries written before keep their dictionary, also once it is loaded from disk
+        DictionaryCodec loaded = new DictionaryCodec(TEST_DIR);
+        assertEquals(2, loaded.getVersion());
+        assertArrayEquals(value(3), loaded.getDictionary());
+        for (DictionaryCodec reader : Arrays.asList(codec, loaded)) {
+            byte[] result = new byte[value.length];
+            reader.decompress(plain, 0, plainLength, result, 0, value.length);
+            assertArrayEquals(value, result);
+            result = new byte[value.length];
+            reader.decompress(first, 0, firstLength, result, 0, value.length);
+            assertArrayEquals(value, result);
+        }
+
+        first[1] = 9;
+        try {
+            codec.decompress(first, 0, firstLength, new byte[value.length], 0, value.length);
+            fail("there is no dictionary 9");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testTrainer() throws IOException {
+        DictionaryCodec codec = new DictionaryCodec(null);
+        DictionaryTrainer trainer = new DictionaryTrainer(codec, 8192);
+        assertFalse(trainer.train());
+        for (int i = 0; i < DictionaryTrainer.MIN_SAMPLES - 1; i++) {
+            trainer.sample(ByteBuffer.wrap(value(i)));
+        }
+        assertFalse(trainer.needsDictionary());
+        // the value may come in pieces
+        byte[] value = value(DictionaryTrainer.MIN_SAMPLES);
+        trainer.sample(ByteBuffer.wrap(value, 0, 10), ByteBuffer.wrap(value, 10, value.length - 10));
+        assertTrue(trainer.needsDictionary());
+        for (int i = DictionaryTrainer.MIN_SAMPLES + 1; i < 5000; i++) {
+            trainer.sample(ByteBuffer.wrap(value(i)));
+        }
+
+        assertTrue(trainer.train());
+        assertEquals(1, codec.getVersion());
+        assertEquals(1, trainer.getTrainings());
+        assertFalse(trainer.needsDictionary());
+
+        // the same kind of values does not get a new dictionary
+        for (int i = 5000; i < 10000; i++) {
+            trainer.sample(ByteBuffer.wrap(value(i)));
+        }
+        assertFalse(trainer.train());
+        assertEquals(1, codec.getVersion());
+
+        // nor do values which have nothing in common
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            byte[] noise = new byte[200];
+            random.nextBytes(noise);
+            trainer.sample(ByteBuffer.wrap(noise));
+        }
+        assertFalse(trainer.train());
+
+        // other values do
+        for (int i = 0; i < 1000; i++) {
+            trainer.sample(ByteBuffer.wrap(("{\"order\":" + i + ",\"items\":[\"book\",\"pen\"],\"status\":\"shipped\",\"currency\":\"EUR\"}").getBytes()));
+        }
+        assertTrue(trainer.train());
+        assertEquals(2, codec.getVersion());
+        assertEquals(2, trainer.getTrainings());
+    }
+
+    @After
+    public void close() {
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
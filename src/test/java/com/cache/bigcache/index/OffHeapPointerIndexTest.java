@@ -0,0 +1,301 @@
+package com.cache.bigcache.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cache.bigcache.BigCache;
+import com.cache.bigcache.CacheConfig;
+import com.cache.bigcache.CacheConfig.IndexMode;
+import com.cache.bigcache.CacheConfig.StorageMode;
+import com.cache.bigcache.CacheValueWrapper;
+import com.cache.bigcache.sotrage.Pointer;
+import com.cache.bigcache.sotrage.StorageBlock;
+import com.cache.bigcache.sotrage.StorageManager;
+import com.cache.bigcache.utils.FileUtil;
+import com.cache.bigcache.utils.TestUtil;
+
+public class OffHeapPointerIndexTest {
+    private static final String TEST_DIR = TestUtil.TEST_BASE_DIR + "unit/offheap_index/";
+
+    private StorageManager storageManager;
+    private OffHeapPointerIndex<String> index;
+    private BigCache<String> cache;
+
+    private OffHeapPointerIndex<String> index() throws IOException {
+        storageManager = new StorageManager(TEST_DIR, 16 * 1024 * 1024, 2, StorageMode.PureFile, 0);
+        // a single segment so the tables have to grow and rehash
+        return new OffHeapPointerIndex<>(storageManager, 0);
+    }
+
+    @Test
+    public void testPutGetRemove() throws IOException {
+        index = index();
+        Pointer pointer = storageManager.store("value".getBytes());
+        assertNull(index.get("key"));
+        assertFalse(index.containsKey("key"));
+
+        index.put("key", new CacheValueWrapper(pointer, 100L, 1000L));
+        CacheValueWrapper wrapper = index.get("key");
+        assertEquals(pointer.getPosition(), wrapper.getPointer().getPosition());
+        assertEquals(pointer.getLength(), wrapper.getPointer().getLength());
+        assertSame(pointer.getStorageBlock(), wrapper.getPointer().getStorageBlock());
+        assertEquals(100L, wrapper.getLastAccessTime());
+        assertEquals(1000L, wrapper.getTimeToIdle());
+        assertTrue(index.containsKey("key"));
+        assertEquals(1, index.size());
+
+        wrapper = index.remove("key");
+        assertEquals(pointer.getLength(), wrapper.getPointer().getLength());
+        assertNull(index.get("key"));
+        assertNull(index.remove("key"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testAccess() throws IOException {
+        index = index();
+        Pointer pointer = storageManager.store("value".getBytes());
+        long now = System.currentTimeMillis();
+        index.put("idle", new CacheValueWrapper(pointer, now, 60 * 1000L));
+        index.put("expired", new CacheValueWrapper(pointer, now - 2000, 1000L));
+
+        assertEquals(now + 10, index.access("idle", now + 10).getLastAccessTime());
+        assertEquals(now + 10, index.get("idle").getLastAccessTime());
+        // going back in time is ignored
+        index.access("idle", now);
+        assertEquals(now + 10, index.get("idle").getLastAccessTime());
+
+        assertTrue(index.access("expired", now).isExpired());
+        assertEquals(now - 2000, index.get("expired").getLastAccessTime());
+
+        // the time to live holds however recent the access is
+        index.put("ttl", new CacheValueWrapper(pointer, now, 60 * 1000L, now - 1));
+        assertEquals(now - 1, index.get("ttl").getExpireTime());
+        assertTrue(index.access("ttl", now + 10).isExpired());
+        assertEquals(now, index.get("ttl").getLastAccessTime());
+        assertNull(index.access("absent", now));
+    }
+
+    @Test
+    public void testGrowAndRemove() throws IOException {
+        index = index();
+        Pointer pointer = storageManager.store("value".getBytes());
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            index.put("key" + i, new CacheValueWrapper(new Pointer(i, i % 100, pointer.getStorageBlock()), i, -1L));
+        }
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i += 2) {
+            assertNotNull(index.remove("key" + i));
+        }
+        assertEquals(count / 2, index.size());
+        // the removed slots and keys are reused
+        for (int i = 0; i < count; i += 4) {
+            index.put("key" + i, new CacheValueWrapper(new Pointer(i, i % 100, pointer.getStorageBlock()), i, -1L));
+        }
+        for (int i = 0; i < count; i++) {
+            CacheValueWrapper wrapper = index.get("key" + i);
+            if (i % 2 == 0 && i % 4 != 0) {
+                assertNull(wrapper);
+            } else {
+                assertEquals(i, wrapper.getPointer().getPosition());
+                assertEquals(i % 100, wrapper.getPointer().getLength());
+                assertEquals(i, wrapper.getLastAccessTime());
+            }
+        }
+
+        Set<String> keys = new HashSet<>();
+        index.forEach((String key, CacheValueWrapper wrapper) -> keys.add(key));
+        assertEquals(index.size(), keys.size());
+        assertTrue(keys.contains("key1"));
+        assertFalse(keys.contains("key2"));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get("key1"));
+    }
+
+    @Test
+    public void testBigCacheWithOffHeapIndex() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setIndexMode(IndexMode.OffHeap);
+        cache = new BigCache<String>(TEST_DIR, config);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, ("value" + i).getBytes());
+        }
+        cache.put("key0", "updated".getBytes());
+        assertNotNull(cache.delete("key1"));
+        assertEquals(999, cache.count());
+        assertEquals("updated", new String(cache.get("key0")));
+        assertNull(cache.get("key1"));
+        assertTrue(cache.contains("key2"));
+        assertFalse(cache.contains("key1"));
+        assertEquals("value999", new String(cache.get("key999")));
+    }
+
+    @Test
+    public void testForEachDue() throws IOException {
+        index = index();
+        Pointer pointer = storageManager.store("value".getBytes());
+        long now = System.currentTimeMillis();
+        index.put("idle", new CacheValueWrapper(pointer, now - 2000, 1000L));
+        index.put("ttl", new CacheValueWrapper(pointer, now, -1L, now - 1));
+        index.put("later", new CacheValueWrapper(pointer, now, 60 * 1000L));
+        index.put("forever", new CacheValueWrapper(pointer, now, -1L));
+
+        Set<String> due = new HashSet<>();
+        index.forEachDue(now, (String key, CacheValueWrapper wrapper) -> due.add(key));
+        assertEquals(new HashSet<>(Arrays.asList("idle", "ttl")), due);
+
+        index.remove("idle");
+        index.remove("ttl");
+        due.clear();
+        index.forEachDue(now + 1, (String key, CacheValueWrapper wrapper) -> due.add(key));
+        assertTrue(due.isEmpty());
+        index.forEachDue(now + 60 * 1000, (String key, CacheValueWrapper wrapper) -> due.add(key));
+        assertEquals(new HashSet<>(Arrays.asList("later")), due);
+    }
+
+    @Test
+    public void testForEachDueOnlyVisitsDueSlots() throws IOException {
+        storageManager = new StorageManager(TEST_DIR, 16 * 1024 * 1024, 2, StorageMode.PureFile, 0);
+        index = new OffHeapPointerIndex<>(storageManager, 2, 10);
+        Pointer pointer = storageManager.store("value".getBytes());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            index.put("later" + i, new CacheValueWrapper(pointer, now, -1L, now + 60 * 60 * 1000));
+        }
+        for (int i = 0; i < 100; i++) {
+            index.put("soon" + i, new CacheValueWrapper(pointer, now, -1L, now + 50));
+        }
+        // a read pushes the time to idle back, the key is linked again when its bucket is due
+        index.put("idle", new CacheValueWrapper(pointer, now, 50L));
+        index.access("idle", now + 40);
+        assertEquals(10101, index.getExpiryBacklog());
+
+        Set<String> due = new HashSet<>();
+        long visited = index.getExpirySlotsVisited();
+        for (long time = now; time <= now + 200; time += 10) {
+            List<String> keys = new ArrayList<>();
+            index.forEachDue(time, (String key, CacheValueWrapper wrapper) -> keys.add(key));
+            for (String key : keys) {
+                assertTrue(due.add(key));
+                index.remove(key);
+            }
+        }
+        assertEquals(101, due.size());
+        assertTrue(due.contains("idle"));
+        assertFalse(due.contains("later0"));
+        // the due keys once, the idle key twice, and each at most once more if their bucket was pushed down,
+        // nothing of the 10000 keys due later
+        visited = index.getExpirySlotsVisited() - visited;
+        assertTrue("visited " + visited, visited <= 2 * 102);
+        assertEquals(10000, index.getExpiryBacklog());
+
+        // rehashing keeps the wheel
+        for (int i = 0; i < 20000; i++) {
+            index.put("grow" + i, new CacheValueWrapper(pointer, now, -1L));
+        }
+        assertEquals(10000, index.getExpiryBacklog());
+        index.remove("later0");
+        assertEquals(9999, index.getExpiryBacklog());
+        due.clear();
+        index.forEachDue(now + 60 * 60 * 1000, (String key, CacheValueWrapper wrapper) -> due.add(key));
+        assertEquals(9999, due.size());
+    }
+
+    @Test
+    public void testKeysInBlock() throws IOException {
+        index = index();
+        StorageBlock first = storageManager.getBlock(0);
+        StorageBlock second = storageManager.getBlock(1);
+        for (int i = 0; i < 1000; i++) {
+            index.put("key" + i, new CacheValueWrapper(new Pointer(i, 1, i % 10 == 0 ? first : second), i, -1L));
+        }
+        assertEquals(100, index.keysInBlock(0).size());
+        assertEquals(900, index.keysInBlock(1).size());
+        assertTrue(index.keysInBlock(7).isEmpty());
+
+        // moved within the block, moved to the other block, removed
+        index.put("key0", new CacheValueWrapper(new Pointer(5000, 1, first), 0, -1L));
+        index.put("key10", new CacheValueWrapper(new Pointer(5000, 1, second), 0, -1L));
+        index.put("key1", new CacheValueWrapper(new Pointer(5000, 1, first), 0, -1L));
+        index.remove("key20");
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 1000; i += 10) {
+            expected.add("key" + i);
+        }
+        expected.remove("key10");
+        expected.remove("key20");
+        expected.add("key1");
+        assertEquals(expected, new HashSet<>(index.keysInBlock(0)));
+        assertEquals(900, index.keysInBlock(1).size());
+        assertTrue(index.keysInBlock(1).contains("key10"));
+
+        // rehashing keeps the chains
+        for (int i = 0; i < 100000; i++) {
+            index.put("grow" + i, new CacheValueWrapper(new Pointer(i, 1, second), i, -1L));
+        }
+        assertEquals(expected, new HashSet<>(index.keysInBlock(0)));
+        assertEquals(100900, index.keysInBlock(1).size());
+        index.clear();
+        assertTrue(index.keysInBlock(0).isEmpty());
+    }
+
+    @Test
+    public void testNoExpiryTimersOnHeap() throws IOException {
+        CacheConfig config = new CacheConfig();
+        config.setIndexMode(IndexMode.OffHeap)
+                .setExpiryWheelResolution(100);
+        cache = new BigCache<String>(TEST_DIR, config);
+        int count = 200000;
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            cache.put("key" + i, "value".getBytes(), -1, 60 * 1000);
+        }
+        long after = usedHeap();
+        // a timer, a map node and the key would take more than 100 bytes per key
+        assertTrue("heap grew by " + (after - before), after - before < 32L * count);
+        // the keys are in the off-heap wheels
+        assertEquals(count, cache.getStats().getExpiryBacklog());
+
+        cache.put("short", "value".getBytes(), -1, 200);
+        TestUtil.sleepQuietly(800);
+        assertFalse(cache.contains("short"));
+        assertEquals(1, cache.getStats().getCacheExpire());
+        assertEquals(count, cache.count());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            TestUtil.sleepQuietly(50);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @After
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+        if (storageManager != null) {
+            storageManager.close();
+        }
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtil.deleteDirectory(new File(TEST_DIR));
+    }
+}
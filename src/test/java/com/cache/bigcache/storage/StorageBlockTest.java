@@ -229,6 +229,134 @@ public class StorageBlockTest {
         assertNull(pointer); // overflow
     }
 
+    @Test
+    public void testFreeList() throws IOException {
+        StorageBlock freeListBlock = new StorageBlock(testDir, 5, 1024 * 1024, storageMode, false, true);
+        block = freeListBlock;
+
+        Pointer[] pointers = new Pointer[1024];
+        for(int i = 0; i < 1024; i++) {
+            byte[] sourceBytes = new byte[1024];
+            Arrays.fill(sourceBytes, (byte) i);
+            pointers[i] = block.store(sourceBytes);
+        }
+        assertNull(block.store(new byte[1]));
+        block.removeLight(pointers[10]);
+        block.removeLight(pointers[20]);
+        block.remove(pointers[30]);
+        assertEquals(3, freeListBlock.getFreeExtentCount());
+        assertEquals(3 * 1024, freeListBlock.getFreeExtentBytes());
+
+        // a bigger extent is split, its rest serves the next value
+        byte[] half = new byte[512];
+        Arrays.fill(half, (byte) 'a');
+        Pointer pointer = freeListBlock.storeInFreeSpace(half);
+        assertEquals(30 * 1024, pointer.getPosition());
+        pointer = freeListBlock.storeInFreeSpace(half);
+        assertEquals(30 * 1024 + 512, pointer.getPosition());
+        assertArrayEquals(half, block.retrieve(pointer));
+        pointer = freeListBlock.storeInFreeSpace(new byte[1000]);
+        assertEquals(20 * 1024, pointer.getPosition());
+
+        assertEquals(1024 * 1024 - 3 * 1024 + 2024, block.getUsed());
+        assertEquals(3 * 1024 - 2024, block.getDirty());
+        assertEquals(2024, freeListBlock.getReusedBytes());
+        assertEquals(2, freeListBlock.getFreeExtentCount());
+        assertEquals(1024 + 24, freeListBlock.getFreeExtentBytes());
+        assertEquals(1024, freeListBlock.getLargestFreeExtent());
+        // the extents of its class are too small
+        assertNull(freeListBlock.storeInFreeSpace(new byte[2000]));
+
+        // the neighbours are untouched
+        byte[] neighbour = new byte[1024];
+        Arrays.fill(neighbour, (byte) 21);
+        assertArrayEquals(neighbour, block.retrieve(pointers[21]));
+
+        // the tail of a value updated in place is released too
+        block.update(pointers[0], new byte[100]);
+        assertEquals(3, freeListBlock.getFreeExtentCount());
+        assertEquals(100, freeListBlock.storeInFreeSpace(new byte[900]).getPosition());
+
+        assertFalse(freeListBlock.retire());
+        block.free();
+        assertEquals(0, freeListBlock.getFreeExtentCount());
+        assertNull(freeListBlock.storeInFreeSpace(new byte[16]));
+    }
+
+    @Test
+    public void testFreeListDisabled() throws IOException {
+        StorageBlock plainBlock = new StorageBlock(testDir, 6, 1024 * 1024, storageMode);
+        block = plainBlock;
+        Pointer pointer = block.store(new byte[1024]);
+        block.store(new byte[1024]);
+        block.removeLight(pointer);
+        assertEquals(0, plainBlock.getFreeExtentCount());
+        assertNull(plainBlock.storeInFreeSpace(new byte[16]));
+        assertEquals(1024, block.getDirty());
+    }
+
+    @Test
+    public void testSlabChunks() throws IOException {
+        StorageBlock slabBlock = new StorageBlock(testDir, 7, 16 * 1024 * 1024, StorageMode.SlabOffHeap);
+        block = slabBlock;
+
+        // 100 bytes go into chunks of 120 bytes carved from the first page
+        Pointer[] pointers = new Pointer[100];
+        for(int i = 0; i < 100; i++) {
+            byte[] sourceBytes = new byte[100];
+            Arrays.fill(sourceBytes, (byte) i);
+            pointers[i] = block.store(sourceBytes);
+            assertEquals(i * 120, pointers[i].getPosition());
+            assertEquals(100, pointers[i].getLength());
+        }
+        assertEquals(100 * 120, block.getUsed());
+
+        // another class takes its own page
+        Pointer other = block.store(new byte[1000]);
+        assertEquals(1024 * 1024, other.getPosition());
+        // a value too big for a chunk is appended after the pages
+        Pointer big = block.store(new byte[1024 * 1024]);
+        assertEquals(2 * 1024 * 1024, big.getPosition());
+
+        // a released chunk is handed out again, to a value of the same class only
+        block.removeLight(pointers[10]);
+        block.remove(pointers[20]);
+        // the chunks are counted as used, not the values
+        assertEquals(100 * 120 - 240 + 1184 + 1024 * 1024, block.getUsed());
+        assertEquals(240, block.getDirty());
+        assertEquals(2, slabBlock.getFreeExtentCount());
+        assertTrue(slabBlock.hasFreeSpaceFor(97));
+        assertFalse(slabBlock.hasFreeSpaceFor(96));
+        assertNull(slabBlock.storeInFreeSpace(new byte[50]));
+        byte[] sourceBytes = new byte[120];
+        Arrays.fill(sourceBytes, (byte) 'a');
+        Pointer pointer = slabBlock.storeInFreeSpace(sourceBytes);
+        assertEquals(20 * 120, pointer.getPosition());
+        assertArrayEquals(sourceBytes, block.retrieve(pointer));
+        assertEquals(10 * 120, block.store(new byte[97]).getPosition());
+        assertEquals(0, block.getDirty());
+        assertEquals(240, slabBlock.getReusedBytes());
+
+        // a value of the same class is updated in place, another class moves
+        pointer = block.update(pointers[0], new byte[110]);
+        assertEquals(0, pointer.getPosition());
+        assertEquals(110, pointer.getLength());
+        pointer = block.update(pointer, new byte[130]);
+        assertEquals(3 * 1024 * 1024, pointer.getPosition());
+        assertEquals(120, block.getDirty());
+
+        byte[] neighbour = new byte[100];
+        Arrays.fill(neighbour, (byte) 1);
+        assertArrayEquals(neighbour, block.retrieve(pointers[1]));
+
+        assertFalse(slabBlock.retire());
+        block.free();
+        assertEquals(0, block.getUsed());
+        assertEquals(0, block.getDirty());
+        assertEquals(0, slabBlock.getFreeExtentCount());
+        assertEquals(0, block.store(new byte[100]).getPosition());
+    }
+
     @After
     public void clear() throws IOException {
         if (this.block != null) {
@@ -1,9 +1,12 @@
 package com.cache.bigcache.storage;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -82,6 +85,59 @@ public class StorageUnitTest {
         assertEquals(new String(dest), "W");
     }
 
+    @Test
+    public void testGetIntoBuffer() throws IOException {
+        storage6();
+        ByteBuffer heap = ByteBuffer.allocate(3);
+        storage.get(1, heap);
+        assertEquals(3, heap.position());
+        assertEquals("BCD", new String(heap.array()));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(8);
+        direct.position(2).limit(4);
+        storage.get(4, direct);
+        assertEquals(4, direct.position());
+        assertEquals('E', direct.get(2));
+        assertEquals('F', direct.get(3));
+    }
+
+    @Test
+    public void testPutFromBuffers() throws IOException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put("CD".getBytes()).flip();
+        ByteBuffer readOnly = ByteBuffer.wrap("XEFX".getBytes(), 1, 2).asReadOnlyBuffer();
+        storage.put(0, ByteBuffer.wrap("AB".getBytes()), direct, readOnly);
+        // the sources are not consumed
+        assertEquals(2, direct.remaining());
+        assertEquals(2, readOnly.remaining());
+
+        byte[] dest = new byte[6];
+        storage.get(0, dest);
+        assertEquals("ABCDEF", new String(dest));
+
+        storage.put(6, ByteBuffer.wrap("G".getBytes()));
+        storage.get(1, dest);
+        assertEquals("BCDEFG", new String(dest));
+    }
+
+    @Test
+    public void testSlice() throws IOException {
+        storage6();
+        ByteBuffer slice = storage.slice(2, 3);
+        if (storage instanceof FileChannelStorage) {
+            assertNull(slice);
+            return;
+        }
+        assertTrue(slice.isReadOnly());
+        assertEquals(3, slice.remaining());
+        byte[] dest = new byte[3];
+        slice.get(dest);
+        assertEquals("CDE", new String(dest));
+        // the slice is a view, not a copy
+        storage.put(2, "X".getBytes());
+        assertEquals('X', storage.slice(2, 3).get(0));
+    }
+
     @After
     public void clear() throws IOException {
         storage.free();
@@ -0,0 +1,33 @@
+package com.cache.bigcache.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testGrowingKeepsFrequencies() {
+        // sized for nothing, as a sketch of a segment bounded by weight is
+        FrequencySketch sketch = new FrequencySketch(0);
+        for (int key = 0; key < 8; key++) {
+            for (int i = 0; i <= key; i++) {
+                sketch.increment(key);
+            }
+        }
+        int[] before = new int[8];
+        for (int key = 0; key < 8; key++) {
+            before[key] = sketch.frequency(key);
+            assertTrue(before[key] >= key + 1);
+        }
+
+        for (long expectedKeys = 16; expectedKeys <= 1 << 16; expectedKeys <<= 1) {
+            sketch.ensureCapacity(expectedKeys);
+            for (int key = 0; key < 8; key++) {
+                assertEquals(before[key], sketch.frequency(key));
+            }
+        }
+        assertTrue(sketch.admit(7, 0));
+        assertFalse(sketch.admit(0, 7));
+    }
+}
@@ -0,0 +1,128 @@
+package com.cache.gocache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Replays the same access traces on LRU and W-TinyLFU caches and compares their hit rates.
+ */
+public class CacheEvictionPolicyTest {
+    private static final int MAXIMUM_SIZE = 1000;
+
+    private static final int ACCESSES = 500000;
+
+    private Cache<Integer, String> cache(EvictionPolicy evictionPolicy) {
+        return CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumSize(MAXIMUM_SIZE)
+                .evictionPolicy(evictionPolicy)
+                .build();
+    }
+
+    /**
+     * Bounded by weight, the entries weigh 1 to 4 and average about the weight of {@link #MAXIMUM_SIZE} entries.
+     */
+    private Cache<Integer, String> weightedCache(EvictionPolicy evictionPolicy) {
+        return CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumWeight(MAXIMUM_SIZE * 5 / 2)
+                .weigher((Integer key, String value) -> 1 + (key & 3))
+                .evictionPolicy(evictionPolicy)
+                .build();
+    }
+
+    /**
+     * A skewed hot set of 600 keys, interleaved with scans of 2000 keys which are never read again.
+     */
+    private static int[] scanTrace() {
+        Random random = new Random(7);
+        int[] trace = new int[ACCESSES];
+        int oneOff = 1000000;
+        for (int i = 0; i < trace.length; ) {
+            if (i % 20000 == 10000) {
+                for (int j = 0; j < 2000 && i < trace.length; j++) {
+                    trace[i++] = oneOff++;
+                }
+            } else {
+                trace[i++] = skewed(random, 600);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * A skewed set of 5000 keys, larger than the cache.
+     */
+    private static int[] skewedTrace() {
+        Random random = new Random(11);
+        int[] trace = new int[ACCESSES];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = skewed(random, 5000);
+        }
+        return trace;
+    }
+
+    //The lower keys are accessed more often
+    private static int skewed(Random random, int keys) {
+        double u = random.nextDouble();
+        return (int) (keys * u * u * u);
+    }
+
+    private static double replay(Cache<Integer, String> cache, int[] trace) {
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, "V" + key);
+            }
+        }
+        return cache.stats().hitRate();
+    }
+
+    @Test
+    public void testScanResistance() {
+        int[] trace = scanTrace();
+        double lru = replay(cache(EvictionPolicy.Lru), trace);
+        double tinyLfu = replay(cache(EvictionPolicy.WTinyLfu), trace);
+        System.out.println("scan trace, LRU: " + lru + ", W-TinyLFU: " + tinyLfu);
+        Assert.assertTrue(tinyLfu > lru);
+    }
+
+    @Test
+    public void testSkewedAccesses() {
+        int[] trace = skewedTrace();
+        double lru = replay(cache(EvictionPolicy.Lru), trace);
+        double tinyLfu = replay(cache(EvictionPolicy.WTinyLfu), trace);
+        System.out.println("skewed trace, LRU: " + lru + ", W-TinyLFU: " + tinyLfu);
+        Assert.assertTrue(tinyLfu >= lru);
+    }
+
+    @Test
+    public void testWeightedScanResistance() {
+        int[] trace = scanTrace();
+        double lru = replay(weightedCache(EvictionPolicy.Lru), trace);
+        double tinyLfu = replay(weightedCache(EvictionPolicy.WTinyLfu), trace);
+        System.out.println("weighted scan trace, LRU: " + lru + ", W-TinyLFU: " + tinyLfu);
+        Assert.assertTrue(tinyLfu > lru);
+    }
+
+    @Test
+    public void testWeightedSkewedAccesses() {
+        int[] trace = skewedTrace();
+        double lru = replay(weightedCache(EvictionPolicy.Lru), trace);
+        double tinyLfu = replay(weightedCache(EvictionPolicy.WTinyLfu), trace);
+        System.out.println("weighted skewed trace, LRU: " + lru + ", W-TinyLFU: " + tinyLfu);
+        Assert.assertTrue(tinyLfu >= lru);
+    }
+
+    @Test
+    public void testMaximumSize() {
+        Cache<Integer, String> cache = cache(EvictionPolicy.WTinyLfu);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, "V" + i);
+            Assert.assertTrue(cache.stats().getMemorySize() <= MAXIMUM_SIZE + 1);
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.remove(i);
+        }
+        Assert.assertEquals(0, cache.stats().getMemorySize());
+    }
+}
@@ -268,4 +268,22 @@ public class CacheImplTest {
 
         Assert.assertEquals(cache.contains(1), false);
     }
+
+    @Test
+    public void testGetKeepsEntriesFromEviction() {
+        Cache<Integer, String> cache = CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumSize(100)
+                .build();
+        for (int i = 0; i < 80; i++) {
+            cache.put(i, "V" + i);
+        }
+        //Recorded without the lock, replayed before the eviction
+        Assert.assertEquals(cache.get(0), "V0");
+        for (int i = 80; i < 90; i++) {
+            cache.put(i, "V" + i);
+        }
+        Assert.assertEquals(cache.get(0), "V0");
+        Assert.assertEquals(cache.get(1), null);
+        Assert.assertEquals(cache.stats().getMemoryHitCount(), 2);
+    }
 }
@@ -0,0 +1,97 @@
+package com.cache.gocache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheWeightTest {
+    private static final long MAXIMUM_WEIGHT = 100000;
+
+    private Cache<Integer, String> cache(EvictionPolicy evictionPolicy) {
+        return CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumWeight(MAXIMUM_WEIGHT)
+                .weigher(new Weigher<Integer, String>() {
+                    @Override
+                    public int weigh(Integer key, String value) {
+                        return value.length();
+                    }
+                })
+                .evictionPolicy(evictionPolicy)
+                .build();
+    }
+
+    private static String value(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append('v');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            Cache<Integer, String> cache = cache(evictionPolicy);
+            for (int i = 0; i < 5000; i++) {
+                //From 10 to 10000 chars
+                cache.put(i, value(i % 10 == 0 ? 10000 : 10));
+                Assert.assertTrue(cache.stats().getWeight() <= MAXIMUM_WEIGHT + 10000);
+            }
+            Assert.assertTrue(cache.stats().getEvictCount() > 0);
+            Assert.assertTrue(cache.stats().getWeight() > 0);
+        }
+    }
+
+    @Test
+    public void testWeightUpdates() {
+        Cache<Integer, String> cache = cache(EvictionPolicy.Lru);
+        cache.put(1, value(100));
+        cache.put(2, value(200));
+        Assert.assertEquals(300, cache.stats().getWeight());
+
+        cache.put(1, value(10));
+        Assert.assertEquals(210, cache.stats().getWeight());
+
+        cache.replace(2, value(20));
+        Assert.assertEquals(30, cache.stats().getWeight());
+
+        cache.remove(1);
+        Assert.assertEquals(20, cache.stats().getWeight());
+    }
+
+    @Test
+    public void testNegativeWeight() {
+        Cache<Integer, String> cache = CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumWeight(MAXIMUM_WEIGHT)
+                .weigher(new Weigher<Integer, String>() {
+                    @Override
+                    public int weigh(Integer key, String value) {
+                        return value.isEmpty() ? -1 : value.length();
+                    }
+                })
+                .build();
+        cache.put(1, value(100));
+        try {
+            cache.put(2, "");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        try {
+            cache.replace(1, "");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        //The cache is left as it was
+        Assert.assertEquals(100, cache.stats().getWeight());
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals(value(100), cache.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaximumWeightWithoutWeigher() {
+        CacheBuilder.newBuilder(Integer.class, String.class)
+                .maximumWeight(MAXIMUM_WEIGHT)
+                .build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.cache.gocache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class HeapSizeWeigherTest {
+    private final HeapSizeWeigher<Serializable, Serializable> weigher = new HeapSizeWeigher<Serializable, Serializable>();
+
+    static class Order implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long id;
+        String customer;
+        byte[] payload;
+        List<Integer> items = new ArrayList<Integer>();
+
+        Order(long id, int payload) {
+            this.id = id;
+            this.customer = "customer-" + id;
+            this.payload = new byte[payload];
+            for (int i = 0; i < 10; i++) {
+                items.add(i * 1000);
+            }
+        }
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        Assert.assertTrue(actual + " not in [" + min + ", " + max + "]", actual >= min && actual <= max);
+    }
+
+    @Test
+    public void testWellKnownTypes() {
+        Assert.assertEquals(0, weigher.estimate(null));
+        assertBetween(16, 24, weigher.estimate(Integer.valueOf(1000)));
+        assertBetween(1024 + 16, 1024 + 24, weigher.estimate(new byte[1024]));
+        assertBetween(1000 + 32, 2000 + 48, weigher.estimate(new String(new char[1000]).replace('\0', 'a')));
+
+        List<String> list = new ArrayList<String>();
+        Map<Integer, String> map = new HashMap<Integer, String>();
+        for (int i = 0; i < 1000; i++) {
+            list.add("value" + (i % 10));
+            map.put(i, "value" + (i % 10));
+        }
+        //Each element is a 6 char string, at least 40 bytes
+        assertBetween(1000 * 40, 1000 * 80, weigher.estimate((Serializable) list));
+        assertBetween(1000 * (40 + 16 + 32), 1000 * 160, weigher.estimate((Serializable) map));
+    }
+
+    @Test
+    public void testWalkedTypes() {
+        long size = weigher.estimate(new Order(1, 4096));
+        assertBetween(4096 + 200, 4096 + 800, size);
+        //Past the walked instances, the average of the class is used
+        for (int i = 0; i < 100; i++) {
+            assertBetween(4096 + 200, 4096 + 800, weigher.estimate(new Order(i, 4096)));
+        }
+    }
+
+    @Test
+    public void testMaximumHeapBytes() {
+        Cache<Integer, byte[]> cache = CacheBuilder.newBuilder(Integer.class, byte[].class)
+                .maximumHeapBytes(1024 * 1024)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            //From 100 bytes to 64k
+            cache.put(i, new byte[i % 100 == 0 ? 64 * 1024 : 100]);
+            Assert.assertTrue(cache.stats().getWeight() <= 1024 * 1024 + 64 * 1024 + 200);
+        }
+        Assert.assertTrue(cache.stats().getEvictCount() > 0);
+    }
+}